@@ -3,10 +3,8 @@ package ru.vkabanov.threadlyauth;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
 @EnableMongoAuditing
@@ -17,9 +15,4 @@ public class ThreadlyAuthApplication {
     public static void main(String[] args) {
         SpringApplication.run(ThreadlyAuthApplication.class, args);
     }
-
-    @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
-    }
 }
@@ -14,10 +14,12 @@ import org.springframework.web.client.RestTemplate;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Клиент к chat-сервису для получения списка ID пользователей, с которыми у пользователя есть переписка.
  * Chat требует JWT — передаём заголовок Authorization от клиента.
+ * Вызовы идут через {@link InternalCallGuard}, уведомления — асинхронно через {@link InternalNotificationQueue}.
  */
 @Component
 @Slf4j
@@ -27,14 +29,18 @@ public class ChatContactsClient {
     @Value("${app.chat-service-url}")
     private String chatServiceUrl;
 
+    private static final String TARGET = "chat";
+
     private final RestTemplate restTemplate;
+    private final InternalCallGuard callGuard;
+    private final InternalNotificationQueue notificationQueue;
 
     /**
-     * Возвращает список ID пользователей, с которыми у userId есть переписка.
+     * Возвращает список ID пользователей, с которыми у userId есть переписка (для сверки contact_edges).
      * authorization — заголовок Authorization от запроса клиента (Bearer token), чтобы chat принял вызов.
-     * При ошибке (chat недоступен, 401 и т.д.) возвращает пустой список.
+     * При ошибке (chat недоступен, 401 и т.д.) возвращает пустой Optional — в отличие от пустого списка контактов.
      */
-    public List<String> getContactIds(String userId, String authorization) {
+    public Optional<List<String>> getContactIds(String userId, String authorization) {
         String url = chatServiceUrl + "/messages/contacts/" + userId;
         try {
             HttpHeaders headers = new HttpHeaders();
@@ -42,30 +48,29 @@ public class ChatContactsClient {
                 headers.set("Authorization", authorization);
             }
             HttpEntity<Void> entity = new HttpEntity<>(headers);
-            return restTemplate.exchange(url, HttpMethod.GET, entity, new ParameterizedTypeReference<List<String>>() {})
-                    .getBody();
+            List<String> ids = callGuard.call(TARGET, "contacts", () -> restTemplate
+                    .exchange(url, HttpMethod.GET, entity, new ParameterizedTypeReference<List<String>>() {})
+                    .getBody());
+            return Optional.of(ids != null ? ids : Collections.emptyList());
         } catch (Exception e) {
             log.warn("Failed to fetch contact ids from chat service for user {}: {}", userId, e.getMessage());
-            return Collections.emptyList();
+            return Optional.empty();
         }
     }
 
     /**
      * Уведомляет chat-сервис об обновлении аватара пользователя.
-     * Chat далее рассылает событие по WebSocket.
+     * Chat далее рассылает событие по WebSocket. Не блокирует: отправка и повторы — в очереди уведомлений.
      */
     public void notifyAvatarUpdated(String userId, String avatarUrl) {
         String url = chatServiceUrl + "/internal/avatar-updated";
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, String>> entity = new HttpEntity<>(
-                    Map.of("userId", userId, "avatarUrl", avatarUrl),
-                    headers
-            );
-            restTemplate.exchange(url, HttpMethod.POST, entity, Void.class);
-        } catch (Exception e) {
-            log.warn("Failed to notify chat service about avatar update for user {}: {}", userId, e.getMessage());
-        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<Map<String, String>> entity = new HttpEntity<>(
+                Map.of("userId", userId, "avatarUrl", avatarUrl),
+                headers
+        );
+        notificationQueue.submit("avatar update of user " + userId, () ->
+                callGuard.call(TARGET, "avatar-updated", () -> restTemplate.exchange(url, HttpMethod.POST, entity, Void.class)));
     }
 }
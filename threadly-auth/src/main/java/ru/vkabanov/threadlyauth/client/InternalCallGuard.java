@@ -0,0 +1,102 @@
+package ru.vkabanov.threadlyauth.client;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import ru.vkabanov.threadlyauth.config.InternalHttpProperties;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Обёртка внутренних HTTP-вызовов: bulkhead и circuit breaker на каждый целевой сервис, метрики на каждое место вызова.
+ * <p>
+ * Bulkhead снаружи breaker'а: отказ из-за перегрузки не считается ошибкой сервиса. Ответы 4xx тоже не размыкают
+ * breaker — сервис жив, ошибка в запросе. Длительность и исход пишутся в таймер
+ * {@code threadly.internal.client.calls} с тегами target, call и outcome (success, error, circuit_open, bulkhead_full),
+ * состояние breaker'а — в {@code threadly.internal.client.circuit.state} (0 — замкнут, 1 — разомкнут, 2 — пробные вызовы).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InternalCallGuard {
+
+    private final InternalHttpProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+    /**
+     * Выполнить вызов к target. Исключение вызова пробрасывается; при разомкнутом breaker'е —
+     * {@link CallNotPermittedException}, при заполненном bulkhead — {@link BulkheadFullException}.
+     */
+    public <T> T call(String target, String callSite, Supplier<T> call) {
+        Guard guard = guards.computeIfAbsent(target, this::createGuard);
+        long started = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = guard.bulkhead().executeSupplier(() -> guard.breaker().executeSupplier(call));
+            outcome = "success";
+            return result;
+        } catch (CallNotPermittedException e) {
+            outcome = "circuit_open";
+            throw e;
+        } catch (BulkheadFullException e) {
+            outcome = "bulkhead_full";
+            throw e;
+        } finally {
+            Timer.builder("threadly.internal.client.calls")
+                    .tag("target", target)
+                    .tag("call", callSite)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Guard createGuard(String target) {
+        CircuitBreaker breaker = CircuitBreaker.of(target, CircuitBreakerConfig.custom()
+                .failureRateThreshold(properties.getFailureRateThreshold())
+                .slidingWindowSize(properties.getSlidingWindowSize())
+                .minimumNumberOfCalls(properties.getMinimumCalls())
+                .waitDurationInOpenState(Duration.ofSeconds(properties.getOpenStateSeconds()))
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .ignoreExceptions(HttpClientErrorException.class)
+                .build());
+        breaker.getEventPublisher().onStateTransition(event ->
+                log.warn("Circuit breaker for {}: {}", target, event.getStateTransition()));
+        Bulkhead bulkhead = Bulkhead.of(target, BulkheadConfig.custom()
+                .maxConcurrentCalls(properties.getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        Gauge.builder("threadly.internal.client.circuit.state", breaker, InternalCallGuard::stateCode)
+                .tag("target", target)
+                .register(meterRegistry);
+        return new Guard(breaker, bulkhead);
+    }
+
+    private static double stateCode(CircuitBreaker breaker) {
+        return switch (breaker.getState()) {
+            case CLOSED -> 0;
+            case OPEN, FORCED_OPEN -> 1;
+            case HALF_OPEN -> 2;
+            default -> -1;
+        };
+    }
+
+    private record Guard(CircuitBreaker breaker, Bulkhead bulkhead) {
+    }
+}
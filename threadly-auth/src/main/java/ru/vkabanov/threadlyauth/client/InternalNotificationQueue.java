@@ -0,0 +1,84 @@
+package ru.vkabanov.threadlyauth.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlyauth.config.InternalHttpProperties;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронная отправка уведомлений во внутренние сервисы (fire-and-forget) с повторами.
+ * <p>
+ * Вызывающий поток только ставит уведомление в очередь. Неудачная попытка повторяется с экспоненциальной
+ * паузой до notifyMaxAttempts раз. Очередь ограничена: если ожидающих уведомлений больше notifyQueueCapacity,
+ * новые отбрасываются с предупреждением. Пул не зарегистрирован бином, чтобы не подменить исполнитель {@code @Async}.
+ */
+@Slf4j
+@Component
+public class InternalNotificationQueue {
+
+    private final InternalHttpProperties properties;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Counter dropped;
+
+    public InternalNotificationQueue(InternalHttpProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.scheduler = new ScheduledThreadPoolExecutor(properties.getNotifyThreads(),
+                new CustomizableThreadFactory("internal-notify-"));
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        Gauge.builder("threadly.internal.notifications.pending", pending, AtomicInteger::get).register(meterRegistry);
+        this.dropped = Counter.builder("threadly.internal.notifications.dropped").register(meterRegistry);
+    }
+
+    /**
+     * Поставить уведомление в очередь. delivery должен бросить исключение при неудаче.
+     *
+     * @return false, если очередь заполнена и уведомление отброшено
+     */
+    public boolean submit(String description, Runnable delivery) {
+        if (pending.incrementAndGet() > properties.getNotifyQueueCapacity()) {
+            pending.decrementAndGet();
+            dropped.increment();
+            log.warn("Internal notification queue is full, dropping {}", description);
+            return false;
+        }
+        scheduler.execute(() -> attempt(description, delivery, 1));
+        return true;
+    }
+
+    private void attempt(String description, Runnable delivery, int attempt) {
+        try {
+            delivery.run();
+            pending.decrementAndGet();
+        } catch (Exception e) {
+            if (attempt >= properties.getNotifyMaxAttempts()) {
+                pending.decrementAndGet();
+                dropped.increment();
+                log.warn("Giving up on {} after {} attempt(s): {}", description, attempt, e.getMessage());
+                return;
+            }
+            long delay = Math.min(properties.getNotifyRetryInitialMs() << Math.min(attempt - 1, 20),
+                    properties.getNotifyRetryMaxMs());
+            log.debug("Attempt {} of {} failed, retrying in {} ms: {}", attempt, description, delay, e.getMessage());
+            scheduler.schedule(() -> attempt(description, delivery, attempt + 1), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int left = pending.get();
+        if (left > 0) {
+            log.warn("Shutting down with {} undelivered internal notification(s)", left);
+        }
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,17 @@
+package ru.vkabanov.threadlyauth.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Локальная копия контактов (contact_edges), которую chat поддерживает событиями.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.contacts")
+public class ContactsProperties {
+
+    /** Через сколько часов контакты пользователя повторно сверяются с chat при запросе summaries. */
+    private long reconcileAfterHours = 24;
+}
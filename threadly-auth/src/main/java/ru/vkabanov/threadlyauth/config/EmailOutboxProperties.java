@@ -0,0 +1,39 @@
+package ru.vkabanov.threadlyauth.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Настройки исходящей очереди писем (коллекция email_outbox).
+ * <p>
+ * Письма отправляют несколько обработчиков на собственном пуле; каждый забирает пачку и отправляет её
+ * через одно SMTP-соединение. Неудачные письма повторяются с растущей паузой, после maxAttempts — DEAD.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.mail.outbox")
+public class EmailOutboxProperties {
+
+    /** Обработчиков (потоков), одновременно отправляющих пачки. */
+    private int workers = 2;
+
+    /** Писем в одной пачке — на одно SMTP-соединение. */
+    private int batchSize = 20;
+
+    /** Как часто проверять очередь, когда она пуста. */
+    private long pollIntervalMs = 1000;
+
+    /** На сколько пачка закрепляется за обработчиком; после — считается брошенной и забирается снова. */
+    private int leaseSeconds = 120;
+
+    private int maxAttempts = 8;
+
+    /** Пауза перед первым повтором, далее удваивается до retryMaxSeconds. */
+    private int retryInitialSeconds = 30;
+
+    private int retryMaxSeconds = 3600;
+
+    /** Сколько дней хранить отправленные письма. */
+    private int sentRetentionDays = 7;
+}
@@ -0,0 +1,43 @@
+package ru.vkabanov.threadlyauth.config;
+
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Токен внутренних вызовов chat → auth: HMAC-SHA256 от общего JWT-секрета.
+ * /internal/** доступен снаружи через прокси /api/auth, поэтому без токена события не принимаются.
+ */
+@Component
+public class InternalEventsToken {
+
+    public static final String HEADER = "X-Threadly-Internal-Token";
+
+    private final byte[] expected;
+
+    public InternalEventsToken(JwtConfig jwtConfig) {
+        String secret = jwtConfig.getSecret();
+        this.expected = secret == null || secret.isEmpty()
+                ? new byte[0]
+                : compute(secret).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public boolean matches(String token) {
+        return token != null && expected.length > 0 && MessageDigest.isEqual(expected, token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static String compute(String secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal("threadly-internal-events".getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ru.vkabanov.threadlyauth.config;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RestTemplate для вызовов chat-сервиса: OkHttp с пулом keep-alive соединений и таймаутами.
+ * Повторы на уровне соединения выключены — повторяет только очередь уведомлений, с паузами.
+ */
+@Configuration
+public class InternalHttpConfig {
+
+    @Bean
+    public RestTemplate restTemplate(InternalHttpProperties properties) {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(properties.getMaxIdleConnections(),
+                        properties.getKeepAliveSeconds(), TimeUnit.SECONDS))
+                .connectTimeout(Duration.ofMillis(properties.getConnectTimeoutMs()))
+                .readTimeout(Duration.ofMillis(properties.getReadTimeoutMs()))
+                .writeTimeout(Duration.ofMillis(properties.getReadTimeoutMs()))
+                .callTimeout(Duration.ofMillis(properties.getConnectTimeoutMs() + 2L * properties.getReadTimeoutMs()))
+                .retryOnConnectionFailure(false)
+                .build();
+        return new RestTemplate(new OkHttp3ClientHttpRequestFactory(client));
+    }
+}
@@ -0,0 +1,54 @@
+package ru.vkabanov.threadlyauth.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Настройки HTTP-клиента для внутренних вызовов chat-сервиса.
+ * <p>
+ * Соединения переиспользуются из пула, у каждого вызова есть таймауты; на каждый целевой сервис —
+ * свой circuit breaker и bulkhead, чтобы зависший chat не занимал потоки запросов auth.
+ * Уведомления (например, о смене аватара) отправляются асинхронно через ограниченную очередь повторов.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.internal-http")
+public class InternalHttpProperties {
+
+    private int connectTimeoutMs = 1000;
+
+    private int readTimeoutMs = 3000;
+
+    /** Сколько простаивающих keep-alive соединений держать в пуле. */
+    private int maxIdleConnections = 16;
+
+    private int keepAliveSeconds = 60;
+
+    /** Доля ошибок (%) в скользящем окне, при которой breaker размыкается. */
+    private int failureRateThreshold = 50;
+
+    /** Размер скользящего окна breaker'а (последние N вызовов). */
+    private int slidingWindowSize = 20;
+
+    /** Минимум вызовов в окне, прежде чем считать долю ошибок. */
+    private int minimumCalls = 10;
+
+    /** Сколько секунд breaker остаётся разомкнутым до пробных вызовов. */
+    private int openStateSeconds = 30;
+
+    /** Одновременных вызовов к одному сервису; сверх этого — отказ без ожидания. */
+    private int maxConcurrentCalls = 16;
+
+    /** Уведомлений, ожидающих отправки или повтора; сверх этого новые отбрасываются. */
+    private int notifyQueueCapacity = 1000;
+
+    private int notifyMaxAttempts = 6;
+
+    /** Задержка перед первым повтором, далее удваивается до notifyRetryMaxMs. */
+    private long notifyRetryInitialMs = 1000;
+
+    private long notifyRetryMaxMs = 60000;
+
+    private int notifyThreads = 2;
+}
@@ -7,6 +7,7 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.web.filter.OncePerRequestFilter;
 import ru.vkabanov.threadlyauth.model.ThreadlyUserDetails;
 import ru.vkabanov.threadlyauth.service.JwtTokenProvider;
+import ru.vkabanov.threadlyauth.service.UserDetailsCache;
 import ru.vkabanov.threadlyauth.service.UserService;
 
 import javax.servlet.FilterChain;
@@ -14,17 +15,21 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Optional;
 
 public class JwtTokenAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtConfig jwtConfig;
     private JwtTokenProvider tokenProvider;
     private UserService userService;
+    private UserDetailsCache userDetailsCache;
 
-    public JwtTokenAuthenticationFilter(JwtConfig jwtConfig, JwtTokenProvider tokenProvider, UserService userService) {
+    public JwtTokenAuthenticationFilter(JwtConfig jwtConfig, JwtTokenProvider tokenProvider, UserService userService,
+                                        UserDetailsCache userDetailsCache) {
         this.jwtConfig = jwtConfig;
         this.tokenProvider = tokenProvider;
         this.userService = userService;
+        this.userDetailsCache = userDetailsCache;
     }
 
     @Override
@@ -47,25 +52,23 @@ public class JwtTokenAuthenticationFilter extends OncePerRequestFilter {
         // And If user tried to access without access token, then he won't be authenticated and an exception will be thrown.
 
         // 3. Get the token
-        String token = header.replace(jwtConfig.getPrefix(), "");
-
-        if(tokenProvider.validateToken(token)) {
-            Claims claims = tokenProvider.getClaimsFromJWT(token);
-            String username = claims.getSubject();
-
-            UsernamePasswordAuthenticationToken auth =
-                    userService.findByUsername(username)
-                            .map(ThreadlyUserDetails::new)
-                            .map(userDetails -> {
-                                UsernamePasswordAuthenticationToken authentication =
-                                        new UsernamePasswordAuthenticationToken(
-                                                userDetails, null, userDetails.getAuthorities());
-                                authentication
-                                        .setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-
-                                return authentication;
-                            })
-                            .orElse(null);
+        String token = header.replace(jwtConfig.getPrefix(), "").trim();
+
+        // 4. Parse and verify once; the principal comes from the userId claim via a short-TTL cache,
+        // so the common case needs no database round trip
+        Optional<Claims> claims = tokenProvider.parseValidClaims(token);
+        if (claims.isPresent()) {
+            UsernamePasswordAuthenticationToken auth = resolveUser(claims.get())
+                    .map(userDetails -> {
+                        UsernamePasswordAuthenticationToken authentication =
+                                new UsernamePasswordAuthenticationToken(
+                                        userDetails, null, userDetails.getAuthorities());
+                        authentication
+                                .setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+                        return authentication;
+                    })
+                    .orElse(null);
 
             SecurityContextHolder.getContext().setAuthentication(auth);
         } else {
@@ -76,4 +79,12 @@ public class JwtTokenAuthenticationFilter extends OncePerRequestFilter {
         chain.doFilter(request, response);
     }
 
+    private Optional<ThreadlyUserDetails> resolveUser(Claims claims) {
+        Object userId = claims.get("userId");
+        if (userId != null) {
+            return userDetailsCache.get(userId.toString());
+        }
+        // Токены, выданные до появления claim userId
+        return userService.findByUsername(claims.getSubject()).map(ThreadlyUserDetails::new);
+    }
 }
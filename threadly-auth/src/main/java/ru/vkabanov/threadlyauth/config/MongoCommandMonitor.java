@@ -0,0 +1,309 @@
+package ru.vkabanov.threadlyauth.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlyauth.ThreadlyAuthApplication;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Учёт каждой команды Mongo на уровне драйвера: таймер {@code threadly.mongo.commands} с тегом caller —
+ * метод нашего сервиса, из которого пришёл запрос, — и кольцевой буфер последних медленных команд.
+ * <p>
+ * Для медленной команды храним форму запроса без литералов; значения фильтров из процесса не уходят: ни в буфер,
+ * ни в метрики, ни в лог. В auth только точечные выборки по индексам, без агрегаций, и их планы закреплены
+ * тестом UserQueryPlanTest, поэтому explain в фоне, как в threadly-chat, здесь не запускаем.
+ */
+@Slf4j
+@Component
+public class MongoCommandMonitor implements CommandListener, MongoClientSettingsBuilderCustomizer {
+
+    /** Служебные команды драйвера: не интересны и бывают на каждом соединении. */
+    private static final Set<String> IGNORED_COMMANDS = Set.of(
+            "hello", "ismaster", "isMaster", "saslStart", "saslContinue", "ping", "buildInfo",
+            "endSessions", "killCursors", "explain", "getLastError");
+
+    /** Команды, форму которых показываем в буфере медленных. */
+    private static final Set<String> SHAPED_COMMANDS = Set.of(
+            "find", "count", "distinct", "update", "delete", "findAndModify");
+
+    private static final String APPLICATION_PACKAGE = ThreadlyAuthApplication.class.getPackageName() + ".";
+    private static final BsonString REDACTED = new BsonString("?");
+
+    private final MeterRegistry registry;
+    private final MongoQueryProperties properties;
+    private final StackWalker stackWalker = StackWalker.getInstance();
+
+    private final Map<Integer, PendingCommand> inFlight = new ConcurrentHashMap<>();
+    private final ArrayDeque<SlowCommand> slowCommands = new ArrayDeque<>();
+
+    public MongoCommandMonitor(MeterRegistry registry, MongoQueryProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+    }
+
+    @Override
+    public void customize(MongoClientSettings.Builder builder) {
+        builder.addCommandListener(this);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String command = event.getCommandName();
+        if (IGNORED_COMMANDS.contains(command)) {
+            return;
+        }
+        BsonDocument body = event.getCommand();
+        String collection = collectionOf(command, body);
+        // Документ команды живёт только внутри колбэка — копируем лишь поля запроса, без вставляемых документов
+        BsonDocument query = SHAPED_COMMANDS.contains(command) ? queryPart(command, body) : null;
+        String caller = properties.isCaptureCaller() ? findCaller() : "unknown";
+        inFlight.put(event.getRequestId(), new PendingCommand(command, collection, caller, query));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        PendingCommand pending = inFlight.remove(event.getRequestId());
+        if (pending != null) {
+            complete(pending, event.getElapsedTime(TimeUnit.NANOSECONDS), "success");
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        PendingCommand pending = inFlight.remove(event.getRequestId());
+        if (pending != null) {
+            complete(pending, event.getElapsedTime(TimeUnit.NANOSECONDS), "error");
+        }
+    }
+
+    /**
+     * Последние медленные команды, новые первыми.
+     */
+    public List<SlowCommand> getSlowCommands() {
+        List<SlowCommand> result;
+        synchronized (slowCommands) {
+            result = new ArrayList<>(slowCommands);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    public void clearSlowCommands() {
+        synchronized (slowCommands) {
+            slowCommands.clear();
+        }
+    }
+
+    public long getSlowThresholdMs() {
+        return properties.getSlowCommandMs();
+    }
+
+    private void complete(PendingCommand pending, long elapsedNanos, String outcome) {
+        Timer.builder("threadly.mongo.commands")
+                .description("Mongo commands by calling method")
+                .tag("command", pending.command())
+                .tag("collection", pending.collection())
+                .tag("caller", pending.caller())
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (durationMs < properties.getSlowCommandMs()) {
+            return;
+        }
+        Counter.builder("threadly.mongo.slow")
+                .description("Mongo commands slower than app.mongo.slow-command-ms")
+                .tag("command", pending.command())
+                .tag("collection", pending.collection())
+                .tag("caller", pending.caller())
+                .register(registry)
+                .increment();
+
+        String shape = pending.query() != null ? redact(pending.command(), pending.query()).toJson() : "";
+        SlowCommand entry = new SlowCommand(Instant.now(), pending.command(), pending.collection(),
+                pending.caller(), durationMs, outcome, shape);
+        synchronized (slowCommands) {
+            while (slowCommands.size() >= Math.max(1, properties.getSlowBufferSize())) {
+                slowCommands.pollFirst();
+            }
+            slowCommands.addLast(entry);
+        }
+        log.warn("Slow Mongo {} on {} from {}: {} ms, shape {}",
+                entry.command(), entry.collection(), entry.caller(), durationMs, shape);
+    }
+
+    private static String collectionOf(String command, BsonDocument body) {
+        BsonValue value = "getMore".equals(command) ? body.get("collection") : body.get(command);
+        return value != null && value.isString() ? value.asString().getValue() : "none";
+    }
+
+    /**
+     * Копия команды для формы запроса: имя коллекции и поля, влияющие на план.
+     * Для update и delete берём первый оператор — остальные в пачке обычно той же формы.
+     */
+    private static BsonDocument queryPart(String command, BsonDocument body) {
+        BsonDocument query = new BsonDocument(command, body.get(command));
+        switch (command) {
+            case "find" -> copy(body, query, "filter", "sort", "projection", "hint", "skip", "limit");
+            case "count" -> copy(body, query, "query", "hint", "skip", "limit");
+            case "distinct" -> copy(body, query, "key", "query");
+            case "update" -> copyFirst(body, query, "updates");
+            case "delete" -> copyFirst(body, query, "deletes");
+            case "findAndModify" -> copy(body, query, "query", "sort", "fields", "update", "remove", "upsert", "new");
+            default -> {
+            }
+        }
+        return query;
+    }
+
+    private static void copy(BsonDocument from, BsonDocument to, String... keys) {
+        for (String key : keys) {
+            BsonValue value = from.get(key);
+            if (value != null) {
+                to.append(key, deepCopy(value));
+            }
+        }
+    }
+
+    private static void copyFirst(BsonDocument from, BsonDocument to, String key) {
+        BsonValue value = from.get(key);
+        if (value != null && value.isArray() && !value.asArray().isEmpty()) {
+            to.append(key, new BsonArray(List.of(deepCopy(value.asArray().get(0)))));
+        }
+    }
+
+    private static BsonValue deepCopy(BsonValue value) {
+        if (value.isDocument()) {
+            return value.asDocument().clone();
+        }
+        if (value.isArray()) {
+            return value.asArray().clone();
+        }
+        return value;
+    }
+
+    /**
+     * Форма команды без литералов: значения в фильтрах и обновлениях заменяются на "?", списки $in — на ["?"].
+     * Ссылки на поля ("$field"), sort, projection, limit и skip остаются как есть.
+     */
+    static BsonDocument redact(String command, BsonDocument query) {
+        BsonDocument shape = new BsonDocument(command, query.get(command));
+        for (Map.Entry<String, BsonValue> entry : query.entrySet()) {
+            String key = entry.getKey();
+            BsonValue value = entry.getValue();
+            if (key.equals(command)) {
+                continue;
+            }
+            switch (key) {
+                case "filter", "query", "update" -> shape.append(key, redactValue(value));
+                case "updates", "deletes" -> shape.append(key, redactStatements(value));
+                default -> shape.append(key, value);
+            }
+        }
+        return shape;
+    }
+
+    private static BsonValue redactStatements(BsonValue statements) {
+        if (!statements.isArray()) {
+            return REDACTED;
+        }
+        BsonArray result = new BsonArray();
+        for (BsonValue statement : statements.asArray()) {
+            if (!statement.isDocument()) {
+                continue;
+            }
+            BsonDocument redacted = new BsonDocument();
+            statement.asDocument().forEach((key, value) -> redacted.append(key,
+                    "q".equals(key) || "u".equals(key) ? redactValue(value) : value));
+            result.add(redacted);
+        }
+        return result;
+    }
+
+    /** Фильтр или обновление: любые скалярные значения скрываем, кроме флагов $exists и ссылок на поля. */
+    private static BsonValue redactValue(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument redacted = new BsonDocument();
+            value.asDocument().forEach((key, child) -> {
+                if ("$exists".equals(key)) {
+                    redacted.append(key, child);
+                } else if (child.isArray() && ("$in".equals(key) || "$nin".equals(key) || "$all".equals(key))) {
+                    redacted.append(key, new BsonArray(List.of(REDACTED)));
+                } else {
+                    redacted.append(key, redactValue(child));
+                }
+            });
+            return redacted;
+        }
+        if (value.isArray()) {
+            BsonArray redacted = new BsonArray();
+            value.asArray().forEach(child -> redacted.add(redactValue(child)));
+            return redacted;
+        }
+        if (value.isString() && value.asString().getValue().startsWith("$")) {
+            return value;
+        }
+        return REDACTED;
+    }
+
+    /**
+     * Первый кадр нашего кода выше драйвера и прокси Spring Data: {@code UserService.findByUsername}.
+     * Лямбды сворачиваем к объемлющему методу, чтобы тег не зависел от номера lambda$.
+     */
+    private String findCaller() {
+        Optional<StackWalker.StackFrame> frame = stackWalker.walk(frames -> frames
+                .filter(f -> f.getClassName().startsWith(APPLICATION_PACKAGE))
+                .filter(f -> !f.getClassName().contains("$$"))
+                .filter(f -> !f.getClassName().equals(MongoCommandMonitor.class.getName()))
+                .findFirst());
+        if (frame.isEmpty()) {
+            return "unknown";
+        }
+        String className = frame.get().getClassName();
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        int nested = simpleName.indexOf('$');
+        if (nested > 0) {
+            simpleName = simpleName.substring(0, nested);
+        }
+        String method = frame.get().getMethodName();
+        if (method.startsWith("lambda$")) {
+            int end = method.indexOf('$', "lambda$".length());
+            method = end > 0 ? method.substring("lambda$".length(), end) : method;
+        }
+        return simpleName + "." + method;
+    }
+
+    private record PendingCommand(String command, String collection, String caller, BsonDocument query) {
+    }
+
+    /**
+     * Медленная команда в буфере: форма запроса без литералов и откуда он пришёл.
+     */
+    public record SlowCommand(Instant time, String command, String collection, String caller, long durationMs,
+                              String outcome, String shape) {
+    }
+}
@@ -0,0 +1,23 @@
+package ru.vkabanov.threadlyauth.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Учёт команд Mongo ({@code app.mongo.*}): порог «медленной» команды и размер буфера последних медленных.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.mongo")
+public class MongoQueryProperties {
+
+    /** Команда дольше порога попадает в буфер медленных, мс. */
+    private long slowCommandMs = 100;
+
+    /** Сколько последних медленных команд держим в памяти. */
+    private int slowBufferSize = 200;
+
+    /** Искать в стеке метод сервиса или репозитория, из которого пришла команда (тег caller). */
+    private boolean captureCaller = true;
+}
@@ -0,0 +1,37 @@
+package ru.vkabanov.threadlyauth.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/slowqueries} на порту management: последние медленные команды Mongo, DELETE очищает буфер.
+ */
+@Component
+@Endpoint(id = "slowqueries")
+@RequiredArgsConstructor
+public class MongoSlowQueriesEndpoint {
+
+    private final MongoCommandMonitor monitor;
+
+    @ReadOperation
+    public Map<String, Object> slowQueries() {
+        List<MongoCommandMonitor.SlowCommand> commands = monitor.getSlowCommands();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("thresholdMs", monitor.getSlowThresholdMs());
+        result.put("count", commands.size());
+        result.put("commands", commands);
+        return result;
+    }
+
+    @DeleteOperation
+    public void clear() {
+        monitor.clearSlowCommands();
+    }
+}
@@ -0,0 +1,33 @@
+package ru.vkabanov.threadlyauth.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Настройки хеширования паролей.
+ * <p>
+ * BCrypt выполняется на отдельном ограниченном пуле, а не на потоках Tomcat: при всплеске логинов
+ * лишние запросы сразу получают 503, а не занимают все рабочие потоки.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.password-hashing")
+public class PasswordHashingProperties {
+
+    /** Стоимость BCrypt (log2 раундов). При повышении старые хеши пересчитываются при следующем входе. */
+    private int bcryptStrength = 10;
+
+    /** Потоков для BCrypt; 0 — по числу ядер. */
+    private int poolSize = 0;
+
+    /** Сколько проверок может ждать в очереди, сверх этого — отказ без ожидания. */
+    private int queueCapacity = 64;
+
+    /** Сколько секунд клиенту подождать перед повтором (заголовок Retry-After). */
+    private int retryAfterSeconds = 2;
+
+    public int resolvedPoolSize() {
+        return poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -2,6 +2,7 @@ package ru.vkabanov.threadlyauth.config;
 
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -19,6 +20,7 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
 import ru.vkabanov.threadlyauth.service.JwtTokenProvider;
+import ru.vkabanov.threadlyauth.service.UserDetailsCache;
 import ru.vkabanov.threadlyauth.service.UserService;
 
 import javax.servlet.http.HttpServletResponse;
@@ -33,6 +35,7 @@ public class SecurityCredentialsConfig extends WebSecurityConfigurerAdapter {
     private final JwtConfig jwtConfig;
     private final JwtTokenProvider tokenProvider;
     private final UserService userService;
+    private final UserDetailsCache userDetailsCache;
     private final PasswordEncoder passwordEncoder;
 
     @Override
@@ -44,8 +47,9 @@ public class SecurityCredentialsConfig extends WebSecurityConfigurerAdapter {
                 .and()
                 .exceptionHandling().authenticationEntryPoint((req, rsp, e) -> rsp.sendError(HttpServletResponse.SC_UNAUTHORIZED))
                 .and()
-                .addFilterBefore(new JwtTokenAuthenticationFilter(jwtConfig, tokenProvider, userService), UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(new JwtTokenAuthenticationFilter(jwtConfig, tokenProvider, userService, userDetailsCache), UsernamePasswordAuthenticationFilter.class)
                 .authorizeRequests()
+                .requestMatchers(EndpointRequest.to("health", "prometheus", "slowqueries")).permitAll()
                 .antMatchers(HttpMethod.POST, "/signin").permitAll()
                 .antMatchers(HttpMethod.POST, "/users").anonymous()
                 .antMatchers(HttpMethod.GET, "/verify-email").permitAll()
@@ -56,6 +60,7 @@ public class SecurityCredentialsConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/users/*/avatar").permitAll()
                 .antMatchers(HttpMethod.POST, "/forgot-password").permitAll()
                 .antMatchers(HttpMethod.POST, "/reset-password").permitAll()
+                .antMatchers(HttpMethod.POST, "/internal/contact-events").permitAll()
                 .anyRequest().authenticated();
     }
 
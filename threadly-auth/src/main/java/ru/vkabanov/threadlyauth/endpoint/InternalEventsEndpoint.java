@@ -0,0 +1,40 @@
+package ru.vkabanov.threadlyauth.endpoint;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.vkabanov.threadlyauth.config.InternalEventsToken;
+import ru.vkabanov.threadlyauth.payload.ContactEvent;
+import ru.vkabanov.threadlyauth.service.ContactEdgeService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/internal")
+@RequiredArgsConstructor
+@Slf4j
+public class InternalEventsEndpoint {
+
+    private final InternalEventsToken internalEventsToken;
+    private final ContactEdgeService contactEdgeService;
+
+    /**
+     * Внутреннее событие от chat-сервиса: переписка началась или удалена.
+     */
+    @PostMapping("/contact-events")
+    public ResponseEntity<Void> contactEvents(@RequestHeader(value = InternalEventsToken.HEADER, required = false) String token,
+                                              @RequestBody List<ContactEvent> events) {
+        if (!internalEventsToken.matches(token)) {
+            log.warn("Rejected contact events without a valid internal token");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        contactEdgeService.apply(events);
+        return ResponseEntity.accepted().build();
+    }
+}
@@ -2,30 +2,40 @@ package ru.vkabanov.threadlyauth.endpoint;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.vkabanov.threadlyauth.exception.BadRequestException;
 import ru.vkabanov.threadlyauth.exception.EmailAlreadyExistsException;
 import ru.vkabanov.threadlyauth.exception.ResourceNotFoundException;
 import ru.vkabanov.threadlyauth.exception.UsernameAlreadyExistsException;
 import ru.vkabanov.threadlyauth.model.ThreadlyUserDetails;
 import ru.vkabanov.threadlyauth.model.User;
+import ru.vkabanov.threadlyauth.model.Profile;
 import ru.vkabanov.threadlyauth.payload.ApiResponse;
 import ru.vkabanov.threadlyauth.payload.ChangePasswordRequest;
 import ru.vkabanov.threadlyauth.payload.UpdateProfileRequest;
+import ru.vkabanov.threadlyauth.payload.UserSummariesBatchRequest;
 import ru.vkabanov.threadlyauth.payload.UserSummary;
-import ru.vkabanov.threadlyauth.service.AvatarStorageService;
+import ru.vkabanov.threadlyauth.service.AvatarCache;
+import ru.vkabanov.threadlyauth.service.AvatarVariants;
+import ru.vkabanov.threadlyauth.service.UserDetailsCache;
 import ru.vkabanov.threadlyauth.service.UserService;
+import ru.vkabanov.threadlyauth.service.UserSummaryService;
 
 import javax.validation.Valid;
-import java.io.InputStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
@@ -37,7 +47,11 @@ public class UserEndpoint {
     @Autowired
     private UserService userService;
     @Autowired
-    private AvatarStorageService avatarStorageService;
+    private AvatarCache avatarCache;
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+    @Autowired
+    private UserSummaryService userSummaryService;
 
     @GetMapping(value = "/users/{username}", produces = APPLICATION_JSON_VALUE)
     public ResponseEntity<?> findUser(@PathVariable("username") String username) {
@@ -79,23 +93,7 @@ public class UserEndpoint {
     @PreAuthorize("hasRole('USER')")
     @ResponseStatus(HttpStatus.OK)
     public UserSummary getCurrentUser(@AuthenticationPrincipal ThreadlyUserDetails userDetails) {
-        String displayName = userDetails.getUserProfile() != null
-                ? userDetails.getUserProfile().getDisplayName()
-                : null;
-        String profilePictureKey = userDetails.getUserProfile() != null
-                ? userDetails.getUserProfile().getProfilePictureUrl()
-                : null;
-        String profilePicture = profilePictureKey != null && !profilePictureKey.isBlank()
-                ? buildAvatarUrl(userDetails.getId(), userDetails.getUpdatedAt())
-                : null;
-
-        return UserSummary.builder()
-                .id(userDetails.getId())
-                .username(userDetails.getUsername())
-                .name(displayName)
-                .email(userDetails.getEmail())
-                .profilePicture(profilePicture)
-                .build();
+        return convertTo(userDetails);
     }
 
     /**
@@ -111,30 +109,74 @@ public class UserEndpoint {
 
     /**
      * Прокси-эндпойнт для аватара пользователя (same-origin, обход ORB).
+     * size — нужный размер в px: отдаётся ближайший вариант не меньше (64/128/256);
+     * WebP — если клиент его принимает и вариант есть.
+     * <p>
+     * v — версия аватара (updatedAt в мс) из ссылки в профиле. ETag выводится из параметров запроса,
+     * поэтому повторный запрос версионированной ссылки получает 304 без обращения к Mongo и MinIO;
+     * пользователь берётся из {@link UserDetailsCache}, байты — из {@link AvatarCache}.
+     * Актуальная версия кэшируется браузером навсегда (immutable), прочие ответы — с ревалидацией.
      */
     @GetMapping(value = "/users/{userId}/avatar")
-    public ResponseEntity<StreamingResponseBody> getAvatar(@PathVariable String userId) {
-        return userService.findById(userId)
-                .flatMap(user -> {
-                    if (user.getUserProfile() == null || user.getUserProfile().getProfilePictureUrl() == null) {
-                        return java.util.Optional.<ResponseEntity<StreamingResponseBody>>empty();
-                    }
-                    String objectKey = user.getUserProfile().getProfilePictureUrl();
-                    return avatarStorageService.getObjectStream(objectKey)
-                            .map(result -> {
-                                MediaType mediaType = MediaType.parseMediaType(result.getContentType());
-                                StreamingResponseBody body = outputStream -> {
-                                    try (InputStream in = result.getStream()) {
-                                        in.transferTo(outputStream);
-                                    }
-                                };
-                                return ResponseEntity.ok()
-                                        .contentType(mediaType)
-                                        .header("Cache-Control", "private, max-age=3600")
-                                        .body(body);
-                            });
-                })
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<byte[]> getAvatar(@PathVariable String userId,
+                                            @RequestParam(value = "size", required = false) Integer size,
+                                            @RequestParam(value = "v", required = false) Long version,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                            WebRequest webRequest) {
+        int variantSize = AvatarVariants.pickSize(size);
+        boolean webp = accept != null && accept.contains(AvatarVariants.Format.WEBP.getContentType());
+        if (version != null && webRequest.checkNotModified(avatarETag(userId, version, variantSize, webp), version)) {
+            return null;
+        }
+
+        Optional<ThreadlyUserDetails> user = userDetailsCache.get(userId);
+        String objectKey = user.map(User::getUserProfile).map(Profile::getProfilePictureUrl).orElse(null);
+        if (objectKey == null || objectKey.isBlank()) {
+            return ResponseEntity.notFound().build();
+        }
+        long lastModified = user.map(User::getUpdatedAt).map(Instant::toEpochMilli).orElse(0L);
+        long effectiveVersion = version != null ? version : lastModified;
+        String eTag = avatarETag(userId, effectiveVersion, variantSize, webp);
+        if (version == null && webRequest.checkNotModified(eTag, lastModified)) {
+            return null;
+        }
+
+        Optional<AvatarCache.AvatarBytes> avatar = avatarCandidates(objectKey, variantSize, webp).stream()
+                .map(avatarCache::get)
+                .flatMap(Optional::stream)
+                .findFirst();
+        if (avatar.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String cacheControl = version != null && version == lastModified
+                ? "public, max-age=31536000, immutable"
+                : CacheControl.noCache().cachePrivate().getHeaderValue();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(avatar.get().contentType()))
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .body(avatar.get().bytes());
+    }
+
+    private static String avatarETag(String userId, long version, int size, boolean webp) {
+        return "W/\"" + userId + "-" + version + "-" + size + (webp ? "-webp" : "") + "\"";
+    }
+
+    /**
+     * Ключи в порядке предпочтения: WebP-вариант, JPEG-вариант, исходный ключ (старые аватары без вариантов).
+     */
+    private static List<String> avatarCandidates(String primaryKey, int size, boolean webp) {
+        List<String> keys = new ArrayList<>();
+        if (webp) {
+            AvatarVariants.variantKey(primaryKey, size, AvatarVariants.Format.WEBP).ifPresent(keys::add);
+        }
+        AvatarVariants.variantKey(primaryKey, size, AvatarVariants.Format.JPEG).ifPresent(keys::add);
+        if (!keys.contains(primaryKey)) {
+            keys.add(primaryKey);
+        }
+        return keys;
     }
 
     @PutMapping(value = "/users/me", produces = APPLICATION_JSON_VALUE)
@@ -159,38 +201,33 @@ public class UserEndpoint {
 
     @GetMapping(value = "/users/summary/{username}", produces = APPLICATION_JSON_VALUE)
     public ResponseEntity<?> getUserSummary(@PathVariable("username") String username) {
-        log.info("retrieving user {}", username);
+        log.debug("retrieving user {}", username);
         return userService.findByUsername(username)
                 .map(user -> ResponseEntity.ok(convertTo(user)))
                 .orElseThrow(() -> new ResourceNotFoundException(username));
     }
 
-    private UserSummary convertTo(User user) {
-        String displayName = user.getUserProfile() != null
-                ? user.getUserProfile().getDisplayName()
-                : null;
-        String profilePictureKey = user.getUserProfile() != null
-                ? user.getUserProfile().getProfilePictureUrl()
-                : null;
-        String profilePicture = profilePictureKey != null && !profilePictureKey.isBlank()
-                ? buildAvatarUrl(user.getId(), user.getUpdatedAt())
-                : null;
-
-        return UserSummary.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .name(displayName)
-                .email(user.getEmail())
-                .profilePicture(profilePicture)
-                .build();
+    /**
+     * Профили пачкой (до 500 id) из кэша; слабый ETag — неизменившийся набор возвращается как 304.
+     */
+    @PostMapping(value = "/users/summaries/batch", produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<UserSummary>> getUserSummariesBatch(
+            @Valid @RequestBody UserSummariesBatchRequest request,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        List<UserSummary> summaries = userSummaryService.getSummaries(request.getIds());
+        String eTag = UserSummaryService.weakETag(summaries);
+        if (ifNoneMatch != null && Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals(eTag) || tag.equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(summaries);
     }
 
-    private String buildAvatarUrl(String userId, Instant updatedAt) {
-        String basePath = "/api/auth/users/" + userId + "/avatar";
-        if (updatedAt == null) {
-            return basePath;
-        }
-        String separator = basePath.contains("?") ? "&" : "?";
-        return basePath + separator + "v=" + updatedAt.toEpochMilli();
+    private UserSummary convertTo(User user) {
+        return userSummaryService.toSummary(user);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package ru.vkabanov.threadlyauth.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Ребро «у userId есть переписка с contactId» — локальная копия, которую chat поддерживает событиями.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "contact_edges")
+public class ContactEdge {
+
+    /** userId + ":" + contactId — повторное событие не создаёт дубликат. */
+    @Id
+    private String id;
+
+    private String userId;
+
+    private String contactId;
+
+    private Instant updatedAt;
+
+    public static String idOf(String userId, String contactId) {
+        return userId + ":" + contactId;
+    }
+}
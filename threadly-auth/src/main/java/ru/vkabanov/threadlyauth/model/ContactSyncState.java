@@ -0,0 +1,25 @@
+package ru.vkabanov.threadlyauth.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Когда рёбра контактов пользователя последний раз сверялись с chat-сервисом.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "contact_sync_state")
+public class ContactSyncState {
+
+    /** userId */
+    @Id
+    private String id;
+
+    private Instant syncedAt;
+}
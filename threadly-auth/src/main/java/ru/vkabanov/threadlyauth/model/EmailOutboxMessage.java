@@ -0,0 +1,59 @@
+package ru.vkabanov.threadlyauth.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Письмо в исходящей очереди. Пишется в том же потоке, что и изменение, вызвавшее письмо,
+ * и переживает перезапуск; отправляет его {@link ru.vkabanov.threadlyauth.service.EmailOutboxWorker}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "email_outbox")
+public class EmailOutboxMessage {
+
+    public enum Status {
+        PENDING,
+        SENDING,
+        SENT,
+        /** Исчерпаны попытки или письмо невозможно собрать — остаётся для разбора. */
+        DEAD
+    }
+
+    @Id
+    private String id;
+
+    private String to;
+
+    private String subject;
+
+    private String html;
+
+    @Builder.Default
+    private Status status = Status.PENDING;
+
+    private int attempts;
+
+    @Builder.Default
+    private Instant createdAt = Instant.now();
+
+    /** Не раньше этого момента письмо можно (повторно) отправлять. */
+    private Instant nextAttemptAt;
+
+    /** Метка пачки, которую забрал обработчик, и срок, после которого пачку может забрать другой. */
+    private String claimToken;
+
+    private Instant lockedUntil;
+
+    private Instant sentAt;
+
+    private String lastError;
+}
@@ -16,6 +16,7 @@ import javax.validation.constraints.Size;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 
@@ -44,6 +45,7 @@ public class User {
         this.registrationStatus = user.registrationStatus;
         this.blocked = user.blocked;
         this.registrationDate = user.registrationDate;
+        this.searchTokens = user.searchTokens;
     }
 
     public User(String username, String password, String email) {
@@ -93,4 +95,8 @@ public class User {
     private RegistrationStatus registrationStatus;
     private boolean blocked;
     private LocalDateTime registrationDate;
+
+    /** Префиксы слов username и displayName для поиска (заполняет UserSearchIndex перед сохранением) */
+    @JsonIgnore
+    private List<String> searchTokens;
 }
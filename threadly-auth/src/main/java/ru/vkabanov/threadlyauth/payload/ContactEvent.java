@@ -0,0 +1,22 @@
+package ru.vkabanov.threadlyauth.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Событие chat-сервиса о появлении или удалении переписки у userId с contactId.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContactEvent {
+
+    public enum Type { STARTED, REMOVED }
+
+    private Type type;
+    private String userId;
+    private String contactId;
+    /** Время события в chat, epoch millis. */
+    private long occurredAt;
+}
@@ -0,0 +1,15 @@
+package ru.vkabanov.threadlyauth.payload;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+public class UserSummariesBatchRequest {
+
+    @NotNull
+    @Size(max = 500)
+    private List<String> ids;
+}
@@ -1,11 +1,11 @@
 package ru.vkabanov.threadlyauth.repository;
 
 
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import ru.vkabanov.threadlyauth.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,7 +19,8 @@ public interface UserRepository extends MongoRepository<User, String> {
     Boolean existsByUsernameIgnoreCase(String username);
     Boolean existsByEmail(String email);
 
-    /** Поиск по username или displayName (для начала чата), лимит через Pageable. */
-    @Query("{ $or: [ { 'username': { $regex: ?0, $options: 'i' } }, { 'userProfile.displayName': { $regex: ?0, $options: 'i' } } ] }")
-    List<User> searchByUsernameOrDisplayName(String query, Pageable pageable);
+    /** Только поля для UserSummary — без хеша пароля и служебных полей. */
+    @Query(value = "{ '_id': { $in: ?0 } }",
+            fields = "{ 'username': 1, 'email': 1, 'updatedAt': 1, 'userProfile.displayName': 1, 'userProfile.profilePictureUrl': 1 }")
+    List<User> findSummariesByIdIn(Collection<String> ids);
 }
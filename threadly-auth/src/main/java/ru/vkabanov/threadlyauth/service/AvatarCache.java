@@ -0,0 +1,57 @@
+package ru.vkabanov.threadlyauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * LRU байтов аватаров в памяти, ограниченный суммарным размером.
+ * <p>
+ * Ключи в хранилище неизменяемые (новая версия — новый ключ), поэтому записи не инвалидируются,
+ * а только вытесняются. Отсутствующие объекты не кэшируются.
+ */
+@Slf4j
+@Service
+public class AvatarCache {
+
+    private final AvatarStorageService avatarStorageService;
+
+    private final Cache<String, AvatarBytes> cache;
+
+    public AvatarCache(AvatarStorageService avatarStorageService,
+                       @Value("${app.avatar.cache-max-bytes:67108864}") long maxBytes) {
+        this.avatarStorageService = avatarStorageService;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, AvatarBytes value) -> value.bytes().length + key.length())
+                .build();
+    }
+
+    public Optional<AvatarBytes> get(String objectKey) {
+        if (objectKey == null || objectKey.isBlank()) {
+            return Optional.empty();
+        }
+        AvatarBytes cached = cache.getIfPresent(objectKey);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<AvatarBytes> loaded = avatarStorageService.getObjectStream(objectKey).flatMap(result -> {
+            try (InputStream in = result.getStream()) {
+                return Optional.of(new AvatarBytes(in.readAllBytes(), result.getContentType()));
+            } catch (Exception e) {
+                log.warn("Failed to read avatar {}: {}", objectKey, e.getMessage());
+                return Optional.empty();
+            }
+        });
+        loaded.ifPresent(avatar -> cache.put(objectKey, avatar));
+        return loaded;
+    }
+
+    public record AvatarBytes(byte[] bytes, String contentType) {
+    }
+}
@@ -0,0 +1,155 @@
+package ru.vkabanov.threadlyauth.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.coobird.thumbnailator.Thumbnails;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlyauth.exception.BadRequestException;
+import ru.vkabanov.threadlyauth.exception.ServiceBusyException;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Подготовка вариантов аватара на отдельном ограниченном пуле.
+ * <p>
+ * Изображение декодируется с прореживанием ({@link ImageReadParam#setSourceSubsampling}) сразу в квадрат
+ * по центру, так что в памяти не бывает растра больше ~2× крупнейшего варианта, каким бы ни был исходник.
+ * Из него делаются {@link AvatarVariants#SIZES} в JPEG и, если в ImageIO есть WebP-writer, в WebP.
+ */
+@Slf4j
+@Service
+public class AvatarImageProcessor {
+
+    /** Декодируем не мельче 2× крупнейшего варианта — запас для качественного уменьшения. */
+    private static final int DECODE_TARGET = AvatarVariants.MAX_SIZE * 2;
+
+    private final ThreadPoolTaskExecutor executor;
+    private final boolean webpSupported;
+
+    public AvatarImageProcessor(@Value("${app.avatar.pool-size:2}") int poolSize,
+                                @Value("${app.avatar.queue-capacity:16}") int queueCapacity) {
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(poolSize);
+        this.executor.setMaxPoolSize(poolSize);
+        this.executor.setQueueCapacity(queueCapacity);
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor.setThreadNamePrefix("avatar-");
+        this.executor.initialize();
+        this.webpSupported = ImageIO.getImageWritersByFormatName(AvatarVariants.Format.WEBP.getExtension()).hasNext();
+        if (!webpSupported) {
+            log.info("No WebP ImageIO writer available, avatar variants will be JPEG only");
+        }
+    }
+
+    public boolean isWebpSupported() {
+        return webpSupported;
+    }
+
+    /**
+     * Декодировать и подготовить все варианты. Выполняется на пуле аватаров; при заполненной очереди —
+     * {@link ServiceBusyException}.
+     */
+    public List<AvatarVariants.Variant> process(byte[] source) {
+        CompletableFuture<List<AvatarVariants.Variant>> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> render(decodeSquare(source)), executor);
+        } catch (TaskRejectedException e) {
+            log.warn("Avatar processing pool is saturated, rejecting upload");
+            throw new ServiceBusyException("Сервис перегружен, повторите попытку позже", 5);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private BufferedImage decodeSquare(byte[] source) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(source))) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new BadRequestException("Файл не является изображением");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int side = Math.min(width, height);
+                if (side <= 0) {
+                    throw new BadRequestException("Файл не является изображением");
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle((width - side) / 2, (height - side) / 2, side, side));
+                int subsampling = Math.max(1, side / DECODE_TARGET);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                if (image == null) {
+                    throw new BadRequestException("Файл не является изображением");
+                }
+                if (image.getWidth() != image.getHeight()) {
+                    // Не все readers (например, WebP) поддерживают sourceRegion — докадрируем сами
+                    int cropped = Math.min(image.getWidth(), image.getHeight());
+                    image = image.getSubimage((image.getWidth() - cropped) / 2, (image.getHeight() - cropped) / 2,
+                            cropped, cropped);
+                }
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new BadRequestException("Не удалось обработать изображение");
+        }
+    }
+
+    private List<AvatarVariants.Variant> render(BufferedImage square) {
+        List<AvatarVariants.Variant> variants = new ArrayList<>();
+        try {
+            for (int size : AvatarVariants.SIZES) {
+                variants.add(encode(square, size, AvatarVariants.Format.JPEG));
+                if (webpSupported) {
+                    variants.add(encode(square, size, AvatarVariants.Format.WEBP));
+                }
+            }
+        } catch (IOException e) {
+            throw new BadRequestException("Не удалось обработать изображение");
+        }
+        return variants;
+    }
+
+    private static AvatarVariants.Variant encode(BufferedImage square, int size, AvatarVariants.Format format)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thumbnails.of(square)
+                .size(size, size)
+                .outputFormat(format.getExtension())
+                .outputQuality(0.8f)
+                .toOutputStream(out);
+        return new AvatarVariants.Variant(size, format, out.toByteArray());
+    }
+}
@@ -0,0 +1,92 @@
+package ru.vkabanov.threadlyauth.service;
+
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Ключи вариантов аватара в хранилище.
+ * <p>
+ * Ключи неизменяемые и версионированные: {@code avatars/{userId}/{version}/{size}.{ext}}. В профиле хранится
+ * ключ основного варианта ({@link #MAX_SIZE} JPEG), остальные выводятся из него. Старые ключи вида
+ * {@code avatars/{userId}/{uuid}.jpg} вариантов не имеют — для них отдаётся исходный файл.
+ */
+public final class AvatarVariants {
+
+    public static final List<Integer> SIZES = List.of(64, 128, 256);
+    public static final int MAX_SIZE = 256;
+
+    private static final String PRIMARY_SUFFIX = "/" + MAX_SIZE + "." + Format.JPEG.getExtension();
+
+    private AvatarVariants() {
+    }
+
+    public enum Format {
+        JPEG("jpg", MediaType.IMAGE_JPEG_VALUE),
+        WEBP("webp", "image/webp");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    public record Variant(int size, Format format, byte[] bytes) {
+    }
+
+    public static String keyOf(String userId, String version, int size, Format format) {
+        return "avatars/" + userId + "/" + version + "/" + size + "." + format.getExtension();
+    }
+
+    /**
+     * Ключ варианта по ключу основного; пусто для старых ключей без вариантов.
+     */
+    public static Optional<String> variantKey(String primaryKey, int size, Format format) {
+        if (primaryKey == null || !primaryKey.endsWith(PRIMARY_SUFFIX)) {
+            return Optional.empty();
+        }
+        String prefix = primaryKey.substring(0, primaryKey.length() - PRIMARY_SUFFIX.length());
+        return Optional.of(prefix + "/" + size + "." + format.getExtension());
+    }
+
+    /**
+     * Наименьший вариант, не меньше запрошенного размера (для retina клиент сам просит 2×).
+     */
+    public static int pickSize(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return MAX_SIZE;
+        }
+        for (int size : SIZES) {
+            if (size >= requested) {
+                return size;
+            }
+        }
+        return MAX_SIZE;
+    }
+
+    /**
+     * Все ключи версии аватара — для удаления при замене.
+     */
+    public static List<String> allKeys(String primaryKey) {
+        if (variantKey(primaryKey, MAX_SIZE, Format.JPEG).isEmpty()) {
+            return List.of(primaryKey);
+        }
+        return SIZES.stream()
+                .flatMap(size -> Stream.of(Format.values())
+                        .map(format -> variantKey(primaryKey, size, format).orElseThrow()))
+                .toList();
+    }
+}
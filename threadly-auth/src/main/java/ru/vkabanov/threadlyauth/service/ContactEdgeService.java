@@ -0,0 +1,120 @@
+package ru.vkabanov.threadlyauth.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlyauth.client.ChatContactsClient;
+import ru.vkabanov.threadlyauth.config.ContactsProperties;
+import ru.vkabanov.threadlyauth.model.ContactEdge;
+import ru.vkabanov.threadlyauth.model.ContactSyncState;
+import ru.vkabanov.threadlyauth.payload.ContactEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Контакты пользователя (с кем есть переписка) из локальной коллекции contact_edges.
+ * <p>
+ * Рёбра поддерживает chat событиями {@link ContactEvent}. Синхронный вызов chat
+ * ({@link ChatContactsClient#getContactIds}) остаётся только для сверки: при первом запросе
+ * пользователя и после app.contacts.reconcile-after-hours.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContactEdgeService {
+
+    private final MongoOperations mongoOperations;
+    private final ChatContactsClient chatContactsClient;
+    private final ContactsProperties properties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoOperations.indexOps(ContactEdge.class)
+                .ensureIndex(new Index().on("userId", Sort.Direction.ASC).on("contactId", Sort.Direction.ASC)
+                        .named("contact_edges_user_contact"));
+    }
+
+    /**
+     * Применить пачку событий от chat. Повторы безопасны: ребро адресуется id userId:contactId.
+     */
+    public void apply(List<ContactEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.ORDERED, ContactEdge.class);
+        int operations = 0;
+        for (ContactEvent event : events) {
+            if (event.getType() == null || event.getUserId() == null || event.getContactId() == null
+                    || event.getUserId().equals(event.getContactId())) {
+                continue;
+            }
+            Query edge = new Query(Criteria.where("id").is(ContactEdge.idOf(event.getUserId(), event.getContactId())));
+            if (event.getType() == ContactEvent.Type.STARTED) {
+                bulk.upsert(edge, new Update()
+                        .set("userId", event.getUserId())
+                        .set("contactId", event.getContactId())
+                        .set("updatedAt", Instant.ofEpochMilli(event.getOccurredAt())));
+            } else {
+                bulk.remove(edge);
+            }
+            operations++;
+        }
+        if (operations > 0) {
+            bulk.execute();
+        }
+    }
+
+    /**
+     * id контактов пользователя: одна выборка по индексу userId с проекцией contactId.
+     * authorization нужен только для сверки с chat.
+     */
+    public List<String> findContactIds(String userId, String authorization) {
+        ContactSyncState state = mongoOperations.findById(userId, ContactSyncState.class);
+        Duration reconcileAfter = Duration.ofHours(properties.getReconcileAfterHours());
+        if (state == null || state.getSyncedAt() == null
+                || state.getSyncedAt().plus(reconcileAfter).isBefore(Instant.now())) {
+            reconcile(userId, authorization);
+        }
+
+        Query query = new Query(Criteria.where("userId").is(userId));
+        query.fields().include("contactId");
+        return mongoOperations.find(query, ContactEdge.class).stream()
+                .map(ContactEdge::getContactId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Сверка с chat: недостающие рёбра добавляются, лишние удаляются. Рёбра, пришедшие событиями
+     * во время сверки (updatedAt позже её начала), не трогаются.
+     */
+    private void reconcile(String userId, String authorization) {
+        Instant startedAt = Instant.now();
+        Optional<List<String>> contactIds = chatContactsClient.getContactIds(userId, authorization);
+        if (contactIds.isEmpty()) {
+            // chat недоступен — отдаём то, что есть локально, сверим в следующий раз
+            return;
+        }
+        List<String> ids = contactIds.get();
+        apply(ids.stream()
+                .map(contactId -> new ContactEvent(ContactEvent.Type.STARTED, userId, contactId, startedAt.toEpochMilli()))
+                .collect(Collectors.toList()));
+        mongoOperations.remove(new Query(Criteria.where("userId").is(userId)
+                .and("contactId").nin(ids)
+                .and("updatedAt").lt(startedAt)), ContactEdge.class);
+        mongoOperations.save(new ContactSyncState(userId, startedAt));
+        log.info("Reconciled {} contact(s) for user {} with chat service", ids.size(), userId);
+    }
+}
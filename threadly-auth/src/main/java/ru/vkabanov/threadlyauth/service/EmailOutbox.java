@@ -0,0 +1,138 @@
+package ru.vkabanov.threadlyauth.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlyauth.config.EmailOutboxProperties;
+import ru.vkabanov.threadlyauth.model.EmailOutboxMessage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Хранение исходящей очереди писем: постановка, захват пачки обработчиком и фиксация результата.
+ * <p>
+ * Захват пачки — выбор id готовых писем, затем одно updateMulti с меткой пачки при тех же условиях,
+ * поэтому одно письмо не попадёт в две пачки. Пачка, не завершённая за leaseSeconds (процесс упал),
+ * снова становится доступной.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmailOutbox {
+
+    private final MongoOperations mongoOperations;
+    private final EmailOutboxProperties properties;
+
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoOperations.indexOps(EmailOutboxMessage.class).ensureIndex(new Index()
+                .on("status", Sort.Direction.ASC)
+                .on("nextAttemptAt", Sort.Direction.ASC)
+                .named("email_outbox_due"));
+        mongoOperations.indexOps(EmailOutboxMessage.class).ensureIndex(new Index()
+                .on("claimToken", Sort.Direction.ASC)
+                .sparse()
+                .named("email_outbox_claim"));
+        mongoOperations.indexOps(EmailOutboxMessage.class).ensureIndex(new Index()
+                .on("sentAt", Sort.Direction.ASC)
+                .expire(Duration.ofDays(properties.getSentRetentionDays()))
+                .named("email_outbox_sent_ttl"));
+    }
+
+    public void enqueue(String to, String subject, String html) {
+        EmailOutboxMessage message = EmailOutboxMessage.builder()
+                .to(to)
+                .subject(subject)
+                .html(html)
+                .nextAttemptAt(Instant.now())
+                .build();
+        mongoOperations.insert(message);
+        log.debug("Email to {} queued as {}", to, message.getId());
+    }
+
+    /**
+     * Забрать до limit писем, готовых к отправке.
+     */
+    public List<EmailOutboxMessage> claimBatch(int limit) {
+        Instant now = Instant.now();
+        Query due = new Query(dueCriteria(now)).with(Sort.by("nextAttemptAt")).limit(limit);
+        due.fields().include("id");
+        List<String> ids = mongoOperations.find(due, EmailOutboxMessage.class).stream()
+                .map(EmailOutboxMessage::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String claimToken = UUID.randomUUID().toString();
+        mongoOperations.updateMulti(
+                new Query(new Criteria().andOperator(Criteria.where("id").in(ids), dueCriteria(now))),
+                new Update()
+                        .set("status", EmailOutboxMessage.Status.SENDING)
+                        .set("claimToken", claimToken)
+                        .set("lockedUntil", now.plusSeconds(properties.getLeaseSeconds())),
+                EmailOutboxMessage.class);
+        return mongoOperations.find(new Query(Criteria.where("claimToken").is(claimToken)), EmailOutboxMessage.class);
+    }
+
+    public void markSent(Collection<EmailOutboxMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        mongoOperations.updateMulti(
+                new Query(Criteria.where("id").in(messages.stream().map(EmailOutboxMessage::getId).toList())),
+                new Update()
+                        .set("status", EmailOutboxMessage.Status.SENT)
+                        .set("sentAt", Instant.now())
+                        .unset("claimToken")
+                        .unset("lockedUntil")
+                        .unset("lastError"),
+                EmailOutboxMessage.class);
+    }
+
+    /**
+     * Неудачная попытка: повтор с удвоенной паузой или DEAD, если попытки исчерпаны или повтор бессмыслен.
+     */
+    public void markFailed(EmailOutboxMessage message, String error, boolean retryable) {
+        int attempts = message.getAttempts() + 1;
+        Update update = new Update()
+                .set("attempts", attempts)
+                .set("lastError", error)
+                .unset("claimToken")
+                .unset("lockedUntil");
+        if (!retryable || attempts >= properties.getMaxAttempts()) {
+            update.set("status", EmailOutboxMessage.Status.DEAD);
+            log.error("Email {} to {} moved to dead letters after {} attempt(s): {}",
+                    message.getId(), message.getTo(), attempts, error);
+        } else {
+            long delay = Math.min((long) properties.getRetryInitialSeconds() << Math.min(attempts - 1, 20),
+                    properties.getRetryMaxSeconds());
+            update.set("status", EmailOutboxMessage.Status.PENDING)
+                    .set("nextAttemptAt", Instant.now().plusSeconds(delay));
+            log.warn("Email {} to {} failed (attempt {}), retrying in {} s: {}",
+                    message.getId(), message.getTo(), attempts, delay, error);
+        }
+        mongoOperations.updateFirst(
+                new Query(Criteria.where("id").is(message.getId()).and("claimToken").is(message.getClaimToken())),
+                update, EmailOutboxMessage.class);
+    }
+
+    private static Criteria dueCriteria(Instant now) {
+        return new Criteria().orOperator(
+                Criteria.where("status").is(EmailOutboxMessage.Status.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(EmailOutboxMessage.Status.SENDING).and("lockedUntil").lt(now));
+    }
+}
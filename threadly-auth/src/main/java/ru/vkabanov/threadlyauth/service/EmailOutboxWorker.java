@@ -0,0 +1,154 @@
+package ru.vkabanov.threadlyauth.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlyauth.config.EmailOutboxProperties;
+import ru.vkabanov.threadlyauth.model.EmailOutboxMessage;
+
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отправка писем из {@link EmailOutbox} на собственном пуле из {@code workers} потоков.
+ * <p>
+ * Каждый поток забирает пачку и отправляет её одним вызовом {@link JavaMailSender#send(MimeMessage...)} —
+ * одно SMTP-соединение на пачку вместо соединения на письмо. Пул не зарегистрирован бином,
+ * чтобы не подменить исполнитель {@code @Async}.
+ */
+@Slf4j
+@Service
+public class EmailOutboxWorker {
+
+    private final EmailOutbox emailOutbox;
+    private final JavaMailSender mailSender;
+    private final EmailOutboxProperties properties;
+    private final String fromEmail;
+    private final String fromName;
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    public EmailOutboxWorker(EmailOutbox emailOutbox, JavaMailSender mailSender, EmailOutboxProperties properties,
+                             @Value("${app.mail.from}") String fromEmail,
+                             @Value("${app.mail.from-name}") String fromName) {
+        this.emailOutbox = emailOutbox;
+        this.mailSender = mailSender;
+        this.properties = properties;
+        this.fromEmail = fromEmail;
+        this.fromName = fromName;
+    }
+
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler = new ScheduledThreadPoolExecutor(properties.getWorkers(), new CustomizableThreadFactory("mail-"));
+        for (int i = 0; i < properties.getWorkers(); i++) {
+            scheduler.scheduleWithFixedDelay(this::drain, 0, properties.getPollIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Email outbox started with {} worker(s)", properties.getWorkers());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Отправлять пачки, пока очередь не опустеет. Исключения не выпускаем — иначе периодическая задача остановится.
+     */
+    private void drain() {
+        try {
+            List<EmailOutboxMessage> batch;
+            while (!scheduler.isShutdown() && !(batch = emailOutbox.claimBatch(properties.getBatchSize())).isEmpty()) {
+                process(batch);
+            }
+        } catch (Exception e) {
+            log.error("Email outbox worker failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void process(List<EmailOutboxMessage> batch) {
+        Map<EmailOutboxMessage, SendFailure> failures = sendBatch(batch);
+        List<EmailOutboxMessage> sent = new ArrayList<>();
+        for (EmailOutboxMessage message : batch) {
+            SendFailure failure = failures.get(message);
+            if (failure == null) {
+                sent.add(message);
+            } else {
+                emailOutbox.markFailed(message, failure.error(), failure.retryable());
+            }
+        }
+        emailOutbox.markSent(sent);
+        if (!sent.isEmpty()) {
+            log.info("Sent {} email(s) from outbox", sent.size());
+        }
+    }
+
+    /**
+     * Отправить пачку через одно SMTP-соединение.
+     *
+     * @return неотправленные письма с причиной; письма, которые не удалось собрать (неверный адрес), не повторяются
+     */
+    Map<EmailOutboxMessage, SendFailure> sendBatch(List<EmailOutboxMessage> batch) {
+        Map<EmailOutboxMessage, SendFailure> failures = new LinkedHashMap<>();
+        Map<MimeMessage, EmailOutboxMessage> mimeMessages = new IdentityHashMap<>();
+        for (EmailOutboxMessage message : batch) {
+            try {
+                mimeMessages.put(toMimeMessage(message), message);
+            } catch (MessagingException | UnsupportedEncodingException e) {
+                failures.put(message, new SendFailure(e.getMessage(), false));
+            }
+        }
+        if (mimeMessages.isEmpty()) {
+            return failures;
+        }
+        try {
+            mailSender.send(mimeMessages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            e.getFailedMessages().forEach((mimeMessage, cause) -> {
+                EmailOutboxMessage message = mimeMessages.get(mimeMessage);
+                if (message != null) {
+                    failures.put(message, new SendFailure(cause.getMessage(), true));
+                }
+            });
+            if (e.getFailedMessages().isEmpty()) {
+                mimeMessages.values().forEach(message -> failures.put(message, new SendFailure(e.getMessage(), true)));
+            }
+        } catch (MailException e) {
+            mimeMessages.values().forEach(message -> failures.put(message, new SendFailure(e.getMessage(), true)));
+        }
+        return failures;
+    }
+
+    private MimeMessage toMimeMessage(EmailOutboxMessage message) throws MessagingException, UnsupportedEncodingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
+        helper.setFrom(fromEmail, fromName);
+        helper.setTo(message.getTo());
+        helper.setSubject(message.getSubject());
+        helper.setText(message.getHtml(), true);
+        return mimeMessage;
+    }
+
+    record SendFailure(String error, boolean retryable) {
+    }
+}
@@ -3,36 +3,28 @@ package ru.vkabanov.threadlyauth.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import ru.vkabanov.threadlyauth.config.RegistrationProperties;
 import ru.vkabanov.threadlyauth.model.User;
 
-import javax.mail.MessagingException;
-import javax.mail.internet.MimeMessage;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 
+/**
+ * Письма пользователям и администраторам. Не отправляет сам, а пишет в исходящую очередь
+ * (коллекция email_outbox) — письмо не теряется при перезапуске и не занимает поток запроса.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class EmailService {
 
-    private final JavaMailSender mailSender;
+    private final EmailOutbox emailOutbox;
     private final RegistrationProperties registrationProperties;
 
-    @Value("${app.mail.from}")
-    private String fromEmail;
-
-    @Value("${app.mail.from-name}")
-    private String fromName;
-
     @Value("${app.frontend-url}")
     private String frontendUrl;
 
-    @Async
     public void sendVerificationEmail(User user) {
         String verificationLink = frontendUrl + "/verify-email?token=" + user.getEmailVerificationToken();
         
@@ -42,7 +34,6 @@ public class EmailService {
         sendHtmlEmail(user.getEmail(), subject, htmlContent);
     }
 
-    @Async
     public void sendAdminRegistrationApprovalEmail(User user, String approvalToken) {
         List<String> admins = registrationProperties.getAdmins();
 
@@ -58,21 +49,18 @@ public class EmailService {
         admins.forEach(adminEmail -> sendHtmlEmail(adminEmail, subject, htmlContent));
     }
 
-    @Async
     public void sendUserRegistrationApprovedEmail(User user) {
         String subject = "Регистрация в Threadly подтверждена";
         String htmlContent = buildUserRegistrationApprovedEmailHtml(user.getUsername());
         sendHtmlEmail(user.getEmail(), subject, htmlContent);
     }
 
-    @Async
     public void sendUserRegistrationRejectedEmail(User user) {
         String subject = "Регистрация в Threadly отклонена";
         String htmlContent = buildUserRegistrationRejectedEmailHtml(user.getUsername());
         sendHtmlEmail(user.getEmail(), subject, htmlContent);
     }
 
-    @Async
     public void sendPasswordResetEmail(User user, String resetToken) {
         String resetLink = frontendUrl + "/reset-password?token=" + resetToken;
         
@@ -82,21 +70,11 @@ public class EmailService {
         sendHtmlEmail(user.getEmail(), subject, htmlContent);
     }
 
+    /**
+     * Письмо ставится в {@link EmailOutbox} в потоке вызывающего — отправит {@link EmailOutboxWorker}.
+     */
     private void sendHtmlEmail(String to, String subject, String htmlContent) {
-        try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setFrom(fromEmail, fromName);
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true);
-
-            mailSender.send(message);
-            log.info("Email sent successfully to {}", to);
-        } catch (MessagingException | java.io.UnsupportedEncodingException e) {
-            log.error("Failed to send email to {}: {}", to, e.getMessage());
-        }
+        emailOutbox.enqueue(to, subject, htmlContent);
     }
 
     private String buildVerificationEmailHtml(String username, String verificationLink) {
@@ -9,6 +9,7 @@ import ru.vkabanov.threadlyauth.config.JwtConfig;
 import ru.vkabanov.threadlyauth.model.ThreadlyUserDetails;
 
 import java.util.Date;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 
@@ -47,11 +48,15 @@ public class JwtTokenProvider {
     }
 
     public boolean validateToken(String authToken) {
+        return parseValidClaims(authToken).isPresent();
+    }
+
+    /**
+     * Проверить подпись и срок действия токена и вернуть claims — за один разбор.
+     */
+    public Optional<Claims> parseValidClaims(String authToken) {
         try {
-            Jwts.parser()
-                    .setSigningKey(jwtConfig.getSecret().getBytes())
-                    .parseClaimsJws(authToken);
-            return true;
+            return Optional.of(getClaimsFromJWT(authToken));
         } catch (SignatureException ex) {
             log.error("Invalid JWT signature");
         } catch (MalformedJwtException ex) {
@@ -63,6 +68,6 @@ public class JwtTokenProvider {
         } catch (IllegalArgumentException ex) {
             log.error("JWT claims string is empty.");
         }
-        return false;
+        return Optional.empty();
     }
 }
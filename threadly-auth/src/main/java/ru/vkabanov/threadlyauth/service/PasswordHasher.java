@@ -0,0 +1,148 @@
+package ru.vkabanov.threadlyauth.service;
+
+import com.mongodb.client.result.UpdateResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlyauth.config.PasswordHashingProperties;
+import ru.vkabanov.threadlyauth.exception.ServiceBusyException;
+import ru.vkabanov.threadlyauth.model.User;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Проверка и хеширование паролей на отдельном ограниченном пуле.
+ * <p>
+ * Пул не зарегистрирован бином, чтобы не подменить исполнитель {@code @Async}.
+ * Если очередь заполнена, задача не ждёт, а сразу завершается {@link ServiceBusyException} (503).
+ * После успешной проверки хеш с устаревшей стоимостью BCrypt пересчитывается и сохраняется
+ * условным обновлением одного поля password — остальные поля пользователя не перезаписываются.
+ */
+@Slf4j
+@Service
+public class PasswordHasher {
+
+    private final PasswordEncoder passwordEncoder;
+    private final MongoOperations mongoOperations;
+    private final UserDetailsCache userDetailsCache;
+    private final ThreadPoolTaskExecutor executor;
+    private final int retryAfterSeconds;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong rehashed = new AtomicLong();
+
+    public PasswordHasher(PasswordEncoder passwordEncoder, MongoOperations mongoOperations,
+                          UserDetailsCache userDetailsCache, PasswordHashingProperties properties) {
+        this.passwordEncoder = passwordEncoder;
+        this.mongoOperations = mongoOperations;
+        this.userDetailsCache = userDetailsCache;
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(properties.resolvedPoolSize());
+        this.executor.setMaxPoolSize(properties.resolvedPoolSize());
+        this.executor.setQueueCapacity(properties.getQueueCapacity());
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor.setThreadNamePrefix("bcrypt-");
+        this.executor.initialize();
+        this.retryAfterSeconds = properties.getRetryAfterSeconds();
+    }
+
+    /**
+     * Проверить пароль пользователя, не занимая поток запроса. При совпадении и устаревшей стоимости хеша
+     * пароль перехешируется в том же потоке пула.
+     */
+    public CompletableFuture<Boolean> verifyAsync(User user, String rawPassword) {
+        return submit(() -> {
+            if (rawPassword == null || user.getPassword() == null
+                    || !passwordEncoder.matches(rawPassword, user.getPassword())) {
+                return false;
+            }
+            if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+                rehash(user, rawPassword);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Блокирующая проверка для редких операций (смена пароля, email) — через тот же ограниченный пул.
+     */
+    public boolean verify(User user, String rawPassword) {
+        return await(verifyAsync(user, rawPassword));
+    }
+
+    public String encode(String rawPassword) {
+        return await(submit(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getRehashedCount() {
+        return rehashed.get();
+    }
+
+    public int getQueueSize() {
+        return executor.getThreadPoolExecutor().getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (TaskRejectedException e) {
+            rejected.incrementAndGet();
+            log.warn("Password hashing pool is saturated, rejecting request");
+            return CompletableFuture.failedFuture(new ServiceBusyException(
+                    "Сервис перегружен, повторите попытку позже", retryAfterSeconds));
+        }
+    }
+
+    private void rehash(User user, String rawPassword) {
+        try {
+            String oldHash = user.getPassword();
+            String newHash = passwordEncoder.encode(rawPassword);
+            // Только если пароль не сменили параллельно: save(user) затёр бы и другие поля (blocked и т.п.)
+            UpdateResult result = mongoOperations.updateFirst(
+                    new Query(Criteria.where("id").is(user.getId()).and("password").is(oldHash)),
+                    new Update().set("password", newHash), User.class);
+            if (result.getModifiedCount() == 0) {
+                log.debug("Password of user {} changed concurrently, skipping hash upgrade", user.getUsername());
+                return;
+            }
+            user.setPassword(newHash);
+            userDetailsCache.invalidate(user.getId());
+            rehashed.incrementAndGet();
+            log.info("Password hash upgraded for user {}", user.getUsername());
+        } catch (Exception e) {
+            // Вход не должен падать из-за неудачного перехеширования — попробуем в следующий раз
+            log.warn("Failed to upgrade password hash for user {}: {}", user.getUsername(), e.getMessage());
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -23,6 +23,7 @@ public class RegistrationApprovalService {
     private final RegistrationApprovalTokenRepository tokenRepository;
     private final UserRepository userRepository;
     private final EmailService emailService;
+    private final UserDetailsCache userDetailsCache;
 
     public void createApprovalRequest(User user) {
         RegistrationApprovalToken token = RegistrationApprovalToken.builder()
@@ -49,6 +50,7 @@ public class RegistrationApprovalService {
         user.setActive(true);
         token.setUsed(true);
         userRepository.save(user);
+        userDetailsCache.invalidate(user.getId());
         tokenRepository.save(token);
         emailService.sendUserRegistrationApprovedEmail(user);
         log.info("Registration approved for user {} via token {}", user.getUsername(), tokenValue);
@@ -67,6 +69,7 @@ public class RegistrationApprovalService {
         user.setActive(false);
         token.setUsed(true);
         userRepository.save(user);
+        userDetailsCache.invalidate(user.getId());
         tokenRepository.save(token);
         emailService.sendUserRegistrationRejectedEmail(user);
         log.info("Registration rejected for user {} via token {}", user.getUsername(), tokenValue);
@@ -0,0 +1,59 @@
+package ru.vkabanov.threadlyauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlyauth.model.ThreadlyUserDetails;
+import ru.vkabanov.threadlyauth.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Короткоживущий кэш пользователей для JWT-фильтра: userId → {@link ThreadlyUserDetails}.
+ * Записи сбрасываются явно при изменении пользователя (профиль, пароль, аватар, одобрение/блокировка),
+ * TTL ограничивает устаревание при изменениях в обход сервиса.
+ */
+@Slf4j
+@Component
+public class UserDetailsCache {
+
+    private final UserRepository userRepository;
+
+    private final Cache<String, ThreadlyUserDetails> cache;
+
+    public UserDetailsCache(UserRepository userRepository,
+                            @Value("${app.user-cache.ttl-seconds:60}") long ttlSeconds,
+                            @Value("${app.user-cache.max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Пользователь по id из токена; при промахе — одна выборка по _id.
+     */
+    public Optional<ThreadlyUserDetails> get(String userId) {
+        if (userId == null || userId.isBlank()) {
+            return Optional.empty();
+        }
+        ThreadlyUserDetails cached = cache.getIfPresent(userId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<ThreadlyUserDetails> loaded = userRepository.findById(userId).map(ThreadlyUserDetails::new);
+        loaded.ifPresent(details -> cache.put(userId, details));
+        return loaded;
+    }
+
+    public void invalidate(String userId) {
+        if (userId != null) {
+            cache.invalidate(userId);
+            log.debug("User details cache invalidated for {}", userId);
+        }
+    }
+}
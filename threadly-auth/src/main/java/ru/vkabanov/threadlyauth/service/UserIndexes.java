@@ -0,0 +1,38 @@
+package ru.vkabanov.threadlyauth.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlyauth.model.User;
+
+/**
+ * Индексы пользователей под вход, регистрацию и подтверждение почты. Индекс префиксов для поиска
+ * создаёт {@link UserSearchIndex}. Планы запросов UserRepository проверяет UserQueryPlanTest.
+ * <p>
+ * findByUsernameIgnoreCase — регулярное выражение с флагом i: индекс по username читается целиком,
+ * но документ достаётся только совпавший.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserIndexes {
+
+    private final MongoOperations mongoOperations;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoOperations.indexOps(User.class).ensureIndex(new Index()
+                .on("username", Sort.Direction.ASC)
+                .named("user_username"));
+        mongoOperations.indexOps(User.class).ensureIndex(new Index()
+                .on("email", Sort.Direction.ASC)
+                .named("user_email"));
+        mongoOperations.indexOps(User.class).ensureIndex(new Index()
+                .on("emailVerificationToken", Sort.Direction.ASC)
+                .sparse()
+                .named("user_email_verification_token"));
+    }
+}
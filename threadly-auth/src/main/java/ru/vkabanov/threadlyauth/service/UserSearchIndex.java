@@ -0,0 +1,227 @@
+package ru.vkabanov.threadlyauth.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlyauth.model.User;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Индекс поиска пользователей по префиксам.
+ * <p>
+ * Перед каждым сохранением {@link User} в поле searchTokens записываются префиксы слов username и displayName
+ * в нормализованном виде: нижний регистр, без диакритики, кириллица транслитерирована в латиницу
+ * (поиск «ivan» находит «Иван» и наоборот). Поле покрыто multikey-индексом, поэтому поиск — точные
+ * совпадения по индексу вместо полного просмотра коллекции регулярным выражением.
+ * Токены с префиксом {@code u:} — префиксы всего username, по ним совпадения ранжируются выше.
+ * <p>
+ * Точное совпадение username ищется отдельным запросом без лимита: окно кандидатов по префиксу не упорядочено,
+ * и без этого «ivan» мог бы не попасть в выдачу среди сотни «ivan*». Из Mongo читаются только поля
+ * для ранжирования и {@link ru.vkabanov.threadlyauth.payload.UserSummary} — без хеша пароля.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserSearchIndex implements BeforeConvertCallback<User> {
+
+    static final String FIELD = "searchTokens";
+    private static final String USERNAME_PREFIX = "u:";
+    /** Длиннее префиксы не храним: запрос обрезается до той же длины, а остаток досравнивается в памяти. */
+    private static final int MAX_PREFIX_LENGTH = 16;
+    /** Кандидатов с каждого шага поиска до ранжирования. */
+    private static final int CANDIDATES = 100;
+    private static final int BACKFILL_BATCH = 500;
+
+    private static final Map<Character, String> CYRILLIC = new LinkedHashMap<>();
+
+    static {
+        String[][] pairs = {
+                {"а", "a"}, {"б", "b"}, {"в", "v"}, {"г", "g"}, {"д", "d"}, {"е", "e"}, {"ё", "e"}, {"ж", "zh"},
+                {"з", "z"}, {"и", "i"}, {"й", "y"}, {"к", "k"}, {"л", "l"}, {"м", "m"}, {"н", "n"}, {"о", "o"},
+                {"п", "p"}, {"р", "r"}, {"с", "s"}, {"т", "t"}, {"у", "u"}, {"ф", "f"}, {"х", "kh"}, {"ц", "ts"},
+                {"ч", "ch"}, {"ш", "sh"}, {"щ", "shch"}, {"ъ", ""}, {"ы", "y"}, {"ь", ""}, {"э", "e"}, {"ю", "yu"},
+                {"я", "ya"}
+        };
+        for (String[] pair : pairs) {
+            CYRILLIC.put(pair[0].charAt(0), pair[1]);
+        }
+    }
+
+    private final MongoOperations mongoOperations;
+
+    @Override
+    public User onBeforeConvert(User user, String collection) {
+        user.setSearchTokens(tokensFor(user));
+        return user;
+    }
+
+    /**
+     * Индекс и заполнение searchTokens у пользователей, сохранённых до появления поиска по префиксам.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        mongoOperations.indexOps(User.class).ensureIndex(new Index(FIELD, Sort.Direction.ASC).named("user_search_tokens"));
+
+        Query missing = new Query(Criteria.where(FIELD).exists(false)).limit(BACKFILL_BATCH);
+        missing.fields().include("username").include("userProfile.displayName");
+        long total = 0;
+        List<User> batch;
+        while (!(batch = mongoOperations.find(missing, User.class)).isEmpty()) {
+            BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+            for (User user : batch) {
+                bulk.updateOne(new Query(Criteria.where("id").is(user.getId())), Update.update(FIELD, tokensFor(user)));
+            }
+            bulk.execute();
+            total += batch.size();
+        }
+        if (total > 0) {
+            log.info("Built search tokens for {} existing user(s)", total);
+        }
+    }
+
+    /**
+     * Поиск: сначала совпадения по началу username, затем по началу любых слов username/displayName
+     * (все слова запроса должны совпасть). Результат ранжирован, не больше limit.
+     */
+    public List<User> search(String query, int limit) {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String compact = String.join("", words);
+
+        Map<String, User> candidates = new LinkedHashMap<>();
+        // Как findByUsernameIgnoreCase: регулярное выражение с флагом i по индексу username, разделители - и _ не важны
+        Query exact = summaryFields(new Query(Criteria.where("username").regex(exactUsernamePattern(compact), "i")));
+        mongoOperations.find(exact, User.class).forEach(user -> candidates.putIfAbsent(user.getId(), user));
+
+        Query byUsername = summaryFields(new Query(Criteria.where(FIELD).is(USERNAME_PREFIX + truncate(compact))))
+                .limit(CANDIDATES);
+        mongoOperations.find(byUsername, User.class).forEach(user -> candidates.putIfAbsent(user.getId(), user));
+
+        List<String> prefixes = words.stream().map(UserSearchIndex::truncate).distinct().collect(Collectors.toList());
+        Query byWords = summaryFields(new Query(Criteria.where(FIELD).all(prefixes))).limit(CANDIDATES);
+        mongoOperations.find(byWords, User.class).forEach(user -> candidates.putIfAbsent(user.getId(), user));
+
+        return candidates.values().stream()
+                .filter(user -> rank(user, words, compact) < Integer.MAX_VALUE)
+                .sorted(Comparator.<User>comparingInt(user -> rank(user, words, compact))
+                        .thenComparingInt(user -> user.getUsername().length())
+                        .thenComparing(User::getUsername, String.CASE_INSENSITIVE_ORDER))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Поля для rank и UserSummary (как в UserRepository.findSummariesByIdIn).
+     */
+    private static Query summaryFields(Query query) {
+        query.fields().include("username").include("email").include("updatedAt")
+                .include("userProfile.displayName").include("userProfile.profilePictureUrl");
+        return query;
+    }
+
+    /**
+     * username, нормализованный вид которого равен compact: между символами допускаются - и _.
+     * compact состоит только из [a-z0-9] (см. {@link #words}), экранировать нечего.
+     */
+    private static String exactUsernamePattern(String compact) {
+        StringBuilder pattern = new StringBuilder("^");
+        for (int i = 0; i < compact.length(); i++) {
+            if (i > 0) {
+                pattern.append("[-_]*");
+            }
+            pattern.append(compact.charAt(i));
+        }
+        return pattern.append('$').toString();
+    }
+
+    /**
+     * 0 — username совпадает, 1 — username начинается с запроса, 2 — displayName начинается с запроса,
+     * 3 — каждое слово запроса — начало какого-то слова. MAX_VALUE — не совпадает (префикс длиннее хранимого).
+     */
+    private static int rank(User user, List<String> words, String compact) {
+        String username = String.join("", words(user.getUsername()));
+        if (username.equals(compact)) {
+            return 0;
+        }
+        if (username.startsWith(compact)) {
+            return 1;
+        }
+        String displayName = displayName(user);
+        if (String.join("", words(displayName)).startsWith(compact)) {
+            return 2;
+        }
+        List<String> userWords = new ArrayList<>(words(user.getUsername()));
+        userWords.addAll(words(displayName));
+        boolean allMatch = words.stream().allMatch(word -> userWords.stream().anyMatch(w -> w.startsWith(word)));
+        return allMatch ? 3 : Integer.MAX_VALUE;
+    }
+
+    static List<String> tokensFor(User user) {
+        Set<String> tokens = new LinkedHashSet<>();
+        List<String> usernameWords = words(user.getUsername());
+        addPrefixes(tokens, USERNAME_PREFIX, String.join("", usernameWords));
+        usernameWords.forEach(word -> addPrefixes(tokens, "", word));
+        words(displayName(user)).forEach(word -> addPrefixes(tokens, "", word));
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Нормализованные слова: нижний регистр, транслитерация кириллицы, без диакритики, только [a-z0-9].
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return words;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder transliterated = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            String latin = CYRILLIC.get(c);
+            transliterated.append(latin != null ? latin : String.valueOf(c));
+        }
+        String plain = Normalizer.normalize(transliterated, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        for (String word : plain.split("[^a-z0-9]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static void addPrefixes(Set<String> tokens, String marker, String word) {
+        for (int i = 1; i <= Math.min(word.length(), MAX_PREFIX_LENGTH); i++) {
+            tokens.add(marker + word.substring(0, i));
+        }
+    }
+
+    private static String truncate(String word) {
+        return word.length() > MAX_PREFIX_LENGTH ? word.substring(0, MAX_PREFIX_LENGTH) : word;
+    }
+
+    private static String displayName(User user) {
+        return user.getUserProfile() != null ? user.getUserProfile().getDisplayName() : null;
+    }
+}
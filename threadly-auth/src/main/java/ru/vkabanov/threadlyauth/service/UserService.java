@@ -2,24 +2,20 @@ package ru.vkabanov.threadlyauth.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.coobird.thumbnailator.Thumbnails;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import ru.vkabanov.threadlyauth.client.ChatContactsClient;
 import ru.vkabanov.threadlyauth.exception.BadRequestException;
 import ru.vkabanov.threadlyauth.exception.EmailAlreadyExistsException;
 import ru.vkabanov.threadlyauth.exception.ResourceNotFoundException;
+import ru.vkabanov.threadlyauth.exception.ServiceBusyException;
 import ru.vkabanov.threadlyauth.exception.UsernameAlreadyExistsException;
 import ru.vkabanov.threadlyauth.model.Profile;
 import ru.vkabanov.threadlyauth.model.PasswordResetToken;
 import ru.vkabanov.threadlyauth.model.RegistrationStatus;
 import ru.vkabanov.threadlyauth.model.Role;
+import ru.vkabanov.threadlyauth.model.ThreadlyUserDetails;
 import ru.vkabanov.threadlyauth.model.User;
 import ru.vkabanov.threadlyauth.payload.ConfirmResetPasswordRequest;
 import ru.vkabanov.threadlyauth.payload.UpdateEmailBeforeVerificationRequest;
@@ -27,60 +23,64 @@ import ru.vkabanov.threadlyauth.payload.UpdateProfileRequest;
 import ru.vkabanov.threadlyauth.repository.PasswordResetTokenRepository;
 import ru.vkabanov.threadlyauth.repository.UserRepository;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class UserService {
 
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
     private final UserRepository userRepository;
     private final JwtTokenProvider tokenProvider;
-    private final AuthenticationConfiguration authenticationConfiguration;
     private final EmailService emailService;
     private final RegistrationApprovalService registrationApprovalService;
     private final ChatContactsClient chatContactsClient;
+    private final ContactEdgeService contactEdgeService;
     private final AvatarStorageService avatarStorageService;
+    private final AvatarImageProcessor avatarImageProcessor;
     private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final UserDetailsCache userDetailsCache;
+    private final UserSummaryService userSummaryService;
+    private final UserSearchIndex userSearchIndex;
 
     private static final int SEARCH_MAX_RESULTS = 20;
 
-    public String loginUser(String username, String password) {
-        try {
-            // Check if email is verified before allowing login
-            User user = userRepository.findByUsernameIgnoreCase(username)
-                    .orElseThrow(() -> new BadRequestException("Неверный логин или пароль"));
-
-            RegistrationStatus status = user.getRegistrationStatus();
-            if (status == RegistrationStatus.PENDING) {
-                throw new BadRequestException("Ваша регистрация ожидает подтверждения");
-            }
-            if (status == RegistrationStatus.REJECTED || user.isBlocked()) {
-                throw new BadRequestException("Доступ запрещён");
-            }
+    /**
+     * Вход: пользователь читается один раз, BCrypt выполняется на пуле {@link PasswordHasher},
+     * поток запроса освобождается до окончания проверки.
+     */
+    public CompletableFuture<String> loginUser(String username, String password) {
+        // Check if email is verified before allowing login
+        User user = userRepository.findByUsernameIgnoreCase(username)
+                .orElseThrow(() -> new BadRequestException("Неверный логин или пароль"));
 
-            if (!user.isEmailVerified()) {
-                throw new BadRequestException("Email не подтверждён. Проверьте почту для активации аккаунта.");
-            }
+        RegistrationStatus status = user.getRegistrationStatus();
+        if (status == RegistrationStatus.PENDING) {
+            throw new BadRequestException("Ваша регистрация ожидает подтверждения");
+        }
+        if (status == RegistrationStatus.REJECTED || user.isBlocked() || !user.isActive()) {
+            throw new BadRequestException("Доступ запрещён");
+        }
 
-            AuthenticationManager authenticationManager = authenticationConfiguration.getAuthenticationManager();
-            Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
-            return tokenProvider.generateToken(authentication);
-        } catch (BadRequestException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        if (!user.isEmailVerified()) {
+            throw new BadRequestException("Email не подтверждён. Проверьте почту для активации аккаунта.");
         }
+
+        return passwordHasher.verifyAsync(user, password).thenApply(matches -> {
+            if (!matches) {
+                throw new BadRequestException("Неверный логин или пароль");
+            }
+            ThreadlyUserDetails userDetails = new ThreadlyUserDetails(user);
+            return tokenProvider.generateToken(
+                    new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities()));
+        });
     }
 
     /**
@@ -93,16 +93,12 @@ public class UserService {
         String password = request.getPassword();
         String newEmail = request.getNewEmail();
 
-        try {
-            AuthenticationManager authenticationManager = authenticationConfiguration.getAuthenticationManager();
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
-        } catch (Exception e) {
+        User user = userRepository.findByUsernameIgnoreCase(username)
+                .orElseThrow(() -> new BadRequestException("Неверный логин или пароль"));
+        if (!passwordHasher.verify(user, password)) {
             throw new BadRequestException("Неверный логин или пароль");
         }
 
-        User user = userRepository.findByUsernameIgnoreCase(username)
-                .orElseThrow(() -> new ResourceNotFoundException("Пользователь не найден"));
-
         if (user.isEmailVerified()) {
             throw new BadRequestException("Email уже подтверждён. Изменить email можно в настройках профиля.");
         }
@@ -124,6 +120,7 @@ public class UserService {
 
         checkAndUpdateVerificationEmailLimit(user);
         User saved = userRepository.save(user);
+        userChanged(saved.getId());
         emailService.sendVerificationEmail(saved);
         log.info("Email before verification updated for user {}, new email {}", username, newEmail);
     }
@@ -142,7 +139,7 @@ public class UserService {
         }
 
         user.setActive(false);
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        user.setPassword(passwordHasher.encode(user.getPassword()));
         user.setRoles(new HashSet<>() {{
             add(role);
         }});
@@ -177,7 +174,9 @@ public class UserService {
         user.setEmailVerificationToken(null);
 
         log.info("Email verified for user {}", user.getUsername());
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userChanged(saved.getId());
+        return saved;
     }
 
     private static final int MIN_RESEND_INTERVAL_MINUTES = 2;
@@ -232,6 +231,7 @@ public class UserService {
         checkAndUpdateVerificationEmailLimit(user);
         user.setEmailVerificationToken(UUID.randomUUID().toString());
         userRepository.save(user);
+        userChanged(user.getId());
 
         emailService.sendVerificationEmail(user);
         log.info("Verification email resent to {}", email);
@@ -244,19 +244,18 @@ public class UserService {
 
     /**
      * Возвращает пользователей, с которыми у currentUserId есть переписка (для /users/summaries).
-     * authorization — заголовок Authorization для вызова chat (JWT клиента).
+     * Контакты — из локальной contact_edges; authorization нужен только для периодической сверки с chat.
      */
     public List<User> findUsersWithConversation(String currentUserId, String authorization) {
-        List<String> contactIds = chatContactsClient.getContactIds(currentUserId, authorization);
-        if (contactIds == null || contactIds.isEmpty()) {
+        List<String> contactIds = contactEdgeService.findContactIds(currentUserId, authorization);
+        if (contactIds.isEmpty()) {
             return new ArrayList<>();
         }
-        return StreamSupport.stream(userRepository.findAllById(contactIds).spliterator(), false)
-                .collect(Collectors.toList());
+        return userRepository.findSummariesByIdIn(contactIds);
     }
 
     /**
-     * Поиск пользователей по username или displayName (для поиска контакта / начала чата).
+     * Поиск пользователей по началу username или слов displayName (для поиска контакта / начала чата).
      */
     public List<User> searchUsers(String query, String excludeUserId) {
         if (query == null || query.trim().isEmpty()) {
@@ -266,10 +265,10 @@ public class UserService {
         if (sanitized.length() > 50) {
             sanitized = sanitized.substring(0, 50);
         }
-        String regex = ".*" + sanitized.replaceAll("([\\\\*+?^$\\[\\](){}.|])", "\\\\$1") + ".*";
-        return userRepository.searchByUsernameOrDisplayName(regex, PageRequest.of(0, SEARCH_MAX_RESULTS))
+        return userSearchIndex.search(sanitized, SEARCH_MAX_RESULTS + 1)
                 .stream()
                 .filter(user -> !user.getId().equals(excludeUserId))
+                .limit(SEARCH_MAX_RESULTS)
                 .collect(Collectors.toList());
     }
 
@@ -287,19 +286,21 @@ public class UserService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException(userId));
 
-        if (!passwordEncoder.matches(currentPassword, user.getPassword())) {
+        if (!passwordHasher.verify(user, currentPassword)) {
             throw new BadRequestException("Неверный текущий пароль");
         }
 
-        user.setPassword(passwordEncoder.encode(newPassword));
-        return userRepository.save(user);
+        user.setPassword(passwordHasher.encode(newPassword));
+        User saved = userRepository.save(user);
+        userChanged(saved.getId());
+        return saved;
     }
 
     /**
      * Загрузка и обновление аватара пользователя.
      * - только изображения (PNG, JPEG, WebP)
      * - размер до 5 МБ
-     * - ресайз до 256x256, center crop, JPEG 80%
+     * - center crop, варианты 64/128/256 в JPEG (и WebP, если есть writer) на пуле {@link AvatarImageProcessor}
      */
     public User updateAvatar(String userId, MultipartFile file) {
         if (file == null || file.isEmpty()) {
@@ -335,55 +336,53 @@ public class UserService {
             profile = new Profile();
         }
 
-        String objectKey = "avatars/" + userId + "/" + UUID.randomUUID() + ".jpg";
-
-        try (InputStream inputStream = file.getInputStream()) {
-            BufferedImage original = ImageIO.read(inputStream);
-            if (original == null) {
-                throw new BadRequestException("Файл не является изображением");
-            }
+        byte[] source;
+        try {
+            source = file.getBytes();
+        } catch (Exception e) {
+            log.error("Failed to read avatar upload for user {}: {}", userId, e.getMessage());
+            throw new BadRequestException("Не удалось обработать изображение");
+        }
 
-            int width = original.getWidth();
-            int height = original.getHeight();
-            int size = Math.min(width, height);
-            int x = (width - size) / 2;
-            int y = (height - size) / 2;
-            BufferedImage cropped = original.getSubimage(x, y, size, size);
-
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            Thumbnails.of(cropped)
-                    .size(256, 256)
-                    .outputFormat("jpg")
-                    .outputQuality(0.8f)
-                    .toOutputStream(baos);
-
-            byte[] bytes = baos.toByteArray();
-            try (InputStream processedStream = new ByteArrayInputStream(bytes)) {
-                avatarStorageService.upload(processedStream, bytes.length, "image/jpeg", objectKey);
-            }
-        } catch (BadRequestException e) {
+        List<AvatarVariants.Variant> variants;
+        try {
+            variants = avatarImageProcessor.process(source);
+        } catch (BadRequestException | ServiceBusyException e) {
             throw e;
         } catch (Exception e) {
             log.error("Failed to process avatar image for user {}: {}", userId, e.getMessage());
             throw new BadRequestException("Не удалось обработать изображение");
         }
 
+        String version = UUID.randomUUID().toString();
+        String objectKey = AvatarVariants.keyOf(userId, version, AvatarVariants.MAX_SIZE, AvatarVariants.Format.JPEG);
+        List<String> uploaded = new ArrayList<>();
+        try {
+            for (AvatarVariants.Variant variant : variants) {
+                String key = AvatarVariants.keyOf(userId, version, variant.size(), variant.format());
+                try (InputStream processedStream = new ByteArrayInputStream(variant.bytes())) {
+                    avatarStorageService.upload(processedStream, variant.bytes().length, variant.format().getContentType(), key);
+                }
+                uploaded.add(key);
+            }
+        } catch (Exception e) {
+            log.error("Failed to upload avatar variants for user {}: {}", userId, e.getMessage());
+            uploaded.forEach(avatarStorageService::delete);
+            throw new BadRequestException("Не удалось обработать изображение");
+        }
+
         profile.setProfilePictureUrl(objectKey);
         user.setUserProfile(profile);
 
         User saved = userRepository.save(user);
+        userChanged(saved.getId());
 
         if (oldKey != null && !oldKey.isBlank() && !oldKey.equals(objectKey)) {
-            avatarStorageService.delete(oldKey);
+            AvatarVariants.allKeys(oldKey).forEach(avatarStorageService::delete);
         }
 
-        try {
-            String basePath = "/api/auth/users/" + saved.getId() + "/avatar";
-            String finalUrl = appendVersionParam(basePath, saved.getUpdatedAt());
-            chatContactsClient.notifyAvatarUpdated(saved.getId(), finalUrl);
-        } catch (Exception ex) {
-            log.warn("Failed to notify chat service about avatar update for user {}: {}", saved.getId(), ex.getMessage());
-        }
+        String basePath = "/api/auth/users/" + saved.getId() + "/avatar";
+        chatContactsClient.notifyAvatarUpdated(saved.getId(), appendVersionParam(basePath, saved.getUpdatedAt()));
 
         return saved;
     }
@@ -442,6 +441,7 @@ public class UserService {
         }
 
         User saved = userRepository.save(user);
+        userChanged(saved.getId());
 
         if (emailChanged) {
             emailService.sendVerificationEmail(saved);
@@ -522,10 +522,19 @@ public class UserService {
         User user = userRepository.findById(resetToken.getUserId())
                 .orElseThrow(() -> new BadRequestException("Пользователь не найден"));
 
-        user.setPassword(passwordEncoder.encode(request.getNewPassword()));
+        user.setPassword(passwordHasher.encode(request.getNewPassword()));
         userRepository.save(user);
+        userChanged(user.getId());
 
         passwordResetTokenRepository.delete(resetToken);
         log.info("Password reset completed for user {}", user.getUsername());
     }
+
+    /**
+     * Сбросить кэши, в которых лежит пользователь (JWT-фильтр, краткие профили).
+     */
+    private void userChanged(String userId) {
+        userDetailsCache.invalidate(userId);
+        userSummaryService.invalidate(userId);
+    }
 }
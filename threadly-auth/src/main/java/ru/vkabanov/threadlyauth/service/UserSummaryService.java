@@ -0,0 +1,133 @@
+package ru.vkabanov.threadlyauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlyauth.model.User;
+import ru.vkabanov.threadlyauth.payload.UserSummary;
+import ru.vkabanov.threadlyauth.repository.UserRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Краткие профили пользователей (имя, аватар) с кэшем в памяти.
+ * <p>
+ * Промахи читаются одной выборкой с проекцией ({@link UserRepository#findSummariesByIdIn}) — без пароля,
+ * токенов и счётчиков. Записи сбрасываются при изменении профиля, email и аватара.
+ */
+@Service
+public class UserSummaryService {
+
+    private final UserRepository userRepository;
+
+    private final Cache<String, UserSummary> cache;
+
+    public UserSummaryService(UserRepository userRepository,
+                              @Value("${app.user-summary-cache.ttl-minutes:10}") long ttlMinutes,
+                              @Value("${app.user-summary-cache.max-size:50000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Профили в порядке запрошенных id; несуществующие id пропускаются.
+     */
+    public List<UserSummary> getSummaries(Collection<String> ids) {
+        Set<String> unique = new LinkedHashSet<>(ids);
+        unique.remove(null);
+        Map<String, UserSummary> found = new HashMap<>(cache.getAllPresent(unique));
+        List<String> missing = unique.stream().filter(id -> !found.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            for (User user : userRepository.findSummariesByIdIn(missing)) {
+                UserSummary summary = toSummary(user);
+                cache.put(user.getId(), summary);
+                found.put(user.getId(), summary);
+            }
+        }
+        List<UserSummary> result = new ArrayList<>(unique.size());
+        for (String id : unique) {
+            UserSummary summary = found.get(id);
+            if (summary != null) {
+                result.add(summary);
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(String userId) {
+        if (userId != null) {
+            cache.invalidate(userId);
+        }
+    }
+
+    public UserSummary toSummary(User user) {
+        String displayName = user.getUserProfile() != null
+                ? user.getUserProfile().getDisplayName()
+                : null;
+        String profilePictureKey = user.getUserProfile() != null
+                ? user.getUserProfile().getProfilePictureUrl()
+                : null;
+        String profilePicture = profilePictureKey != null && !profilePictureKey.isBlank()
+                ? buildAvatarUrl(user.getId(), user.getUpdatedAt())
+                : null;
+
+        return UserSummary.builder()
+                .id(user.getId())
+                .username(user.getUsername())
+                .name(displayName)
+                .email(user.getEmail())
+                .profilePicture(profilePicture)
+                .build();
+    }
+
+    /**
+     * Слабый ETag набора профилей: меняется при изменении любого поля любого профиля.
+     */
+    public static String weakETag(List<UserSummary> summaries) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (UserSummary summary : summaries) {
+                update(digest, summary.getId());
+                update(digest, summary.getUsername());
+                update(digest, summary.getName());
+                update(digest, summary.getEmail());
+                update(digest, summary.getProfilePicture());
+            }
+            return "W/\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static String buildAvatarUrl(String userId, Instant updatedAt) {
+        String basePath = "/api/auth/users/" + userId + "/avatar";
+        if (updatedAt == null) {
+            return basePath;
+        }
+        String separator = basePath.contains("?") ? "&" : "?";
+        return basePath + separator + "v=" + updatedAt.toEpochMilli();
+    }
+}
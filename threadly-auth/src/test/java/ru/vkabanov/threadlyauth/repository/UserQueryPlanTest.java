@@ -0,0 +1,120 @@
+package ru.vkabanov.threadlyauth.repository;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import ru.vkabanov.threadlyauth.model.Profile;
+import ru.vkabanov.threadlyauth.model.RegistrationStatus;
+import ru.vkabanov.threadlyauth.model.User;
+import ru.vkabanov.threadlyauth.service.UserIndexes;
+import ru.vkabanov.threadlyauth.service.UserSearchIndex;
+import ru.vkabanov.threadlyauth.support.EmbeddedMongo;
+import ru.vkabanov.threadlyauth.support.QueryPlan;
+import ru.vkabanov.threadlyauth.support.QueryPlanRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Планы запросов {@link UserRepository} и поиска пользователей на встроенном mongod с {@link #USERS} пользователями.
+ * Каждая команда, ушедшая в Mongo, проходит explain(executionStats) до выполнения; тест падает на COLLSCAN,
+ * сортировке в памяти и на плане, читающем больше {@link #MAX_DOCS_PER_RESULT} документов на совпавший.
+ * Индексы — те, что создают {@link UserIndexes} и {@link UserSearchIndex} при старте.
+ */
+class UserQueryPlanTest {
+
+    private static final String DATABASE = "threadly_auth_plans";
+    private static final int USERS = 20_000;
+    private static final double MAX_DOCS_PER_RESULT = 2.0;
+
+    private static EmbeddedMongo mongo;
+    private static QueryPlanRecorder recorder;
+    private static UserRepository userRepository;
+    private static UserSearchIndex searchIndex;
+    private static List<String> userIds;
+
+    @BeforeAll
+    static void setUp() {
+        mongo = EmbeddedMongo.start();
+        mongo.forceClassicEngine();
+        recorder = new QueryPlanRecorder(mongo.getClient());
+        MongoTemplate template = mongo.template(DATABASE, recorder);
+
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            Profile profile = new Profile();
+            profile.setDisplayName("Пользователь " + i);
+            users.add(User.builder()
+                    .username(String.format("user%05d", i))
+                    .password("$2a$10$abcdefghijklmnopqrstuv")
+                    .email(String.format("user%05d@threadly.test", i))
+                    .active(true)
+                    .emailVerified(i % 10 != 0)
+                    .emailVerificationToken(i % 10 == 0 ? "token-" + i : null)
+                    .registrationStatus(RegistrationStatus.APPROVED)
+                    .userProfile(profile)
+                    .build());
+        }
+        userIds = template.insert(users, User.class).stream().map(User::getId).toList();
+
+        new UserIndexes(template).ensureIndexes();
+        searchIndex = new UserSearchIndex(template);
+        searchIndex.init();
+        userRepository = new MongoRepositoryFactory(template).getRepository(UserRepository.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (mongo != null) {
+            mongo.close();
+        }
+    }
+
+    @BeforeEach
+    void clearRecorded() {
+        recorder.clear();
+    }
+
+    @Test
+    void loginLookups() {
+        userRepository.findByUsernameIgnoreCase("USER01234");
+        userRepository.findByUsername("user01234");
+        userRepository.findById(userIds.get(1234));
+        assertPlans();
+    }
+
+    @Test
+    void registrationChecks() {
+        userRepository.existsByUsernameIgnoreCase("User12345");
+        userRepository.existsByUsername("user12345");
+        userRepository.existsByEmail("user12345@threadly.test");
+        userRepository.findByEmail("user12345@threadly.test");
+        assertPlans();
+    }
+
+    @Test
+    void emailVerification() {
+        userRepository.findByEmailVerificationToken("token-500");
+        assertPlans();
+    }
+
+    @Test
+    void summariesForContacts() {
+        userRepository.findSummariesByIdIn(userIds.subList(100, 150));
+        assertPlans();
+    }
+
+    @Test
+    void searchByPrefix() {
+        searchIndex.search("user0123", 20);
+        searchIndex.search("user01234", 20);
+        assertPlans();
+    }
+
+    private static void assertPlans() {
+        QueryPlan.assertEfficient(recorder.getPlans(), MAX_DOCS_PER_RESULT);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.vkabanov.threadlyauth.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Декодирование загруженного аватара и рендер всех вариантов размеров через {@link AvatarImageProcessor}.
+ * Исходник — JPEG с градиентом и шумом, чтобы кодек не сжимал его до пустоты.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class AvatarProcessingBenchmark {
+
+    @Param({"1024", "4096"})
+    public int side;
+
+    private AvatarImageProcessor processor;
+    private byte[] source;
+
+    @Setup
+    public void setUp() throws IOException {
+        processor = new AvatarImageProcessor(1, 4);
+        source = sampleJpeg(side);
+    }
+
+    @TearDown
+    public void tearDown() {
+        processor.shutdown();
+    }
+
+    @Benchmark
+    public List<AvatarVariants.Variant> process() {
+        return processor.process(source);
+    }
+
+    private static byte[] sampleJpeg(int side) throws IOException {
+        BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(0x2b6cb0), side, side, new Color(0xf6ad55)));
+        graphics.fillRect(0, 0, side, side);
+        graphics.dispose();
+        Random random = new Random(42);
+        for (int i = 0; i < side * side / 16; i++) {
+            image.setRGB(random.nextInt(side), random.nextInt(side), random.nextInt(0xffffff));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,85 @@
+package ru.vkabanov.threadlyauth.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import ru.vkabanov.threadlyauth.config.EmailOutboxProperties;
+import ru.vkabanov.threadlyauth.model.EmailOutboxMessage;
+
+import javax.mail.internet.MimeMessage;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Отправка пачки писем через локальный SMTP (GreenMail), без Mongo.
+ */
+class EmailOutboxWorkerTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Test
+    void sendsWholeBatch() throws Exception {
+        EmailOutboxWorker worker = worker(ServerSetupTest.SMTP.getPort());
+
+        Map<EmailOutboxMessage, EmailOutboxWorker.SendFailure> failures = worker.sendBatch(List.of(
+                message("1", "alice@threadly.test"),
+                message("2", "bob@threadly.test"),
+                message("3", "carol@threadly.test")));
+
+        assertTrue(failures.isEmpty());
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(3, received.length);
+        assertEquals("Тема 1", received[0].getSubject());
+    }
+
+    @Test
+    void unbuildableMessageIsNotRetried() {
+        EmailOutboxWorker worker = worker(ServerSetupTest.SMTP.getPort());
+        EmailOutboxMessage broken = message("1", "bob@@threadly.test");
+
+        Map<EmailOutboxMessage, EmailOutboxWorker.SendFailure> failures = worker.sendBatch(List.of(
+                broken, message("2", "bob@threadly.test")));
+
+        assertEquals(1, failures.size());
+        assertFalse(failures.get(broken).retryable());
+        assertEquals(1, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    void unreachableServerFailsWholeBatchForRetry() {
+        EmailOutboxWorker worker = worker(ServerSetupTest.SMTP.getPort() + 1);
+        List<EmailOutboxMessage> batch = List.of(message("1", "alice@threadly.test"), message("2", "bob@threadly.test"));
+
+        Map<EmailOutboxMessage, EmailOutboxWorker.SendFailure> failures = worker.sendBatch(batch);
+
+        assertEquals(2, failures.size());
+        assertTrue(failures.values().stream().allMatch(EmailOutboxWorker.SendFailure::retryable));
+    }
+
+    private static EmailOutboxWorker worker(int port) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost(ServerSetupTest.SMTP.getBindAddress());
+        mailSender.setPort(port);
+        Properties properties = new Properties();
+        properties.put("mail.smtp.connectiontimeout", "2000");
+        mailSender.setJavaMailProperties(properties);
+        return new EmailOutboxWorker(null, mailSender, new EmailOutboxProperties(), "noreply@threadly.test", "Threadly");
+    }
+
+    private static EmailOutboxMessage message(String id, String to) {
+        return EmailOutboxMessage.builder()
+                .id(id)
+                .to(to)
+                .subject("Тема " + id)
+                .html("<p>Письмо " + id + "</p>")
+                .build();
+    }
+}
@@ -0,0 +1,66 @@
+package ru.vkabanov.threadlyauth.service;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import ru.vkabanov.threadlyauth.config.JwtConfig;
+import ru.vkabanov.threadlyauth.model.Role;
+import ru.vkabanov.threadlyauth.model.ThreadlyUserDetails;
+import ru.vkabanov.threadlyauth.model.User;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выпуск JWT при входе и его разбор с проверкой подписи (HS512).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JwtTokenProviderBenchmark {
+
+    private JwtTokenProvider tokenProvider;
+    private Authentication authentication;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JwtConfig jwtConfig = new JwtConfig();
+        jwtConfig.setExpiration(86400);
+        jwtConfig.setSecret("threadly-benchmark-secret-threadly-benchmark-secret");
+        tokenProvider = new JwtTokenProvider(jwtConfig);
+
+        User user = User.builder()
+                .id("64a1b2c3d4e5f60718293a4b")
+                .username("bench")
+                .roles(Set.of(Role.USER))
+                .build();
+        ThreadlyUserDetails principal = new ThreadlyUserDetails(user);
+        authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+        token = tokenProvider.generateToken(authentication);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return tokenProvider.generateToken(authentication);
+    }
+
+    @Benchmark
+    public Optional<Claims> parseValidClaims() {
+        return tokenProvider.parseValidClaims(token);
+    }
+}
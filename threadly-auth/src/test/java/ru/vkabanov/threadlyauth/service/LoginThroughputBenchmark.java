@@ -0,0 +1,86 @@
+package ru.vkabanov.threadlyauth.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import ru.vkabanov.threadlyauth.config.PasswordHashingProperties;
+import ru.vkabanov.threadlyauth.model.User;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность проверки пароля при входе: логинов в секунду и на одно ядро.
+ * <p>
+ * Запросы идут со всех ядер через {@link PasswordHasher} — как логины с потоков Tomcat.
+ * Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ru.vkabanov.threadlyauth.service.LoginThroughputBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class LoginThroughputBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"10", "12"})
+    public int strength;
+
+    private PasswordHasher passwordHasher;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        PasswordHashingProperties properties = new PasswordHashingProperties();
+        properties.setBcryptStrength(strength);
+        // Очередь с запасом: бенчмарк меряет хеширование, а не отказы
+        properties.setQueueCapacity(1024);
+        // Хеш той же стоимости — перехеширование (и Mongo) не понадобится
+        passwordHasher = new PasswordHasher(encoder, null, null, properties);
+        user = User.builder().username("bench").password(encoder.encode(PASSWORD)).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        passwordHasher.shutdown();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean login() {
+        return passwordHasher.verify(user, PASSWORD);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LoginThroughputBenchmark.class.getSimpleName())
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (RunResult result : results) {
+            double loginsPerSecond = result.getPrimaryResult().getScore();
+            System.out.printf("bcrypt strength %s: %.1f logins/s, %.1f logins/s/core (%d cores)%n",
+                    result.getParams().getParam("strength"), loginsPerSecond, loginsPerSecond / cores, cores);
+        }
+    }
+}
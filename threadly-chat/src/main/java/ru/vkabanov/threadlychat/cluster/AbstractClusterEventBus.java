@@ -0,0 +1,116 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.vkabanov.threadlychat.configuration.ClusterProperties;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Общая часть реализаций шины: идентификатор узла, реестр обработчиков и диспетчеризация входящих событий.
+ */
+@Slf4j
+public abstract class AbstractClusterEventBus implements ClusterEventBus {
+
+    private final String nodeId;
+
+    private final Map<Class<?>, List<Consumer<ClusterEvent>>> handlers = new ConcurrentHashMap<>();
+
+    private final List<MembershipListener> membershipListeners = new CopyOnWriteArrayList<>();
+
+    protected AbstractClusterEventBus(ClusterProperties properties) {
+        String configured = properties.getNodeId();
+        this.nodeId = configured != null && !configured.isBlank()
+                ? configured.trim()
+                : UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends ClusterEvent> void subscribe(Class<T> type, Consumer<T> handler) {
+        handlers.computeIfAbsent(type, k -> new CopyOnWriteArrayList<>())
+                .add(event -> handler.accept((T) event));
+    }
+
+    @Override
+    public void addMembershipListener(MembershipListener listener) {
+        membershipListeners.add(listener);
+    }
+
+    @Override
+    public void publish(ClusterEvent event) {
+        event.setOriginNodeId(nodeId);
+        event.setTargetNodeId(null);
+        transmit(null, event);
+    }
+
+    @Override
+    public void send(String targetNodeId, ClusterEvent event) {
+        if (targetNodeId == null || targetNodeId.equals(nodeId)) {
+            return;
+        }
+        event.setOriginNodeId(nodeId);
+        event.setTargetNodeId(targetNodeId);
+        transmit(targetNodeId, event);
+    }
+
+    /**
+     * Передать событие адресату (targetNodeId == null — всем соседям).
+     */
+    protected abstract void transmit(String targetNodeId, ClusterEvent event);
+
+    /**
+     * Обработать событие, пришедшее с другого узла.
+     */
+    protected void dispatch(ClusterEvent event) {
+        if (event == null || nodeId.equals(event.getOriginNodeId())) {
+            return;
+        }
+        if (event.getTargetNodeId() != null && !nodeId.equals(event.getTargetNodeId())) {
+            return;
+        }
+        List<Consumer<ClusterEvent>> list = handlers.get(event.getClass());
+        if (list == null) {
+            return;
+        }
+        for (Consumer<ClusterEvent> handler : list) {
+            try {
+                handler.accept(event);
+            } catch (Exception e) {
+                log.warn("Cluster handler failed for {} from node {}: {}",
+                        event.getClass().getSimpleName(), event.getOriginNodeId(), e.getMessage());
+            }
+        }
+    }
+
+    protected void fireNodeJoined(String otherNodeId) {
+        log.info("Cluster node {} joined (local node {})", otherNodeId, nodeId);
+        for (MembershipListener listener : membershipListeners) {
+            try {
+                listener.onNodeJoined(otherNodeId);
+            } catch (Exception e) {
+                log.warn("Membership listener failed on join of {}: {}", otherNodeId, e.getMessage());
+            }
+        }
+    }
+
+    protected void fireNodeLeft(String otherNodeId) {
+        log.info("Cluster node {} left (local node {})", otherNodeId, nodeId);
+        for (MembershipListener listener : membershipListeners) {
+            try {
+                listener.onNodeLeft(otherNodeId);
+            } catch (Exception e) {
+                log.warn("Membership listener failed on leave of {}: {}", otherNodeId, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Сброс записи локального кэша на остальных узлах. key == null — сбросить кэш целиком.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class CacheInvalidationEvent extends ClusterEvent {
+
+    private String cacheName;
+
+    private String key;
+}
@@ -0,0 +1,101 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import javax.annotation.PostConstruct;
+import java.util.Set;
+
+/**
+ * Перехватчик brokerChannel: дублирует кадры простого брокера на соседние узлы.
+ * <ul>
+ *     <li>/user/{userId}/... — только узлам, где у пользователя есть сессии ({@link ClusterUserRegistry});</li>
+ *     <li>/topic/... — всем узлам.</li>
+ * </ul>
+ * Кадры, пришедшие с другого узла, помечаются заголовком {@link #ORIGIN_HEADER} и повторно не пересылаются.
+ */
+@Slf4j
+@Component
+public class ClusterBrokerRelay implements ChannelInterceptor {
+
+    public static final String ORIGIN_HEADER = "threadlyClusterOrigin";
+
+    private static final String USER_PREFIX = "/user/";
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    private final ClusterEventBus eventBus;
+    private final ClusterUserRegistry userRegistry;
+
+    private MessageChannel brokerChannel;
+
+    public ClusterBrokerRelay(ClusterEventBus eventBus, ClusterUserRegistry userRegistry) {
+        this.eventBus = eventBus;
+        this.userRegistry = userRegistry;
+    }
+
+    @Autowired
+    public void setBrokerChannel(@Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel) {
+        this.brokerChannel = brokerChannel;
+    }
+
+    @PostConstruct
+    public void init() {
+        eventBus.subscribe(UserDeliveryEvent.class, this::deliverLocally);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || message.getHeaders().containsKey(ORIGIN_HEADER)
+                || !(message.getPayload() instanceof byte[])) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return message;
+        }
+        if (destination.startsWith(USER_PREFIX)) {
+            int userEnd = destination.indexOf('/', USER_PREFIX.length());
+            if (userEnd > 0) {
+                String userId = destination.substring(USER_PREFIX.length(), userEnd);
+                Set<String> nodes = userRegistry.remoteNodesFor(userId);
+                if (!nodes.isEmpty()) {
+                    UserDeliveryEvent event = toEvent(message, destination);
+                    nodes.forEach(nodeId -> eventBus.send(nodeId, event));
+                }
+            }
+        } else if (destination.startsWith(TOPIC_PREFIX) && !eventBus.getActiveNodes().isEmpty()) {
+            eventBus.publish(toEvent(message, destination));
+        }
+        return message;
+    }
+
+    private UserDeliveryEvent toEvent(Message<?> message, String destination) {
+        // Заголовок бывает и MimeType, и строкой; читаем напрямую, без копии заголовков через accessor
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        return new UserDeliveryEvent(destination, contentType != null ? contentType.toString() : null,
+                (byte[]) message.getPayload());
+    }
+
+    private void deliverLocally(UserDeliveryEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(event.getDestination());
+        if (event.getContentType() != null) {
+            accessor.setContentType(MimeType.valueOf(event.getContentType()));
+        }
+        accessor.setHeader(ORIGIN_HEADER, event.getOriginNodeId());
+        accessor.setLeaveMutable(true);
+        brokerChannel.send(MessageBuilder.createMessage(event.getPayload(), accessor.getMessageHeaders()));
+    }
+}
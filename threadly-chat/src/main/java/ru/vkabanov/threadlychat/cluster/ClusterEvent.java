@@ -0,0 +1,25 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import lombok.Data;
+
+/**
+ * Базовое событие межузловой шины.
+ * originNodeId — узел-отправитель, targetNodeId — адресат (null — все узлы).
+ */
+@Data
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = NodeHelloEvent.class, name = "hello"),
+        @JsonSubTypes.Type(value = UserDeliveryEvent.class, name = "delivery"),
+        @JsonSubTypes.Type(value = PresenceEvent.class, name = "presence"),
+        @JsonSubTypes.Type(value = UserSessionsEvent.class, name = "sessions"),
+        @JsonSubTypes.Type(value = CacheInvalidationEvent.class, name = "invalidate")
+})
+public abstract class ClusterEvent {
+
+    private String originNodeId;
+
+    private String targetNodeId;
+}
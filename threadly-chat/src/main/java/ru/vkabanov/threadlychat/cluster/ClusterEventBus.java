@@ -0,0 +1,48 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Межузловая шина событий threadly-chat.
+ * События собственного узла обработчикам не доставляются — локальная обработка остаётся за вызывающим кодом.
+ */
+public interface ClusterEventBus {
+
+    /**
+     * Идентификатор текущего узла.
+     */
+    String getNodeId();
+
+    /**
+     * Разослать событие всем остальным узлам.
+     */
+    void publish(ClusterEvent event);
+
+    /**
+     * Отправить событие конкретному узлу. Если узел недоступен — событие отбрасывается.
+     */
+    void send(String nodeId, ClusterEvent event);
+
+    /**
+     * Подписаться на события заданного типа, пришедшие с других узлов.
+     */
+    <T extends ClusterEvent> void subscribe(Class<T> type, Consumer<T> handler);
+
+    /**
+     * Подписаться на появление и исчезновение соседних узлов.
+     */
+    void addMembershipListener(MembershipListener listener);
+
+    /**
+     * Узлы, с которыми сейчас есть связь (без текущего).
+     */
+    Set<String> getActiveNodes();
+
+    interface MembershipListener {
+
+        void onNodeJoined(String nodeId);
+
+        void onNodeLeft(String nodeId);
+    }
+}
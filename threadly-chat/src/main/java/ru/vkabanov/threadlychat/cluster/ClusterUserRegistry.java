@@ -0,0 +1,169 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Реестр «пользователь → узлы, где у него открыты WebSocket-сессии».
+ * Локальные сессии учитываются по connect/disconnect, чужие — по {@link UserSessionsEvent} от соседей.
+ * Используется {@link ClusterBrokerRelay}, чтобы convertAndSendToUser доходил до сессий на любом узле.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ClusterUserRegistry implements ClusterEventBus.MembershipListener {
+
+    private final ClusterEventBus eventBus;
+
+    /** userId → id локальных сессий. */
+    private final Map<String, Set<String>> localSessions = new ConcurrentHashMap<>();
+
+    /** nodeId → пользователи с сессиями на этом узле. */
+    private final Map<String, Set<String>> remoteUsersByNode = new ConcurrentHashMap<>();
+
+    private final List<Consumer<String>> disconnectedListeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        eventBus.subscribe(UserSessionsEvent.class, this::onRemoteSessions);
+        eventBus.addMembershipListener(this);
+        // Соседи, подключившиеся до регистрации слушателя, тоже должны узнать наших пользователей
+        eventBus.getActiveNodes().forEach(this::onNodeJoined);
+    }
+
+    public void localSessionConnected(String userId, String sessionId) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        boolean[] first = {false};
+        localSessions.compute(userId, (id, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                first[0] = true;
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+        if (first[0]) {
+            eventBus.publish(new UserSessionsEvent(Set.of(userId), true, false));
+        }
+    }
+
+    public void localSessionDisconnected(String userId, String sessionId) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        boolean[] last = {false};
+        localSessions.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(sessionId);
+            if (sessions.isEmpty()) {
+                last[0] = true;
+                return null;
+            }
+            return sessions;
+        });
+        if (last[0]) {
+            eventBus.publish(new UserSessionsEvent(Set.of(userId), false, false));
+        }
+    }
+
+    /**
+     * Подписаться на пользователей, у которых не осталось сессий ни на одном узле из-за ушедшего соседа.
+     * Сосед уже не разошлёт их offline сам, поэтому это делает каждый оставшийся узел своим клиентам.
+     */
+    public void addDisconnectedListener(Consumer<String> listener) {
+        disconnectedListeners.add(listener);
+    }
+
+    public boolean hasLocalSessions(String userId) {
+        return userId != null && localSessions.containsKey(userId);
+    }
+
+    /**
+     * Соседние узлы, на которых у пользователя есть сессии.
+     */
+    public Set<String> remoteNodesFor(String userId) {
+        Set<String> nodes = new HashSet<>();
+        remoteUsersByNode.forEach((nodeId, users) -> {
+            if (users.contains(userId)) {
+                nodes.add(nodeId);
+            }
+        });
+        return nodes;
+    }
+
+    public boolean isConnectedAnywhere(String userId) {
+        return hasLocalSessions(userId) || !remoteNodesFor(userId).isEmpty();
+    }
+
+    public int getLocalUserCount() {
+        return localSessions.size();
+    }
+
+    public int getLocalSessionCount() {
+        return localSessions.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @Override
+    public void onNodeJoined(String nodeId) {
+        // Новому соседу — полный список наших пользователей
+        eventBus.send(nodeId, new UserSessionsEvent(new HashSet<>(localSessions.keySet()), true, true));
+    }
+
+    @Override
+    public void onNodeLeft(String nodeId) {
+        Set<String> users = remoteUsersByNode.remove(nodeId);
+        if (users == null || users.isEmpty()) {
+            return;
+        }
+        int disconnected = 0;
+        for (String userId : users) {
+            if (isConnectedAnywhere(userId)) {
+                continue;
+            }
+            disconnected++;
+            for (Consumer<String> listener : disconnectedListeners) {
+                try {
+                    listener.accept(userId);
+                } catch (RuntimeException e) {
+                    log.warn("Disconnected listener failed for user {}", userId, e);
+                }
+            }
+        }
+        log.debug("Node {} left: {} user(s) no longer connected to the cluster", nodeId, disconnected);
+    }
+
+    private void onRemoteSessions(UserSessionsEvent event) {
+        String nodeId = event.getOriginNodeId();
+        if (nodeId == null || event.getUserIds() == null) {
+            return;
+        }
+        if (event.isSnapshot()) {
+            Set<String> users = ConcurrentHashMap.newKeySet();
+            users.addAll(event.getUserIds());
+            boolean known = remoteUsersByNode.put(nodeId, users) != null;
+            log.debug("Received session snapshot from node {}: {} user(s)", nodeId, users.size());
+            if (!known) {
+                // Сосед мог не получить наш снимок (подписался позже, чем мы его отправили) — отвечаем своим
+                onNodeJoined(nodeId);
+            }
+            return;
+        }
+        Set<String> users = remoteUsersByNode.computeIfAbsent(nodeId, k -> ConcurrentHashMap.newKeySet());
+        if (event.isConnected()) {
+            users.addAll(event.getUserIds());
+        } else {
+            users.removeAll(event.getUserIds());
+        }
+    }
+}
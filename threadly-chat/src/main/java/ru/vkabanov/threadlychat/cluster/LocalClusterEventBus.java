@@ -0,0 +1,88 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlychat.configuration.ClusterProperties;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Шина в пределах одной JVM (режим по умолчанию).
+ * Один узел — события никуда не уходят; несколько контекстов приложения в одной JVM
+ * с одинаковой threadly.cluster.local-group обмениваются событиями синхронно (удобно для тестов).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "threadly.cluster.mode", havingValue = "local", matchIfMissing = true)
+public class LocalClusterEventBus extends AbstractClusterEventBus {
+
+    private static final Map<String, Map<String, LocalClusterEventBus>> GROUPS = new ConcurrentHashMap<>();
+
+    private final String group;
+
+    public LocalClusterEventBus(ClusterProperties properties) {
+        super(properties);
+        this.group = properties.getLocalGroup() != null ? properties.getLocalGroup() : "default";
+    }
+
+    @PostConstruct
+    public void join() {
+        Map<String, LocalClusterEventBus> members = GROUPS.computeIfAbsent(group, g -> new ConcurrentHashMap<>());
+        Set<LocalClusterEventBus> existing = new HashSet<>(members.values());
+        members.put(getNodeId(), this);
+        for (LocalClusterEventBus other : existing) {
+            other.fireNodeJoined(getNodeId());
+            fireNodeJoined(other.getNodeId());
+        }
+        log.info("Local cluster bus started: node {} in group '{}'", getNodeId(), group);
+    }
+
+    @PreDestroy
+    public void leave() {
+        Map<String, LocalClusterEventBus> members = GROUPS.get(group);
+        if (members == null) {
+            return;
+        }
+        members.remove(getNodeId());
+        for (LocalClusterEventBus other : members.values()) {
+            other.fireNodeLeft(getNodeId());
+        }
+    }
+
+    @Override
+    protected void transmit(String targetNodeId, ClusterEvent event) {
+        Map<String, LocalClusterEventBus> members = GROUPS.get(group);
+        if (members == null) {
+            return;
+        }
+        if (targetNodeId != null) {
+            LocalClusterEventBus target = members.get(targetNodeId);
+            if (target != null) {
+                target.dispatch(event);
+            }
+            return;
+        }
+        for (LocalClusterEventBus member : members.values()) {
+            if (member != this) {
+                member.dispatch(event);
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getActiveNodes() {
+        Map<String, LocalClusterEventBus> members = GROUPS.get(group);
+        if (members == null) {
+            return Set.of();
+        }
+        Set<String> nodes = new HashSet<>(members.keySet());
+        nodes.remove(getNodeId());
+        return nodes;
+    }
+}
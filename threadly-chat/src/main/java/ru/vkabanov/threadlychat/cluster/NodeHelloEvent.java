@@ -0,0 +1,23 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Рукопожатие TCP-шины: узлы обмениваются nodeId и случайными nonce и подтверждают знание общего секрета
+ * HMAC-подписью (proof) от nonce собеседника.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class NodeHelloEvent extends ClusterEvent {
+
+    private String nonce;
+
+    private String proof;
+
+    public NodeHelloEvent(String nodeId) {
+        setOriginNodeId(nodeId);
+    }
+}
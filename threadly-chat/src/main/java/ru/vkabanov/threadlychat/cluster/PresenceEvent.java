@@ -0,0 +1,20 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Изменение статуса пользователя (online/offline) на узле-отправителе.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class PresenceEvent extends ClusterEvent {
+
+    private String userId;
+
+    private String status;
+}
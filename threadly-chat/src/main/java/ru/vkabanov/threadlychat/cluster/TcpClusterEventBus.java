@@ -0,0 +1,375 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlychat.configuration.ClusterProperties;
+import ru.vkabanov.threadlychat.security.JwtConfig;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP-шина между процессами threadly-chat.
+ * <p>
+ * Каждый узел слушает threadly.cluster.tcp.port и сам подключается ко всем peers.
+ * Кадр — int длины + JSON события. Соединение начинается с рукопожатия из трёх {@link NodeHelloEvent}:
+ * подключившийся присылает nonce, принимающий — свой nonce и HMAC-подпись от nonce подключившегося,
+ * подключившийся — подпись от nonce принимающего. Ключ — threadly.cluster.tcp.secret (или JWT-секрет);
+ * до проверки подписи ни одно событие соседа не обрабатывается и ни одно своё не отправляется.
+ * По исходящему соединению идут только события этого узла, по входящему — только события соседа.
+ * На каждого соседа — своя ограниченная очередь и поток записи, поэтому медленный узел не тормозит отправителя.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "threadly.cluster.mode", havingValue = "tcp")
+public class TcpClusterEventBus extends AbstractClusterEventBus {
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_HELLO_BYTES = 4 * 1024;
+    private static final int NONCE_BYTES = 16;
+
+    private final ClusterProperties.Tcp tcp;
+    private final ObjectMapper objectMapper;
+    private final SecretKeySpec handshakeKey;
+    private final SecureRandom random = new SecureRandom();
+
+    /** Исходящие каналы к соседям, по которым уже прошло рукопожатие: nodeId → канал. */
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+    private final List<PeerLink> configuredPeers = new ArrayList<>();
+    private final AtomicInteger inboundCounter = new AtomicInteger();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+
+    public TcpClusterEventBus(ClusterProperties properties, ObjectMapper objectMapper, JwtConfig jwtConfig) {
+        super(properties);
+        this.tcp = properties.getTcp();
+        this.objectMapper = objectMapper;
+        String secret = tcp.getSecret() != null && !tcp.getSecret().isBlank() ? tcp.getSecret() : jwtConfig.getSecret();
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("threadly.cluster.tcp.secret or security.jwt.secret must be set in tcp cluster mode");
+        }
+        this.handshakeKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        // Проверяем всех соседей до того, как что-либо запускать: опечатка в списке должна остановить старт
+        for (String peer : tcp.getPeers()) {
+            if (peer != null && !peer.isBlank()) {
+                configuredPeers.add(parsePeer(peer.trim()));
+            }
+        }
+        running = true;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(tcp.getBindHost(), tcp.getPort()));
+        startDaemon("cluster-accept", this::acceptLoop);
+
+        for (PeerLink link : configuredPeers) {
+            startDaemon("cluster-out-" + link.host + ":" + link.port, link::run);
+        }
+        log.info("TCP cluster bus started: node {} on {}:{}, peers {}",
+                getNodeId(), tcp.getBindHost(), tcp.getPort(), tcp.getPeers());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        closeQuietly(serverSocket);
+        for (PeerLink link : configuredPeers) {
+            link.close();
+        }
+    }
+
+    @Override
+    protected void transmit(String targetNodeId, ClusterEvent event) {
+        byte[] frame;
+        try {
+            // Сериализуем в потоке вызывающего: одно и то же событие может переиспользоваться для разных адресатов
+            frame = objectMapper.writeValueAsBytes(event);
+        } catch (IOException e) {
+            log.warn("Failed to serialize cluster event {}: {}", event.getClass().getSimpleName(), e.getMessage());
+            return;
+        }
+        if (targetNodeId != null) {
+            PeerLink link = links.get(targetNodeId);
+            if (link != null) {
+                link.enqueue(frame);
+            }
+            return;
+        }
+        for (PeerLink link : links.values()) {
+            link.enqueue(frame);
+        }
+    }
+
+    @Override
+    public Set<String> getActiveNodes() {
+        return Set.copyOf(links.keySet());
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                startDaemon("cluster-in-" + inboundCounter.incrementAndGet(), () -> readLoop(socket));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Cluster accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        String remoteNode = null;
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            // Рукопожатие ограничено по времени и размеру кадра: неаутентифицированный сосед не держит поток
+            socket.setSoTimeout(tcp.getConnectTimeoutMs());
+            ClusterEvent hello = readFrame(in, MAX_HELLO_BYTES);
+            if (!(hello instanceof NodeHelloEvent) || ((NodeHelloEvent) hello).getNonce() == null) {
+                log.warn("Cluster peer {} did not send hello, closing", socket.getRemoteSocketAddress());
+                return;
+            }
+            String peerNonce = ((NodeHelloEvent) hello).getNonce();
+            String nonce = newNonce();
+            NodeHelloEvent reply = new NodeHelloEvent(getNodeId());
+            reply.setNonce(nonce);
+            reply.setProof(proof("accept", getNodeId(), peerNonce, nonce));
+            writeFrame(out, objectMapper.writeValueAsBytes(reply));
+            out.flush();
+
+            ClusterEvent confirm = readFrame(in, MAX_HELLO_BYTES);
+            if (!(confirm instanceof NodeHelloEvent)
+                    || !Objects.equals(confirm.getOriginNodeId(), hello.getOriginNodeId())
+                    || !verify(((NodeHelloEvent) confirm).getProof(),
+                    proof("connect", hello.getOriginNodeId(), nonce, peerNonce))) {
+                log.warn("Cluster peer {} failed authentication, closing", socket.getRemoteSocketAddress());
+                return;
+            }
+            remoteNode = hello.getOriginNodeId();
+            socket.setSoTimeout(0);
+
+            while (running) {
+                dispatch(readFrame(in, MAX_FRAME_BYTES));
+            }
+        } catch (IOException e) {
+            if (running) {
+                log.debug("Cluster inbound connection from node {} closed: {}", remoteNode, e.getMessage());
+            }
+        }
+    }
+
+    private ClusterEvent readFrame(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > maxBytes) {
+            throw new IOException("Invalid cluster frame length " + length);
+        }
+        byte[] buffer = new byte[length];
+        in.readFully(buffer);
+        return objectMapper.readValue(buffer, ClusterEvent.class);
+    }
+
+    private String newNonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        return HexFormat.of().formatHex(nonce);
+    }
+
+    /**
+     * Подпись стороны рукопожатия: роль и nodeId подписывающего, nonce собеседника и свой.
+     */
+    private String proof(String role, String nodeId, String peerNonce, String ownNonce) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(handshakeKey);
+            String payload = "threadly-cluster|" + role + "|" + nodeId + "|" + peerNonce + "|" + ownNonce;
+            return HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static boolean verify(String actual, String expected) {
+        return actual != null && MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.US_ASCII), actual.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private PeerLink parsePeer(String peer) {
+        int separator = peer.lastIndexOf(':');
+        int port = -1;
+        if (separator > 0 && separator < peer.length() - 1) {
+            try {
+                port = Integer.parseInt(peer.substring(separator + 1));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        if (port < 1 || port > 65_535) {
+            throw new IllegalStateException("Invalid cluster peer '" + peer + "', expected host:port");
+        }
+        return new PeerLink(peer.substring(0, separator), port);
+    }
+
+    private static void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+    }
+
+    private static void startDaemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Исходящий канал к соседу: подключение с переподключением, рукопожатие и запись из очереди.
+     */
+    private class PeerLink {
+
+        private final String host;
+        private final int port;
+        private final BlockingQueue<byte[]> queue;
+        private volatile Socket socket;
+
+        PeerLink(String host, int port) {
+            this.host = host;
+            this.port = port;
+            this.queue = new ArrayBlockingQueue<>(tcp.getQueueCapacity());
+        }
+
+        void enqueue(byte[] frame) {
+            if (!queue.offer(frame)) {
+                long dropped = droppedEvents.incrementAndGet();
+                if (dropped % 1000 == 1) {
+                    log.warn("Cluster queue to {}:{} is full, dropped {} event(s) so far", host, port, dropped);
+                }
+            }
+        }
+
+        void run() {
+            while (running) {
+                String remoteNode = null;
+                try (Socket s = new Socket()) {
+                    socket = s;
+                    s.setTcpNoDelay(true);
+                    s.connect(new InetSocketAddress(host, port), tcp.getConnectTimeoutMs());
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+
+                    String nonce = newNonce();
+                    NodeHelloEvent hello = new NodeHelloEvent(getNodeId());
+                    hello.setNonce(nonce);
+                    writeFrame(out, objectMapper.writeValueAsBytes(hello));
+                    out.flush();
+                    s.setSoTimeout(tcp.getConnectTimeoutMs());
+                    ClusterEvent reply = readFrame(in, MAX_HELLO_BYTES);
+                    if (!(reply instanceof NodeHelloEvent) || ((NodeHelloEvent) reply).getNonce() == null) {
+                        throw new IOException("Unexpected handshake reply");
+                    }
+                    String peerNonce = ((NodeHelloEvent) reply).getNonce();
+                    if (!verify(((NodeHelloEvent) reply).getProof(),
+                            proof("accept", reply.getOriginNodeId(), nonce, peerNonce))) {
+                        log.warn("Cluster peer {}:{} failed authentication", host, port);
+                        throw new IOException("Handshake proof mismatch");
+                    }
+                    s.setSoTimeout(0);
+                    NodeHelloEvent confirm = new NodeHelloEvent(getNodeId());
+                    confirm.setProof(proof("connect", getNodeId(), peerNonce, nonce));
+                    writeFrame(out, objectMapper.writeValueAsBytes(confirm));
+                    out.flush();
+                    remoteNode = reply.getOriginNodeId();
+                    // Всё, что накопилось до рукопожатия, адресовалось прошлому соединению — не досылаем
+                    queue.clear();
+                    links.put(remoteNode, this);
+                    fireNodeJoined(remoteNode);
+
+                    while (running) {
+                        byte[] frame = queue.poll(1, TimeUnit.SECONDS);
+                        if (frame == null) {
+                            continue;
+                        }
+                        writeFrame(out, frame);
+                        // Пишем пачкой всё, что уже лежит в очереди, и только потом сбрасываем буфер
+                        byte[] next;
+                        while ((next = queue.poll()) != null) {
+                            writeFrame(out, next);
+                        }
+                        out.flush();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    if (running) {
+                        log.debug("Cluster link to {}:{} failed: {}", host, port, e.getMessage());
+                    }
+                } finally {
+                    socket = null;
+                    if (remoteNode != null && links.remove(remoteNode, this)) {
+                        fireNodeLeft(remoteNode);
+                    }
+                }
+                sleepBeforeReconnect();
+            }
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+
+        private void sleepBeforeReconnect() {
+            try {
+                Thread.sleep(tcp.getReconnectDelayMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
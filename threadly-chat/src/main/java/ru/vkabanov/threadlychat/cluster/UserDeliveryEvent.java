@@ -0,0 +1,24 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Кадр брокера, который нужно доставить подписчикам на другом узле
+ * (/user/{userId}/... — только узлам с сессиями пользователя, /topic/... — всем).
+ * payload — уже сериализованное тело сообщения, как его отдал SimpMessagingTemplate.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class UserDeliveryEvent extends ClusterEvent {
+
+    private String destination;
+
+    private String contentType;
+
+    private byte[] payload;
+}
@@ -0,0 +1,26 @@
+package ru.vkabanov.threadlychat.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * Изменение набора пользователей с WebSocket-сессиями на узле-отправителе.
+ * snapshot == true — полный список пользователей узла (заменяет известное состояние),
+ * иначе — дельта: userIds подключились (connected) или отключились.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class UserSessionsEvent extends ClusterEvent {
+
+    private Set<String> userIds;
+
+    private boolean connected;
+
+    private boolean snapshot;
+}
@@ -0,0 +1,77 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Отправляет STOMP-кадры с content-type:application/cbor бинарными WebSocket-сообщениями
+ * (StompSubProtocolHandler сам делает бинарными только application/octet-stream).
+ * Оборачивает только сессии /ws-native — SockJS бинарные кадры не поддерживает.
+ */
+public class BinaryFrameHandlerDecoratorFactory implements WebSocketHandlerDecoratorFactory {
+
+    private static final byte[] CBOR_HEADER = ("content-type:" + WireEncodingInterceptor.APPLICATION_CBOR)
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                boolean binary = Boolean.TRUE.equals(session.getAttributes().get(WireEncodingInterceptor.BINARY_FRAMES_ATTRIBUTE));
+                super.afterConnectionEstablished(binary ? new BinaryFrameSession(session) : session);
+            }
+        };
+    }
+
+    /**
+     * Ищем заголовок content-type только в блоке заголовков кадра (до пустой строки).
+     */
+    private static boolean isCborFrame(byte[] frame) {
+        int headersEnd = frame.length;
+        for (int i = 0; i + 1 < frame.length; i++) {
+            if (frame[i] == '\n' && frame[i + 1] == '\n') {
+                headersEnd = i;
+                break;
+            }
+        }
+        outer:
+        for (int i = 0; i + CBOR_HEADER.length <= headersEnd; i++) {
+            if (i > 0 && frame[i - 1] != '\n') {
+                continue;
+            }
+            for (int j = 0; j < CBOR_HEADER.length; j++) {
+                if (frame[i + j] != CBOR_HEADER[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static class BinaryFrameSession extends WebSocketSessionDecorator {
+
+        BinaryFrameSession(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (message instanceof TextMessage text && isCborFrame(text.asBytes())) {
+                super.sendMessage(new BinaryMessage(text.asBytes()));
+                return;
+            }
+            super.sendMessage(message);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlychat.cluster.ClusterUserRegistry;
+import ru.vkabanov.threadlychat.service.ContactEventService;
+import ru.vkabanov.threadlychat.service.ReadReceiptCoordinator;
+import ru.vkabanov.threadlychat.service.RecentMessagesCache;
+import ru.vkabanov.threadlychat.service.UnreadCounterService;
+import ru.vkabanov.threadlychat.service.UserStatusService;
+
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Датчики состояния узла: WebSocket-сессии и пользователи онлайн, пулы STOMP-каналов,
+ * очереди кадров по сессиям, кодировки кадров, карты статусов, очередь событий контактов, кэш последних сообщений,
+ * ожидающие прочтения и счётчики непрочитанных.
+ * Значения читаются при каждом опросе Prometheus, сами сервисы ничего не считают дополнительно.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatGaugesBinder implements MeterBinder {
+
+    private static final String[] EXECUTORS = {"inbound", "outbound", "broker"};
+
+    private final WebSocketExecutorMetrics executorMetrics;
+    private final WireEncodingInterceptor wireEncoding;
+    private final ClusterUserRegistry clusterUserRegistry;
+    private final UserStatusService userStatusService;
+    private final ContactEventService contactEventService;
+    private final RecentMessagesCache recentMessages;
+    private final ReadReceiptCoordinator readReceiptCoordinator;
+    private final UnreadCounterService unreadCounters;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("threadly.ws.sessions", clusterUserRegistry, ClusterUserRegistry::getLocalSessionCount)
+                .description("WebSocket sessions on this node")
+                .register(registry);
+        Gauge.builder("threadly.ws.users", clusterUserRegistry, ClusterUserRegistry::getLocalUserCount)
+                .description("Users with at least one WebSocket session on this node")
+                .register(registry);
+        Gauge.builder("threadly.users.online", userStatusService, UserStatusService::getOnlineCount)
+                .description("Users known as online across the cluster")
+                .register(registry);
+        Gauge.builder("threadly.users.status.entries", userStatusService, UserStatusService::getStatusCount)
+                .register(registry);
+        Gauge.builder("threadly.users.last-seen.entries", userStatusService, UserStatusService::getLastSeenCount)
+                .register(registry);
+
+        for (String executor : EXECUTORS) {
+            executorGauge(registry, "threadly.ws.executor.queue", executor, stats -> stats.queueSize());
+            executorGauge(registry, "threadly.ws.executor.active", executor, stats -> stats.active());
+            FunctionCounter.builder("threadly.ws.executor.rejected", executorMetrics,
+                            metrics -> metrics.snapshot().get(executor).rejected())
+                    .tag("executor", executor)
+                    .register(registry);
+        }
+
+        Gauge.builder("threadly.ws.session-queue.bytes", executorMetrics,
+                        metrics -> sessionQueue(metrics, SessionOutboundExecutor::getQueuedBytes))
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("threadly.ws.session-queue.dropped", executorMetrics,
+                        metrics -> sessionQueue(metrics, SessionOutboundExecutor::getDroppedFrames))
+                .register(registry);
+        FunctionCounter.builder("threadly.ws.session-queue.coalesced", executorMetrics,
+                        metrics -> sessionQueue(metrics, SessionOutboundExecutor::getCoalescedFrames))
+                .register(registry);
+        FunctionCounter.builder("threadly.ws.slow-consumer.disconnects", executorMetrics,
+                        metrics -> sessionQueue(metrics, SessionOutboundExecutor::getSlowConsumerDisconnects))
+                .register(registry);
+        FunctionCounter.builder("threadly.ws.inbound-session-queue.rejected", executorMetrics,
+                        metrics -> metrics.sessionInbound().map(SessionInboundExecutor::getRejectedFrames).orElse(0L))
+                .description("Inbound frames rejected because the session queue was full")
+                .register(registry);
+
+        FunctionCounter.builder("threadly.ws.frames", wireEncoding, wire -> wire.stats().jsonFrames())
+                .tag("encoding", "json").register(registry);
+        FunctionCounter.builder("threadly.ws.frames", wireEncoding, wire -> wire.stats().cborFrames())
+                .tag("encoding", "cbor").register(registry);
+        FunctionCounter.builder("threadly.ws.frame.bytes", wireEncoding, wire -> wire.stats().jsonBytes())
+                .tag("encoding", "json").baseUnit("bytes").register(registry);
+        FunctionCounter.builder("threadly.ws.frame.bytes", wireEncoding, wire -> wire.stats().cborBytes())
+                .tag("encoding", "cbor").baseUnit("bytes").register(registry);
+
+        Gauge.builder("threadly.contacts.events.queue", contactEventService, ContactEventService::getQueueSize)
+                .register(registry);
+        FunctionCounter.builder("threadly.contacts.events.dropped", contactEventService, ContactEventService::getDroppedEvents)
+                .register(registry);
+
+        FunctionCounter.builder("threadly.chat.recent.lookups", recentMessages, RecentMessagesCache::getHits)
+                .description("Page 0 and since reads answered from the recent messages cache")
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("threadly.chat.recent.lookups", recentMessages, RecentMessagesCache::getMisses)
+                .description("Page 0 and since reads answered from the recent messages cache")
+                .tag("result", "miss").register(registry);
+        Gauge.builder("threadly.chat.recent.bytes", recentMessages, RecentMessagesCache::getWeightedBytes)
+                .description("Estimated memory held by the recent messages cache")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("threadly.chat.recent.chats", recentMessages, RecentMessagesCache::getChatCount)
+                .register(registry);
+        FunctionCounter.builder("threadly.chat.recent.evictions", recentMessages, RecentMessagesCache::getEvictions)
+                .register(registry);
+
+        Gauge.builder("threadly.chat.read-receipts.pending", readReceiptCoordinator, ReadReceiptCoordinator::getPendingCount)
+                .register(registry);
+        FunctionCounter.builder("threadly.chat.read-receipts.coalesced", readReceiptCoordinator,
+                        ReadReceiptCoordinator::getCoalescedCount)
+                .description("Read commands merged into one already waiting for the window")
+                .register(registry);
+
+        Gauge.builder("threadly.chat.unread.users", unreadCounters, UnreadCounterService::getLoadedUsers)
+                .description("Users whose unread counters are loaded on this node")
+                .register(registry);
+        Gauge.builder("threadly.chat.unread.pending", unreadCounters, UnreadCounterService::getPendingChanges)
+                .description("Unread counter changes waiting to be persisted")
+                .register(registry);
+    }
+
+    /** Очередь на сессию может быть выключена — тогда 0. */
+    private static double sessionQueue(WebSocketExecutorMetrics metrics, ToLongFunction<SessionOutboundExecutor> value) {
+        return metrics.sessionOutbound().map(value::applyAsLong).orElse(0L);
+    }
+
+    private void executorGauge(MeterRegistry registry, String name, String executor,
+                               ToDoubleFunction<WebSocketExecutorMetrics.ExecutorStats> value) {
+        Gauge.builder(name, executorMetrics, metrics -> value.applyAsDouble(metrics.snapshot().get(executor)))
+                .tag("executor", executor)
+                .register(registry);
+    }
+}
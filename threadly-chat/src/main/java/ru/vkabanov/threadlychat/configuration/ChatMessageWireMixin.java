@@ -0,0 +1,22 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Set;
+
+/**
+ * Jackson mix-in для {@link ru.vkabanov.threadlychat.model.ChatMessage} в STOMP-кадрах:
+ * служебные поля (ключи объектов в MinIO, список удаливших) принимаются от клиента, но клиенту не отдаются.
+ * REST-ответы не затрагивает — mix-in подключён только к ObjectMapper конвертеров WebSocket.
+ */
+abstract class ChatMessageWireMixin {
+
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String imageKey;
+
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String mediaKey;
+
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private Set<String> deletedFor;
+}
@@ -0,0 +1,89 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Таймеры горячих путей чата. Теги только с малым числом значений: тип чата, операция, исход, HTTP-статус —
+ * никаких userId, chatId и ключей объектов.
+ * <p>
+ * Запросы к Mongo меряет сам Spring Boot: {@code mongodb.driver.commands} (команда и коллекция)
+ * и {@code spring.data.repository.invocations} (репозиторий и метод), а разбивку по вызывающему методу сервиса —
+ * {@link MongoCommandMonitor}.
+ */
+@Component
+public class ChatMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Timer directSend;
+    private final Timer groupSend;
+    private final DistributionSummary groupFanout;
+    private final Timer directPage;
+
+    public ChatMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.directSend = sendTimer("direct");
+        this.groupSend = sendTimer("group");
+        this.groupFanout = DistributionSummary.builder("threadly.chat.group.fanout")
+                .description("Recipients of one group message")
+                .baseUnit("recipients")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.directPage = Timer.builder("threadly.chat.messages.page")
+                .description("Loading one page of chat history")
+                .tag("chat", "direct")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public Timer directSend() {
+        return directSend;
+    }
+
+    public Timer groupSend() {
+        return groupSend;
+    }
+
+    public DistributionSummary groupFanout() {
+        return groupFanout;
+    }
+
+    public Timer directPage() {
+        return directPage;
+    }
+
+    /**
+     * Операция с хранилищем изображений: upload, get, presign, delete; outcome — success, missing или error.
+     */
+    public void recordStorage(String operation, String outcome, long startedNanos) {
+        Timer.builder("threadly.chat.storage")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Отправка web push; status — HTTP-код ответа push-сервиса или error, если ответа не было.
+     */
+    public void recordPush(String status, long startedNanos) {
+        Timer.builder("threadly.chat.push.sends")
+                .tag("status", status)
+                .register(registry)
+                .record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer sendTimer(String chat) {
+        return Timer.builder("threadly.chat.messages.send")
+                .description("Persisting and dispatching one message")
+                .tag("chat", chat)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
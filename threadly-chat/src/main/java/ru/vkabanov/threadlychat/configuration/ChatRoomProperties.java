@@ -0,0 +1,23 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Комнаты личных чатов: кэш пара → chatId и перевод старых зеркальных комнат в канонические.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.chat-rooms")
+public class ChatRoomProperties {
+
+    /** Сколько пар собеседников держать в кэше chatId. Связь пары и chatId не меняется, TTL не нужен. */
+    private long cacheMaxSize = 100_000;
+
+    /** При старте переводить комнаты старого формата (две зеркальные записи на пару) в канонические. */
+    private boolean migrateLegacy = true;
+
+    /** Сколько старых комнат обрабатывать за один проход миграции. */
+    private int migrationBatchSize = 500;
+}
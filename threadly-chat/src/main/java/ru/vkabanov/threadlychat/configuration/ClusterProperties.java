@@ -0,0 +1,50 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки межузловой шины threadly-chat (несколько реплик за Caddy).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.cluster")
+public class ClusterProperties {
+
+    /** Реализация шины: local (в пределах JVM) или tcp (между процессами). */
+    private String mode = "local";
+
+    /** Идентификатор узла. Если не задан — генерируется при старте. */
+    private String nodeId;
+
+    /** Группа узлов для local-шины: контексты с одинаковой группой в одной JVM видят друг друга. */
+    private String localGroup = "default";
+
+    private Tcp tcp = new Tcp();
+
+    @Data
+    public static class Tcp {
+
+        /** Адрес, на котором узел принимает соединения соседей; наружу порт открывать нельзя — только во внутреннюю сеть. */
+        private String bindHost = "127.0.0.1";
+
+        private int port = 7600;
+
+        /** Соседи в формате host:port. */
+        private List<String> peers = new ArrayList<>();
+
+        /** Общий секрет рукопожатия. Если не задан — используется security.jwt.secret. */
+        private String secret;
+
+        /** Ёмкость очереди исходящих событий на одного соседа; при переполнении события отбрасываются. */
+        private int queueCapacity = 10_000;
+
+        private long reconnectDelayMs = 2_000L;
+
+        private int connectTimeoutMs = 3_000;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Публикация событий о контактах в auth-сервис (локальная копия контактов для /users/summaries).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.contacts")
+public class ContactEventsProperties {
+
+    /** http — POST в auth /internal/contact-events, local — в памяти процесса (тесты, запуск без auth). */
+    private String transport = "http";
+
+    private String authServiceUrl = "http://localhost:8081";
+
+    /** Как часто отправлять накопленные события. */
+    private long flushIntervalMs = 500;
+
+    /** Не больше событий в одном запросе. */
+    private int batchSize = 500;
+
+    /** Ёмкость очереди неотправленных событий; при переполнении новые события отбрасываются (их восстановит сверка в auth). */
+    private int queueCapacity = 10000;
+
+    /** Сколько недавно отправленных рёбер помнить, чтобы не слать STARTED на каждое сообщение. */
+    private long dedupeMaxSize = 100000;
+
+    /** Через сколько минут ребро отправляется повторно — страховка от потерянных событий. */
+    private long dedupeTtlMinutes = 60;
+}
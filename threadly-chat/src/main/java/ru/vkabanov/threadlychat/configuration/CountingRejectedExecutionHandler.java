@@ -0,0 +1,30 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Считает отказы пула и передаёт задачу выбранной политике (CallerRuns или Abort).
+ */
+public class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final RejectedExecutionHandler delegate;
+
+    public CountingRejectedExecutionHandler(WebSocketExecutorProperties.RejectionPolicy policy) {
+        this.delegate = policy == WebSocketExecutorProperties.RejectionPolicy.ABORT
+                ? new ThreadPoolExecutor.AbortPolicy()
+                : new ThreadPoolExecutor.CallerRunsPolicy();
+    }
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        rejected.incrementAndGet();
+        delegate.rejectedExecution(task, executor);
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
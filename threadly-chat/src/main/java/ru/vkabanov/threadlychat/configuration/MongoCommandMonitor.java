@@ -0,0 +1,526 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlychat.ThreadlyChatApplication;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Учёт каждой команды Mongo на уровне драйвера: таймер {@code threadly.mongo.commands} с тегом caller —
+ * метод нашего сервиса, из которого пришёл запрос, — и кольцевой буфер последних медленных команд.
+ * <p>
+ * Для медленной команды храним форму запроса без литералов, а план и docsExamined получаем отдельным
+ * explain(executionStats) в фоне, не чаще раза в {@code explainIntervalSeconds} на одну форму.
+ * Сами значения фильтров из процесса не уходят: ни в буфер, ни в метрики, ни в лог.
+ */
+@Slf4j
+@Component
+public class MongoCommandMonitor implements CommandListener, MongoClientSettingsBuilderCustomizer {
+
+    /** Служебные команды драйвера: не интересны и бывают на каждом соединении. */
+    private static final Set<String> IGNORED_COMMANDS = Set.of(
+            "hello", "ismaster", "isMaster", "saslStart", "saslContinue", "ping", "buildInfo",
+            "endSessions", "killCursors", "explain", "getLastError");
+
+    /** Команды, форму которых можем показать и повторить через explain. */
+    private static final Set<String> EXPLAINABLE_COMMANDS = Set.of(
+            "find", "aggregate", "count", "distinct", "update", "delete", "findAndModify");
+
+    private static final String APPLICATION_PACKAGE = ThreadlyChatApplication.class.getPackageName() + ".";
+    private static final BsonString REDACTED = new BsonString("?");
+    private static final int MAX_EXPLAINED_SHAPES = 10_000;
+
+    private final MeterRegistry registry;
+    private final MongoQueryProperties properties;
+    private final ObjectProvider<MongoClient> mongoClient;
+    private final StackWalker stackWalker = StackWalker.getInstance();
+
+    private final Map<Integer, PendingCommand> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, ExplainedPlan> explainedShapes = new ConcurrentHashMap<>();
+    private final ArrayDeque<SlowCommand> slowCommands = new ArrayDeque<>();
+    private final ThreadPoolExecutor explainExecutor;
+
+    public MongoCommandMonitor(MeterRegistry registry, MongoQueryProperties properties,
+                               ObjectProvider<MongoClient> mongoClient) {
+        this.registry = registry;
+        this.properties = properties;
+        this.mongoClient = mongoClient;
+        // Один поток и короткая очередь: explain — диагностика, при всплеске медленных запросов лишние отбрасываем
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(16), runnable -> {
+            Thread thread = new Thread(runnable, "mongo-explain");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public void customize(MongoClientSettings.Builder builder) {
+        builder.addCommandListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainExecutor.shutdownNow();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String command = event.getCommandName();
+        if (IGNORED_COMMANDS.contains(command)) {
+            return;
+        }
+        BsonDocument body = event.getCommand();
+        String collection = collectionOf(command, body);
+        // Документ команды живёт только внутри колбэка — копируем лишь поля запроса, без вставляемых документов
+        BsonDocument query = EXPLAINABLE_COMMANDS.contains(command) ? queryPart(command, body) : null;
+        String caller = properties.isCaptureCaller() ? findCaller() : "unknown";
+        inFlight.put(event.getRequestId(),
+                new PendingCommand(event.getDatabaseName(), command, collection, caller, query));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        PendingCommand pending = inFlight.remove(event.getRequestId());
+        if (pending != null) {
+            complete(pending, event.getElapsedTime(TimeUnit.NANOSECONDS), "success");
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        PendingCommand pending = inFlight.remove(event.getRequestId());
+        if (pending != null) {
+            complete(pending, event.getElapsedTime(TimeUnit.NANOSECONDS), "error");
+        }
+    }
+
+    /**
+     * Последние медленные команды, новые первыми.
+     */
+    public List<SlowCommand> getSlowCommands() {
+        List<SlowCommand> result;
+        synchronized (slowCommands) {
+            result = new ArrayList<>(slowCommands);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    public void clearSlowCommands() {
+        synchronized (slowCommands) {
+            slowCommands.clear();
+        }
+        explainedShapes.clear();
+    }
+
+    public long getSlowThresholdMs() {
+        return properties.getSlowCommandMs();
+    }
+
+    private void complete(PendingCommand pending, long elapsedNanos, String outcome) {
+        Timer.builder("threadly.mongo.commands")
+                .description("Mongo commands by calling method")
+                .tag("command", pending.command())
+                .tag("collection", pending.collection())
+                .tag("caller", pending.caller())
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (durationMs < properties.getSlowCommandMs()) {
+            return;
+        }
+        Counter.builder("threadly.mongo.slow")
+                .description("Mongo commands slower than threadly.mongo.slow-command-ms")
+                .tag("command", pending.command())
+                .tag("collection", pending.collection())
+                .tag("caller", pending.caller())
+                .register(registry)
+                .increment();
+
+        String shape = pending.query() != null ? redact(pending.command(), pending.query()).toJson() : "";
+        String shapeKey = pending.collection() + ':' + shape;
+        ExplainedPlan known = explainedShapes.get(shapeKey);
+        boolean stale = known == null || known.explainedAt()
+                .isBefore(Instant.now().minusSeconds(properties.getExplainIntervalSeconds()));
+        if (properties.isExplainSlow() && pending.query() != null && stale && explainable(pending)) {
+            try {
+                explainExecutor.execute(() -> {
+                    ExplainedPlan plan = explain(pending, shapeKey);
+                    addSlowCommand(pending, durationMs, outcome, shape, plan != null ? plan : known);
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                log.debug("Explain queue is full, storing slow {} on {} without a fresh plan",
+                        pending.command(), pending.collection());
+            }
+        }
+        addSlowCommand(pending, durationMs, outcome, shape, known);
+    }
+
+    private void addSlowCommand(PendingCommand pending, long durationMs, String outcome, String shape,
+                                ExplainedPlan plan) {
+        SlowCommand entry = new SlowCommand(Instant.now(), pending.command(), pending.collection(),
+                pending.caller(), durationMs, outcome, shape,
+                plan != null ? plan.docsExamined() : null,
+                plan != null ? plan.keysExamined() : null,
+                plan != null ? plan.nReturned() : null,
+                plan != null ? plan.planSummary() : null);
+        synchronized (slowCommands) {
+            while (slowCommands.size() >= Math.max(1, properties.getSlowBufferSize())) {
+                slowCommands.pollFirst();
+            }
+            slowCommands.addLast(entry);
+        }
+        log.warn("Slow Mongo {} on {} from {}: {} ms, plan {}, docsExamined {}",
+                entry.command(), entry.collection(), entry.caller(), durationMs,
+                entry.planSummary(), entry.docsExamined());
+    }
+
+    private ExplainedPlan explain(PendingCommand pending, String shapeKey) {
+        MongoClient client = mongoClient.getIfAvailable();
+        if (client == null) {
+            return null;
+        }
+        try {
+            BsonDocument explainCommand = new BsonDocument("explain", pending.query())
+                    .append("verbosity", new BsonString("executionStats"));
+            BsonDocument result = client.getDatabase(pending.database())
+                    .runCommand(explainCommand, BsonDocument.class);
+            ExplainedPlan plan = parseExplain(result);
+            if (explainedShapes.size() >= MAX_EXPLAINED_SHAPES) {
+                explainedShapes.clear();
+            }
+            explainedShapes.put(shapeKey, plan);
+            if (plan.planSummary().contains("COLLSCAN")) {
+                Counter.builder("threadly.mongo.collscans")
+                        .description("Slow Mongo commands whose plan scans the whole collection")
+                        .tag("collection", pending.collection())
+                        .tag("caller", pending.caller())
+                        .register(registry)
+                        .increment();
+            }
+            return plan;
+        } catch (RuntimeException e) {
+            log.debug("Explain of slow {} on {} failed: {}", pending.command(), pending.collection(), e.getMessage());
+            return null;
+        }
+    }
+
+    static ExplainedPlan parseExplain(BsonDocument result) {
+        BsonDocument planner = findDocument(result, "queryPlanner");
+        BsonDocument winningPlan = planner != null && planner.isDocument("winningPlan")
+                ? planner.getDocument("winningPlan") : null;
+        List<String> stages = new ArrayList<>();
+        if (winningPlan != null) {
+            collectStages(winningPlan, stages);
+        }
+        BsonDocument stats = findDocument(result, "executionStats");
+        return new ExplainedPlan(Instant.now(),
+                stats != null ? longValue(stats, "totalDocsExamined") : null,
+                stats != null ? longValue(stats, "totalKeysExamined") : null,
+                stats != null ? longValue(stats, "nReturned") : null,
+                stages.isEmpty() ? "unknown" : String.join(" > ", stages));
+    }
+
+    /**
+     * Стадии выигравшего плана сверху вниз: {@code SORT > FETCH > IXSCAN(chatId_1_timestamp_-1)}.
+     * В Mongo 5+ план может лежать внутри queryPlan (SBE), у OR и SORT_MERGE — несколько inputStages.
+     */
+    private static void collectStages(BsonDocument plan, List<String> stages) {
+        if (plan.isDocument("queryPlan")) {
+            collectStages(plan.getDocument("queryPlan"), stages);
+            return;
+        }
+        if (plan.isString("stage")) {
+            String stage = plan.getString("stage").getValue();
+            stages.add(plan.isString("indexName") ? stage + "(" + plan.getString("indexName").getValue() + ")" : stage);
+        }
+        if (plan.isDocument("inputStage")) {
+            collectStages(plan.getDocument("inputStage"), stages);
+        }
+        if (plan.isArray("inputStages")) {
+            for (BsonValue child : plan.getArray("inputStages")) {
+                if (child.isDocument()) {
+                    collectStages(child.asDocument(), stages);
+                }
+            }
+        }
+    }
+
+    /**
+     * Поиск вложенного документа по ключу: у aggregate план лежит в stages[0].$cursor, у find — на верхнем уровне.
+     */
+    private static BsonDocument findDocument(BsonValue value, String key) {
+        if (value.isDocument()) {
+            BsonDocument document = value.asDocument();
+            if (document.isDocument(key)) {
+                return document.getDocument(key);
+            }
+            for (BsonValue child : document.values()) {
+                BsonDocument found = findDocument(child, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else if (value.isArray()) {
+            for (BsonValue child : value.asArray()) {
+                BsonDocument found = findDocument(child, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Long longValue(BsonDocument document, String key) {
+        BsonValue value = document.get(key);
+        return value != null && value.isNumber() ? value.asNumber().longValue() : null;
+    }
+
+    /**
+     * explain с executionStats для $out/$merge запрещён, у остальных команд он ничего не пишет.
+     */
+    private static boolean explainable(PendingCommand pending) {
+        if (!"aggregate".equals(pending.command()) || !pending.query().isArray("pipeline")) {
+            return true;
+        }
+        for (BsonValue stage : pending.query().getArray("pipeline")) {
+            if (stage.isDocument() && (stage.asDocument().containsKey("$out") || stage.asDocument().containsKey("$merge"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String collectionOf(String command, BsonDocument body) {
+        BsonValue value = "getMore".equals(command) ? body.get("collection") : body.get(command);
+        return value != null && value.isString() ? value.asString().getValue() : "none";
+    }
+
+    /**
+     * Копия команды, пригодная для explain: имя коллекции и поля, влияющие на план.
+     * Для update и delete берём первый оператор — остальные в пачке обычно той же формы.
+     */
+    private static BsonDocument queryPart(String command, BsonDocument body) {
+        BsonDocument query = new BsonDocument(command, body.get(command));
+        switch (command) {
+            case "find" -> copy(body, query, "filter", "sort", "projection", "hint", "skip", "limit");
+            case "aggregate" -> {
+                copy(body, query, "pipeline", "hint");
+                query.append("cursor", new BsonDocument());
+            }
+            case "count" -> copy(body, query, "query", "hint", "skip", "limit");
+            case "distinct" -> copy(body, query, "key", "query");
+            case "update" -> copyFirst(body, query, "updates");
+            case "delete" -> copyFirst(body, query, "deletes");
+            case "findAndModify" -> copy(body, query, "query", "sort", "fields", "update", "remove", "upsert", "new");
+            default -> {
+            }
+        }
+        return query;
+    }
+
+    private static void copy(BsonDocument from, BsonDocument to, String... keys) {
+        for (String key : keys) {
+            BsonValue value = from.get(key);
+            if (value != null) {
+                to.append(key, deepCopy(value));
+            }
+        }
+    }
+
+    private static void copyFirst(BsonDocument from, BsonDocument to, String key) {
+        BsonValue value = from.get(key);
+        if (value != null && value.isArray() && !value.asArray().isEmpty()) {
+            to.append(key, new BsonArray(List.of(deepCopy(value.asArray().get(0)))));
+        }
+    }
+
+    private static BsonValue deepCopy(BsonValue value) {
+        if (value.isDocument()) {
+            return value.asDocument().clone();
+        }
+        if (value.isArray()) {
+            return value.asArray().clone();
+        }
+        return value;
+    }
+
+    /**
+     * Форма команды без литералов: значения в фильтрах и обновлениях заменяются на "?", списки $in — на ["?"].
+     * Ссылки на поля ("$field"), sort, projection, limit и skip остаются как есть.
+     */
+    static BsonDocument redact(String command, BsonDocument query) {
+        BsonDocument shape = new BsonDocument(command, query.get(command));
+        for (Map.Entry<String, BsonValue> entry : query.entrySet()) {
+            String key = entry.getKey();
+            BsonValue value = entry.getValue();
+            if (key.equals(command)) {
+                continue;
+            }
+            switch (key) {
+                case "filter", "query", "update" -> shape.append(key, redactValue(value));
+                case "pipeline" -> shape.append(key, redactPipeline(value));
+                case "updates", "deletes" -> shape.append(key, redactStatements(value));
+                default -> shape.append(key, value);
+            }
+        }
+        return shape;
+    }
+
+    private static BsonValue redactPipeline(BsonValue pipeline) {
+        if (!pipeline.isArray()) {
+            return REDACTED;
+        }
+        BsonArray stages = new BsonArray();
+        for (BsonValue stage : pipeline.asArray()) {
+            if (stage.isDocument() && stage.asDocument().containsKey("$match")) {
+                stages.add(new BsonDocument("$match", redactValue(stage.asDocument().get("$match"))));
+            } else {
+                stages.add(redactStrings(stage));
+            }
+        }
+        return stages;
+    }
+
+    private static BsonValue redactStatements(BsonValue statements) {
+        if (!statements.isArray()) {
+            return REDACTED;
+        }
+        BsonArray result = new BsonArray();
+        for (BsonValue statement : statements.asArray()) {
+            if (!statement.isDocument()) {
+                continue;
+            }
+            BsonDocument redacted = new BsonDocument();
+            statement.asDocument().forEach((key, value) -> redacted.append(key,
+                    "q".equals(key) || "u".equals(key) ? redactValue(value) : value));
+            result.add(redacted);
+        }
+        return result;
+    }
+
+    /** Фильтр или обновление: любые скалярные значения скрываем, кроме флагов $exists и ссылок на поля. */
+    private static BsonValue redactValue(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument redacted = new BsonDocument();
+            value.asDocument().forEach((key, child) -> {
+                if ("$exists".equals(key)) {
+                    redacted.append(key, child);
+                } else if (child.isArray() && ("$in".equals(key) || "$nin".equals(key) || "$all".equals(key))) {
+                    redacted.append(key, new BsonArray(List.of(REDACTED)));
+                } else {
+                    redacted.append(key, redactValue(child));
+                }
+            });
+            return redacted;
+        }
+        if (value.isArray()) {
+            BsonArray redacted = new BsonArray();
+            value.asArray().forEach(child -> redacted.add(redactValue(child)));
+            return redacted;
+        }
+        if (value.isString() && value.asString().getValue().startsWith("$")) {
+            return value;
+        }
+        return REDACTED;
+    }
+
+    /** Стадии кроме $match: числа и флаги — это спецификации (1/-1, limit), строки без "$" — литералы. */
+    private static BsonValue redactStrings(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument redacted = new BsonDocument();
+            value.asDocument().forEach((key, child) -> redacted.append(key, redactStrings(child)));
+            return redacted;
+        }
+        if (value.isArray()) {
+            BsonArray redacted = new BsonArray();
+            value.asArray().forEach(child -> redacted.add(redactStrings(child)));
+            return redacted;
+        }
+        if (value.isString() && !value.asString().getValue().startsWith("$")) {
+            return REDACTED;
+        }
+        if (value.isNumber() || value.isBoolean() || value.isString() || value.isNull()) {
+            return value;
+        }
+        return REDACTED;
+    }
+
+    /**
+     * Первый кадр нашего кода выше драйвера и прокси Spring Data: {@code ChatMessageService.findChatMessagesPage}.
+     * Лямбды сворачиваем к объемлющему методу, чтобы тег не зависел от номера lambda$.
+     */
+    private String findCaller() {
+        Optional<StackWalker.StackFrame> frame = stackWalker.walk(frames -> frames
+                .filter(f -> f.getClassName().startsWith(APPLICATION_PACKAGE))
+                .filter(f -> !f.getClassName().contains("$$"))
+                .filter(f -> !f.getClassName().equals(MongoCommandMonitor.class.getName()))
+                .findFirst());
+        if (frame.isEmpty()) {
+            return "unknown";
+        }
+        String className = frame.get().getClassName();
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        int nested = simpleName.indexOf('$');
+        if (nested > 0) {
+            simpleName = simpleName.substring(0, nested);
+        }
+        String method = frame.get().getMethodName();
+        if (method.startsWith("lambda$")) {
+            int end = method.indexOf('$', "lambda$".length());
+            method = end > 0 ? method.substring("lambda$".length(), end) : method;
+        }
+        return simpleName + "." + method;
+    }
+
+    private record PendingCommand(String database, String command, String collection, String caller,
+                                  BsonDocument query) {
+    }
+
+    record ExplainedPlan(Instant explainedAt, Long docsExamined, Long keysExamined, Long nReturned,
+                         String planSummary) {
+    }
+
+    /**
+     * Медленная команда в буфере. docsExamined, keysExamined, nReturned и planSummary — из последнего explain
+     * этой же формы запроса; null, если explain выключен или ещё не выполнялся.
+     */
+    public record SlowCommand(Instant time, String command, String collection, String caller, long durationMs,
+                              String outcome, String shape, Long docsExamined, Long keysExamined,
+                              Long nReturned, String planSummary) {
+    }
+}
@@ -0,0 +1,30 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Учёт команд Mongo ({@code threadly.mongo.*}): порог «медленной» команды, размер буфера последних медленных
+ * и explain для них.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.mongo")
+public class MongoQueryProperties {
+
+    /** Команда дольше порога попадает в буфер медленных, мс. */
+    private long slowCommandMs = 100;
+
+    /** Сколько последних медленных команд держим в памяти. */
+    private int slowBufferSize = 200;
+
+    /** Запускать explain(executionStats) для медленной команды, чтобы получить план и docsExamined. */
+    private boolean explainSlow = true;
+
+    /** Не чаще одного explain на одну форму запроса за этот интервал, с. */
+    private int explainIntervalSeconds = 60;
+
+    /** Искать в стеке метод сервиса или репозитория, из которого пришла команда (тег caller). */
+    private boolean captureCaller = true;
+}
@@ -0,0 +1,20 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Прочтения личных чатов: склейка команд «прочитано до» за окно и один read-receipt на окно.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.read-receipts")
+public class ReadReceiptsProperties {
+
+    /** Окно склейки: как часто применяются накопленные прочтения. */
+    private long windowMs = 300;
+
+    /** Сколько пар «отправитель, читатель» может ждать окна; сверх этого прочтение применяется сразу. */
+    private int maxPending = 100_000;
+}
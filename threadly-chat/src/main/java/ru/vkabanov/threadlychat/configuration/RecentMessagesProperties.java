@@ -0,0 +1,22 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэш последних сообщений активных чатов: первая страница истории и догрузка «since» без похода в Mongo.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.recent-messages")
+public class RecentMessagesProperties {
+
+    private boolean enabled = true;
+
+    /** Сколько последних сообщений держать на чат. Не меньше размера первой страницы (50) плюс одно для hasMore. */
+    private int messagesPerChat = 100;
+
+    /** Предел памяти всего кэша по оценке размера сообщений; при превышении вытесняются давно не читанные чаты. */
+    private long maxBytes = 64L * 1024 * 1024;
+}
@@ -1,6 +1,7 @@
 package ru.vkabanov.threadlychat.configuration;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -32,7 +33,9 @@ public class SecurityConfig {
                 .and()
                 .authorizeRequests()
                 .antMatchers("/push/vapid-public-key").permitAll()
-                .antMatchers("/ws/**").permitAll()
+                // Метрики и health — только на порту management, наружу он не публикуется
+                .requestMatchers(EndpointRequest.to("health", "prometheus", "slowqueries")).permitAll()
+                .antMatchers("/ws/**", "/ws-native").permitAll()
                 // Все REST-ручки чата (сообщения, изображения, медиа, группы, push) доступны только после авторизации
                 .antMatchers("/messages/**", "/chats/**", "/push/**", "/media/**", "/groups/**").authenticated()
                 .anyRequest().authenticated()
@@ -0,0 +1,179 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул clientInboundChannel, в котором кадры одной сессии обрабатываются строго по очереди, а разные сессии —
+ * параллельно. В Spring 5.3 у StompEndpointRegistry нет preserveReceiveOrder, поэтому порядок держим здесь.
+ * <p>
+ * Очередь сессии живёт, пока в ней есть кадры: опустевшая удаляется, так что отдельно следить за отключением
+ * не нужно. Очередь ограничена: кадр сверх лимита отклоняется {@link TaskRejectedException}, на что
+ * StompSubProtocolHandler отвечает клиенту ERROR-кадром и закрывает сессию.
+ */
+@Slf4j
+public class SessionInboundExecutor extends ThreadPoolTaskExecutor {
+
+    /** Сколько кадров сессии выполнить подряд, прежде чем уступить поток другим сессиям. */
+    private static final int DRAIN_BATCH = 32;
+
+    private final int sessionQueueCapacity;
+
+    private final Map<String, SessionQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejectedFrames = new AtomicLong();
+
+    public SessionInboundExecutor(int sessionQueueCapacity) {
+        this.sessionQueueCapacity = sessionQueueCapacity;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!(task instanceof MessageHandlingRunnable runnable)) {
+            super.execute(task);
+            return;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(runnable.getMessage().getHeaders());
+        if (sessionId == null) {
+            super.execute(task);
+            return;
+        }
+        // DISCONNECT принимается всегда: без него брокер не снимет подписки закрытой сессии
+        boolean bounded = SimpMessageHeaderAccessor.getMessageType(runnable.getMessage().getHeaders())
+                != SimpMessageType.DISCONNECT;
+        SessionQueue queue;
+        Offer offer;
+        do {
+            queue = queues.computeIfAbsent(sessionId, SessionQueue::new);
+            offer = queue.offer(runnable, bounded);
+        } while (offer == Offer.RETRY);
+        if (offer == Offer.FULL) {
+            rejectedFrames.incrementAndGet();
+            log.warn("Inbound queue of session {} is full ({} frame(s)), rejecting frame", sessionId, sessionQueueCapacity);
+            throw new TaskRejectedException("Inbound queue of session " + sessionId + " is full");
+        }
+        if (offer == Offer.START) {
+            try {
+                super.execute(queue::drain);
+            } catch (TaskRejectedException e) {
+                queue.abortDrain(runnable);
+                throw e;
+            }
+        }
+    }
+
+    public int getSessionCount() {
+        return queues.size();
+    }
+
+    public long getRejectedFrames() {
+        return rejectedFrames.get();
+    }
+
+    private enum Offer {
+        /** Кадр в очереди, обработку нужно запустить. */
+        START,
+        /** Кадр в очереди, обработка уже идёт. */
+        QUEUED,
+        /** Очередь переполнена, кадр не принят. */
+        FULL,
+        /** Очередь уже удалена — нужно взять новую. */
+        RETRY
+    }
+
+    private final class SessionQueue {
+
+        private final String sessionId;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private boolean draining;
+        private boolean removed;
+
+        SessionQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        synchronized Offer offer(Runnable task, boolean bounded) {
+            if (removed) {
+                return Offer.RETRY;
+            }
+            if (bounded && tasks.size() >= sessionQueueCapacity) {
+                return Offer.FULL;
+            }
+            tasks.addLast(task);
+            if (draining) {
+                return Offer.QUEUED;
+            }
+            draining = true;
+            return Offer.START;
+        }
+
+        /**
+         * Пул отказал в запуске обработки: кадр не принят, следующий кадр сессии запустит обработку заново.
+         */
+        synchronized void abortDrain(Runnable task) {
+            tasks.removeLastOccurrence(task);
+            draining = false;
+        }
+
+        void drain() {
+            while (true) {
+                for (int i = 0; i < DRAIN_BATCH; i++) {
+                    Runnable task;
+                    synchronized (this) {
+                        task = tasks.pollFirst();
+                        if (task == null) {
+                            draining = false;
+                            removed = true;
+                            queues.remove(sessionId, this);
+                            return;
+                        }
+                    }
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        log.warn("Failed to handle inbound frame of session {}", sessionId, e);
+                    }
+                }
+                if (handOff()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Уступить поток другим сессиям: остаток очереди — следующей задачей пула. false — пул её не принял
+         * (ABORT) или выполнил бы в этом же потоке (CALLER_RUNS), тогда очередь продолжает текущий цикл,
+         * а не вложенный вызов drain.
+         */
+        private boolean handOff() {
+            Thread caller = Thread.currentThread();
+            AtomicBoolean submitting = new AtomicBoolean(true);
+            AtomicBoolean inline = new AtomicBoolean();
+            try {
+                SessionInboundExecutor.super.execute(() -> {
+                    if (Thread.currentThread() == caller && submitting.get()) {
+                        inline.set(true);
+                        return;
+                    }
+                    drain();
+                });
+            } catch (TaskRejectedException e) {
+                return false;
+            } finally {
+                submitting.set(false);
+            }
+            return !inline.get();
+        }
+    }
+}
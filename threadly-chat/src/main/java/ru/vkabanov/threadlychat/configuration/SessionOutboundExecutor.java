@@ -0,0 +1,346 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул clientOutboundChannel с ограниченной очередью на каждую сессию.
+ * <p>
+ * Кадры одной сессии выполняются строго по очереди (вместо preservePublishOrder), разные сессии — параллельно.
+ * При переполнении очереди сессии действует {@link WebSocketSessionProperties.OverflowPolicy}:
+ * сначала сбрасываются статусы и typing, одинаковые read-receipts склеиваются, затем клиент
+ * отключается ERROR-кадром с message=resync (после переподключения он перечитывает состояние).
+ */
+@Slf4j
+public class SessionOutboundExecutor extends ThreadPoolTaskExecutor implements ApplicationListener<SessionDisconnectEvent> {
+
+    public static final String RESYNC_MESSAGE = "resync";
+
+    /** Сколько кадров сессии выполнить подряд, прежде чем уступить поток другим сессиям. */
+    private static final int DRAIN_BATCH = 32;
+
+    private final WebSocketSessionProperties properties;
+
+    private final Map<String, SessionQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong coalescedFrames = new AtomicLong();
+    private final AtomicLong slowConsumerDisconnects = new AtomicLong();
+
+    public SessionOutboundExecutor(WebSocketSessionProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!(task instanceof MessageHandlingRunnable runnable)) {
+            super.execute(task);
+            return;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(runnable.getMessage().getHeaders());
+        if (sessionId == null) {
+            super.execute(task);
+            return;
+        }
+        SessionQueue queue = queues.computeIfAbsent(sessionId, SessionQueue::new);
+        if (queue.offer(runnable)) {
+            try {
+                super.execute(queue::drain);
+            } catch (TaskRejectedException e) {
+                queue.abortDrain();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(SessionDisconnectEvent event) {
+        SessionQueue queue = queues.remove(event.getSessionId());
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    /**
+     * Объём очереди по сессиям, байт (только непустые).
+     */
+    public Map<String, Long> getQueuedBytesBySession() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        queues.forEach((sessionId, queue) -> {
+            long bytes = queue.getBytes();
+            if (bytes > 0) {
+                result.put(sessionId, bytes);
+            }
+        });
+        return result;
+    }
+
+    public long getQueuedBytes() {
+        return queues.values().stream().mapToLong(SessionQueue::getBytes).sum();
+    }
+
+    public int getSessionCount() {
+        return queues.size();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getCoalescedFrames() {
+        return coalescedFrames.get();
+    }
+
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.get();
+    }
+
+    private enum FrameKind {
+        /** Служебные кадры (CONNECTED, heartbeat, ERROR) — никогда не сбрасываются. */
+        CONTROL,
+        /** Статусы и typing — устаревают быстрее всего, сбрасываются первыми. */
+        PRESENCE,
+        /** Read-receipts — одинаковые кадры склеиваются. */
+        RECEIPT,
+        REGULAR
+    }
+
+    private static FrameKind kindOf(Message<?> message) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return FrameKind.CONTROL;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return FrameKind.REGULAR;
+        }
+        if (destination.startsWith("/topic/status") || destination.contains("/typing")) {
+            return FrameKind.PRESENCE;
+        }
+        if (destination.endsWith("/queue/read-receipts")) {
+            return FrameKind.RECEIPT;
+        }
+        return FrameKind.REGULAR;
+    }
+
+    private static long sizeOf(Message<?> message) {
+        return message.getPayload() instanceof byte[] bytes ? bytes.length : 0;
+    }
+
+    private static boolean samePayload(MessageHandlingRunnable a, MessageHandlingRunnable b) {
+        Message<?> left = a.getMessage();
+        Message<?> right = b.getMessage();
+        return left.getPayload() instanceof byte[] l && right.getPayload() instanceof byte[] r
+                && Arrays.equals(l, r)
+                && Objects.equals(SimpMessageHeaderAccessor.getDestination(left.getHeaders()),
+                SimpMessageHeaderAccessor.getDestination(right.getHeaders()));
+    }
+
+    private final class SessionQueue {
+
+        private final String sessionId;
+        private final Deque<MessageHandlingRunnable> tasks = new ArrayDeque<>();
+        private long bytes;
+        private boolean draining;
+        private boolean closed;
+
+        SessionQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Поставить кадр в очередь. true — нужно запустить обработку очереди.
+         */
+        synchronized boolean offer(MessageHandlingRunnable task) {
+            if (closed) {
+                return false;
+            }
+            FrameKind kind = kindOf(task.getMessage());
+            long size = sizeOf(task.getMessage());
+
+            if (kind != FrameKind.CONTROL) {
+                WebSocketSessionProperties.OverflowPolicy policy = properties.getOverflowPolicy();
+                if (policy != WebSocketSessionProperties.OverflowPolicy.DISCONNECT
+                        && exceeds(size, properties.getQueueSoftLimitRatio())) {
+                    if (kind == FrameKind.PRESENCE) {
+                        droppedFrames.incrementAndGet();
+                        return false;
+                    }
+                    shedPresence();
+                    if (kind == FrameKind.RECEIPT && hasSameReceipt(task)) {
+                        coalescedFrames.incrementAndGet();
+                        return false;
+                    }
+                }
+                if (exceeds(size, 1.0)) {
+                    if (policy == WebSocketSessionProperties.OverflowPolicy.SHED_THEN_DROP) {
+                        droppedFrames.incrementAndGet();
+                        return false;
+                    }
+                    return disconnect(task.getMessageHandler());
+                }
+            }
+            tasks.addLast(task);
+            bytes += size;
+            return startDrain();
+        }
+
+        synchronized void abortDrain() {
+            draining = false;
+        }
+
+        synchronized void close() {
+            closed = true;
+            tasks.clear();
+            bytes = 0;
+        }
+
+        void drain() {
+            while (true) {
+                for (int i = 0; i < DRAIN_BATCH; i++) {
+                    MessageHandlingRunnable task;
+                    synchronized (this) {
+                        task = tasks.pollFirst();
+                        if (task == null) {
+                            draining = false;
+                            return;
+                        }
+                        bytes -= sizeOf(task.getMessage());
+                    }
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        log.debug("Failed to send frame to session {}: {}", sessionId, e.getMessage());
+                    }
+                }
+                if (handOff()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Уступить поток другим сессиям: остаток очереди — следующей задачей пула. false — пул её не принял
+         * или выполнил бы в этом же потоке (CALLER_RUNS), тогда продолжаем текущий цикл без рекурсии.
+         */
+        private boolean handOff() {
+            Thread caller = Thread.currentThread();
+            AtomicBoolean submitting = new AtomicBoolean(true);
+            AtomicBoolean inline = new AtomicBoolean();
+            try {
+                SessionOutboundExecutor.super.execute(() -> {
+                    if (Thread.currentThread() == caller && submitting.get()) {
+                        inline.set(true);
+                        return;
+                    }
+                    drain();
+                });
+            } catch (TaskRejectedException e) {
+                return false;
+            } finally {
+                submitting.set(false);
+            }
+            return !inline.get();
+        }
+
+        private boolean startDrain() {
+            if (draining) {
+                return false;
+            }
+            draining = true;
+            return true;
+        }
+
+        private boolean exceeds(long incomingBytes, double ratio) {
+            return tasks.size() + 1 > properties.getQueueMaxMessages() * ratio
+                    || bytes + incomingBytes > properties.getQueueMaxBytes() * ratio;
+        }
+
+        private void shedPresence() {
+            Iterator<MessageHandlingRunnable> it = tasks.iterator();
+            while (it.hasNext()) {
+                MessageHandlingRunnable queued = it.next();
+                if (kindOf(queued.getMessage()) == FrameKind.PRESENCE) {
+                    it.remove();
+                    bytes -= sizeOf(queued.getMessage());
+                    droppedFrames.incrementAndGet();
+                }
+            }
+        }
+
+        private boolean hasSameReceipt(MessageHandlingRunnable task) {
+            for (MessageHandlingRunnable queued : tasks) {
+                if (kindOf(queued.getMessage()) == FrameKind.RECEIPT && samePayload(queued, task)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Очередь переполнена: выбрасываем её и отправляем клиенту ERROR-кадр (после него STOMP закрывает сессию).
+         */
+        private boolean disconnect(MessageHandler handler) {
+            droppedFrames.addAndGet(tasks.size() + 1);
+            tasks.clear();
+            bytes = 0;
+            closed = true;
+            slowConsumerDisconnects.incrementAndGet();
+            log.warn("Session {} is a slow consumer, disconnecting with resync hint", sessionId);
+
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+            accessor.setMessage(RESYNC_MESSAGE);
+            accessor.setSessionId(sessionId);
+            accessor.setLeaveMutable(true);
+            Message<byte[]> error = MessageBuilder.createMessage(
+                    "Slow consumer: reconnect and reload state".getBytes(StandardCharsets.UTF_8),
+                    accessor.getMessageHeaders());
+            tasks.addLast(new ErrorFrameTask(error, handler));
+            return startDrain();
+        }
+    }
+
+    private record ErrorFrameTask(Message<?> message, MessageHandler handler) implements MessageHandlingRunnable {
+
+        @Override
+        public Message<?> getMessage() {
+            return message;
+        }
+
+        @Override
+        public MessageHandler getMessageHandler() {
+            return handler;
+        }
+
+        @Override
+        public void run() {
+            handler.handleMessage(message);
+        }
+    }
+}
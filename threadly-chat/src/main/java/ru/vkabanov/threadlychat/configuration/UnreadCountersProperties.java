@@ -0,0 +1,23 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Счётчики непрочитанных по собеседникам: в памяти узла, в Mongo — пачками.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.unread")
+public class UnreadCountersProperties {
+
+    /** Как часто сохранять накопленные изменения счётчиков. */
+    private long flushIntervalMs = 1000;
+
+    /** Сколько пользователей держать загруженными; давно не читанные выгружаются (несохранённые изменения не теряются). */
+    private int maxLoadedUsers = 100_000;
+
+    /** Один раз посчитать счётчики по непрочитанным сообщениям (повторно не запускается после отметки в migrations). */
+    private boolean backfill = true;
+}
@@ -1,22 +1,37 @@
 package ru.vkabanov.threadlychat.configuration;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.messaging.converter.DefaultContentTypeResolver;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import ru.vkabanov.threadlychat.cluster.ClusterBrokerRelay;
+import ru.vkabanov.threadlychat.model.ChatMessage;
+import ru.vkabanov.threadlychat.security.StompAuthChannelInterceptor;
 
 import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -25,13 +40,32 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ClusterBrokerRelay clusterBrokerRelay;
+
+    @Autowired
+    private WebSocketExecutorProperties executorProperties;
+
+    @Autowired
+    private WebSocketSessionProperties sessionProperties;
+
+    @Autowired
+    private StompAuthChannelInterceptor stompAuthChannelInterceptor;
+
     private TaskScheduler messageBrokerTaskScheduler;
 
+    private ObjectMapper wireJsonMapper;
+
+    private ObjectMapper wireCborMapper;
+
     @Autowired
-    public void setMessageBrokerTaskScheduler(@Lazy TaskScheduler messageBrokerTaskScheduler) {
+    public void setMessageBrokerTaskScheduler(@Lazy @Qualifier("brokerHeartbeatScheduler") TaskScheduler messageBrokerTaskScheduler) {
         this.messageBrokerTaskScheduler = messageBrokerTaskScheduler;
     }
 
+    /**
+     * Планировщик для @Scheduled-задач приложения (TTL статусов и т.п.).
+     */
     @Bean
     @Lazy
     public TaskScheduler taskScheduler() {
@@ -42,6 +76,27 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         return scheduler;
     }
 
+    /**
+     * Планировщик heartbeat простого брокера — отдельно от @Scheduled-задач.
+     */
+    @Bean
+    @Lazy
+    public TaskScheduler brokerHeartbeatScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(executorProperties.getHeartbeatPoolSize());
+        scheduler.setThreadNamePrefix("ws-heartbeat-");
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * Перекодирование кадров в CBOR для подписок, которые его запросили; общий для inbound и outbound.
+     */
+    @Bean
+    public WireEncodingInterceptor wireEncodingInterceptor() {
+        return new WireEncodingInterceptor(wireJsonMapper(), wireCborMapper());
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic", "/user")
@@ -49,6 +104,57 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setTaskScheduler(messageBrokerTaskScheduler);
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        // С очередью на сессию порядок кадров держит SessionOutboundExecutor
+        config.setPreservePublishOrder(executorProperties.isPreservePublishOrder() && !sessionProperties.isQueueEnabled());
+        // Кадры брокера дублируются на соседние узлы кластера
+        config.configureBrokerChannel().interceptors(clusterBrokerRelay);
+        if (executorProperties.getBroker().getCorePoolSize() > 0) {
+            config.configureBrokerChannel().taskExecutor(executor(executorProperties.getBroker()));
+        }
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        ThreadPoolTaskExecutor executor = executorProperties.isPreserveReceiveOrder()
+                ? new SessionInboundExecutor(executorProperties.getInboundSessionQueueCapacity())
+                : new ThreadPoolTaskExecutor();
+        registration.taskExecutor(configure(executor, executorProperties.getInbound()));
+        // Аутентификация первой: остальные перехватчики видят уже проверенный principal
+        registration.interceptors(stompAuthChannelInterceptor, wireEncodingInterceptor());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        ThreadPoolTaskExecutor executor = sessionProperties.isQueueEnabled()
+                ? new SessionOutboundExecutor(sessionProperties)
+                : new ThreadPoolTaskExecutor();
+        registration.taskExecutor(configure(executor, executorProperties.getOutbound()));
+        registration.interceptors(wireEncodingInterceptor());
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration
+                .setSendTimeLimit(sessionProperties.getSendTimeLimitMs())
+                .setSendBufferSizeLimit(sessionProperties.getSendBufferSizeLimitBytes())
+                .setMessageSizeLimit(sessionProperties.getMessageSizeLimitBytes())
+                .addDecoratorFactory(new BinaryFrameHandlerDecoratorFactory());
+    }
+
+    private static ThreadPoolTaskExecutor executor(WebSocketExecutorProperties.Pool pool) {
+        return configure(new ThreadPoolTaskExecutor(), pool);
+    }
+
+    /**
+     * Ограниченный пул; Spring регистрирует его как бин *ChannelExecutor и сам задаёт префикс имён потоков.
+     */
+    private static ThreadPoolTaskExecutor configure(ThreadPoolTaskExecutor executor, WebSocketExecutorProperties.Pool pool) {
+        executor.setCorePoolSize(pool.getCorePoolSize());
+        executor.setMaxPoolSize(Math.max(pool.getCorePoolSize(), pool.getMaxPoolSize()));
+        executor.setQueueCapacity(pool.getQueueCapacity());
+        executor.setKeepAliveSeconds(pool.getKeepAliveSeconds());
+        executor.setRejectedExecutionHandler(new CountingRejectedExecutionHandler(pool.getRejectionPolicy()));
+        return executor;
     }
 
     @Override
@@ -56,7 +162,13 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry
                 .addEndpoint("/ws")
                 .setAllowedOriginPatterns("http://localhost*", "http://127.0.0.1*", "https://threadly-chat.ru", "http://threadly-chat.ru")
-                .withSockJS();
+                .withSockJS()
+                .setHttpMessageCacheSize(sessionProperties.getSockJsMessageCacheSize());
+        // Чистый WebSocket без SockJS: бинарные кадры (CBOR) для клиентов, которые их поддерживают
+        registry
+                .addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("http://localhost*", "http://127.0.0.1*", "https://threadly-chat.ru", "http://threadly-chat.ru")
+                .addInterceptors(new BinaryFramesHandshakeInterceptor());
     }
 
     @Override
@@ -64,9 +176,56 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
         resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
         MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
-        converter.setObjectMapper(objectMapper);
+        converter.setObjectMapper(wireJsonMapper());
         converter.setContentTypeResolver(resolver);
         messageConverters.add(converter);
+
+        // SEND с content-type:application/cbor; без заголовка кадр разбирает JSON-конвертер выше
+        MappingJackson2MessageConverter cborConverter = new MappingJackson2MessageConverter(WireEncodingInterceptor.APPLICATION_CBOR);
+        cborConverter.setObjectMapper(wireCborMapper());
+        cborConverter.setStrictContentTypeMatch(true);
+        messageConverters.add(cborConverter);
         return false;
     }
+
+    /**
+     * JSON для STOMP-кадров: без null-полей и без служебных полей сообщения (см. {@link ChatMessageWireMixin}).
+     */
+    private ObjectMapper wireJsonMapper() {
+        if (wireJsonMapper == null) {
+            wireJsonMapper = objectMapper.copy()
+                    .addMixIn(ChatMessage.class, ChatMessageWireMixin.class)
+                    .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        }
+        return wireJsonMapper;
+    }
+
+    private ObjectMapper wireCborMapper() {
+        if (wireCborMapper == null) {
+            wireCborMapper = new CBORMapper()
+                    .findAndRegisterModules()
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                    .addMixIn(ChatMessage.class, ChatMessageWireMixin.class)
+                    .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        }
+        return wireCborMapper;
+    }
+
+    /**
+     * Помечает сессии /ws-native: им можно отправлять бинарные кадры.
+     */
+    private static class BinaryFramesHandshakeInterceptor implements HandshakeInterceptor {
+
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            attributes.put(WireEncodingInterceptor.BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Exception exception) {
+        }
+    }
 }
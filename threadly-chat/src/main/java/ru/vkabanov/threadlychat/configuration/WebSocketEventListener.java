@@ -4,24 +4,31 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import ru.vkabanov.threadlychat.cluster.ClusterUserRegistry;
 import ru.vkabanov.threadlychat.controller.WsController;
+import ru.vkabanov.threadlychat.security.CurrentUser;
+import ru.vkabanov.threadlychat.security.StompAuthChannelInterceptor;
 
 @Component
 @RequiredArgsConstructor
 public class WebSocketEventListener {
 
     private final WsController wsController;
+    private final ClusterUserRegistry clusterUserRegistry;
 
+    /**
+     * CONNECT уже прошёл проверку JWT в {@link StompAuthChannelInterceptor} — пользователь берётся из principal сессии.
+     */
     @EventListener
-    public void handleWebSocketConnectListener(SessionConnectEvent event) {
+    public void handleWebSocketConnectListener(SessionConnectedEvent event) {
         StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
-        String userId = accessor.getFirstNativeHeader("userId"); // передаем userId при подключении
+        CurrentUser user = StompAuthChannelInterceptor.currentUser(event.getUser());
 
-        if (userId != null) {
-            // Сохраняем userId в сессию, чтобы получить его при disconnect
-            accessor.getSessionAttributes().put("userId", userId);
+        if (user != null) {
+            String userId = user.getUserId();
+            clusterUserRegistry.localSessionConnected(userId, accessor.getSessionId());
             wsController.updateStatus(userId, "online");
         }
     }
@@ -29,10 +36,15 @@ public class WebSocketEventListener {
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
-        String userId = (String) accessor.getSessionAttributes().get("userId");
+        CurrentUser user = StompAuthChannelInterceptor.currentUser(event.getUser());
+        String userId = user != null ? user.getUserId() : null;
 
         if (userId != null) {
-            wsController.updateStatus(userId, "offline");
+            clusterUserRegistry.localSessionDisconnected(userId, accessor.getSessionId());
+            // Закрылась одна из вкладок или сессия на этом узле, а на других пользователь ещё подключён
+            if (!clusterUserRegistry.isConnectedAnywhere(userId)) {
+                wsController.updateStatus(userId, "offline");
+            }
         }
     }
 }
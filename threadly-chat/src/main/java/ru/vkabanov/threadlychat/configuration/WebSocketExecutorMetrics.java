@@ -0,0 +1,131 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Состояние пулов STOMP: активные потоки, глубина очереди, число отказов.
+ * Периодически пишет сводку в лог, если пулы под нагрузкой.
+ */
+@Slf4j
+@Component
+public class WebSocketExecutorMetrics {
+
+    private final Map<String, ThreadPoolTaskExecutor> executors = new LinkedHashMap<>();
+
+    /** Сколько самых «тяжёлых» сессий показывать в логе. */
+    private static final int TOP_SESSIONS = 5;
+
+    private final WireEncodingInterceptor wireEncoding;
+
+    private long lastLoggedRejections;
+
+    private long lastLoggedCborFrames;
+
+    public WebSocketExecutorMetrics(@Qualifier("clientInboundChannelExecutor") ThreadPoolTaskExecutor inbound,
+                                    @Qualifier("clientOutboundChannelExecutor") ThreadPoolTaskExecutor outbound,
+                                    @Qualifier("brokerChannelExecutor") ThreadPoolTaskExecutor broker,
+                                    WireEncodingInterceptor wireEncoding) {
+        this.wireEncoding = wireEncoding;
+        executors.put("inbound", inbound);
+        executors.put("outbound", outbound);
+        executors.put("broker", broker);
+    }
+
+    public Map<String, ExecutorStats> snapshot() {
+        Map<String, ExecutorStats> result = new LinkedHashMap<>();
+        executors.forEach((name, executor) -> result.put(name, stats(executor)));
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${threadly.websocket.stats-log-period-ms:60000}")
+    public void logStats() {
+        Map<String, ExecutorStats> stats = snapshot();
+        long rejections = stats.values().stream().mapToLong(ExecutorStats::rejected).sum();
+        boolean queued = stats.values().stream().anyMatch(s -> s.queueSize() > 0);
+        if (queued || rejections != lastLoggedRejections) {
+            log.info("WebSocket executors: {}", stats);
+            lastLoggedRejections = rejections;
+        }
+        if (executors.get("outbound") instanceof SessionOutboundExecutor outbound && outbound.getQueuedBytes() > 0) {
+            log.info("WebSocket session queues: {} byte(s) queued, top sessions {}, dropped {}, coalesced {}, slow-consumer disconnects {}",
+                    outbound.getQueuedBytes(), topSessions(outbound.getQueuedBytesBySession()),
+                    outbound.getDroppedFrames(), outbound.getCoalescedFrames(), outbound.getSlowConsumerDisconnects());
+        }
+        WireEncodingInterceptor.WireStats wire = wireEncoding.stats();
+        if (wire.cborFrames() != lastLoggedCborFrames) {
+            lastLoggedCborFrames = wire.cborFrames();
+            log.info("STOMP payloads: JSON {} frame(s), avg {} B; CBOR {} frame(s), avg {} B vs {} B as JSON, encode avg {} us",
+                    wire.jsonFrames(), average(wire.jsonBytes(), wire.jsonFrames()),
+                    wire.cborFrames(), average(wire.cborBytes(), wire.cborFrames()),
+                    average(wire.cborSourceJsonBytes(), wire.cborFrames()),
+                    average(wire.cborEncodeNanos() / 1000, wire.cborFrames()));
+        }
+    }
+
+    private static long average(long total, long count) {
+        return count > 0 ? total / count : 0;
+    }
+
+    /**
+     * Очередь кадров по сессиям (если включена очередь на сессию), байт.
+     */
+    public Map<String, Long> queuedBytesBySession() {
+        return executors.get("outbound") instanceof SessionOutboundExecutor outbound
+                ? outbound.getQueuedBytesBySession()
+                : Map.of();
+    }
+
+    /**
+     * Исполнитель входящего канала с очередью на сессию, если включён preserveReceiveOrder.
+     */
+    public Optional<SessionInboundExecutor> sessionInbound() {
+        return executors.get("inbound") instanceof SessionInboundExecutor inbound
+                ? Optional.of(inbound)
+                : Optional.empty();
+    }
+
+    /**
+     * Исполнитель исходящего канала с очередью на сессию, если она включена.
+     */
+    public Optional<SessionOutboundExecutor> sessionOutbound() {
+        return executors.get("outbound") instanceof SessionOutboundExecutor outbound
+                ? Optional.of(outbound)
+                : Optional.empty();
+    }
+
+    private static Map<String, Long> topSessions(Map<String, Long> bySession) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        bySession.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(TOP_SESSIONS)
+                .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+
+    private static ExecutorStats stats(ThreadPoolTaskExecutor executor) {
+        ThreadPoolExecutor pool;
+        try {
+            pool = executor.getThreadPoolExecutor();
+        } catch (IllegalStateException e) {
+            // Пул ещё не инициализирован
+            return new ExecutorStats(0, 0, 0, 0, 0);
+        }
+        long rejected = pool.getRejectedExecutionHandler() instanceof CountingRejectedExecutionHandler counting
+                ? counting.getRejectedCount()
+                : 0;
+        return new ExecutorStats(pool.getActiveCount(), pool.getPoolSize(), pool.getQueue().size(),
+                pool.getCompletedTaskCount(), rejected);
+    }
+
+    public record ExecutorStats(int active, int poolSize, int queueSize, long completed, long rejected) {
+    }
+}
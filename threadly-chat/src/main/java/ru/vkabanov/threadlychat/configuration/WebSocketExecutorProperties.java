@@ -0,0 +1,74 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Пулы потоков STOMP: входящие кадры клиентов, исходящие кадры клиентам и брокер.
+ * Каждый пул ограничен по потокам и очереди, чтобы медленный путь (запись в Mongo, push) не отбирал потоки у остальных.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.websocket")
+public class WebSocketExecutorProperties {
+
+    /** clientInboundChannel: обработка @MessageMapping (сохранение сообщений, push-уведомления). */
+    private Pool inbound = new Pool(8, 32, 1_000, RejectionPolicy.CALLER_RUNS);
+
+    /** clientOutboundChannel: запись кадров в WebSocket-сессии. */
+    private Pool outbound = new Pool(8, 32, 5_000, RejectionPolicy.ABORT);
+
+    /**
+     * brokerChannel: маршрутизация сообщений простым брокером.
+     * corePoolSize = 0 — маршрутизация в потоке отправителя (порядок сообщений одного отправителя сохраняется).
+     */
+    private Pool broker = new Pool(0, 8, 2_000, RejectionPolicy.CALLER_RUNS);
+
+    /** Потоки для heartbeat простого брокера. */
+    private int heartbeatPoolSize = 2;
+
+    /** Сохранять порядок отправки кадров в пределах одной сессии. */
+    private boolean preservePublishOrder = true;
+
+    /** Обрабатывать входящие кадры одной сессии строго по очереди (см. {@link SessionInboundExecutor}). */
+    private boolean preserveReceiveOrder = true;
+
+    /** Лимит очереди входящих кадров одной сессии при preserveReceiveOrder; сверх него сессия закрывается. */
+    private int inboundSessionQueueCapacity = 256;
+
+    /** Период записи статистики пулов в лог, мс. */
+    private long statsLogPeriodMs = 60_000L;
+
+    @Data
+    public static class Pool {
+
+        private int corePoolSize;
+
+        private int maxPoolSize;
+
+        private int queueCapacity;
+
+        private int keepAliveSeconds = 60;
+
+        /** Что делать с задачей, когда заняты все потоки и очередь заполнена. */
+        private RejectionPolicy rejectionPolicy;
+
+        public Pool() {
+        }
+
+        public Pool(int corePoolSize, int maxPoolSize, int queueCapacity, RejectionPolicy rejectionPolicy) {
+            this.corePoolSize = corePoolSize;
+            this.maxPoolSize = maxPoolSize;
+            this.queueCapacity = queueCapacity;
+            this.rejectionPolicy = rejectionPolicy;
+        }
+    }
+
+    public enum RejectionPolicy {
+        /** Выполнить задачу в вызывающем потоке — естественное торможение источника. */
+        CALLER_RUNS,
+        /** Отклонить задачу (кадр теряется, ошибка в логе). */
+        ABORT
+    }
+}
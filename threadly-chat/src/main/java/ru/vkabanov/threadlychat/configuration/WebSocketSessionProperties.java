@@ -0,0 +1,50 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Лимиты исходящего трафика на одну WebSocket-сессию: буфер транспорта и очередь кадров до него.
+ * Нужны, чтобы один клиент на медленном канале не раздувал heap для всех остальных.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "threadly.websocket.session")
+public class WebSocketSessionProperties {
+
+    /** Сколько максимум может длиться отправка одного кадра клиенту, мс. */
+    private int sendTimeLimitMs = 10_000;
+
+    /** Лимит буфера транспорта на сессию (кадры, ожидающие записи в сокет), байт. */
+    private int sendBufferSizeLimitBytes = 256 * 1024;
+
+    /** Максимальный размер входящего кадра, байт. */
+    private int messageSizeLimitBytes = 64 * 1024;
+
+    /** Кэш кадров SockJS для HTTP-транспортов (xhr-streaming и т.п.), кадров. */
+    private int sockJsMessageCacheSize = 100;
+
+    /** Очередь кадров сессии перед транспортом. Выключенная — порядок держит preserve-publish-order. */
+    private boolean queueEnabled = true;
+
+    /** Жёсткий лимит очереди сессии по числу кадров. */
+    private int queueMaxMessages = 1_000;
+
+    /** Жёсткий лимит очереди сессии по объёму, байт. */
+    private long queueMaxBytes = 1024 * 1024;
+
+    /** Доля жёсткого лимита, после которой начинаем сбрасывать второстепенные кадры. */
+    private double queueSoftLimitRatio = 0.5;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.SHED_THEN_DISCONNECT;
+
+    public enum OverflowPolicy {
+        /** После мягкого лимита — сброс статусов/typing и склейка receipts; на жёстком — отключение с подсказкой resync. */
+        SHED_THEN_DISCONNECT,
+        /** Как SHED_THEN_DISCONNECT, но на жёстком лимите новые кадры просто отбрасываются. */
+        SHED_THEN_DROP,
+        /** Без сброса: на жёстком лимите сразу отключение с подсказкой resync. */
+        DISCONNECT
+    }
+}
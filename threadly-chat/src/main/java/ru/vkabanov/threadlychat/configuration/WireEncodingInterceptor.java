@@ -0,0 +1,143 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Согласование кодировки STOMP-кадров по подписке.
+ * <p>
+ * Клиент на /ws-native может прислать в SUBSCRIBE заголовок content-type:application/cbor — тогда кадры
+ * этой подписки перекодируются из JSON в CBOR и уходят бинарными WebSocket-сообщениями.
+ * Для SockJS (только текст) заголовок игнорируется. Регистрируется на inbound- и outbound-канале.
+ * Считает байты тела кадров по кодировкам и время перекодирования — для сравнения CBOR с JSON.
+ */
+@Slf4j
+public class WireEncodingInterceptor implements ChannelInterceptor {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    /** Атрибут сессии, который ставит handshake-перехватчик /ws-native: клиент принимает бинарные кадры. */
+    public static final String BINARY_FRAMES_ATTRIBUTE = "threadly.binaryFrames";
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+
+    /** sessionId → id подписок, запросивших CBOR. */
+    private final Map<String, Map<String, Boolean>> cborSubscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicLong jsonFrames = new AtomicLong();
+    private final AtomicLong jsonBytes = new AtomicLong();
+    private final AtomicLong cborFrames = new AtomicLong();
+    private final AtomicLong cborBytes = new AtomicLong();
+    /** Сколько байт заняли бы те же CBOR-кадры в JSON. */
+    private final AtomicLong cborSourceJsonBytes = new AtomicLong();
+    private final AtomicLong cborEncodeNanos = new AtomicLong();
+
+    public WireEncodingInterceptor(ObjectMapper jsonMapper, ObjectMapper cborMapper) {
+        this.jsonMapper = jsonMapper;
+        this.cborMapper = cborMapper;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == null) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        switch (type) {
+            case SUBSCRIBE -> onSubscribe(message, sessionId);
+            case UNSUBSCRIBE -> {
+                Map<String, Boolean> subscriptions = sessionId != null ? cborSubscriptions.get(sessionId) : null;
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+                if (subscriptions != null && subscriptionId != null) {
+                    subscriptions.remove(subscriptionId);
+                }
+            }
+            case DISCONNECT -> {
+                if (sessionId != null) {
+                    cborSubscriptions.remove(sessionId);
+                }
+            }
+            case MESSAGE -> {
+                return encode(message, sessionId);
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    private void onSubscribe(Message<?> message, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String subscriptionId = accessor.getSubscriptionId();
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+        String requested = accessor.getFirstNativeHeader("content-type");
+        if (requested == null || !APPLICATION_CBOR.equalsTypeAndSubtype(MimeType.valueOf(requested))) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_FRAMES_ATTRIBUTE))) {
+            log.debug("Session {} requested CBOR over a text-only transport, keeping JSON", sessionId);
+            return;
+        }
+        cborSubscriptions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>()).put(subscriptionId, Boolean.TRUE);
+    }
+
+    private Message<?> encode(Message<?> message, String sessionId) {
+        if (sessionId == null || !(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+        Map<String, Boolean> subscriptions = cborSubscriptions.get(sessionId);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (subscriptions == null || subscriptionId == null || !subscriptions.containsKey(subscriptionId)) {
+            jsonFrames.incrementAndGet();
+            jsonBytes.addAndGet(json.length);
+            return message;
+        }
+        // Копию заголовков делаем только для CBOR-подписок: она всё равно нужна для нового content-type
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        MimeType contentType = accessor.getContentType();
+        if (contentType != null && !"json".equals(contentType.getSubtype())) {
+            jsonFrames.incrementAndGet();
+            jsonBytes.addAndGet(json.length);
+            return message;
+        }
+        try {
+            long started = System.nanoTime();
+            byte[] cbor = cborMapper.writeValueAsBytes(jsonMapper.readTree(json));
+            cborEncodeNanos.addAndGet(System.nanoTime() - started);
+            cborFrames.incrementAndGet();
+            cborBytes.addAndGet(cbor.length);
+            cborSourceJsonBytes.addAndGet(json.length);
+            accessor.setContentType(APPLICATION_CBOR);
+            return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+        } catch (IOException e) {
+            log.warn("Failed to encode frame for session {} as CBOR: {}", sessionId, e.getMessage());
+            return message;
+        }
+    }
+
+    public WireStats stats() {
+        return new WireStats(jsonFrames.get(), jsonBytes.get(), cborFrames.get(), cborBytes.get(),
+                cborSourceJsonBytes.get(), cborEncodeNanos.get());
+    }
+
+    public record WireStats(long jsonFrames, long jsonBytes, long cborFrames, long cborBytes,
+                            long cborSourceJsonBytes, long cborEncodeNanos) {
+    }
+}
@@ -19,6 +19,7 @@ import ru.vkabanov.threadlychat.service.ImageMessageService;
 import ru.vkabanov.threadlychat.service.UserStatusService;
 
 import java.io.InputStream;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,16 +41,39 @@ public class ChatController {
         return ResponseEntity.ok(chatMessageService.countNewMessages(senderId, recipientId));
     }
 
+    /**
+     * Страница истории личного чата. С since (epoch ms) — только сообщения новее, page игнорируется.
+     */
     @GetMapping(value = "/messages/{senderId}/{recipientId}/page", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<ChatMessagesPage> findChatMessagesPage(@PathVariable String senderId,
                                                                  @PathVariable String recipientId,
                                                                  @RequestParam(defaultValue = "0") int page,
                                                                  @RequestParam(defaultValue = "50") int size,
+                                                                 @RequestParam(required = false) Long since,
                                                                  @AuthenticationPrincipal CurrentUser currentUser) {
         ensureParticipant(currentUser.getUserId(), senderId, recipientId);
+        if (since != null) {
+            return ResponseEntity.ok(chatMessageService.findChatMessagesSince(senderId, recipientId, new Date(since), size));
+        }
         return ResponseEntity.ok(chatMessageService.findChatMessagesPage(senderId, recipientId, page, size));
     }
 
+    /**
+     * Подтвердить прочтение чата: сообщения senderId → текущему пользователю не новее upTo (epoch ms, без него — все).
+     * Применяется асинхронно, повторный вызов ничего не меняет.
+     */
+    @PostMapping(value = "/messages/{senderId}/{recipientId}/read")
+    public ResponseEntity<Void> markRead(@PathVariable String senderId,
+                                         @PathVariable String recipientId,
+                                         @RequestParam(required = false) Long upTo,
+                                         @AuthenticationPrincipal CurrentUser currentUser) {
+        if (!currentUser.getUserId().equals(recipientId)) {
+            throw new ForbiddenException("Can only mark messages sent to you as read");
+        }
+        chatMessageService.markRead(senderId, recipientId, upTo != null ? new Date(upTo) : null);
+        return ResponseEntity.accepted().build();
+    }
+
     @GetMapping(value = "/messages/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<ChatMessage> findMessage(@PathVariable String id,
                                                    @AuthenticationPrincipal CurrentUser currentUser) {
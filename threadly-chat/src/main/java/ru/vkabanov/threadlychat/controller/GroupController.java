@@ -112,14 +112,19 @@ public class GroupController {
     }
 
     /**
-     * Сообщения группы (пагинация).
+     * Сообщения группы (пагинация). С since (epoch ms) — только сообщения новее, page игнорируется.
      */
     @GetMapping(value = "/{groupId}/messages", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<ChatMessagesPage> getGroupMessages(@PathVariable String groupId,
                                                               @RequestParam(defaultValue = "0") int page,
                                                               @RequestParam(defaultValue = "50") int size,
+                                                              @RequestParam(required = false) Long since,
                                                               @AuthenticationPrincipal CurrentUser currentUser) {
         if (currentUser == null) throw new ForbiddenException("Access denied");
+        if (since != null) {
+            return ResponseEntity.ok(chatGroupService.getGroupMessagesSince(groupId, currentUser.getUserId(),
+                    new Date(since), size));
+        }
         return ResponseEntity.ok(chatGroupService.getGroupMessages(groupId, currentUser.getUserId(), page, size));
     }
 
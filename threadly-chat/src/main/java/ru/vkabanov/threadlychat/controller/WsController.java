@@ -4,14 +4,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 import ru.vkabanov.threadlychat.model.ChatMessage;
+import ru.vkabanov.threadlychat.security.CurrentUser;
+import ru.vkabanov.threadlychat.security.StompAuthChannelInterceptor;
 import ru.vkabanov.threadlychat.service.ChatGroupService;
 import ru.vkabanov.threadlychat.service.ChatMessageService;
 import ru.vkabanov.threadlychat.service.UserStatusService;
 
+import java.security.Principal;
 import java.util.Map;
 
 @Slf4j
@@ -27,14 +29,26 @@ public class WsController {
 
     private final ChatGroupService chatGroupService;
 
+    /**
+     * senderId всегда берётся из principal сессии (проверенный JWT), а не из тела кадра.
+     */
     @MessageMapping("/chat")
-    public void processMessage(@Payload ChatMessage chatMessage) {
+    public void processMessage(@Payload ChatMessage chatMessage, Principal principal) {
+        CurrentUser user = StompAuthChannelInterceptor.currentUser(principal);
+        if (user == null) {
+            return;
+        }
+        chatMessage.setSenderId(user.getUserId());
         ChatMessage saved = chatMessageService.sendMessage(chatMessage);
-        messagingTemplate.convertAndSendToUser(chatMessage.getSenderId(), "/queue/sent-ack", saved);
+        messagingTemplate.convertAndSendToUser(user.getUserId(), "/queue/sent-ack", saved);
     }
 
     @MessageMapping("/group-chat")
-    public void processGroupMessage(@Payload Map<String, Object> payload) {
+    public void processGroupMessage(@Payload Map<String, Object> payload, Principal principal) {
+        CurrentUser user = StompAuthChannelInterceptor.currentUser(principal);
+        if (user == null) {
+            return;
+        }
         String groupId = (String) payload.get("groupId");
         String messageTypeStr = (String) payload.getOrDefault("messageType", "TEXT");
         ru.vkabanov.threadlychat.model.MessageType msgType;
@@ -44,7 +58,7 @@ public class WsController {
             msgType = ru.vkabanov.threadlychat.model.MessageType.TEXT;
         }
         ChatMessage chatMessage = ChatMessage.builder()
-                .senderId((String) payload.get("senderId"))
+                .senderId(user.getUserId())
                 .senderName((String) payload.get("senderName"))
                 .content((String) payload.get("content"))
                 .messageType(msgType)
@@ -59,14 +73,12 @@ public class WsController {
 
     /**
      * Heartbeat от клиента: обновляет lastSeen и поддерживает статус online.
-     * userId берётся из сессии (устанавливается при CONNECT).
+     * userId берётся из principal сессии (устанавливается при CONNECT).
      */
     @MessageMapping("/status")
-    public void heartbeat(StompHeaderAccessor accessor) {
-        if (accessor == null) return;
-        Map<String, Object> attrs = accessor.getSessionAttributes();
-        if (attrs == null) return;
-        String userId = (String) attrs.get("userId");
-        userStatusService.setOnlineFromHeartbeat(userId);
+    public void heartbeat(Principal principal) {
+        CurrentUser user = StompAuthChannelInterceptor.currentUser(principal);
+        if (user == null) return;
+        userStatusService.setOnlineFromHeartbeat(user.getUserId());
     }
 }
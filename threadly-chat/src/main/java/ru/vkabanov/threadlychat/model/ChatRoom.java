@@ -7,6 +7,11 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+/**
+ * Комната личного чата: одна запись на неупорядоченную пару собеседников.
+ * id — «меньший_больший» userId (см. {@code ChatRoomService.roomId}), senderId и recipientId — та же пара по порядку.
+ * chatId у новых комнат совпадает с id, у перенесённых из старого формата остаётся прежним.
+ */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
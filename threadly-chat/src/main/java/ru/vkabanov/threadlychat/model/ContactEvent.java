@@ -0,0 +1,27 @@
+package ru.vkabanov.threadlychat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Событие для auth-сервиса: у userId появилась (STARTED) или удалена (REMOVED) переписка с contactId.
+ * Рёбра направленные: сообщение A→B даёт два события, удаление чата «у себя» — одно.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContactEvent {
+
+    public enum Type { STARTED, REMOVED }
+
+    private Type type;
+    private String userId;
+    private String contactId;
+    /** Время события, epoch millis. */
+    private long occurredAt;
+
+    public String edgeId() {
+        return userId + ":" + contactId;
+    }
+}
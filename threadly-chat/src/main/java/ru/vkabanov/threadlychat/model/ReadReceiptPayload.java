@@ -4,13 +4,16 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Date;
+
 /**
  * Отправляется отправителю сообщений, когда получатель прочитал чат.
- * readerId — кто прочитал (recipient в диалоге).
+ * readerId — кто прочитал (recipient в диалоге), upTo — прочитано всё, что отправлено не позже этого времени.
  */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class ReadReceiptPayload {
     private String readerId;
+    private Date upTo;
 }
@@ -0,0 +1,16 @@
+package ru.vkabanov.threadlychat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Кадр /queue/unread: новое число непрочитанных сообщений от contactId.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UnreadCountPayload {
+    private String contactId;
+    private long count;
+}
@@ -0,0 +1,34 @@
+package ru.vkabanov.threadlychat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Сохранённый счётчик непрочитанных: сколько сообщений от contactId ещё не прочитал userId.
+ * Нулевые счётчики не хранятся.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "unread_counters")
+public class UnreadCounter {
+
+    /** userId + ":" + contactId. */
+    @Id
+    private String id;
+
+    private String userId;
+
+    private String contactId;
+
+    private long count;
+
+    public static String idOf(String userId, String contactId) {
+        return userId + ":" + contactId;
+    }
+}
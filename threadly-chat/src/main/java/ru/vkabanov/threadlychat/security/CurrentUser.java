@@ -3,14 +3,22 @@ package ru.vkabanov.threadlychat.security;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
+import java.security.Principal;
+
 /**
  * Principal после проверки JWT — хранит userId текущего пользователя.
+ * getName() возвращает userId: по нему STOMP адресует /user/{userId}/... .
  */
 @Getter
 @RequiredArgsConstructor
-public class CurrentUser {
+public class CurrentUser implements Principal {
 
     private final String userId;
 
     private final String username;
-}
\ No newline at end of file
+
+    @Override
+    public String getName() {
+        return userId;
+    }
+}
@@ -0,0 +1,42 @@
+package ru.vkabanov.threadlychat.security;
+
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+/**
+ * Токен внутренних вызовов chat → auth: HMAC-SHA256 от общего JWT-секрета (сам секрет по сети не передаётся).
+ */
+@Component
+public class InternalEventsToken {
+
+    public static final String HEADER = "X-Threadly-Internal-Token";
+
+    private final String value;
+
+    public InternalEventsToken(JwtConfig jwtConfig) {
+        String secret = jwtConfig.getSecret();
+        this.value = secret == null || secret.isEmpty() ? null : compute(secret);
+    }
+
+    /**
+     * Значение заголовка; null, если JWT-секрет не задан.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    private static String compute(String secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal("threadly-internal-events".getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
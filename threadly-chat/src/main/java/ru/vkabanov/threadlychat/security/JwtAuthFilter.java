@@ -1,8 +1,5 @@
 package ru.vkabanov.threadlychat.security;
 
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -25,6 +22,8 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtConfig jwtConfig;
 
+    private final JwtTokenVerifier jwtTokenVerifier;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
@@ -35,31 +34,14 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             return;
         }
 
-        String token = header.replace(jwtConfig.getPrefix(), "").trim();
-        try {
-            Claims claims = Jwts.parser()
-                    .setSigningKey(jwtConfig.getSecret().getBytes())
-                    .parseClaimsJws(token)
-                    .getBody();
-
-            String username = claims.getSubject();
-            Object userIdObj = claims.get("userId");
-            String userId = userIdObj != null ? userIdObj.toString() : null;
-
-            if (userId == null || userId.isEmpty()) {
-                log.warn("JWT has no userId claim for {} {}", request.getMethod(), request.getRequestURI());
-                filterChain.doFilter(request, response);
-                return;
-            }
-
-            CurrentUser currentUser = new CurrentUser(userId, username);
+        // Проверенные токены кэшируются до exp — повторные запросы не пересчитывают подпись
+        CurrentUser currentUser = jwtTokenVerifier.verify(jwtTokenVerifier.extractToken(header));
+        if (currentUser == null) {
+            log.debug("Invalid JWT for {} {}", request.getMethod(), request.getRequestURI());
+        } else {
             UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
                     currentUser, null, Collections.emptyList());
             SecurityContextHolder.getContext().setAuthentication(auth);
-        } catch (SignatureException e) {
-            log.debug("Invalid JWT signature for {} {}", request.getMethod(), request.getRequestURI());
-        } catch (Exception e) {
-            log.warn("JWT parse error for {} {}: {}", request.getMethod(), request.getRequestURI(), e.getMessage());
         }
 
         filterChain.doFilter(request, response);
@@ -0,0 +1,119 @@
+package ru.vkabanov.threadlychat.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка JWT с кэшем уже проверенных токенов: SHA-256 токена → principal до истечения exp.
+ * Повторные запросы с тем же токеном не разбирают JSON и не считают HMAC.
+ */
+@Slf4j
+@Component
+public class JwtTokenVerifier {
+
+    /** Токены без exp держим в кэше не дольше этого времени. */
+    private static final long MAX_CACHE_TTL_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final JwtConfig jwtConfig;
+
+    private final Cache<String, VerifiedToken> verified;
+
+    public JwtTokenVerifier(JwtConfig jwtConfig,
+                            @Value("${security.jwt.cache-size:10000}") long cacheSize) {
+        this.jwtConfig = jwtConfig;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                        long ttlMs = Math.min(MAX_CACHE_TTL_MS, value.expiresAt() - System.currentTimeMillis());
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMs));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Проверить токен (без префикса «Bearer »).
+     *
+     * @return principal или null, если токен невалиден, просрочен или без userId
+     */
+    public CurrentUser verify(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        String key = hash(token);
+        VerifiedToken cached = verified.getIfPresent(key);
+        if (cached != null) {
+            return cached.expiresAt() > System.currentTimeMillis() ? cached.user() : null;
+        }
+        Claims claims;
+        try {
+            claims = Jwts.parser()
+                    .setSigningKey(jwtConfig.getSecret().getBytes())
+                    .parseClaimsJws(token)
+                    .getBody();
+        } catch (Exception e) {
+            log.debug("JWT rejected: {}", e.getMessage());
+            return null;
+        }
+        Object userIdObj = claims.get("userId");
+        String userId = userIdObj != null ? userIdObj.toString() : null;
+        if (userId == null || userId.isEmpty()) {
+            log.warn("JWT has no userId claim");
+            return null;
+        }
+        CurrentUser user = new CurrentUser(userId, claims.getSubject());
+        Date expiration = claims.getExpiration();
+        long expiresAt = expiration != null
+                ? expiration.getTime()
+                : System.currentTimeMillis() + MAX_CACHE_TTL_MS;
+        verified.put(key, new VerifiedToken(user, expiresAt));
+        return user;
+    }
+
+    /**
+     * Извлечь токен из значения заголовка Authorization.
+     */
+    public String extractToken(String headerValue) {
+        if (headerValue == null || !headerValue.startsWith(jwtConfig.getPrefix())) {
+            return null;
+        }
+        return headerValue.substring(jwtConfig.getPrefix().length()).trim();
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record VerifiedToken(CurrentUser user, long expiresAt) {
+    }
+}
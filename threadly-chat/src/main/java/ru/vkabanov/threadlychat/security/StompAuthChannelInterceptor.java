@@ -0,0 +1,110 @@
+package ru.vkabanov.threadlychat.security;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Аутентификация STOMP-сессии: JWT из заголовка Authorization кадра CONNECT проверяется один раз,
+ * principal ({@link CurrentUser}) закрепляется за сессией до её закрытия.
+ * Дальше кадры без principal отклоняются, а подписаться на /user/{userId}/... можно только на свой userId.
+ * SEND принимается только в обработчики приложения (/app/...): напрямую в брокер (/topic, /user) клиент не пишет.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    /** Атрибут сессии с userId — его читают обработчики, которым нужен пользователь без principal. */
+    public static final String USER_ID_ATTRIBUTE = "userId";
+
+    private static final String USER_PREFIX = "/user/";
+
+    private static final String APP_PREFIX = "/app/";
+
+    private final JwtConfig jwtConfig;
+
+    private final JwtTokenVerifier jwtTokenVerifier;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        StompCommand command = accessor.getCommand();
+        if (command == StompCommand.CONNECT || command == StompCommand.STOMP) {
+            authenticate(accessor);
+            return message;
+        }
+        if (command == StompCommand.DISCONNECT) {
+            return message;
+        }
+        CurrentUser user = currentUser(accessor.getUser());
+        if (user == null) {
+            throw new MessagingException(message, "STOMP session is not authenticated");
+        }
+        if (command == StompCommand.SUBSCRIBE) {
+            checkSubscription(accessor.getDestination(), user);
+        } else if (command == StompCommand.SEND) {
+            checkSend(accessor.getDestination());
+        }
+        return message;
+    }
+
+    private void authenticate(StompHeaderAccessor accessor) {
+        String token = jwtTokenVerifier.extractToken(accessor.getFirstNativeHeader(jwtConfig.getHeader()));
+        CurrentUser user = jwtTokenVerifier.verify(token);
+        if (user == null) {
+            log.debug("STOMP CONNECT rejected for session {}: missing or invalid JWT", accessor.getSessionId());
+            throw new MessagingException("Invalid or missing JWT on STOMP CONNECT");
+        }
+        accessor.setUser(new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList()));
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes != null) {
+            attributes.put(USER_ID_ATTRIBUTE, user.getUserId());
+        }
+    }
+
+    private void checkSubscription(String destination, CurrentUser user) {
+        if (destination == null || !destination.startsWith(USER_PREFIX)) {
+            return;
+        }
+        int end = destination.indexOf('/', USER_PREFIX.length());
+        String target = end > 0 ? destination.substring(USER_PREFIX.length(), end) : null;
+        // /user/queue/... — стандартная форма Spring, её разрешает UserDestinationMessageHandler по principal
+        if (target != null && !"queue".equals(target) && !target.equals(user.getUserId())) {
+            throw new MessagingException("Cannot subscribe to another user's destination " + destination);
+        }
+    }
+
+    private void checkSend(String destination) {
+        // Иначе SimpleBroker разослал бы кадр подписчикам /topic/... или чужой очереди /user/... в обход контроллеров
+        if (destination == null || !destination.startsWith(APP_PREFIX)) {
+            throw new MessagingException("Cannot send to destination " + destination);
+        }
+    }
+
+    /**
+     * Достать {@link CurrentUser} из principal сессии.
+     */
+    public static CurrentUser currentUser(Principal principal) {
+        if (principal instanceof UsernamePasswordAuthenticationToken auth
+                && auth.getPrincipal() instanceof CurrentUser user) {
+            return user;
+        }
+        return principal instanceof CurrentUser user ? user : null;
+    }
+}
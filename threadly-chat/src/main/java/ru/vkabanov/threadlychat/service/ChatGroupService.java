@@ -2,14 +2,18 @@ package ru.vkabanov.threadlychat.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import ru.vkabanov.threadlychat.configuration.ChatMetrics;
 import ru.vkabanov.threadlychat.exception.BadRequestException;
 import ru.vkabanov.threadlychat.exception.ForbiddenException;
 import ru.vkabanov.threadlychat.exception.ResourceNotFoundException;
@@ -32,6 +36,19 @@ public class ChatGroupService {
     private final PushNotificationService pushNotificationService;
     private final UserStatusService userStatusService;
     private final ImageStorageService imageStorageService;
+    private final ChatMetrics chatMetrics;
+    private final RecentMessagesCache recentMessages;
+
+    /**
+     * Мультиключевой индекс участников: список групп пользователя. Сообщения групп ищутся по chatId
+     * индексом из {@link ChatMessageService#ensureIndexes()}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoOperations.indexOps(ChatGroup.class).ensureIndex(new Index()
+                .on("memberIds", Sort.Direction.ASC)
+                .named("chat_groups_members"));
+    }
 
     /**
      * Создать группу.
@@ -190,6 +207,7 @@ public class ChatGroupService {
         // Удаляем все сообщения группы
         Query query = new Query(Criteria.where("chatId").is("group_" + groupId));
         mongoOperations.remove(query, ChatMessage.class);
+        recentMessages.invalidate("group_" + groupId);
 
         // Уведомляем участников
         Map<String, Object> deleteNotification = Map.of("deleted", true, "id", groupId);
@@ -204,6 +222,10 @@ public class ChatGroupService {
      * Отправить сообщение в группу.
      */
     public ChatMessage sendGroupMessage(ChatMessage chatMessage, String groupId) {
+        return chatMetrics.groupSend().record(() -> doSendGroupMessage(chatMessage, groupId));
+    }
+
+    private ChatMessage doSendGroupMessage(ChatMessage chatMessage, String groupId) {
         ChatGroup group = groupRepository.findById(groupId)
                 .orElseThrow(() -> new ResourceNotFoundException("Группа не найдена"));
 
@@ -223,6 +245,8 @@ public class ChatGroupService {
         }
 
         ChatMessage saved = messageRepository.save(chatMessage);
+        recentMessages.messageSaved(saved);
+        chatMetrics.groupFanout().record(group.getMemberIds().size() - 1);
 
         // Отправляем полное сообщение всем участникам (кроме отправителя) в /queue/group-messages
         for (String memberId : group.getMemberIds()) {
@@ -257,7 +281,7 @@ public class ChatGroupService {
     }
 
     /**
-     * Получить сообщения группы с пагинацией.
+     * Получить сообщения группы с пагинацией. Страница 0 по возможности — из {@link RecentMessagesCache}.
      */
     public ChatMessagesPage getGroupMessages(String groupId, String userId, int page, int size) {
         ChatGroup group = groupRepository.findById(groupId)
@@ -270,12 +294,10 @@ public class ChatGroupService {
         if (size <= 0 || size > 200) size = 50;
 
         String chatId = "group_" + groupId;
-        Query query = new Query(Criteria.where("chatId").is(chatId));
-        query.with(Sort.by(Sort.Direction.DESC, "timestamp"));
-        query.skip((long) page * size);
-        query.limit(size + 1);
-
-        List<ChatMessage> results = mongoOperations.find(query, ChatMessage.class);
+        int pageSize = size;
+        List<ChatMessage> results = page == 0
+                ? recentMessages.newest(chatId, null, size).orElseGet(() -> findHistory(chatId, 0, pageSize))
+                : findHistory(chatId, page, size);
         boolean hasMore = results.size() > size;
         if (hasMore) {
             results = results.subList(0, size);
@@ -288,6 +310,41 @@ public class ChatGroupService {
                 .build();
     }
 
+    /**
+     * Сообщения группы новее since — догрузка после переподключения. hasMore — не всё поместилось в size.
+     */
+    public ChatMessagesPage getGroupMessagesSince(String groupId, String userId, Date since, int size) {
+        getGroup(groupId, userId);
+        int limit = size <= 0 || size > 200 ? 50 : size;
+
+        String chatId = "group_" + groupId;
+        List<ChatMessage> results = recentMessages.since(chatId, null, since, limit)
+                .orElseGet(() -> {
+                    Query query = new Query(Criteria.where("chatId").is(chatId).and("timestamp").gt(since));
+                    query.with(Sort.by(Sort.Direction.DESC, "timestamp"));
+                    query.limit(limit + 1);
+                    return mongoOperations.find(query, ChatMessage.class);
+                });
+        boolean hasMore = results.size() > limit;
+        if (hasMore) {
+            results = results.subList(0, limit);
+        }
+
+        return ChatMessagesPage.builder()
+                .items(results)
+                .hasMore(hasMore)
+                .nextPage(null)
+                .build();
+    }
+
+    private List<ChatMessage> findHistory(String chatId, int page, int size) {
+        Query query = new Query(Criteria.where("chatId").is(chatId));
+        query.with(Sort.by(Sort.Direction.DESC, "timestamp"));
+        query.skip((long) page * size);
+        query.limit(size + 1);
+        return mongoOperations.find(query, ChatMessage.class);
+    }
+
     /**
      * Загрузить аватарку группы (только создатель).
      */
@@ -382,7 +439,11 @@ public class ChatGroupService {
                 .and("senderId").ne(userId)
                 .and("readBy").nin(userId));
         Update update = new Update().addToSet("readBy", userId);
-        return mongoOperations.updateMulti(query, update, ChatMessage.class).getModifiedCount();
+        long modified = mongoOperations.updateMulti(query, update, ChatMessage.class).getModifiedCount();
+        if (modified > 0) {
+            recentMessages.readBy("group_" + groupId, userId);
+        }
+        return modified;
     }
 
     /**
@@ -420,6 +481,7 @@ public class ChatGroupService {
                 .status(MessageStatus.RECEIVED)
                 .build();
         ChatMessage saved = messageRepository.save(systemMsg);
+        recentMessages.messageSaved(saved);
         for (String memberId : recipientIds) {
             messagingTemplate.convertAndSendToUser(memberId, "/queue/group-messages", saved);
         }
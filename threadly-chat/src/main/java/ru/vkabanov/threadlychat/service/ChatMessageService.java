@@ -1,14 +1,16 @@
 package ru.vkabanov.threadlychat.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.mongodb.core.MongoOperations;
-import org.springframework.data.mongodb.core.aggregation.Aggregation;
-import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.configuration.ChatMetrics;
 import ru.vkabanov.threadlychat.exception.ResourceNotFoundException;
 import ru.vkabanov.threadlychat.exception.ForbiddenException;
 import ru.vkabanov.threadlychat.model.ChatMessage;
@@ -18,14 +20,13 @@ import ru.vkabanov.threadlychat.model.ChatRoom;
 import ru.vkabanov.threadlychat.model.ChatNotification;
 import ru.vkabanov.threadlychat.model.MessageStatus;
 import ru.vkabanov.threadlychat.model.MessageType;
-import ru.vkabanov.threadlychat.model.ReadReceiptPayload;
 import ru.vkabanov.threadlychat.repository.ChatMessageRepository;
 import ru.vkabanov.threadlychat.repository.ChatRoomRepository;
 
 import org.springframework.data.domain.Sort;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -50,12 +51,55 @@ public class ChatMessageService {
     private ImageStorageService imageStorageService;
     @Autowired
     private ChatRoomRepository chatRoomRepository;
+    @Autowired
+    private ContactEventService contactEventService;
+    @Autowired
+    private ChatMetrics chatMetrics;
+    @Autowired
+    private RecentMessagesCache recentMessages;
+    @Autowired
+    private ReadReceiptCoordinator readReceiptCoordinator;
+    @Autowired
+    private UnreadCounterService unreadCounters;
+
+    /**
+     * Индексы под горячие запросы сообщений: страница истории и вкладка «Фото» по chatId с сортировкой
+     * по времени, непрочитанные по получателю, контакты по отправителю. Планы проверяет ChatQueryPlanTest.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoOperations.indexOps(ChatMessage.class).ensureIndex(new Index()
+                .on("chatId", Sort.Direction.ASC)
+                .on("timestamp", Sort.Direction.DESC)
+                .named("chat_message_chat_time"));
+        mongoOperations.indexOps(ChatMessage.class).ensureIndex(new Index()
+                .on("chatId", Sort.Direction.ASC)
+                .on("messageType", Sort.Direction.ASC)
+                .on("timestamp", Sort.Direction.DESC)
+                .named("chat_message_chat_type_time"));
+        mongoOperations.indexOps(ChatMessage.class).ensureIndex(new Index()
+                .on("recipientId", Sort.Direction.ASC)
+                .on("status", Sort.Direction.ASC)
+                .on("senderId", Sort.Direction.ASC)
+                .named("chat_message_unread"));
+        mongoOperations.indexOps(ChatMessage.class).ensureIndex(new Index()
+                .on("senderId", Sort.Direction.ASC)
+                .on("recipientId", Sort.Direction.ASC)
+                .named("chat_message_sender_recipient"));
+    }
 
     /** Сохраняет сообщение, уведомляет получателя и при необходимости отправляет push. Возвращает сохранённое сообщение для sent-ack. */
     public ChatMessage sendMessage(ChatMessage chatMessage) {
+        return chatMetrics.directSend().record(() -> doSendMessage(chatMessage));
+    }
+
+    private ChatMessage doSendMessage(ChatMessage chatMessage) {
         var chatId = chatRoomService.getChatId(chatMessage.getSenderId(), chatMessage.getRecipientId(), true);
         chatMessage.setChatId(chatId.get());
         ChatMessage saved = save(chatMessage);
+        recentMessages.messageSaved(saved);
+        unreadCounters.increment(saved.getRecipientId(), saved.getSenderId());
+        contactEventService.messageSent(saved.getSenderId(), saved.getRecipientId());
         messagingTemplate.convertAndSendToUser(chatMessage.getRecipientId(), "/queue/messages",
                 new ChatNotification(saved.getId(), saved.getSenderId(), saved.getSenderName()));
 
@@ -87,18 +131,18 @@ public class ChatMessageService {
         return chatMessage;
     }
 
+    /**
+     * Непрочитанные от senderId у recipientId — из {@link UnreadCounterService}, без count по сообщениям.
+     */
     public long countNewMessages(String senderId, String recipientId) {
-        Query query = new Query(Criteria
-                .where("senderId").is(senderId)
-                .and("recipientId").is(recipientId)
-                .and("status").is(MessageStatus.RECEIVED)
-                .and("deletedFor").ne(recipientId));
-        return mongoOperations.count(query, ChatMessage.class);
+        return unreadCounters.get(recipientId, senderId);
     }
 
     /**
      * Пагинированная загрузка сообщений чата (как для вкладки «Фото»).
      * Сортировка по дате DESC: страница 0 — самые новые, при подгрузке — более старые.
+     * Страница 0 по возможности отдаётся из {@link RecentMessagesCache}. Чтение ничего не пишет —
+     * прочтение клиент подтверждает отдельно ({@link #markRead}).
      *
      * @param senderId   один участник (например, контакт)
      * @param recipientId второй участник (например, текущий пользователь)
@@ -106,6 +150,10 @@ public class ChatMessageService {
      * @param size       размер страницы
      */
     public ChatMessagesPage findChatMessagesPage(String senderId, String recipientId, int page, int size) {
+        return chatMetrics.directPage().record(() -> doFindChatMessagesPage(senderId, recipientId, page, size));
+    }
+
+    private ChatMessagesPage doFindChatMessagesPage(String senderId, String recipientId, int page, int size) {
         if (page < 0) page = 0;
         if (size <= 0 || size > 200) size = 50;
 
@@ -119,25 +167,55 @@ public class ChatMessageService {
         }
         String chatId = chatIdOpt.get();
 
-        Query query = new Query(Criteria
-                .where("chatId").is(chatId)
-                .and("deletedFor").ne(recipientId));
-        query.with(Sort.by(Sort.Direction.DESC, "timestamp"));
-        query.skip((long) page * size);
-        query.limit(size + 1);
-
-        List<ChatMessage> results = mongoOperations.find(query, ChatMessage.class);
+        int pageSize = size;
+        List<ChatMessage> results = page == 0
+                ? recentMessages.newest(chatId, recipientId, size)
+                        .orElseGet(() -> findHistory(chatId, recipientId, 0, pageSize))
+                : findHistory(chatId, recipientId, page, size);
         boolean hasMore = results.size() > size;
         if (hasMore) {
             results = results.subList(0, size);
         }
 
-        if (page == 0 && !results.isEmpty()) {
-            long modified = updateStatuses(senderId, recipientId, MessageStatus.DELIVERED);
+        enrichWithImageUrls(results);
 
-            if (modified > 0) {
-                messagingTemplate.convertAndSendToUser(senderId, "/queue/read-receipts", new ReadReceiptPayload(recipientId));
-            }
+        return ChatMessagesPage.builder()
+                .items(results)
+                .hasMore(hasMore)
+                .nextPage(hasMore ? page + 1 : null)
+                .build();
+    }
+
+    /**
+     * Сообщения чата новее since — догрузка после переподключения. Новые первыми, не больше size;
+     * hasMore — пропущено больше, чем поместилось, и историю стоит перечитать с первой страницы.
+     */
+    public ChatMessagesPage findChatMessagesSince(String senderId, String recipientId, Date since, int size) {
+        int limit = size <= 0 || size > 200 ? 50 : size;
+
+        var chatIdOpt = chatRoomService.getChatId(senderId, recipientId, false);
+        if (chatIdOpt.isEmpty()) {
+            return ChatMessagesPage.builder()
+                    .items(new ArrayList<>())
+                    .hasMore(false)
+                    .nextPage(null)
+                    .build();
+        }
+        String chatId = chatIdOpt.get();
+
+        List<ChatMessage> results = recentMessages.since(chatId, recipientId, since, limit)
+                .orElseGet(() -> {
+                    Query query = new Query(Criteria
+                            .where("chatId").is(chatId)
+                            .and("deletedFor").ne(recipientId)
+                            .and("timestamp").gt(since));
+                    query.with(Sort.by(Sort.Direction.DESC, "timestamp"));
+                    query.limit(limit + 1);
+                    return mongoOperations.find(query, ChatMessage.class);
+                });
+        boolean hasMore = results.size() > limit;
+        if (hasMore) {
+            results = results.subList(0, limit);
         }
 
         enrichWithImageUrls(results);
@@ -145,16 +223,25 @@ public class ChatMessageService {
         return ChatMessagesPage.builder()
                 .items(results)
                 .hasMore(hasMore)
-                .nextPage(hasMore ? page + 1 : null)
+                .nextPage(null)
                 .build();
     }
 
+    private List<ChatMessage> findHistory(String chatId, String viewerId, int page, int size) {
+        Query query = new Query(Criteria
+                .where("chatId").is(chatId)
+                .and("deletedFor").ne(viewerId));
+        query.with(Sort.by(Sort.Direction.DESC, "timestamp"));
+        query.skip((long) page * size);
+        query.limit(size + 1);
+        return mongoOperations.find(query, ChatMessage.class);
+    }
+
+    /**
+     * Сообщение по id без побочных эффектов: им пользуются и прокси изображений, и выдача ссылок.
+     */
     public ChatMessage findById(String id) {
         ChatMessage message = repository.findById(id)
-                .map(chatMessage -> {
-                    chatMessage.setStatus(MessageStatus.DELIVERED);
-                    return repository.save(chatMessage);
-                })
                 .orElseThrow(() -> new ResourceNotFoundException("can't find message (" + id + ")"));
         enrichWithImageUrl(message);
         enrichWithMediaUrl(message);
@@ -178,46 +265,21 @@ public class ChatMessageService {
 
     /**
      * Количество непрочитанных сообщений по каждому контакту (от контакта текущему пользователю).
-     * Один запрос агрегации — без N+1 и без загрузки всех документов в память.
+     * Счётчики поддерживает {@link UnreadCounterService}: чтение не трогает сообщения вовсе.
      */
     public Map<String, Long> getUnreadCountsByContact(String recipientId) {
-        Aggregation aggregation = Aggregation.newAggregation(
-                Aggregation.match(Criteria
-                        .where("recipientId").is(recipientId)
-                        .and("status").is(MessageStatus.RECEIVED)
-                        .and("deletedFor").ne(recipientId)),
-                Aggregation.group("senderId").count().as("count"),
-                Aggregation.project("count").and("_id").as("senderId")
-        );
-
-        AggregationResults<Map> results = mongoOperations.aggregate(aggregation, ChatMessage.class, Map.class);
-        Map<String, Long> counts = new HashMap<>();
-
-        for (Map doc : results.getMappedResults()) {
-            String senderId = (String) doc.get("senderId");
-            Number count = (Number) doc.get("count");
-            if (senderId != null && count != null) {
-                counts.put(senderId, count.longValue());
-            }
-        }
-
-        return counts;
+        return unreadCounters.getAll(recipientId);
     }
 
     /**
-     * Обновляет статус сообщений (например, на DELIVERED при прочтении).
-     * Обновляются только сообщения со статусом RECEIVED, чтобы избежать лишних записей и дублирования read-receipt.
-     *
-     * @return количество обновлённых документов
+     * «Прочитано до upTo»: сообщения senderId → readerId со статусом RECEIVED и timestamp не новее upTo
+     * (null — все) станут DELIVERED, отправитель получит read-receipt с watermark.
+     * <p>
+     * Команда идемпотентна и применяется не сразу: {@link ReadReceiptCoordinator} склеивает прочтения пары
+     * за окно в одну условную запись и один кадр.
      */
-    public long updateStatuses(String senderId, String recipientId, MessageStatus status) {
-        Query query = new Query(Criteria
-                .where("senderId").is(senderId)
-                .and("recipientId").is(recipientId)
-                .and("status").is(MessageStatus.RECEIVED)
-                .and("deletedFor").ne(recipientId));
-        Update update = Update.update("status", status);
-        return mongoOperations.updateMulti(query, update, ChatMessage.class).getModifiedCount();
+    public void markRead(String senderId, String readerId, Date upTo) {
+        readReceiptCoordinator.submit(senderId, readerId, upTo);
     }
 
     public void deleteChatForUser(String senderId, String recipientId, String userId) {
@@ -228,6 +290,9 @@ public class ChatMessageService {
         Query query = new Query(Criteria.where("chatId").is(chatId));
         Update update = new Update().addToSet("deletedFor", userId);
         mongoOperations.updateMulti(query, update, ChatMessage.class);
+        recentMessages.invalidate(chatId);
+        unreadCounters.reset(userId, userId.equals(senderId) ? recipientId : senderId);
+        contactEventService.chatRemoved(userId, userId.equals(senderId) ? recipientId : senderId);
     }
 
     public void deleteChatForAll(String senderId, String recipientId) {
@@ -248,6 +313,11 @@ public class ChatMessageService {
             }
         }
         repository.deleteByChatId(chatId);
+        recentMessages.invalidate(chatId);
+        unreadCounters.reset(senderId, recipientId);
+        unreadCounters.reset(recipientId, senderId);
+        contactEventService.chatRemoved(senderId, recipientId);
+        contactEventService.chatRemoved(recipientId, senderId);
     }
 
     /**
@@ -1,47 +1,162 @@
 package ru.vkabanov.threadlychat.service;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.configuration.ChatRoomProperties;
+import ru.vkabanov.threadlychat.model.ChatMessage;
 import ru.vkabanov.threadlychat.model.ChatRoom;
 import ru.vkabanov.threadlychat.repository.ChatRoomRepository;
 
+import java.util.List;
 import java.util.Optional;
 
+/**
+ * chatId личного чата по паре собеседников.
+ * <p>
+ * На пару — одна комната с детерминированным id ({@link #roomId}); первое сообщение создаёт её атомарным
+ * upsert по _id, поэтому два одновременных «первых» сообщения с разных сторон получают один chatId.
+ * Связь пары и chatId после создания не меняется, так что ограниченный кэш в памяти не требует инвалидации:
+ * в установившемся режиме отправка сообщения не ходит в chatRoom вовсе.
+ * <p>
+ * Комнаты старого формата — две зеркальные записи с ObjectId — переносятся при старте ({@link #migrateLegacyRooms})
+ * с сохранением chatId; если гонка когда-то создала паре два chatId, сообщения второго переезжают в первый.
+ */
+@Slf4j
 @Service
 public class ChatRoomService {
 
-    @Autowired
-    private ChatRoomRepository chatRoomRepository;
+    private final ChatRoomRepository chatRoomRepository;
+    private final MongoOperations mongoOperations;
+    private final ChatRoomProperties properties;
+
+    /** id комнаты → chatId. Отсутствие комнаты не кэшируется: её может создать другой узел. */
+    private final Cache<String, String> chatIds;
+
+    public ChatRoomService(ChatRoomRepository chatRoomRepository, MongoOperations mongoOperations,
+                           ChatRoomProperties properties) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.mongoOperations = mongoOperations;
+        this.properties = properties;
+        this.chatIds = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheMaxSize())
+                .build();
+    }
+
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoOperations.indexOps(ChatRoom.class).ensureIndex(new Index()
+                .on("senderId", Sort.Direction.ASC)
+                .on("recipientId", Sort.Direction.ASC)
+                .named("chat_room_pair"));
+        mongoOperations.indexOps(ChatRoom.class).ensureIndex(new Index()
+                .on("chatId", Sort.Direction.ASC)
+                .named("chat_room_chat"));
+    }
+
+    /**
+     * Id комнаты пары: userId по возрастанию через «_». Не зависит от того, кто пишет первым.
+     */
+    public static String roomId(String firstUserId, String secondUserId) {
+        return firstUserId.compareTo(secondUserId) <= 0
+                ? firstUserId + "_" + secondUserId
+                : secondUserId + "_" + firstUserId;
+    }
 
     public Optional<String> getChatId(String senderId, String recipientId, boolean createIfNotExist) {
-        return chatRoomRepository.findBySenderIdAndRecipientId(senderId, recipientId)
+        String roomId = roomId(senderId, recipientId);
+        String cached = chatIds.getIfPresent(roomId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<String> chatId = chatRoomRepository.findById(roomId)
                 .map(ChatRoom::getChatId)
-                .or(() -> {
-                    if (!createIfNotExist) {
-                        return Optional.empty();
-                    }
-                    var chatId = String.format("%s_%s", senderId, recipientId);
-
-                    ChatRoom senderRecipient = ChatRoom
-                            .builder()
-                            .chatId(chatId)
-                            .senderId(senderId)
-                            .recipientId(recipientId)
-                            .build();
-                    chatRoomRepository.save(senderRecipient);
-
-                    // For normal chats (different users) create the reverse mapping too
-                    if (!senderId.equals(recipientId)) {
-                        ChatRoom recipientSender = ChatRoom
-                                .builder()
-                                .chatId(chatId)
-                                .senderId(recipientId)
-                                .recipientId(senderId)
-                                .build();
-                        chatRoomRepository.save(recipientSender);
-                    }
-
-                    return Optional.of(chatId);
-                });
+                .or(() -> legacyChatId(roomId, senderId, recipientId));
+        if (chatId.isEmpty() && createIfNotExist) {
+            chatId = Optional.of(upsertRoom(roomId, roomId));
+        }
+        chatId.ifPresent(id -> chatIds.put(roomId, id));
+        return chatId;
+    }
+
+    /**
+     * Комната, созданная узлом старой версии уже после миграции (например, во время выкладки): переносим на лету.
+     */
+    private Optional<String> legacyChatId(String roomId, String senderId, String recipientId) {
+        return chatRoomRepository.findBySenderIdAndRecipientId(senderId, recipientId)
+                .map(legacy -> upsertRoom(roomId, legacy.getChatId()));
+    }
+
+    /**
+     * Создать комнату, если её ещё нет, и вернуть chatId той, что в итоге лежит в базе.
+     */
+    private String upsertRoom(String roomId, String chatId) {
+        int separator = roomId.indexOf('_');
+        Query query = new Query(Criteria.where("id").is(roomId));
+        Update update = new Update()
+                .setOnInsert("chatId", chatId)
+                .setOnInsert("senderId", roomId.substring(0, separator))
+                .setOnInsert("recipientId", roomId.substring(separator + 1));
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoOperations.findAndModify(query, update, options, ChatRoom.class).getChatId();
+        } catch (DuplicateKeyException e) {
+            // Параллельный upsert той же пары успел вставить запись первым — читаем её
+            return chatRoomRepository.findById(roomId)
+                    .map(ChatRoom::getChatId)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    /**
+     * Перевод комнат старого формата в канонические: пачками, повторный запуск и запуск на нескольких узлах безопасны.
+     */
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyRooms() {
+        if (!properties.isMigrateLegacy()) {
+            return;
+        }
+        Query legacyRooms = new Query(Criteria.where("_id").type(7)).limit(properties.getMigrationBatchSize());
+        long migrated = 0;
+        long merged = 0;
+        List<ChatRoom> batch;
+        while (!(batch = mongoOperations.find(legacyRooms, ChatRoom.class)).isEmpty()) {
+            for (ChatRoom legacy : batch) {
+                if (legacy.getSenderId() == null || legacy.getRecipientId() == null) {
+                    removeLegacy(legacy);
+                    continue;
+                }
+                String chatId = upsertRoom(roomId(legacy.getSenderId(), legacy.getRecipientId()), legacy.getChatId());
+                if (legacy.getChatId() != null && !legacy.getChatId().equals(chatId)) {
+                    merged += mongoOperations.updateMulti(
+                            new Query(Criteria.where("chatId").is(legacy.getChatId())),
+                            Update.update("chatId", chatId), ChatMessage.class).getModifiedCount();
+                }
+                removeLegacy(legacy);
+                migrated++;
+            }
+        }
+        if (migrated > 0) {
+            log.info("Migrated {} legacy chat room record(s), moved {} message(s) from duplicate chats", migrated, merged);
+        }
+    }
+
+    private void removeLegacy(ChatRoom legacy) {
+        mongoOperations.remove(new Query(Criteria.where("_id").is(new ObjectId(legacy.getId()))), ChatRoom.class);
     }
 }
@@ -0,0 +1,16 @@
+package ru.vkabanov.threadlychat.service;
+
+import ru.vkabanov.threadlychat.model.ContactEvent;
+
+import java.util.List;
+
+/**
+ * Транспорт событий о контактах в auth-сервис.
+ */
+public interface ContactEventPublisher {
+
+    /**
+     * Отправить пачку событий. false — не доставлено, пачку нужно повторить.
+     */
+    boolean publish(List<ContactEvent> events);
+}
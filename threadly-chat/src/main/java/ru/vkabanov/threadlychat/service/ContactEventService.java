@@ -0,0 +1,125 @@
+package ru.vkabanov.threadlychat.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.configuration.ContactEventsProperties;
+import ru.vkabanov.threadlychat.model.ContactEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * События «переписка началась/удалена» для auth-сервиса.
+ * <p>
+ * События копятся в ограниченной очереди и уходят пачками раз в threadly.contacts.flush-interval-ms,
+ * вне потока отправки сообщения. STARTED для уже отправленного ребра повторно не шлётся
+ * (до истечения dedupe-ttl-minutes), поэтому обычная переписка не порождает событий.
+ */
+@Slf4j
+@Service
+public class ContactEventService {
+
+    private final ContactEventPublisher publisher;
+    private final ContactEventsProperties properties;
+
+    private final LinkedBlockingDeque<ContactEvent> queue;
+    /** edgeId рёбер, о которых auth уже знает (или узнает из очереди). */
+    private final Cache<String, Boolean> startedEdges;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    public ContactEventService(ContactEventPublisher publisher, ContactEventsProperties properties) {
+        this.publisher = publisher;
+        this.properties = properties;
+        this.queue = new LinkedBlockingDeque<>(properties.getQueueCapacity());
+        this.startedEdges = Caffeine.newBuilder()
+                .maximumSize(properties.getDedupeMaxSize())
+                .expireAfterWrite(Duration.ofMinutes(properties.getDedupeTtlMinutes()))
+                .build();
+    }
+
+    /**
+     * Сообщение в личном чате: у обоих участников есть переписка друг с другом.
+     */
+    public void messageSent(String senderId, String recipientId) {
+        if (senderId == null || recipientId == null || senderId.equals(recipientId)) {
+            return;
+        }
+        started(senderId, recipientId);
+        started(recipientId, senderId);
+    }
+
+    /**
+     * userId удалил у себя переписку с contactId.
+     */
+    public void chatRemoved(String userId, String contactId) {
+        if (userId == null || contactId == null) {
+            return;
+        }
+        ContactEvent event = new ContactEvent(ContactEvent.Type.REMOVED, userId, contactId, System.currentTimeMillis());
+        startedEdges.invalidate(event.edgeId());
+        enqueue(event);
+    }
+
+    @Scheduled(fixedDelayString = "${threadly.contacts.flush-interval-ms:500}")
+    public void flush() {
+        List<ContactEvent> batch = new ArrayList<>(Math.min(queue.size(), properties.getBatchSize()));
+        while (true) {
+            batch.clear();
+            queue.drainTo(batch, properties.getBatchSize());
+            if (batch.isEmpty()) {
+                return;
+            }
+            if (!publisher.publish(batch)) {
+                requeue(batch);
+                return;
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    private void started(String userId, String contactId) {
+        ContactEvent event = new ContactEvent(ContactEvent.Type.STARTED, userId, contactId, System.currentTimeMillis());
+        if (startedEdges.asMap().putIfAbsent(event.edgeId(), Boolean.TRUE) == null) {
+            enqueue(event);
+        }
+    }
+
+    private void enqueue(ContactEvent event) {
+        if (!queue.offerLast(event)) {
+            dropped(event);
+        }
+    }
+
+    /**
+     * Неотправленную пачку — обратно в начало очереди, в исходном порядке.
+     */
+    private void requeue(List<ContactEvent> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (!queue.offerFirst(batch.get(i))) {
+                dropped(batch.get(i));
+            }
+        }
+    }
+
+    private void dropped(ContactEvent event) {
+        // Следующее сообщение в этом чате отправит STARTED заново
+        startedEdges.invalidate(event.edgeId());
+        if (droppedEvents.incrementAndGet() % 1000 == 1) {
+            log.warn("Contact event queue is full, dropped {} event(s) so far", droppedEvents.get());
+        }
+    }
+}
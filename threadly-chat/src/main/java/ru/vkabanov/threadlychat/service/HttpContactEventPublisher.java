@@ -0,0 +1,55 @@
+package ru.vkabanov.threadlychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import ru.vkabanov.threadlychat.configuration.ContactEventsProperties;
+import ru.vkabanov.threadlychat.model.ContactEvent;
+import ru.vkabanov.threadlychat.security.InternalEventsToken;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * POST пачки событий в auth /internal/contact-events.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "threadly.contacts.transport", havingValue = "http", matchIfMissing = true)
+public class HttpContactEventPublisher implements ContactEventPublisher {
+
+    private final RestTemplate restTemplate;
+    private final String url;
+    private final InternalEventsToken internalEventsToken;
+
+    public HttpContactEventPublisher(RestTemplateBuilder restTemplateBuilder, ContactEventsProperties properties,
+                                     InternalEventsToken internalEventsToken) {
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofSeconds(2))
+                .setReadTimeout(Duration.ofSeconds(5))
+                .build();
+        this.url = properties.getAuthServiceUrl() + "/internal/contact-events";
+        this.internalEventsToken = internalEventsToken;
+    }
+
+    @Override
+    public boolean publish(List<ContactEvent> events) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            if (internalEventsToken.getValue() != null) {
+                headers.set(InternalEventsToken.HEADER, internalEventsToken.getValue());
+            }
+            restTemplate.postForEntity(url, new HttpEntity<>(events, headers), Void.class);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to publish {} contact event(s) to auth service: {}", events.size(), e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.vkabanov.threadlychat.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.vkabanov.threadlychat.model.ContactEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Транспорт в памяти процесса (threadly.contacts.transport=local): события получают подписчики
+ * этого же процесса и копятся в {@link #getPublished()}. Для тестов и запуска chat без auth.
+ */
+@Component
+@ConditionalOnProperty(name = "threadly.contacts.transport", havingValue = "local")
+public class LocalContactEventPublisher implements ContactEventPublisher {
+
+    private final List<Consumer<List<ContactEvent>>> listeners = new CopyOnWriteArrayList<>();
+    private final List<ContactEvent> published = new CopyOnWriteArrayList<>();
+
+    public void addListener(Consumer<List<ContactEvent>> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public boolean publish(List<ContactEvent> events) {
+        published.addAll(events);
+        listeners.forEach(listener -> listener.accept(events));
+        return true;
+    }
+
+    public List<ContactEvent> getPublished() {
+        return new ArrayList<>(published);
+    }
+}
@@ -6,11 +6,13 @@ import io.minio.GetPresignedObjectUrlArgs;
 import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
 import io.minio.RemoveObjectArgs;
+import io.minio.errors.ErrorResponseException;
 import io.minio.http.Method;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.configuration.ChatMetrics;
 import ru.vkabanov.threadlychat.configuration.StorageProperties;
 
 import javax.annotation.PostConstruct;
@@ -29,16 +31,21 @@ import java.util.regex.Pattern;
 public class MinioImageStorageService implements ImageStorageService {
 
     private final StorageProperties properties;
+    private final ChatMetrics chatMetrics;
 
     private MinioClient minioClient;
 
     @PostConstruct
     public void init() {
         try {
-            minioClient = MinioClient.builder()
+            MinioClient.Builder builder = MinioClient.builder()
                     .endpoint(properties.getEndpoint())
-                    .credentials(properties.getAccessKey(), properties.getSecretKey())
-                    .build();
+                    .credentials(properties.getAccessKey(), properties.getSecretKey());
+            // С известным регионом presign считается локально, без запроса GetBucketLocation к MinIO
+            if (properties.getRegion() != null && !properties.getRegion().isBlank()) {
+                builder.region(properties.getRegion());
+            }
+            minioClient = builder.build();
             if (properties.getPresignedEndpoint() != null && !properties.getPresignedEndpoint().isBlank()) {
                 log.info("Presigned URLs will be rewritten to: {}", properties.getPresignedEndpoint());
             }
@@ -65,6 +72,7 @@ public class MinioImageStorageService implements ImageStorageService {
         if (objectKey == null || objectKey.isBlank()) {
             return Optional.empty();
         }
+        long started = System.nanoTime();
         try {
             GetObjectResponse response = minioClient.getObject(GetObjectArgs.builder()
                     .bucket(properties.getBucket())
@@ -74,8 +82,14 @@ public class MinioImageStorageService implements ImageStorageService {
             if (contentType == null || contentType.isBlank()) {
                 contentType = "application/octet-stream";
             }
+            chatMetrics.recordStorage("get", "success", started);
             return Optional.of(new ImageStreamResult(response, contentType));
+        } catch (ErrorResponseException e) {
+            chatMetrics.recordStorage("get", "NoSuchKey".equals(e.errorResponse().code()) ? "missing" : "error", started);
+            log.warn("Failed to get object stream for {}: {}", objectKey, e.getMessage());
+            return Optional.empty();
         } catch (Exception e) {
+            chatMetrics.recordStorage("get", "error", started);
             log.warn("Failed to get object stream for {}: {}", objectKey, e.getMessage());
             return Optional.empty();
         }
@@ -83,6 +97,7 @@ public class MinioImageStorageService implements ImageStorageService {
 
     @Override
     public String upload(InputStream inputStream, long size, String contentType, String objectKey) {
+        long started = System.nanoTime();
         try {
             minioClient.putObject(PutObjectArgs.builder()
                     .bucket(properties.getBucket())
@@ -90,8 +105,10 @@ public class MinioImageStorageService implements ImageStorageService {
                     .stream(inputStream, size, -1)
                     .contentType(contentType != null ? contentType : "application/octet-stream")
                     .build());
+            chatMetrics.recordStorage("upload", "success", started);
             return objectKey;
         } catch (Exception e) {
+            chatMetrics.recordStorage("upload", "error", started);
             log.error("Upload failed for key {}: {}", objectKey, e.getMessage());
             throw new RuntimeException("Failed to upload image", e);
         }
@@ -102,6 +119,7 @@ public class MinioImageStorageService implements ImageStorageService {
         if (objectKey == null || objectKey.isBlank()) {
             return Optional.empty();
         }
+        long started = System.nanoTime();
         try {
             // Всегда генерируем URL через внутренний endpoint (minio:9000), чтобы из контейнера не подключаться к localhost
             String url = minioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
@@ -116,8 +134,10 @@ public class MinioImageStorageService implements ImageStorageService {
                 String replacement = properties.getPresignedEndpoint().replaceFirst("/$", "");
                 url = url.replaceFirst("(?i)^https?://" + Pattern.quote(internal), replacement);
             }
+            chatMetrics.recordStorage("presign", "success", started);
             return Optional.of(url);
         } catch (Exception e) {
+            chatMetrics.recordStorage("presign", "error", started);
             log.warn("Failed to get presigned URL for {}: {}", objectKey, e.getMessage());
             return Optional.empty();
         }
@@ -128,12 +148,15 @@ public class MinioImageStorageService implements ImageStorageService {
         if (objectKey == null || objectKey.isBlank()) {
             return;
         }
+        long started = System.nanoTime();
         try {
             minioClient.removeObject(RemoveObjectArgs.builder()
                     .bucket(properties.getBucket())
                     .object(objectKey)
                     .build());
+            chatMetrics.recordStorage("delete", "success", started);
         } catch (Exception e) {
+            chatMetrics.recordStorage("delete", "error", started);
             log.warn("Failed to delete object {}: {}", objectKey, e.getMessage());
         }
     }
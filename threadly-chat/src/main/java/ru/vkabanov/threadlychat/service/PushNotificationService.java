@@ -7,7 +7,13 @@ import nl.martijndwars.webpush.Encoding;
 import nl.martijndwars.webpush.Notification;
 import nl.martijndwars.webpush.PushService;
 import org.apache.http.util.EntityUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.configuration.ChatMetrics;
 import ru.vkabanov.threadlychat.configuration.PushConfig;
 import ru.vkabanov.threadlychat.model.PushSubscriptionEntity;
 import ru.vkabanov.threadlychat.repository.PushSubscriptionRepository;
@@ -25,6 +31,16 @@ public class PushNotificationService {
     private final PushConfig.PushProperties pushProperties;
     private final PushSubscriptionRepository subscriptionRepository;
     private final ObjectMapper objectMapper;
+    private final ChatMetrics chatMetrics;
+    private final MongoOperations mongoOperations;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoOperations.indexOps(PushSubscriptionEntity.class).ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .on("endpoint", Sort.Direction.ASC)
+                .named("push_subscriptions_user_endpoint"));
+    }
 
     public String getPublicKey() {
         return pushProperties.getVapid().getPublicKey();
@@ -69,6 +85,7 @@ public class PushNotificationService {
         }
 
         for (PushSubscriptionEntity sub : subs) {
+            long started = System.nanoTime();
             try {
                 Notification notification = Notification.builder()
                         .endpoint(sub.getEndpoint())
@@ -79,6 +96,7 @@ public class PushNotificationService {
                         .build();
                 var response = pushService.send(notification, Encoding.AES128GCM);
                 int statusCode = response.getStatusLine().getStatusCode();
+                chatMetrics.recordPush(String.valueOf(statusCode), started);
                 
                 if (statusCode == 201) {
                     log.info("[Push] Successfully sent (201) to userId={}, endpoint={}", userId, sub.getEndpoint().substring(0, Math.min(50, sub.getEndpoint().length())) + "...");
@@ -102,6 +120,7 @@ public class PushNotificationService {
                     log.warn("[Push] Unexpected response {} for userId={}, endpoint={}. Body: {}", statusCode, userId, sub.getEndpoint(), responseBody);
                 }
             } catch (Exception e) {
+                chatMetrics.recordPush("error", started);
                 log.warn("[Push] Failed to send to userId={}, endpoint={}: {}", userId, sub.getEndpoint(), e.getMessage());
             }
         }
@@ -0,0 +1,123 @@
+package ru.vkabanov.threadlychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.configuration.ReadReceiptsProperties;
+import ru.vkabanov.threadlychat.model.ChatMessage;
+import ru.vkabanov.threadlychat.model.MessageStatus;
+import ru.vkabanov.threadlychat.model.ReadReceiptPayload;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Прочтения личных чатов: «читатель прочитал сообщения отправителя до upTo».
+ * <p>
+ * Команды копятся по паре (отправитель, читатель), от нескольких остаётся наибольший upTo. Раз в
+ * threadly.read-receipts.window-ms на пару уходит один условный updateMulti (только RECEIVED и не новее
+ * watermark) и, если что-то изменилось, один кадр /queue/read-receipts с watermark. Частое переключение
+ * между чатами и повторные открытия поэтому не множат ни записи, ни кадры.
+ */
+@Slf4j
+@Service
+public class ReadReceiptCoordinator {
+
+    private final MongoOperations mongoOperations;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatRoomService chatRoomService;
+    private final RecentMessagesCache recentMessages;
+    private final UnreadCounterService unreadCounters;
+    private final ReadReceiptsProperties properties;
+
+    private final Map<ReadKey, Date> pending = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public ReadReceiptCoordinator(MongoOperations mongoOperations, SimpMessagingTemplate messagingTemplate,
+                                  ChatRoomService chatRoomService, RecentMessagesCache recentMessages,
+                                  UnreadCounterService unreadCounters, ReadReceiptsProperties properties) {
+        this.mongoOperations = mongoOperations;
+        this.messagingTemplate = messagingTemplate;
+        this.chatRoomService = chatRoomService;
+        this.recentMessages = recentMessages;
+        this.unreadCounters = unreadCounters;
+        this.properties = properties;
+    }
+
+    /**
+     * Принять прочтение. upTo == null — всё, что пришло до этого момента.
+     */
+    public void submit(String senderId, String readerId, Date upTo) {
+        ReadKey key = new ReadKey(senderId, readerId);
+        Date watermark = upTo != null ? upTo : new Date();
+        if (pending.size() >= properties.getMaxPending() && !pending.containsKey(key)) {
+            apply(key, watermark);
+            return;
+        }
+        pending.merge(key, watermark, (current, next) -> {
+            coalesced.incrementAndGet();
+            return next.after(current) ? next : current;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${threadly.read-receipts.window-ms:300}")
+    public void flush() {
+        for (ReadKey key : pending.keySet()) {
+            Date watermark = pending.remove(key);
+            if (watermark == null) {
+                continue;
+            }
+            try {
+                apply(key, watermark);
+            } catch (RuntimeException e) {
+                // Не возвращаем в очередь: клиент повторит прочтение при следующем открытии чата
+                log.warn("Failed to apply read receipt {} -> {}: {}", key.senderId(), key.readerId(), e.getMessage());
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Одна условная запись на пару: RECEIVED-сообщения отправителя читателю не новее watermark.
+     * Если непрочитанных нет, не пишем и кадр не шлём. Ненулевой счётчик непрочитанных говорит об этом без
+     * запроса; нулевой перепроверяем по индексу — счётчик с другого узла может отставать на интервал записи.
+     */
+    private void apply(ReadKey key, Date watermark) {
+        Query unread = new Query(Criteria
+                .where("senderId").is(key.senderId())
+                .and("recipientId").is(key.readerId())
+                .and("status").is(MessageStatus.RECEIVED)
+                .and("deletedFor").ne(key.readerId())
+                .and("timestamp").lte(watermark));
+        if (unreadCounters.get(key.readerId(), key.senderId()) == 0 && !mongoOperations.exists(unread, ChatMessage.class)) {
+            return;
+        }
+        long modified = mongoOperations.updateMulti(unread, Update.update("status", MessageStatus.DELIVERED),
+                ChatMessage.class).getModifiedCount();
+        if (modified == 0) {
+            return;
+        }
+        unreadCounters.decrement(key.readerId(), key.senderId(), modified);
+        chatRoomService.getChatId(key.senderId(), key.readerId(), false).ifPresent(chatId ->
+                recentMessages.statusesChanged(chatId, key.senderId(), key.readerId(), watermark, MessageStatus.DELIVERED));
+        messagingTemplate.convertAndSendToUser(key.senderId(), "/queue/read-receipts",
+                new ReadReceiptPayload(key.readerId(), watermark));
+    }
+
+    private record ReadKey(String senderId, String readerId) {
+    }
+}
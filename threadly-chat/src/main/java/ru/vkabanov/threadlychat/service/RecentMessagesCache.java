@@ -0,0 +1,413 @@
+package ru.vkabanov.threadlychat.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.cluster.CacheInvalidationEvent;
+import ru.vkabanov.threadlychat.cluster.ClusterEventBus;
+import ru.vkabanov.threadlychat.configuration.RecentMessagesProperties;
+import ru.vkabanov.threadlychat.model.ChatMessage;
+import ru.vkabanov.threadlychat.model.MessageStatus;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Последние сообщения активных чатов в памяти узла: первая страница истории и догрузка «since» без Mongo.
+ * <p>
+ * На чат — окно из последних {@code messagesPerChat} сообщений в порядке выдачи (timestamp по убыванию).
+ * Окно загружается при первом чтении первой страницы, отправки дописываются в уже загруженное, а каждое изменение сообщений
+ * в Mongo (статус, readBy, удаление) повторяется на окне тем же условием, что и в запросе. deletedFor
+ * не фильтруется при заполнении — скрытое у читателя отсекается при выдаче, поэтому окно одно на чат,
+ * а не на пару «чат, читатель».
+ * <p>
+ * Заполнение из Mongo не держит блокировок: перед чтением запоминается поколение полосы chatId, и окно
+ * кладётся, только если за время чтения по этим чатам не было изменений. Остальным узлам после каждого
+ * изменения уходит {@link CacheInvalidationEvent}, так что между узлами окна согласованы с задержкой шины;
+ * при появлении соседа кэш сбрасывается целиком — пока связи не было, события могли потеряться.
+ * <p>
+ * Память ограничена оценкой размера сообщений, вытесняет Caffeine (давно не читанные чаты — первыми).
+ */
+@Slf4j
+@Service
+public class RecentMessagesCache implements ClusterEventBus.MembershipListener {
+
+    public static final String CACHE_NAME = "recent-messages";
+
+    private static final int STRIPES = 256;
+
+    /** Как сортирует Mongo: timestamp по убыванию, сообщения без timestamp — в конце. */
+    private static final Comparator<ChatMessage> NEWEST_FIRST = Comparator.comparing(ChatMessage::getTimestamp,
+            Comparator.nullsFirst(Comparator.<Date>naturalOrder())).reversed();
+
+    private final MongoOperations mongoOperations;
+    private final ClusterEventBus clusterEventBus;
+    private final RecentMessagesProperties properties;
+
+    private final Cache<String, Window> windows;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RecentMessagesCache(MongoOperations mongoOperations, ClusterEventBus clusterEventBus,
+                               RecentMessagesProperties properties) {
+        this.mongoOperations = mongoOperations;
+        this.clusterEventBus = clusterEventBus;
+        this.properties = properties;
+        this.windows = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxBytes())
+                .weigher((String chatId, Window window) -> (int) Math.min(Integer.MAX_VALUE, window.bytes()))
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (properties.isEnabled()) {
+            clusterEventBus.subscribe(CacheInvalidationEvent.class, this::onRemoteInvalidation);
+            clusterEventBus.addMembershipListener(this);
+        }
+    }
+
+    /**
+     * Последние size + 1 сообщений чата, видимых читателю (лишнее — признак hasMore), или пусто, если окно
+     * ответить не может и нужно идти в Mongo.
+     *
+     * @param viewerId читатель для фильтра deletedFor; null — без фильтра (группы)
+     */
+    public Optional<List<ChatMessage>> newest(String chatId, String viewerId, int size) {
+        if (!properties.isEnabled() || size + 1 > properties.getMessagesPerChat()) {
+            return Optional.empty();
+        }
+        Window window = windows.getIfPresent(chatId);
+        boolean cached = window != null;
+        if (!cached) {
+            // Холодное окно — промах, даже если загрузка ответит на страницу: запрос в Mongo уже ушёл
+            misses.increment();
+            window = load(chatId);
+        }
+        List<ChatMessage> visible = window.select(viewerId, null, size + 1);
+        if (visible.size() <= size && !window.complete()) {
+            // Окно короче страницы (почти всё скрыто у читателя): за остальным — в Mongo
+            if (cached) {
+                misses.increment();
+            }
+            return Optional.empty();
+        }
+        if (cached) {
+            hits.increment();
+        }
+        return Optional.of(copies(visible));
+    }
+
+    /**
+     * Сообщения новее since (не больше limit + 1, новые первыми) или пусто, если окна нет или оно не покрывает
+     * этот интервал. Окно здесь не загружается: покроет ли оно since, заранее неизвестно, и при непокрытом
+     * интервале вызывающий код сходил бы в Mongo второй раз. Окно загрузит чтение первой страницы.
+     */
+    public Optional<List<ChatMessage>> since(String chatId, String viewerId, Date since, int limit) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        Window window = windows.getIfPresent(chatId);
+        if (window == null || !window.covers(since)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(copies(window.select(viewerId, since, limit + 1)));
+    }
+
+    /**
+     * Новое сообщение сохранено в Mongo. Дописывается только в уже загруженное окно: окно из одного сообщения
+     * не отвечало бы на первую страницу, а заменить его свежей загрузкой было бы некому. Без окна первое
+     * чтение загрузит его из Mongo целиком, вместе с этим сообщением.
+     */
+    public void messageSaved(ChatMessage message) {
+        if (!properties.isEnabled() || message.getChatId() == null || message.getId() == null) {
+            return;
+        }
+        ChatMessage copy = copy(message);
+        change(message.getChatId(), window -> window.insert(copy, properties.getMessagesPerChat()));
+    }
+
+    /**
+     * То же, что {@link ReadReceiptCoordinator}: RECEIVED-сообщения отправителя получателю, не удалённые
+     * получателем и не новее upTo (null — все), получают новый статус.
+     */
+    public void statusesChanged(String chatId, String senderId, String recipientId, Date upTo, MessageStatus status) {
+        updateMatching(chatId,
+                m -> senderId.equals(m.getSenderId()) && recipientId.equals(m.getRecipientId())
+                        && m.getStatus() == MessageStatus.RECEIVED && !contains(m.getDeletedFor(), recipientId)
+                        && (upTo == null || (m.getTimestamp() != null && !m.getTimestamp().after(upTo))),
+                m -> m.setStatus(status));
+    }
+
+    /**
+     * То же, что {@link ChatGroupService#markGroupMessagesRead}: чужие сообщения, ещё не прочитанные userId.
+     */
+    public void readBy(String chatId, String userId) {
+        updateMatching(chatId,
+                m -> !userId.equals(m.getSenderId()) && !contains(m.getReadBy(), userId),
+                m -> m.setReadBy(with(m.getReadBy(), userId)));
+    }
+
+    /**
+     * Сбросить окно чата: массовое удаление и прочие изменения, которые проще перечитать, чем повторить.
+     */
+    public void invalidate(String chatId) {
+        if (properties.isEnabled()) {
+            change(chatId, window -> null);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getChatCount() {
+        return windows.estimatedSize();
+    }
+
+    public long getEvictions() {
+        return windows.stats().evictionCount();
+    }
+
+    /** Оценка памяти всех окон. */
+    public long getWeightedBytes() {
+        return windows.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    @Override
+    public void onNodeJoined(String nodeId) {
+        bumpAll();
+        windows.invalidateAll();
+        log.debug("Recent messages cache cleared: node {} joined", nodeId);
+    }
+
+    @Override
+    public void onNodeLeft(String nodeId) {
+    }
+
+    private void onRemoteInvalidation(CacheInvalidationEvent event) {
+        if (!CACHE_NAME.equals(event.getCacheName())) {
+            return;
+        }
+        if (event.getKey() == null) {
+            bumpAll();
+            windows.invalidateAll();
+        } else {
+            generations.incrementAndGet(stripe(event.getKey()));
+            windows.invalidate(event.getKey());
+        }
+    }
+
+    /**
+     * Прочитать окно из Mongo. Если пока шло чтение, чаты этой полосы менялись, результат не кладётся —
+     * в нём может не оказаться изменения, которое уже применено (или сброшено) в кэше. Вызывающему окно
+     * отдаётся в любом случае: это то же, что прочитал бы из Mongo он сам.
+     */
+    private Window load(String chatId) {
+        long generation = generations.get(stripe(chatId));
+        int capacity = properties.getMessagesPerChat();
+        Query query = new Query(Criteria.where("chatId").is(chatId));
+        query.with(Sort.by(Sort.Direction.DESC, "timestamp"));
+        query.limit(capacity + 1);
+        List<ChatMessage> loaded = mongoOperations.find(query, ChatMessage.class);
+        boolean complete = loaded.size() <= capacity;
+        Window fresh = Window.of(complete ? loaded : loaded.subList(0, capacity), complete);
+        windows.asMap().compute(chatId, (key, existing) ->
+                generations.get(stripe(key)) == generation ? fresh : existing);
+        return fresh;
+    }
+
+    private void updateMatching(String chatId, Predicate<ChatMessage> match, Consumer<ChatMessage> update) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        change(chatId, window -> window.map(match, m -> {
+            ChatMessage changed = copy(m);
+            update.accept(changed);
+            return changed;
+        }));
+    }
+
+    /**
+     * Изменение после записи в Mongo: новое поколение полосы (срывает идущие заполнения), правка окна
+     * и сброс окна на остальных узлах. Все правки идемпотентны — заполнение, прочитавшее запись, не испортится.
+     */
+    private void change(String chatId, UnaryOperator<Window> update) {
+        generations.incrementAndGet(stripe(chatId));
+        windows.asMap().computeIfPresent(chatId, (key, window) -> update.apply(window));
+        clusterEventBus.publish(new CacheInvalidationEvent(CACHE_NAME, chatId));
+    }
+
+    private void bumpAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+    }
+
+    private static int stripe(String chatId) {
+        return (chatId.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    /**
+     * Копия без полей выдачи (imageUrl, mediaDownloadUrl): сообщения окна не меняются, вызывающий код
+     * получает свои экземпляры и может их обогащать.
+     */
+    private static ChatMessage copy(ChatMessage message) {
+        return message.toBuilder()
+                .imageUrl(null)
+                .mediaDownloadUrl(null)
+                .deletedFor(message.getDeletedFor() != null ? new HashSet<>(message.getDeletedFor()) : null)
+                .readBy(message.getReadBy() != null ? new HashSet<>(message.getReadBy()) : null)
+                .build();
+    }
+
+    private static List<ChatMessage> copies(List<ChatMessage> messages) {
+        List<ChatMessage> result = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            result.add(copy(message));
+        }
+        return result;
+    }
+
+    private static boolean contains(Set<String> values, String value) {
+        return values != null && values.contains(value);
+    }
+
+    private static Set<String> with(Set<String> values, String value) {
+        Set<String> result = values != null ? new HashSet<>(values) : new HashSet<>();
+        result.add(value);
+        return result;
+    }
+
+    /**
+     * Грубая оценка занимаемой памяти: заголовки объектов и ссылки плюс строки по два байта на символ.
+     */
+    private static long estimateBytes(ChatMessage m) {
+        long bytes = 160;
+        bytes += chars(m.getId()) + chars(m.getChatId()) + chars(m.getSenderId()) + chars(m.getRecipientId())
+                + chars(m.getSenderName()) + chars(m.getRecipientName()) + chars(m.getContent())
+                + chars(m.getImageKey()) + chars(m.getMediaKey());
+        bytes += setBytes(m.getDeletedFor()) + setBytes(m.getReadBy());
+        return bytes;
+    }
+
+    private static long chars(String value) {
+        return value != null ? 40 + 2L * value.length() : 0;
+    }
+
+    private static long setBytes(Collection<String> values) {
+        if (values == null) {
+            return 0;
+        }
+        long bytes = 64;
+        for (String value : values) {
+            bytes += 32 + chars(value);
+        }
+        return bytes;
+    }
+
+    /**
+     * Последние сообщения чата, новые первыми. complete — в окне весь чат целиком.
+     */
+    private record Window(List<ChatMessage> messages, boolean complete, long bytes) {
+
+        static Window of(List<ChatMessage> messages, boolean complete) {
+            long bytes = 64;
+            for (ChatMessage message : messages) {
+                bytes += estimateBytes(message);
+            }
+            return new Window(List.copyOf(messages), complete, bytes);
+        }
+
+        /**
+         * Видимые читателю сообщения новее since (null — любые), не больше limit.
+         */
+        List<ChatMessage> select(String viewerId, Date since, int limit) {
+            List<ChatMessage> result = new ArrayList<>(Math.min(limit, messages.size()));
+            for (ChatMessage message : messages) {
+                if (result.size() == limit) {
+                    break;
+                }
+                if (since != null && (message.getTimestamp() == null || !message.getTimestamp().after(since))) {
+                    break;
+                }
+                if (viewerId == null || !contains(message.getDeletedFor(), viewerId)) {
+                    result.add(message);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Все сообщения новее since есть в окне: чат целиком или самое старое в окне не новее since.
+         */
+        boolean covers(Date since) {
+            if (complete) {
+                return true;
+            }
+            Date oldest = messages.isEmpty() ? null : messages.get(messages.size() - 1).getTimestamp();
+            return oldest != null && !oldest.after(since);
+        }
+
+        /**
+         * Вставить (или заменить по id) сообщение. Старше всего окна у неполного чата — не его диапазон,
+         * окно остаётся как есть.
+         */
+        Window insert(ChatMessage message, int capacity) {
+            List<ChatMessage> result = new ArrayList<>(messages.size() + 1);
+            for (ChatMessage existing : messages) {
+                if (!existing.getId().equals(message.getId())) {
+                    result.add(existing);
+                }
+            }
+            if (!complete && !result.isEmpty() && NEWEST_FIRST.compare(message, result.get(result.size() - 1)) > 0) {
+                return this;
+            }
+            result.add(message);
+            result.sort(NEWEST_FIRST);
+            if (result.size() > capacity) {
+                return of(result.subList(0, capacity), false);
+            }
+            return of(result, complete);
+        }
+
+        Window map(Predicate<ChatMessage> match, UnaryOperator<ChatMessage> update) {
+            List<ChatMessage> result = new ArrayList<>(messages.size());
+            boolean changed = false;
+            for (ChatMessage message : messages) {
+                if (match.test(message)) {
+                    result.add(update.apply(message));
+                    changed = true;
+                } else {
+                    result.add(message);
+                }
+            }
+            return changed ? of(result, complete) : this;
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package ru.vkabanov.threadlychat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.cluster.CacheInvalidationEvent;
+import ru.vkabanov.threadlychat.cluster.ClusterEventBus;
+import ru.vkabanov.threadlychat.configuration.UnreadCountersProperties;
+import ru.vkabanov.threadlychat.model.ChatMessage;
+import ru.vkabanov.threadlychat.model.MessageStatus;
+import ru.vkabanov.threadlychat.model.UnreadCountPayload;
+import ru.vkabanov.threadlychat.model.UnreadCounter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Непрочитанные сообщения личных чатов по паре (пользователь, собеседник) — без count и агрегаций по сообщениям.
+ * <p>
+ * Счётчики пользователя загружаются из unread_counters при первом обращении и дальше живут в памяти, разбитой
+ * на полосы по userId: у каждой полосы свой замок, так что отправки разным пользователям не конкурируют.
+ * Отправка увеличивает счётчик получателя, прочтение уменьшает на число отмеченных сообщений, удаление чата
+ * обнуляет; новое значение сразу уходит пользователю в /queue/unread.
+ * <p>
+ * Изменения копятся по ключу и раз в threadly.unread.flush-interval-ms уходят в Mongo одной bulk-операцией на
+ * полосу: приращения — $inc (узлы пишут независимо, порядок не важен), обнуление — $set или удаление записи.
+ * После записи остальным узлам уходит {@link CacheInvalidationEvent} по userId: они перечитают счётчики
+ * при следующем обращении, так что между узлами расхождение не дольше интервала записи.
+ */
+@Slf4j
+@Service
+public class UnreadCounterService {
+
+    public static final String CACHE_NAME = "unread-counters";
+
+    private static final int STRIPES = 64;
+
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String BACKFILL_MARKER = "unread-counters-backfill";
+
+    private final MongoOperations mongoOperations;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ClusterEventBus clusterEventBus;
+    private final UnreadCountersProperties properties;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public UnreadCounterService(MongoOperations mongoOperations, SimpMessagingTemplate messagingTemplate,
+                                ClusterEventBus clusterEventBus, UnreadCountersProperties properties) {
+        this.mongoOperations = mongoOperations;
+        this.messagingTemplate = messagingTemplate;
+        this.clusterEventBus = clusterEventBus;
+        this.properties = properties;
+        int usersPerStripe = Math.max(1, properties.getMaxLoadedUsers() / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(usersPerStripe);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        clusterEventBus.subscribe(CacheInvalidationEvent.class, this::onRemoteInvalidation);
+    }
+
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoOperations.indexOps(UnreadCounter.class).ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .named("unread_counters_user"));
+    }
+
+    /**
+     * Первый запуск со счётчиками: считаем их один раз по непрочитанным сообщениям и ставим отметку в
+     * коллекции migrations. Пустота unread_counters признаком не служит — первая запись по расписанию
+     * может успеть раньше. Пересчёт выставляет значения ($set), поэтому уже записанные приращения он не удваивает,
+     * а повтор на другом узле запишет те же числа. На время пересчёта запись и загрузка счётчиков остановлены.
+     * <p>
+     * Отправки и прочтения во время пересчёта копятся в pending, но агрегация могла их уже увидеть — приращение
+     * поверх легло бы дважды. Поэтому накопленное за пересчёт отбрасывается, а эти пары считаются заново
+     * точечным count и тоже выставляются.
+     */
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Query marker = new Query(Criteria.where("_id").is(BACKFILL_MARKER));
+        if (!properties.isBackfill() || mongoOperations.exists(marker, MIGRATIONS_COLLECTION)) {
+            return;
+        }
+        for (Stripe stripe : stripes) {
+            stripe.loadLock.lock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                if (!flush(stripe)) {
+                    // Несохранённое легло бы поверх пересчёта дважды — повторим при следующем старте
+                    return;
+                }
+            }
+            int counters = recount();
+            Set<CounterKey> changed = new HashSet<>();
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    changed.addAll(stripe.pending.keySet());
+                    stripe.pending = new HashMap<>();
+                    stripe.users.clear();
+                }
+            }
+            recount(changed);
+            mongoOperations.save(new Document("_id", BACKFILL_MARKER).append("completedAt", new Date()),
+                    MIGRATIONS_COLLECTION);
+            log.info("Backfilled {} unread counter(s) from unread messages, {} recounted after concurrent changes",
+                    counters, changed.size());
+        } finally {
+            for (Stripe stripe : stripes) {
+                stripe.loadLock.unlock();
+            }
+        }
+        clusterEventBus.publish(new CacheInvalidationEvent(CACHE_NAME, null));
+    }
+
+    /**
+     * Несохранённые изменения пишем при остановке: иначе каждый перезапуск терял бы до интервала приращений.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        long lost = getPendingChanges();
+        if (lost > 0) {
+            log.warn("{} unread counter change(s) could not be persisted on shutdown", lost);
+        }
+    }
+
+    /**
+     * Непрочитанные от contactId у userId.
+     */
+    public long get(String userId, String contactId) {
+        Map<String, Long> counts = loaded(userId);
+        synchronized (stripe(userId)) {
+            return counts.getOrDefault(contactId, 0L);
+        }
+    }
+
+    /**
+     * Ненулевые счётчики пользователя по собеседникам.
+     */
+    public Map<String, Long> getAll(String userId) {
+        Map<String, Long> counts = loaded(userId);
+        synchronized (stripe(userId)) {
+            return new HashMap<>(counts);
+        }
+    }
+
+    /** Новое сообщение от contactId пользователю userId. */
+    public void increment(String userId, String contactId) {
+        change(userId, contactId, false, 1);
+    }
+
+    /** userId прочитал count сообщений от contactId. */
+    public void decrement(String userId, String contactId, long count) {
+        if (count > 0) {
+            change(userId, contactId, false, -count);
+        }
+    }
+
+    /** Переписки с contactId у userId больше нет (удалена у себя или у обоих). */
+    public void reset(String userId, String contactId) {
+        change(userId, contactId, true, 0);
+    }
+
+    @Scheduled(fixedDelayString = "${threadly.unread.flush-interval-ms:1000}")
+    public void flush() {
+        for (Stripe stripe : stripes) {
+            stripe.loadLock.lock();
+            try {
+                flush(stripe);
+            } finally {
+                stripe.loadLock.unlock();
+            }
+        }
+    }
+
+    public long getLoadedUsers() {
+        long users = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                users += stripe.users.size();
+            }
+        }
+        return users;
+    }
+
+    public long getPendingChanges() {
+        long pending = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                pending += stripe.pending.size();
+            }
+        }
+        return pending;
+    }
+
+    private void change(String userId, String contactId, boolean reset, long delta) {
+        Stripe stripe = stripe(userId);
+        Long current = null;
+        synchronized (stripe) {
+            Map<String, Long> counts = stripe.users.get(userId);
+            long value = 0;
+            if (counts != null) {
+                value = reset ? 0 : counts.getOrDefault(contactId, 0L) + delta;
+                if (value <= 0) {
+                    // Ниже нуля счётчик может уйти только из-за расхождения — сохраняем ноль, а не приращение
+                    reset = reset || value < 0;
+                    value = 0;
+                    counts.remove(contactId);
+                } else {
+                    counts.put(contactId, value);
+                }
+                current = value;
+            }
+            stripe.pending.computeIfAbsent(new CounterKey(userId, contactId), key -> new PendingChange())
+                    .apply(reset, reset ? value : delta);
+        }
+        messagingTemplate.convertAndSendToUser(userId, "/queue/unread",
+                new UnreadCountPayload(contactId, current != null ? current : get(userId, contactId)));
+    }
+
+    /**
+     * Счётчики пользователя, при необходимости — из Mongo. Загрузка и запись полосы исключают друг друга:
+     * иначе прочитанное могло бы уже содержать часть пачки, которую мы ещё раз наложим сверху.
+     */
+    private Map<String, Long> loaded(String userId) {
+        Stripe stripe = stripe(userId);
+        synchronized (stripe) {
+            Map<String, Long> counts = stripe.users.get(userId);
+            if (counts != null) {
+                return counts;
+            }
+        }
+        stripe.loadLock.lock();
+        try {
+            synchronized (stripe) {
+                Map<String, Long> counts = stripe.users.get(userId);
+                if (counts != null) {
+                    return counts;
+                }
+            }
+            List<UnreadCounter> persisted = mongoOperations.find(
+                    new Query(Criteria.where("userId").is(userId)), UnreadCounter.class);
+            synchronized (stripe) {
+                Map<String, Long> counts = new HashMap<>();
+                for (UnreadCounter counter : persisted) {
+                    counts.put(counter.getContactId(), counter.getCount());
+                }
+                stripe.pending.forEach((key, change) -> {
+                    if (key.userId().equals(userId)) {
+                        counts.put(key.contactId(), change.applyTo(counts.getOrDefault(key.contactId(), 0L)));
+                    }
+                });
+                counts.values().removeIf(count -> count <= 0);
+                stripe.users.put(userId, counts);
+                return counts;
+            }
+        } finally {
+            stripe.loadLock.unlock();
+        }
+    }
+
+    private boolean flush(Stripe stripe) {
+        Map<CounterKey, PendingChange> batch;
+        synchronized (stripe) {
+            if (stripe.pending.isEmpty()) {
+                return true;
+            }
+            batch = stripe.pending;
+            stripe.pending = new HashMap<>();
+        }
+        BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, UnreadCounter.class);
+        Set<String> users = new HashSet<>();
+        batch.forEach((key, change) -> {
+            Query counter = new Query(Criteria.where("id").is(UnreadCounter.idOf(key.userId(), key.contactId())));
+            if (change.reset && change.value <= 0) {
+                bulk.remove(counter);
+            } else {
+                Update update = change.reset ? new Update().set("count", change.value) : new Update().inc("count", change.value);
+                bulk.upsert(counter, update
+                        .setOnInsert("userId", key.userId())
+                        .setOnInsert("contactId", key.contactId()));
+            }
+            users.add(key.userId());
+        });
+        try {
+            bulk.execute();
+        } catch (RuntimeException e) {
+            log.warn("Failed to persist {} unread counter change(s), will retry: {}", batch.size(), e.getMessage());
+            synchronized (stripe) {
+                // Более новые изменения накладываются поверх несохранённых
+                stripe.pending.forEach((key, newer) -> batch.merge(key, newer, PendingChange::then));
+                stripe.pending = batch;
+            }
+            return false;
+        }
+        for (String userId : users) {
+            clusterEventBus.publish(new CacheInvalidationEvent(CACHE_NAME, userId));
+        }
+        return true;
+    }
+
+    private int recount() {
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("status", MessageStatus.RECEIVED.name())),
+                new Document("$match", new Document("$expr", new Document("$not", new Document("$in",
+                        List.of("$recipientId", new Document("$ifNull", List.of("$deletedFor", List.of()))))))),
+                new Document("$group", new Document("_id", new Document("userId", "$recipientId")
+                        .append("contactId", "$senderId"))
+                        .append("count", new Document("$sum", 1))));
+        BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, UnreadCounter.class);
+        int counters = 0;
+        for (Document row : mongoOperations.getCollection(mongoOperations.getCollectionName(ChatMessage.class))
+                .aggregate(pipeline).allowDiskUse(true)) {
+            Document key = row.get("_id", Document.class);
+            String userId = key.getString("userId");
+            String contactId = key.getString("contactId");
+            if (userId == null || contactId == null) {
+                continue;
+            }
+            bulk.upsert(new Query(Criteria.where("id").is(UnreadCounter.idOf(userId, contactId))), new Update()
+                    .set("userId", userId)
+                    .set("contactId", contactId)
+                    .set("count", ((Number) row.get("count")).longValue()));
+            counters++;
+        }
+        if (counters > 0) {
+            bulk.execute();
+        }
+        return counters;
+    }
+
+    /**
+     * Точный пересчёт отдельных пар тем же условием, что и агрегация в {@link #recount()}.
+     */
+    private void recount(Set<CounterKey> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, UnreadCounter.class);
+        for (CounterKey key : keys) {
+            long count = mongoOperations.count(new Query(Criteria.where("status").is(MessageStatus.RECEIVED)
+                    .and("recipientId").is(key.userId())
+                    .and("senderId").is(key.contactId())
+                    .and("deletedFor").ne(key.userId())), ChatMessage.class);
+            Query counter = new Query(Criteria.where("id").is(UnreadCounter.idOf(key.userId(), key.contactId())));
+            if (count == 0) {
+                bulk.remove(counter);
+            } else {
+                bulk.upsert(counter, new Update()
+                        .set("userId", key.userId())
+                        .set("contactId", key.contactId())
+                        .set("count", count));
+            }
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Счётчики изменились на другом узле и уже сохранены — выгружаем пользователя, перечитаем при обращении.
+     * Свои несохранённые изменения лежат отдельно и наложатся на прочитанное.
+     */
+    private void onRemoteInvalidation(CacheInvalidationEvent event) {
+        if (!CACHE_NAME.equals(event.getCacheName())) {
+            return;
+        }
+        if (event.getKey() == null) {
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.users.clear();
+                }
+            }
+            return;
+        }
+        Stripe stripe = stripe(event.getKey());
+        synchronized (stripe) {
+            stripe.users.remove(event.getKey());
+        }
+    }
+
+    private Stripe stripe(String userId) {
+        return stripes[(userId.hashCode() & Integer.MAX_VALUE) % STRIPES];
+    }
+
+    private record CounterKey(String userId, String contactId) {
+    }
+
+    /**
+     * Несохранённое изменение одного счётчика: приращение или обнуление с последующими приращениями.
+     */
+    private static final class PendingChange {
+
+        private boolean reset;
+        private long value;
+
+        void apply(boolean reset, long value) {
+            if (reset) {
+                this.reset = true;
+                this.value = value;
+            } else {
+                this.value += value;
+            }
+        }
+
+        long applyTo(long persisted) {
+            return reset ? value : persisted + value;
+        }
+
+        /** Это изменение, а затем newer. */
+        PendingChange then(PendingChange newer) {
+            if (!newer.reset) {
+                value += newer.value;
+            } else {
+                reset = true;
+                value = newer.value;
+            }
+            return this;
+        }
+    }
+
+    private static final class Stripe {
+
+        /** Держится на время загрузки пользователя из Mongo и записи пачки полосы. */
+        final ReentrantLock loadLock = new ReentrantLock();
+
+        /** Загруженные пользователи: собеседник → ненулевой счётчик; давно не читанные вытесняются. */
+        final Map<String, Map<String, Long>> users;
+
+        Map<CounterKey, PendingChange> pending = new HashMap<>();
+
+        Stripe(int maxUsers) {
+            this.users = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, Long>> eldest) {
+                    return size() > maxUsers;
+                }
+            };
+        }
+    }
+}
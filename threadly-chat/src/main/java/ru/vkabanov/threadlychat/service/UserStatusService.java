@@ -5,8 +5,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import ru.vkabanov.threadlychat.cluster.ClusterEventBus;
+import ru.vkabanov.threadlychat.cluster.ClusterUserRegistry;
+import ru.vkabanov.threadlychat.cluster.PresenceEvent;
 import ru.vkabanov.threadlychat.model.StatusMessage;
 
+import javax.annotation.PostConstruct;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -15,6 +20,8 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Сервис статусов пользователей (online/offline).
  * Поддерживает lastSeen и TTL: при отсутствии heartbeat пользователь помечается offline.
+ * Изменения статуса рассылаются соседним узлам ({@link PresenceEvent}); сами кадры /topic/status
+ * до их клиентов доносит {@link ru.vkabanov.threadlychat.cluster.ClusterBrokerRelay}.
  */
 @Slf4j
 @Service
@@ -27,6 +34,14 @@ public class UserStatusService {
     private final ConcurrentHashMap<String, String> statuses = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Long> lastSeen = new ConcurrentHashMap<>();
     private final SimpMessagingTemplate messagingTemplate;
+    private final ClusterEventBus clusterEventBus;
+    private final ClusterUserRegistry clusterUserRegistry;
+
+    @PostConstruct
+    public void init() {
+        clusterEventBus.subscribe(PresenceEvent.class, this::onRemotePresence);
+        clusterUserRegistry.addDisconnectedListener(this::onRemoteNodeLost);
+    }
 
     /**
      * Установить статус и разослать по /topic/status (connect/disconnect).
@@ -39,6 +54,7 @@ public class UserStatusService {
             lastSeen.put(userId, System.currentTimeMillis());
         }
         broadcast(userId, status);
+        clusterEventBus.publish(new PresenceEvent(userId, status));
     }
 
     /**
@@ -53,6 +69,7 @@ public class UserStatusService {
         // Рассылаем только если раньше был не online (восстановление после TTL или первый heartbeat)
         if (!"online".equalsIgnoreCase(prev)) {
             broadcast(userId, "online");
+            clusterEventBus.publish(new PresenceEvent(userId, "online"));
         }
     }
 
@@ -68,6 +85,18 @@ public class UserStatusService {
         return new ConcurrentHashMap<>(statuses);
     }
 
+    public long getOnlineCount() {
+        return statuses.values().stream().filter("online"::equalsIgnoreCase).count();
+    }
+
+    public int getStatusCount() {
+        return statuses.size();
+    }
+
+    public int getLastSeenCount() {
+        return lastSeen.size();
+    }
+
     /**
      * Периодически помечать offline пользователей, у которых lastSeen старше TTL.
      */
@@ -86,6 +115,33 @@ public class UserStatusService {
         }
     }
 
+    /**
+     * Статус с другого узла: только обновляем карту, рассылка клиентам уже прошла через брокер.
+     * Offline игнорируем, если пользователь ещё подключён к этому узлу.
+     */
+    private void onRemotePresence(PresenceEvent event) {
+        if (event.getUserId() == null || event.getStatus() == null) {
+            return;
+        }
+        if ("offline".equalsIgnoreCase(event.getStatus())
+                && (clusterUserRegistry.hasLocalSessions(event.getUserId()) || lastSeen.containsKey(event.getUserId()))) {
+            return;
+        }
+        statuses.put(event.getUserId(), event.getStatus());
+    }
+
+    /**
+     * Пользователь был подключён только к ушедшему узлу: offline рассылаем своим клиентам сами,
+     * без {@link PresenceEvent} — каждый оставшийся узел делает то же в своём onNodeLeft.
+     */
+    private void onRemoteNodeLost(String userId) {
+        lastSeen.remove(userId);
+        String prev = statuses.put(userId, "offline");
+        if (!"offline".equalsIgnoreCase(prev)) {
+            broadcast(userId, "offline");
+        }
+    }
+
     private void broadcast(String userId, String status) {
         messagingTemplate.convertAndSend("/topic/status", new StatusMessage(userId, status));
     }
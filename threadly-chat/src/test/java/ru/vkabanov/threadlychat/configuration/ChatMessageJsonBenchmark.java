@@ -0,0 +1,94 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.vkabanov.threadlychat.model.ChatMessage;
+import ru.vkabanov.threadlychat.model.MessageStatus;
+import ru.vkabanov.threadlychat.model.MessageType;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование {@link ChatMessage} в JSON и обратно: ObjectMapper REST-ответов (как у Spring Boot)
+ * и производный от него mapper STOMP-кадров из {@link WebSocketConfig} (mix-in, без null-полей).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChatMessageJsonBenchmark {
+
+    @Param({"TEXT", "IMAGE"})
+    public MessageType messageType;
+
+    private ObjectMapper restMapper;
+    private ObjectMapper wireMapper;
+    private ChatMessage message;
+    private byte[] wireJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        restMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        wireMapper = restMapper.copy()
+                .addMixIn(ChatMessage.class, ChatMessageWireMixin.class)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        message = sampleMessage(messageType);
+        wireJson = wireMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] encodeRest() throws Exception {
+        return restMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] encodeWire() throws Exception {
+        return wireMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public ChatMessage decodeWire() throws Exception {
+        return wireMapper.readValue(wireJson, ChatMessage.class);
+    }
+
+    static ChatMessage sampleMessage(MessageType type) {
+        ChatMessage message = ChatMessage.builder()
+                .id("65f1c0ffee0ddba11ca7f00d")
+                .chatId("64a1b2c3d4e5f60718293a4b_64a1b2c3d4e5f60718293a4c")
+                .senderId("64a1b2c3d4e5f60718293a4b")
+                .recipientId("64a1b2c3d4e5f60718293a4c")
+                .senderName("Василий Кабанов")
+                .recipientName("Анна Петрова")
+                .content("Привет! Посмотри, пожалуйста, документ до вечера — там пара правок по срокам.")
+                .timestamp(new Date())
+                .status(MessageStatus.RECEIVED)
+                .messageType(type)
+                .readBy(Set.of("64a1b2c3d4e5f60718293a4b"))
+                .build();
+        if (type == MessageType.IMAGE) {
+            message.setImageKey("chats/64a1b2c3d4e5f60718293a4b/65f1c0ffee0ddba11ca7f00d.jpg");
+            message.setImageUrl("http://localhost:9000/threadly/chats/64a1b2c3d4e5f60718293a4b/65f1c0ffee0ddba11ca7f00d.jpg"
+                    + "?X-Amz-Algorithm=AWS4-HMAC-SHA256&X-Amz-Expires=3600&X-Amz-Signature=0f1e2d3c4b5a69788796a5b4c3d2e1f0");
+        }
+        return message;
+    }
+}
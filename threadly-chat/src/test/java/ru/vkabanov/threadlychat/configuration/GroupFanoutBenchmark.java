@@ -0,0 +1,81 @@
+package ru.vkabanov.threadlychat.configuration;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import ru.vkabanov.threadlychat.model.ChatMessage;
+import ru.vkabanov.threadlychat.model.MessageType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка группового сообщения участникам через SimpMessagingTemplate: сериализация кадра
+ * и сборка сообщения на каждого получателя. Канал брокера — заглушка, сеть не участвует.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GroupFanoutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int members;
+
+    private SimpMessagingTemplate template;
+    private List<String> memberIds;
+    private ChatMessage message;
+    private long delivered;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper wireMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build()
+                .addMixIn(ChatMessage.class, ChatMessageWireMixin.class)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(wireMapper);
+
+        MessageChannel brokerChannel = (msg, timeout) -> {
+            delivered++;
+            return true;
+        };
+        template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(converter);
+
+        memberIds = new ArrayList<>(members);
+        for (int i = 0; i < members; i++) {
+            memberIds.add(String.format("64a1b2c3d4e5f607%08x", i));
+        }
+        message = ChatMessageJsonBenchmark.sampleMessage(MessageType.TEXT);
+        message.setChatId("group_64a1b2c3d4e5f60718290000");
+    }
+
+    @Benchmark
+    public void fanout(Blackhole blackhole) {
+        for (String memberId : memberIds) {
+            template.convertAndSendToUser(memberId, "/queue/group-messages", message);
+        }
+        blackhole.consume(delivered);
+    }
+}
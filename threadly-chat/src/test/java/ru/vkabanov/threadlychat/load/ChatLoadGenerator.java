@@ -0,0 +1,313 @@
+package ru.vkabanov.threadlychat.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+import ru.vkabanov.threadlychat.support.EmbeddedMongo;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Нагрузочный прогон threadly-chat: тысячи STOMP/SockJS-клиентов шлют личные и групповые сообщения,
+ * heartbeat'ы и читают историю с заданной интенсивностью. Отчёт — перцентили задержек send→deliver и sent-ack,
+ * пропускная способность, куча и GC сервиса; он же пишется в JSON для сравнения между релизами.
+ * <p>
+ * Без {@code --target} сервис поднимается в этом же процессе на встроенном Mongo и с
+ * {@code NoOpImageStorageService}: прогон воспроизводим без Docker и внешних сервисов.
+ * Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ru.vkabanov.threadlychat.load.ChatLoadGenerator -Dexec.args="--users=2000 --duration-seconds=120"}.
+ */
+@Slf4j
+public class ChatLoadGenerator {
+
+    private static final int PEERS_PER_USER = 5;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LoadProfile profile;
+    private final LoadMetrics metrics = new LoadMetrics();
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ChatLoadGenerator(LoadProfile profile) {
+        this.profile = profile;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = LoadProfile.fromArgs(args);
+        if (!profile.isEmbedded()) {
+            new ChatLoadGenerator(profile).run(profile.getTarget(), managementUrl(profile.getTarget(), profile.getManagementPort()));
+            return;
+        }
+        try (EmbeddedMongo mongo = EmbeddedMongo.start();
+             EmbeddedChatServer server = EmbeddedChatServer.start(mongo, "threadly_load", profile.getJwtSecret())) {
+            new ChatLoadGenerator(profile).run(server.getBaseUrl(), server.getManagementUrl());
+        }
+    }
+
+    public void run(String baseUrl, String managementUrl) throws Exception {
+        Random random = new Random(profile.getSeed());
+        List<String> userIds = new ArrayList<>(profile.getUsers());
+        for (int i = 0; i < profile.getUsers(); i++) {
+            userIds.add(String.format("6c6f6164%016x", i));
+        }
+        Map<String, List<String>> groupsByUser = createGroups(baseUrl, userIds, random);
+
+        List<LoadClient> clients = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            clients.add(new LoadClient(userId, token(userId), baseUrl, metrics, httpClient,
+                    peers(userId, userIds, random), groupsByUser.getOrDefault(userId, List.of())));
+        }
+
+        ThreadPoolTaskScheduler heartbeatScheduler = new ThreadPoolTaskScheduler();
+        heartbeatScheduler.setPoolSize(2);
+        heartbeatScheduler.setThreadNamePrefix("load-stomp-hb-");
+        heartbeatScheduler.initialize();
+        WebSocketStompClient stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        stompClient.setMessageConverter(converter);
+        stompClient.setTaskScheduler(heartbeatScheduler);
+        stompClient.setDefaultHeartbeat(new long[]{10000, 10000});
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            connectAll(clients, stompClient);
+            startHeartbeats(clients, scheduler);
+            List<ScheduledFuture<?>> generators = new ArrayList<>();
+            generators.add(atRate(scheduler, profile.getDmPerMinute(), clients, LoadClient::isConnected,
+                    LoadClient::sendDirectMessage));
+            generators.add(atRate(scheduler, profile.getGroupPerMinute(), clients,
+                    client -> client.isConnected() && client.hasGroups(), LoadClient::sendGroupMessage));
+            generators.add(atRate(scheduler, profile.getHistoryPerMinute(), clients, client -> true,
+                    client -> client.readHistory(profile.getHistoryPageSize())));
+
+            log.info("Warming up for {} s", profile.getWarmupSeconds());
+            TimeUnit.SECONDS.sleep(profile.getWarmupSeconds());
+
+            ServerStats serverStats = new ServerStats(httpClient, managementUrl);
+            serverStats.begin();
+            ScheduledFuture<?> sampler = scheduler.scheduleAtFixedRate(serverStats::sample, 1, 1, TimeUnit.SECONDS);
+            metrics.startRecording();
+            log.info("Measuring for {} s", profile.getDurationSeconds());
+            TimeUnit.SECONDS.sleep(profile.getDurationSeconds());
+            generators.forEach(generator -> generator.cancel(false));
+            TimeUnit.SECONDS.sleep(profile.getDrainSeconds());
+            metrics.stopRecording();
+            sampler.cancel(false);
+
+            report(serverStats.end());
+        } finally {
+            scheduler.shutdownNow();
+            clients.forEach(LoadClient::disconnect);
+            stompClient.stop();
+            heartbeatScheduler.shutdown();
+        }
+    }
+
+    /**
+     * Группы создаются до подключения клиентов: рассылка о создании и системные сообщения не попадают в замер.
+     */
+    private Map<String, List<String>> createGroups(String baseUrl, List<String> userIds, Random random) throws Exception {
+        Map<String, List<String>> groupsByUser = new LinkedHashMap<>();
+        for (int g = 0; g < profile.getGroups(); g++) {
+            String creatorId = userIds.get(random.nextInt(userIds.size()));
+            Set<String> members = new HashSet<>();
+            members.add(creatorId);
+            while (members.size() < profile.getGroupSize()) {
+                members.add(userIds.get(random.nextInt(userIds.size())));
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/groups"))
+                    .header("Authorization", "Bearer " + token(creatorId))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(
+                            Map.of("name", "load-" + g, "memberIds", new ArrayList<>(members)))))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Group creation failed: HTTP " + response.statusCode() + " " + response.body());
+            }
+            String groupId = objectMapper.readTree(response.body()).path("id").asText();
+            for (String member : members) {
+                groupsByUser.computeIfAbsent(member, id -> new ArrayList<>()).add(groupId);
+            }
+        }
+        log.info("Created {} groups of {} members", profile.getGroups(), profile.getGroupSize());
+        return groupsByUser;
+    }
+
+    private void connectAll(List<LoadClient> clients, WebSocketStompClient stompClient) throws InterruptedException {
+        long pauseNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, profile.getConnectPerSecond());
+        List<CompletableFuture<?>> connections = new ArrayList<>(clients.size());
+        long started = System.nanoTime();
+        for (LoadClient client : clients) {
+            connections.add(client.connect(stompClient));
+            TimeUnit.NANOSECONDS.sleep(pauseNanos);
+        }
+        int failed = 0;
+        for (CompletableFuture<?> connection : connections) {
+            try {
+                connection.get(60, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        log.info("Connected {} of {} clients in {} ms", clients.size() - failed, clients.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /** Heartbeat каждого клиента со своим сдвигом по фазе — как у браузеров, открывших вкладку в разное время. */
+    private void startHeartbeats(List<LoadClient> clients, ScheduledExecutorService scheduler) {
+        long periodMillis = TimeUnit.SECONDS.toMillis(profile.getHeartbeatSeconds());
+        for (LoadClient client : clients) {
+            scheduler.scheduleAtFixedRate(client::heartbeat,
+                    ThreadLocalRandom.current().nextLong(periodMillis), periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Открытая модель нагрузки: действия идут с постоянной суммарной частотой независимо от того,
+     * как быстро отвечает сервис, — задержки не прячутся за замедлившимися клиентами.
+     */
+    private ScheduledFuture<?> atRate(ScheduledExecutorService scheduler, double perUserPerMinute, List<LoadClient> clients,
+                                     Predicate<LoadClient> eligible, Consumer<LoadClient> action) {
+        double perSecond = perUserPerMinute * clients.size() / 60.0;
+        if (perSecond <= 0) {
+            return scheduler.schedule(() -> { }, 0, TimeUnit.SECONDS);
+        }
+        long periodNanos = Math.max(1_000, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+        return scheduler.scheduleAtFixedRate(() -> {
+            LoadClient client = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+            if (eligible.test(client)) {
+                action.accept(client);
+            }
+        }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void report(Map<String, Object> server) throws IOException {
+        double seconds = profile.getDurationSeconds();
+        // Интервальные гистограммы обнуляются при чтении — берём их один раз
+        Map<String, Histogram> histograms = metrics.histograms();
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            latencies.put(entry.getKey(), summary(entry.getValue()));
+        }
+        Map<String, Object> counters = new LinkedHashMap<>();
+        metrics.counters().forEach((name, counter) -> counters.put(name, counter.get()));
+        counters.put("dm.unacknowledged", metrics.unacknowledged());
+        counters.put("dm.undelivered", metrics.undelivered());
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        throughput.put("dm.sent.per-second", metrics.dmSent.get() / seconds);
+        throughput.put("group.sent.per-second", metrics.groupSent.get() / seconds);
+        throughput.put("deliveries.per-second", (metrics.dmDelivered.get() + metrics.groupDelivered.get()) / seconds);
+        throughput.put("history.per-second", metrics.historyRequests.get() / seconds);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("profile", profile);
+        result.put("latencyMs", latencies);
+        result.put("throughput", throughput);
+        result.put("counters", counters);
+        result.put("server", server);
+
+        System.out.println();
+        System.out.printf("%-24s %8s %8s %8s %8s %8s %9s%n", "latency, ms", "p50", "p90", "p99", "p99.9", "max", "count");
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            System.out.printf("%-24s %8.2f %8.2f %8.2f %8.2f %8.2f %9d%n", entry.getKey(),
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()), histogram.getTotalCount());
+        }
+        throughput.forEach((name, value) -> System.out.printf("%-24s %10.1f%n", name, (Double) value));
+        counters.forEach((name, value) -> System.out.printf("%-24s %10s%n", name, value));
+        server.forEach((name, value) -> System.out.printf("%-24s %10s%n", name, value));
+
+        Path output = Path.of(profile.getOutput());
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), result);
+        System.out.println("Result written to " + output.toAbsolutePath());
+    }
+
+    private static Map<String, Object> summary(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("mean", histogram.getTotalCount() > 0 ? millis((long) histogram.getMean()) : 0.0);
+        for (double percentile : PERCENTILES) {
+            summary.put("p" + (percentile % 1 == 0 ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                    millis(histogram.getValueAtPercentile(percentile)));
+        }
+        summary.put("max", millis(histogram.getMaxValue()));
+        return summary;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private List<String> peers(String userId, List<String> userIds, Random random) {
+        List<String> peers = new ArrayList<>(PEERS_PER_USER);
+        while (peers.size() < Math.min(PEERS_PER_USER, userIds.size() - 1)) {
+            String peer = userIds.get(random.nextInt(userIds.size()));
+            if (!peer.equals(userId) && !peers.contains(peer)) {
+                peers.add(peer);
+            }
+        }
+        return peers;
+    }
+
+    private String token(String userId) {
+        return token(profile.getJwtSecret(), userId);
+    }
+
+    /** JWT в том виде, в каком его выдаёт threadly-auth: userId в claims, срок — сутки. */
+    static String token(String jwtSecret, String userId) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .setSubject("load-" + userId)
+                .claim("userId", userId)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + TimeUnit.DAYS.toMillis(1)))
+                .signWith(SignatureAlgorithm.HS512, jwtSecret.getBytes())
+                .compact();
+    }
+
+    private static String managementUrl(String target, int managementPort) {
+        URI uri = URI.create(target);
+        return uri.getScheme() + "://" + uri.getHost() + ":" + managementPort;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.vkabanov.threadlychat.load;
+
+import lombok.Data;
+
+/**
+ * Размер и форма набора данных для {@link DatasetSeeder}. Аргументы {@code --ключ=значение}, ключ — имя поля в kebab-case.
+ * Один и тот же seed с теми же параметрами даёт тот же набор: пользователей, чаты, группы и распределение сообщений.
+ */
+@Data
+public class DatasetProfile {
+
+    /** Mongo, в которую пишем; пусто — встроенный mongod. */
+    private String mongoUri = "";
+
+    private String database = "threadly_dataset";
+
+    private int users = 20_000;
+
+    /** Личных чатов (пар собеседников). */
+    private int directChats = 60_000;
+
+    private int directMessages = 2_000_000;
+
+    private int groups = 2_000;
+
+    private int minGroupSize = 3;
+
+    private int maxGroupSize = 5_000;
+
+    private int groupMessages = 200_000;
+
+    /** Показатель Ципфа для активности пользователей, чатов и групп: больше — сильнее перекос. */
+    private double zipfExponent = 1.1;
+
+    private double imageRatio = 0.05;
+
+    private double voiceRatio = 0.02;
+
+    /** Доля личных чатов, которые один из участников «удалил у себя» (deletedFor). */
+    private double deletedChatRatio = 0.05;
+
+    /** Доля непрочитанных (RECEIVED) личных сообщений. */
+    private double unreadRatio = 0.02;
+
+    /** Доля участников группы в readBy группового сообщения. */
+    private double readByRatio = 0.1;
+
+    /** На сколько дней назад растянута история. */
+    private int historyDays = 365;
+
+    private int batchSize = 10_000;
+
+    private long seed = 42;
+
+    public boolean isEmbedded() {
+        return mongoUri == null || mongoUri.isBlank();
+    }
+
+    public static DatasetProfile fromArgs(String[] args) {
+        DatasetProfile profile = new DatasetProfile();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (!apply(profile, key, value)) {
+                throw new IllegalArgumentException("Unknown option --" + key);
+            }
+        }
+        profile.validate();
+        return profile;
+    }
+
+    /**
+     * Применить один параметр набора данных; false — ключ не относится к набору (его может разобрать вызывающий).
+     */
+    static boolean apply(DatasetProfile profile, String key, String value) {
+        switch (key) {
+            case "mongo-uri" -> profile.setMongoUri(value);
+            case "database" -> profile.setDatabase(value);
+            case "users" -> profile.setUsers(Integer.parseInt(value));
+            case "direct-chats" -> profile.setDirectChats(Integer.parseInt(value));
+            case "direct-messages" -> profile.setDirectMessages(Integer.parseInt(value));
+            case "groups" -> profile.setGroups(Integer.parseInt(value));
+            case "min-group-size" -> profile.setMinGroupSize(Integer.parseInt(value));
+            case "max-group-size" -> profile.setMaxGroupSize(Integer.parseInt(value));
+            case "group-messages" -> profile.setGroupMessages(Integer.parseInt(value));
+            case "zipf-exponent" -> profile.setZipfExponent(Double.parseDouble(value));
+            case "image-ratio" -> profile.setImageRatio(Double.parseDouble(value));
+            case "voice-ratio" -> profile.setVoiceRatio(Double.parseDouble(value));
+            case "deleted-chat-ratio" -> profile.setDeletedChatRatio(Double.parseDouble(value));
+            case "unread-ratio" -> profile.setUnreadRatio(Double.parseDouble(value));
+            case "read-by-ratio" -> profile.setReadByRatio(Double.parseDouble(value));
+            case "history-days" -> profile.setHistoryDays(Integer.parseInt(value));
+            case "batch-size" -> profile.setBatchSize(Integer.parseInt(value));
+            case "seed" -> profile.setSeed(Long.parseLong(value));
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void validate() {
+        if (users < 2) {
+            throw new IllegalArgumentException("users must be at least 2");
+        }
+        if (maxGroupSize > users || minGroupSize > maxGroupSize || minGroupSize < 2) {
+            throw new IllegalArgumentException("Group sizes must satisfy 2 <= min-group-size <= max-group-size <= users");
+        }
+        long possiblePairs = (long) users * (users - 1) / 2;
+        if (directChats > possiblePairs / 2) {
+            throw new IllegalArgumentException("direct-chats is too large for " + users + " users");
+        }
+    }
+}
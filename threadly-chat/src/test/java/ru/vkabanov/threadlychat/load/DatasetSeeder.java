@@ -0,0 +1,322 @@
+package ru.vkabanov.threadlychat.load;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import ru.vkabanov.threadlychat.model.ChatGroup;
+import ru.vkabanov.threadlychat.model.ChatMessage;
+import ru.vkabanov.threadlychat.model.ChatRoom;
+import ru.vkabanov.threadlychat.model.MessageStatus;
+import ru.vkabanov.threadlychat.model.MessageType;
+import ru.vkabanov.threadlychat.service.ChatRoomService;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Генератор набора данных «как в проде» прямо в Mongo, пачками insertMany без Spring и без сервиса:
+ * активность пользователей, чатов и групп распределена по Ципфу, группы от 3 до тысяч участников,
+ * среди сообщений есть изображения и голосовые, часть чатов удалена у одного из участников,
+ * у групповых сообщений заполнен readBy.
+ * <p>
+ * Документы повторяют то, что пишет Spring Data (имена коллекций, _class, enum строками), индексы не создаются —
+ * как и в сервисе. Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ru.vkabanov.threadlychat.load.DatasetSeeder
+ * -Dexec.args="--mongo-uri=mongodb://localhost:27017 --database=threadly_chat --direct-messages=5000000"}.
+ */
+@Slf4j
+public class DatasetSeeder {
+
+    static final String MESSAGES = "chatMessage";
+    static final String ROOMS = "chatRoom";
+    static final String GROUPS = "chatGroups";
+
+    private static final String[] TEXTS = {
+            "Привет!",
+            "Ок, договорились",
+            "Созвонимся вечером?",
+            "Посмотри, пожалуйста, документ до вечера — там пара правок по срокам.",
+            "Спасибо 🙏",
+            "Я уже выезжаю, буду минут через двадцать, если не встану в пробку на мосту.",
+            "Скинь адрес",
+            "Да, всё получил, завтра отвечу подробнее — сегодня весь день на встречах."
+    };
+
+    private final DatasetProfile profile;
+
+    public DatasetSeeder(DatasetProfile profile) {
+        this.profile = profile;
+    }
+
+    public static void main(String[] args) {
+        DatasetProfile profile = DatasetProfile.fromArgs(args);
+        if (profile.isEmbedded()) {
+            throw new IllegalArgumentException("--mongo-uri is required; ReadPathBenchmark seeds an embedded mongod itself");
+        }
+        try (MongoClient client = MongoClients.create(profile.getMongoUri())) {
+            new DatasetSeeder(profile).seed(client.getDatabase(profile.getDatabase()), true);
+        }
+    }
+
+    /**
+     * Построить набор данных. При {@code insert == false} ничего не пишется: для базы, уже заполненной с тем же
+     * профилем и seed, восстанавливаются идентификаторы пользователей, чатов и групп и число сообщений в них.
+     */
+    public Dataset seed(MongoDatabase database, boolean insert) {
+        long started = System.nanoTime();
+        Random random = new Random(profile.getSeed());
+        long now = System.currentTimeMillis();
+        long historyMillis = TimeUnit.DAYS.toMillis(profile.getHistoryDays());
+
+        List<String> userIds = new ArrayList<>(profile.getUsers());
+        for (int i = 0; i < profile.getUsers(); i++) {
+            userIds.add(String.format("64%022x", i));
+        }
+        ZipfSampler userActivity = new ZipfSampler(profile.getUsers(), profile.getZipfExponent());
+
+        List<DirectChat> chats = directChats(userIds, userActivity, random, now, historyMillis);
+        List<Group> groups = groups(userIds, userActivity, random);
+        Dataset dataset = new Dataset(userIds, chats, groups);
+
+        Batch rooms = new Batch(insert ? database.getCollection(ROOMS) : null);
+        for (DirectChat chat : chats) {
+            rooms.add(room(chat.chatId(), chat.firstId(), chat.secondId()));
+        }
+        rooms.flush();
+
+        Batch groupDocuments = new Batch(insert ? database.getCollection(GROUPS) : null);
+        for (Group group : groups) {
+            groupDocuments.add(new Document("_id", new ObjectId(group.id()))
+                    .append("name", "Группа " + group.id().substring(18))
+                    .append("creatorId", group.memberIds().get(0))
+                    .append("memberIds", group.memberIds())
+                    .append("createdAt", new Date(now - historyMillis))
+                    .append("mutedBy", List.of())
+                    .append("_class", ChatGroup.class.getName()));
+        }
+        groupDocuments.flush();
+
+        Batch messages = new Batch(insert ? database.getCollection(MESSAGES) : null);
+        ZipfSampler chatActivity = new ZipfSampler(chats.size(), profile.getZipfExponent());
+        for (int i = 0; i < profile.getDirectMessages(); i++) {
+            int chatIndex = chatActivity.sample(random);
+            DirectChat chat = chats.get(chatIndex);
+            boolean fromFirst = random.nextBoolean();
+            String senderId = fromFirst ? chat.firstId() : chat.secondId();
+            String recipientId = fromFirst ? chat.secondId() : chat.firstId();
+            long timestamp = now - (long) (random.nextDouble() * historyMillis);
+            MessageType type = messageType(random);
+            dataset.directMessages[chatIndex]++;
+            if (type == MessageType.IMAGE) {
+                dataset.imageMessages[chatIndex]++;
+            }
+            Document message = message(chat.chatId(), senderId, type, timestamp, random)
+                    .append("recipientId", recipientId)
+                    .append("recipientName", "user-" + recipientId.substring(16))
+                    .append("status", (random.nextDouble() < profile.getUnreadRatio()
+                            ? MessageStatus.RECEIVED : MessageStatus.DELIVERED).name());
+            if (chat.deletedBy() != null && timestamp < chat.deletedBefore()) {
+                message.append("deletedFor", List.of(chat.deletedBy()));
+            }
+            messages.add(message);
+        }
+        if (!groups.isEmpty()) {
+            ZipfSampler groupActivity = new ZipfSampler(groups.size(), profile.getZipfExponent());
+            for (int i = 0; i < profile.getGroupMessages(); i++) {
+                int groupIndex = groupActivity.sample(random);
+                Group group = groups.get(groupIndex);
+                List<String> members = group.memberIds();
+                String senderId = members.get(random.nextInt(members.size()));
+                long timestamp = now - (long) (random.nextDouble() * historyMillis);
+                dataset.groupMessages[groupIndex]++;
+                Set<String> readBy = new LinkedHashSet<>();
+                readBy.add(senderId);
+                int readers = (int) Math.round(members.size() * profile.getReadByRatio());
+                while (readBy.size() < Math.min(members.size(), readers + 1)) {
+                    readBy.add(members.get(random.nextInt(members.size())));
+                }
+                messages.add(message("group_" + group.id(), senderId, messageType(random), timestamp, random)
+                        .append("status", MessageStatus.RECEIVED.name())
+                        .append("readBy", new ArrayList<>(readBy)));
+            }
+        }
+        messages.flush();
+
+        log.info("{} dataset: {} users, {} chats, {} groups, {} direct and {} group messages in {} s",
+                insert ? "Seeded" : "Rebuilt", userIds.size(), chats.size(), groups.size(),
+                profile.getDirectMessages(), profile.getGroupMessages(),
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+        return dataset;
+    }
+
+    /** Пары собеседников: оба конца выбираются по активности, поэтому активные пользователи — в самых людных чатах. */
+    private List<DirectChat> directChats(List<String> userIds, ZipfSampler userActivity, Random random,
+                                         long now, long historyMillis) {
+        List<DirectChat> chats = new ArrayList<>(profile.getDirectChats());
+        Set<Long> pairs = new HashSet<>();
+        while (chats.size() < profile.getDirectChats()) {
+            int a = userActivity.sample(random);
+            int b = random.nextDouble() < 0.5 ? userActivity.sample(random) : random.nextInt(userIds.size());
+            if (a == b || !pairs.add((long) Math.min(a, b) * userIds.size() + Math.max(a, b))) {
+                continue;
+            }
+            String firstId = userIds.get(a);
+            String secondId = userIds.get(b);
+            String deletedBy = null;
+            long deletedBefore = 0;
+            if (random.nextDouble() < profile.getDeletedChatRatio()) {
+                deletedBy = random.nextBoolean() ? firstId : secondId;
+                deletedBefore = now - (long) (random.nextDouble() * historyMillis);
+            }
+            chats.add(new DirectChat(firstId + "_" + secondId, firstId, secondId, deletedBy, deletedBefore));
+        }
+        return chats;
+    }
+
+    /** Размер группы — лог-равномерно между min и max: много маленьких, единицы на тысячи участников. */
+    private List<Group> groups(List<String> userIds, ZipfSampler userActivity, Random random) {
+        List<Group> groups = new ArrayList<>(profile.getGroups());
+        double logMin = Math.log(profile.getMinGroupSize());
+        double logMax = Math.log(profile.getMaxGroupSize());
+        for (int g = 0; g < profile.getGroups(); g++) {
+            int size = (int) Math.round(Math.exp(logMin + random.nextDouble() * (logMax - logMin)));
+            Set<String> members = new LinkedHashSet<>();
+            while (members.size() < size) {
+                int rank = random.nextBoolean() ? userActivity.sample(random) : random.nextInt(userIds.size());
+                members.add(userIds.get(rank));
+            }
+            byte[] id = new byte[12];
+            random.nextBytes(id);
+            groups.add(new Group(new ObjectId(id).toHexString(), new ArrayList<>(members)));
+        }
+        return groups;
+    }
+
+    private MessageType messageType(Random random) {
+        double roll = random.nextDouble();
+        if (roll < profile.getImageRatio()) {
+            return MessageType.IMAGE;
+        }
+        if (roll < profile.getImageRatio() + profile.getVoiceRatio()) {
+            return MessageType.VOICE;
+        }
+        return MessageType.TEXT;
+    }
+
+    private static Document message(String chatId, String senderId, MessageType type, long timestamp, Random random) {
+        Document message = new Document("chatId", chatId)
+                .append("senderId", senderId)
+                .append("senderName", "user-" + senderId.substring(16))
+                .append("timestamp", new Date(timestamp))
+                .append("messageType", type.name())
+                .append("_class", ChatMessage.class.getName());
+        switch (type) {
+            case IMAGE -> message.append("imageKey", "chats/" + chatId + "/" + new ObjectId().toHexString() + ".jpg");
+            case VOICE -> message.append("mediaKey", "media/" + chatId + "/" + new ObjectId().toHexString() + ".webm")
+                    .append("content", "🎤 Голосовое сообщение");
+            default -> message.append("content", TEXTS[random.nextInt(TEXTS.length)]);
+        }
+        return message;
+    }
+
+    /** Каноническая комната пары; chatId — как у перенесённых старых комнат, не обязательно равен id. */
+    private static Document room(String chatId, String firstId, String secondId) {
+        String roomId = ChatRoomService.roomId(firstId, secondId);
+        return new Document("_id", roomId)
+                .append("chatId", chatId)
+                .append("senderId", roomId.substring(0, roomId.indexOf('_')))
+                .append("recipientId", roomId.substring(roomId.indexOf('_') + 1))
+                .append("_class", ChatRoom.class.getName());
+    }
+
+    /**
+     * Пачки по batchSize документов, unordered insertMany; без коллекции — только счёт (режим без записи).
+     */
+    private final class Batch {
+
+        private final MongoCollection<Document> collection;
+        private final List<Document> documents = new ArrayList<>();
+
+        Batch(MongoCollection<Document> collection) {
+            this.collection = collection;
+        }
+
+        void add(Document document) {
+            if (collection == null) {
+                return;
+            }
+            documents.add(document);
+            if (documents.size() >= profile.getBatchSize()) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (collection != null && !documents.isEmpty()) {
+                collection.insertMany(documents, new InsertManyOptions().ordered(false));
+                documents.clear();
+            }
+        }
+    }
+
+    /** Личный чат; deletedBy удалил у себя все сообщения до deletedBefore. */
+    public record DirectChat(String chatId, String firstId, String secondId, String deletedBy, long deletedBefore) {
+    }
+
+    /** Группа; первый участник — создатель. */
+    public record Group(String id, List<String> memberIds) {
+    }
+
+    /**
+     * Что сгенерировано: пользователи, чаты и группы в порядке убывания активности и число сообщений в каждом.
+     */
+    public static final class Dataset {
+
+        private final List<String> userIds;
+        private final List<DirectChat> chats;
+        private final List<Group> groups;
+        final int[] directMessages;
+        final int[] imageMessages;
+        final int[] groupMessages;
+
+        Dataset(List<String> userIds, List<DirectChat> chats, List<Group> groups) {
+            this.userIds = userIds;
+            this.chats = chats;
+            this.groups = groups;
+            this.directMessages = new int[chats.size()];
+            this.imageMessages = new int[chats.size()];
+            this.groupMessages = new int[groups.size()];
+        }
+
+        public List<String> getUserIds() {
+            return userIds;
+        }
+
+        public List<DirectChat> getChats() {
+            return chats;
+        }
+
+        public List<Group> getGroups() {
+            return groups;
+        }
+
+        public int getDirectMessages(int chatIndex) {
+            return directMessages[chatIndex];
+        }
+
+        public int getImageMessages(int chatIndex) {
+            return imageMessages[chatIndex];
+        }
+    }
+}
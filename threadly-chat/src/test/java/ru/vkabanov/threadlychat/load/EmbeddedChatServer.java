@@ -0,0 +1,81 @@
+package ru.vkabanov.threadlychat.load;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.vkabanov.threadlychat.ThreadlyChatApplication;
+import ru.vkabanov.threadlychat.support.EmbeddedMongo;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * threadly-chat в этом же процессе поверх встроенного mongod: хранилище изображений выключено
+ * (NoOpImageStorageService), события контактов и кластерная шина — в памяти, порты выбираются свободные.
+ */
+public final class EmbeddedChatServer implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final int port;
+    private final int managementPort;
+
+    private EmbeddedChatServer(ConfigurableApplicationContext context, int port, int managementPort) {
+        this.context = context;
+        this.port = port;
+        this.managementPort = managementPort;
+    }
+
+    public static EmbeddedChatServer start(EmbeddedMongo mongo, String database, String jwtSecret) throws IOException {
+        return start(mongo.getHost(), mongo.getPort(), database, jwtSecret);
+    }
+
+    public static EmbeddedChatServer start(String mongoHost, int mongoPort, String database, String jwtSecret)
+            throws IOException {
+        int port = freePort();
+        int managementPort = freePort();
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", port);
+        properties.put("management.server.port", managementPort);
+        properties.put("spring.data.mongodb.host", mongoHost);
+        properties.put("spring.data.mongodb.port", mongoPort);
+        properties.put("spring.data.mongodb.database", database);
+        properties.put("security.jwt.secret", jwtSecret);
+        properties.put("threadly.storage.enabled", false);
+        properties.put("threadly.storage.endpoint", "");
+        properties.put("threadly.storage.presigned-endpoint", "");
+        properties.put("threadly.storage.bucket", "");
+        properties.put("threadly.storage.access-key", "");
+        properties.put("threadly.storage.secret-key", "");
+        properties.put("threadly.storage.region", "");
+        properties.put("threadly.storage.presigned-expiry-seconds", 3600);
+        properties.put("threadly.image.max-size-bytes", 10 * 1024 * 1024);
+        properties.put("threadly.contacts.transport", "local");
+        properties.put("threadly.cluster.mode", "local");
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.ru.vkabanov.threadlychat.load", "INFO");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ThreadlyChatApplication.class)
+                .properties(properties)
+                .run();
+        return new EmbeddedChatServer(context, port, managementPort);
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + port;
+    }
+
+    public String getManagementUrl() {
+        return "http://127.0.0.1:" + managementPort;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
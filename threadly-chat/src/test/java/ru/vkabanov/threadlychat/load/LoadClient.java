@@ -0,0 +1,223 @@
+package ru.vkabanov.threadlychat.load;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Один виртуальный пользователь: STOMP-сессия через SockJS с тем же набором подписок, что у веб-клиента,
+ * личные и групповые сообщения, heartbeat и чтение истории по REST.
+ */
+@Slf4j
+public class LoadClient {
+
+    private static final String NONCE_PREFIX = "lt:";
+    private static final String GROUP_PREFIX = "lt:g:";
+
+    @Getter
+    private final String userId;
+    private final String token;
+    private final String baseUrl;
+    private final LoadMetrics metrics;
+    private final HttpClient httpClient;
+
+    /** Собеседники для личных сообщений и группы пользователя — фиксируются при подготовке прогона. */
+    private final List<String> peers;
+    private final List<String> groupIds;
+
+    private volatile StompSession session;
+
+    public LoadClient(String userId, String token, String baseUrl, LoadMetrics metrics, HttpClient httpClient,
+                      List<String> peers, List<String> groupIds) {
+        this.userId = userId;
+        this.token = token;
+        this.baseUrl = baseUrl;
+        this.metrics = metrics;
+        this.httpClient = httpClient;
+        this.peers = peers;
+        this.groupIds = groupIds;
+    }
+
+    public CompletableFuture<StompSession> connect(WebSocketStompClient stompClient) {
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("Authorization", "Bearer " + token);
+        return stompClient.connect(baseUrl + "/ws", new WebSocketHttpHeaders(), connectHeaders, new SessionHandler())
+                .completable()
+                .thenApply(connected -> {
+                    connected.subscribe("/user/queue/sent-ack", frameHandler(this::onSentAck));
+                    connected.subscribe("/user/queue/messages", frameHandler(this::onDirectMessage));
+                    connected.subscribe("/user/queue/group-messages", frameHandler(this::onGroupMessage));
+                    session = connected;
+                    return connected;
+                });
+    }
+
+    public boolean isConnected() {
+        StompSession current = session;
+        return current != null && current.isConnected();
+    }
+
+    public boolean hasGroups() {
+        return !groupIds.isEmpty();
+    }
+
+    public void sendDirectMessage() {
+        StompSession current = session;
+        if (current == null || peers.isEmpty()) {
+            return;
+        }
+        String recipientId = peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+        long nonce = metrics.nextNonce();
+        Map<String, Object> message = new HashMap<>();
+        message.put("recipientId", recipientId);
+        message.put("senderName", userId);
+        message.put("recipientName", recipientId);
+        message.put("content", NONCE_PREFIX + nonce);
+        message.put("messageType", "TEXT");
+        message.put("timestamp", System.currentTimeMillis());
+        metrics.dmSent(nonce, System.nanoTime());
+        send(current, "/app/chat", message);
+    }
+
+    public void sendGroupMessage() {
+        StompSession current = session;
+        if (current == null || groupIds.isEmpty()) {
+            return;
+        }
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("groupId", groupIds.get(ThreadLocalRandom.current().nextInt(groupIds.size())));
+        payload.put("senderName", userId);
+        payload.put("messageType", "TEXT");
+        payload.put("content", GROUP_PREFIX + System.nanoTime());
+        metrics.groupSent();
+        send(current, "/app/group-chat", payload);
+    }
+
+    public void heartbeat() {
+        StompSession current = session;
+        if (current == null) {
+            return;
+        }
+        metrics.heartbeat();
+        send(current, "/app/status", Map.of());
+    }
+
+    public void readHistory(int pageSize) {
+        if (peers.isEmpty()) {
+            return;
+        }
+        String peerId = peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(
+                        baseUrl + "/messages/" + userId + "/" + peerId + "/page?page=0&size=" + pageSize))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        long started = System.nanoTime();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> metrics.historyPage(System.nanoTime() - started,
+                        error == null && response.statusCode() == 200));
+    }
+
+    public void disconnect() {
+        StompSession current = session;
+        session = null;
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+        }
+    }
+
+    private void send(StompSession current, String destination, Object payload) {
+        try {
+            current.send(destination, payload);
+        } catch (RuntimeException e) {
+            metrics.sendError();
+            log.debug("Send to {} failed for {}: {}", destination, userId, e.getMessage());
+        }
+    }
+
+    private void onSentAck(Map<String, Object> message) {
+        long now = System.nanoTime();
+        Object content = message.get("content");
+        if (content instanceof String text && text.startsWith(NONCE_PREFIX) && !text.startsWith(GROUP_PREFIX)) {
+            metrics.dmAcked(Long.parseLong(text.substring(NONCE_PREFIX.length())), (String) message.get("id"), now);
+        }
+    }
+
+    private void onDirectMessage(Map<String, Object> notification) {
+        long now = System.nanoTime();
+        Object id = notification.get("id");
+        if (id != null) {
+            metrics.dmDelivered(id.toString(), now);
+        }
+    }
+
+    private void onGroupMessage(Map<String, Object> message) {
+        long now = System.nanoTime();
+        Object content = message.get("content");
+        if (content instanceof String text && text.startsWith(GROUP_PREFIX)) {
+            metrics.groupDelivered(Long.parseLong(text.substring(GROUP_PREFIX.length())), now);
+        }
+    }
+
+    private static StompFrameHandler frameHandler(Consumer<Map<String, Object>> consumer) {
+        return new StompFrameHandler() {
+            @Override
+            @NonNull
+            public Type getPayloadType(@NonNull StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handleFrame(@NonNull StompHeaders headers, Object payload) {
+                if (payload instanceof Map<?, ?> map) {
+                    consumer.accept((Map<String, Object>) map);
+                }
+            }
+        };
+    }
+
+    private class SessionHandler extends StompSessionHandlerAdapter {
+
+        /** Сюда приходят только кадры ERROR: обычные сообщения разбирают обработчики подписок. */
+        @Override
+        public void handleFrame(@NonNull StompHeaders headers, Object payload) {
+            metrics.transportError();
+            log.debug("STOMP ERROR for {}: {}", userId, headers.getFirst("message"));
+        }
+
+        @Override
+        public void handleException(@NonNull StompSession session, StompCommand command, @NonNull StompHeaders headers,
+                                    @NonNull byte[] payload, @NonNull Throwable exception) {
+            metrics.transportError();
+            log.debug("STOMP frame error for {}: {}", userId, exception.getMessage());
+        }
+
+        @Override
+        public void handleTransportError(@NonNull StompSession session, @NonNull Throwable exception) {
+            metrics.transportError();
+            log.debug("STOMP transport error for {}: {}", userId, exception.getMessage());
+        }
+    }
+}
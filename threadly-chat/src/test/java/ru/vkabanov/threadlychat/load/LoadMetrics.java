@@ -0,0 +1,179 @@
+package ru.vkabanov.threadlychat.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Задержки и счётчики прогона. Клиенты и сервер живут на одних часах ({@link System#nanoTime()}
+ * этого процесса), поэтому задержка доставки — разница отметок отправителя и получателя.
+ * <p>
+ * Личное сообщение получатель видит только по id (ChatNotification), а id отправитель узнаёт из sent-ack:
+ * отметки сводятся по id, кто бы из двоих ни пришёл первым. Групповое сообщение несёт время отправки в тексте.
+ * До окончания прогрева всё считается, но не записывается.
+ */
+public class LoadMetrics {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final Recorder dmDeliver = recorder();
+    private final Recorder dmAck = recorder();
+    private final Recorder groupDeliver = recorder();
+    private final Recorder historyPage = recorder();
+
+    /** nonce → время отправки, пока не пришёл sent-ack. */
+    private final Map<Long, Long> awaitingAck = new ConcurrentHashMap<>();
+
+    /** id сообщения → [время отправки, время доставки]; запись удаляется, когда известны обе отметки. */
+    private final Map<String, long[]> awaitingDelivery = new ConcurrentHashMap<>();
+
+    private final AtomicLong nonces = new AtomicLong();
+
+    final AtomicLong dmSent = new AtomicLong();
+    final AtomicLong dmAcked = new AtomicLong();
+    final AtomicLong dmDelivered = new AtomicLong();
+    final AtomicLong groupSent = new AtomicLong();
+    final AtomicLong groupDelivered = new AtomicLong();
+    final AtomicLong historyRequests = new AtomicLong();
+    final AtomicLong historyErrors = new AtomicLong();
+    final AtomicLong heartbeats = new AtomicLong();
+    final AtomicLong sendErrors = new AtomicLong();
+    final AtomicLong transportErrors = new AtomicLong();
+
+    private volatile boolean recording;
+
+    public long nextNonce() {
+        return nonces.incrementAndGet();
+    }
+
+    public void startRecording() {
+        dmDeliver.reset();
+        dmAck.reset();
+        groupDeliver.reset();
+        historyPage.reset();
+        for (AtomicLong counter : counters().values()) {
+            counter.set(0);
+        }
+        recording = true;
+    }
+
+    public void stopRecording() {
+        recording = false;
+    }
+
+    public void dmSent(long nonce, long sentNanos) {
+        awaitingAck.put(nonce, sentNanos);
+        dmSent.incrementAndGet();
+    }
+
+    public void dmAcked(long nonce, String messageId, long ackNanos) {
+        Long sentNanos = awaitingAck.remove(nonce);
+        if (sentNanos == null) {
+            return;
+        }
+        dmAcked.incrementAndGet();
+        record(dmAck, ackNanos - sentNanos);
+        if (messageId != null) {
+            match(messageId, 0, sentNanos);
+        }
+    }
+
+    public void dmDelivered(String messageId, long deliveredNanos) {
+        match(messageId, 1, deliveredNanos);
+    }
+
+    public void groupSent() {
+        groupSent.incrementAndGet();
+    }
+
+    public void groupDelivered(long sentNanos, long deliveredNanos) {
+        groupDelivered.incrementAndGet();
+        record(groupDeliver, deliveredNanos - sentNanos);
+    }
+
+    public void historyPage(long elapsedNanos, boolean ok) {
+        historyRequests.incrementAndGet();
+        if (ok) {
+            record(historyPage, elapsedNanos);
+        } else {
+            historyErrors.incrementAndGet();
+        }
+    }
+
+    public void heartbeat() {
+        heartbeats.incrementAndGet();
+    }
+
+    public void sendError() {
+        sendErrors.incrementAndGet();
+    }
+
+    public void transportError() {
+        transportErrors.incrementAndGet();
+    }
+
+    /** Сообщения без sent-ack или без доставки на момент вызова. */
+    public long unacknowledged() {
+        return awaitingAck.size();
+    }
+
+    public long undelivered() {
+        return awaitingDelivery.values().stream().filter(slot -> slot[1] == 0).count();
+    }
+
+    public Map<String, Histogram> histograms() {
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        histograms.put("dm.send-to-deliver", dmDeliver.getIntervalHistogram());
+        histograms.put("dm.sent-ack", dmAck.getIntervalHistogram());
+        histograms.put("group.send-to-deliver", groupDeliver.getIntervalHistogram());
+        histograms.put("history.page", historyPage.getIntervalHistogram());
+        return histograms;
+    }
+
+    public Map<String, AtomicLong> counters() {
+        Map<String, AtomicLong> counters = new LinkedHashMap<>();
+        counters.put("dm.sent", dmSent);
+        counters.put("dm.acked", dmAcked);
+        counters.put("dm.delivered", dmDelivered);
+        counters.put("group.sent", groupSent);
+        counters.put("group.delivered", groupDelivered);
+        counters.put("history.requests", historyRequests);
+        counters.put("history.errors", historyErrors);
+        counters.put("heartbeats", heartbeats);
+        counters.put("send.errors", sendErrors);
+        counters.put("transport.errors", transportErrors);
+        return counters;
+    }
+
+    private void match(String messageId, int slot, long nanos) {
+        long[] completed = new long[1];
+        awaitingDelivery.compute(messageId, (id, times) -> {
+            long[] current = times != null ? times : new long[2];
+            current[slot] = nanos;
+            if (current[0] != 0 && current[1] != 0) {
+                completed[0] = current[1] - current[0];
+                return null;
+            }
+            return current;
+        });
+        if (completed[0] != 0) {
+            dmDelivered.incrementAndGet();
+            record(dmDeliver, completed[0]);
+        }
+    }
+
+    private void record(Recorder recorder, long nanos) {
+        if (recording) {
+            recorder.recordValue(Math.max(0, Math.min(nanos, MAX_LATENCY_NANOS)));
+        }
+    }
+
+    private static Recorder recorder() {
+        return new Recorder(MAX_LATENCY_NANOS, 3);
+    }
+}
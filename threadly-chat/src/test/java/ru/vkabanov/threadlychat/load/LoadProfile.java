@@ -0,0 +1,93 @@
+package ru.vkabanov.threadlychat.load;
+
+import lombok.Data;
+
+/**
+ * Параметры нагрузочного прогона. Задаются аргументами {@code --ключ=значение}, например
+ * {@code --users=2000 --dm-per-minute=6 --duration-seconds=120}. Ключ — имя поля в kebab-case.
+ * <p>
+ * Интенсивности указаны на одного пользователя в минуту: суммарный поток растёт вместе с числом клиентов.
+ */
+@Data
+public class LoadProfile {
+
+    /** Адрес уже запущенного threadly-chat; пусто — поднять сервис в этом процессе на встроенном Mongo. */
+    private String target = "";
+
+    /** Порт management (Prometheus) внешнего сервиса; для встроенного выбирается сам. */
+    private int managementPort = 8091;
+
+    /** Секрет JWT, которым подписаны токены клиентов; должен совпадать с security.jwt.secret сервиса. */
+    private String jwtSecret = "threadly-load-test-secret-threadly-load-test-secret";
+
+    private int users = 1000;
+
+    private int groups = 50;
+
+    private int groupSize = 20;
+
+    /** Клиентов, подключаемых в секунду на разгоне. */
+    private int connectPerSecond = 200;
+
+    private double dmPerMinute = 4;
+
+    private double groupPerMinute = 1;
+
+    private double historyPerMinute = 1;
+
+    private int historyPageSize = 50;
+
+    private int heartbeatSeconds = 30;
+
+    private int warmupSeconds = 15;
+
+    private int durationSeconds = 60;
+
+    /** Задержка после окончания отправки, чтобы дошли последние сообщения. */
+    private int drainSeconds = 5;
+
+    /** Seed генератора: одинаковый seed — одинаковые пары собеседников и группы. */
+    private long seed = 42;
+
+    /** JSON с результатами прогона. */
+    private String output = "target/load-result.json";
+
+    public boolean isEmbedded() {
+        return target == null || target.isBlank();
+    }
+
+    public static LoadProfile fromArgs(String[] args) {
+        LoadProfile profile = new LoadProfile();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (key) {
+                case "target" -> profile.setTarget(value);
+                case "management-port" -> profile.setManagementPort(Integer.parseInt(value));
+                case "jwt-secret" -> profile.setJwtSecret(value);
+                case "users" -> profile.setUsers(Integer.parseInt(value));
+                case "groups" -> profile.setGroups(Integer.parseInt(value));
+                case "group-size" -> profile.setGroupSize(Integer.parseInt(value));
+                case "connect-per-second" -> profile.setConnectPerSecond(Integer.parseInt(value));
+                case "dm-per-minute" -> profile.setDmPerMinute(Double.parseDouble(value));
+                case "group-per-minute" -> profile.setGroupPerMinute(Double.parseDouble(value));
+                case "history-per-minute" -> profile.setHistoryPerMinute(Double.parseDouble(value));
+                case "history-page-size" -> profile.setHistoryPageSize(Integer.parseInt(value));
+                case "heartbeat-seconds" -> profile.setHeartbeatSeconds(Integer.parseInt(value));
+                case "warmup-seconds" -> profile.setWarmupSeconds(Integer.parseInt(value));
+                case "duration-seconds" -> profile.setDurationSeconds(Integer.parseInt(value));
+                case "drain-seconds" -> profile.setDrainSeconds(Integer.parseInt(value));
+                case "seed" -> profile.setSeed(Long.parseLong(value));
+                case "output" -> profile.setOutput(value);
+                default -> throw new IllegalArgumentException("Unknown option --" + key);
+            }
+        }
+        if (profile.getGroupSize() > profile.getUsers()) {
+            throw new IllegalArgumentException("group-size cannot exceed users");
+        }
+        return profile;
+    }
+}
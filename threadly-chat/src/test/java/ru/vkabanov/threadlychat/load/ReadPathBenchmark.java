@@ -0,0 +1,315 @@
+package ru.vkabanov.threadlychat.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.Filters;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.bson.Document;
+import ru.vkabanov.threadlychat.support.EmbeddedMongo;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк REST-чтения на наборе данных из {@link DatasetSeeder}: история чата и вкладка «Фото» на разной глубине
+ * страниц, непрочитанные, контакты, статусы и список групп — для самых активных, «средних» и «хвостовых»
+ * пользователей и чатов.
+ * <p>
+ * По каждому сценарию: перцентили задержки (профайлер Mongo выключен), затем короткий проход с профайлером
+ * (level 2), из system.profile — docsExamined, keysExamined и nreturned на запрос и планы (COLLSCAN/IXSCAN).
+ * Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ru.vkabanov.threadlychat.load.ReadPathBenchmark -Dexec.args="--direct-messages=1000000"}.
+ * Параметры набора — как у {@link DatasetProfile}; {@code --skip-seed=true} — база уже заполнена тем же профилем.
+ */
+@Slf4j
+public class ReadPathBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+    private static final int IMAGES_PAGE_SIZE = 60;
+    private static final int TIER_WIDTH = 5;
+    private static final String JWT_SECRET = "threadly-read-path-secret-threadly-read-path-secret";
+
+    private final Options options;
+    private final MongoDatabase database;
+    private final String baseUrl;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ReadPathBenchmark(Options options, MongoDatabase database, String baseUrl) {
+        this.options = options;
+        this.database = database;
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.fromArgs(args);
+        DatasetProfile dataset = options.dataset;
+        if (dataset.isEmbedded()) {
+            try (EmbeddedMongo mongo = EmbeddedMongo.start()) {
+                run(options, mongo.getConnectionString());
+            }
+        } else {
+            run(options, dataset.getMongoUri());
+        }
+    }
+
+    private static void run(Options options, String mongoUri) throws Exception {
+        ConnectionString connection = new ConnectionString(mongoUri);
+        String[] hostAndPort = connection.getHosts().get(0).split(":");
+        try (MongoClient client = MongoClients.create(connection)) {
+            MongoDatabase database = client.getDatabase(options.dataset.getDatabase());
+            DatasetSeeder.Dataset dataset = new DatasetSeeder(options.dataset).seed(database, !options.skipSeed);
+            try (EmbeddedChatServer server = EmbeddedChatServer.start(hostAndPort[0],
+                    hostAndPort.length > 1 ? Integer.parseInt(hostAndPort[1]) : 27017,
+                    options.dataset.getDatabase(), JWT_SECRET)) {
+                new ReadPathBenchmark(options, database, server.getBaseUrl()).run(dataset);
+            }
+        }
+    }
+
+    public void run(DatasetSeeder.Dataset dataset) throws Exception {
+        List<Scenario> scenarios = scenarios(dataset);
+        List<Map<String, Object>> results = new ArrayList<>();
+        System.out.printf("%-36s %8s %8s %8s %8s %10s %10s %9s  %s%n",
+                "scenario", "p50 ms", "p90 ms", "p99 ms", "max ms", "docs/req", "keys/req", "ret/req", "plans");
+        for (Scenario scenario : scenarios) {
+            Map<String, Object> result = measure(scenario);
+            results.add(result);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> latency = (Map<String, Object>) result.get("latencyMs");
+            System.out.printf("%-36s %8.2f %8.2f %8.2f %8.2f %10.0f %10.0f %9.0f  %s%n", scenario.name(),
+                    latency.get("p50"), latency.get("p90"), latency.get("p99"), latency.get("max"),
+                    result.get("docsExaminedPerRequest"), result.get("keysExaminedPerRequest"),
+                    result.get("returnedPerRequest"), result.get("plans"));
+        }
+
+        Map<String, Object> output = new LinkedHashMap<>();
+        output.put("dataset", options.dataset);
+        output.put("iterations", options.iterations);
+        output.put("scenarios", results);
+        Path path = Path.of(options.output);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), output);
+        System.out.println("Result written to " + path.toAbsolutePath());
+    }
+
+    /**
+     * Уровни активности: самые нагруженные чаты и пользователи (ранг 0), верхний процентиль и медиана.
+     */
+    private List<Scenario> scenarios(DatasetSeeder.Dataset dataset) {
+        Map<String, Integer> tiers = new LinkedHashMap<>();
+        List<Scenario> scenarios = new ArrayList<>();
+
+        int chats = dataset.getChats().size();
+        tiers.put("hot", 0);
+        tiers.put("p99", chats / 100);
+        tiers.put("median", chats / 2);
+        for (Map.Entry<String, Integer> tier : tiers.entrySet()) {
+            int from = Math.min(tier.getValue(), chats - TIER_WIDTH);
+            for (int depth : options.pageDepths) {
+                List<Request> pages = new ArrayList<>();
+                List<Request> images = new ArrayList<>();
+                for (int i = from; i < from + TIER_WIDTH; i++) {
+                    DatasetSeeder.DirectChat chat = dataset.getChats().get(i);
+                    if (dataset.getDirectMessages(i) > depth * PAGE_SIZE) {
+                        pages.add(new Request(chat.secondId(), "/messages/" + chat.firstId() + "/" + chat.secondId()
+                                + "/page?page=" + depth + "&size=" + PAGE_SIZE));
+                    }
+                    if (dataset.getImageMessages(i) > depth * IMAGES_PAGE_SIZE) {
+                        images.add(new Request(chat.firstId(), "/chats/" + chat.chatId()
+                                + "/images?page=" + depth + "&size=" + IMAGES_PAGE_SIZE));
+                    }
+                }
+                addIfAny(scenarios, "messages.page " + tier.getKey() + " p" + depth, pages);
+                addIfAny(scenarios, "chats.images " + tier.getKey() + " p" + depth, images);
+            }
+        }
+
+        int users = dataset.getUserIds().size();
+        tiers.put("p99", users / 100);
+        tiers.put("median", users / 2);
+        for (Map.Entry<String, Integer> tier : tiers.entrySet()) {
+            int from = Math.min(tier.getValue(), users - TIER_WIDTH);
+            List<String> userIds = dataset.getUserIds().subList(from, from + TIER_WIDTH);
+            addIfAny(scenarios, "messages.unread-counts " + tier.getKey(),
+                    userIds.stream().map(id -> new Request(id, "/messages/unread-counts/" + id)).toList());
+            addIfAny(scenarios, "messages.contacts " + tier.getKey(),
+                    userIds.stream().map(id -> new Request(id, "/messages/contacts/" + id)).toList());
+            addIfAny(scenarios, "messages.statuses " + tier.getKey(),
+                    userIds.stream().map(id -> new Request(id, "/messages/statuses/" + id)).toList());
+            addIfAny(scenarios, "groups.my " + tier.getKey(),
+                    userIds.stream().map(id -> new Request(id, "/groups/my")).toList());
+        }
+        return scenarios;
+    }
+
+    private static void addIfAny(List<Scenario> scenarios, String name, List<Request> requests) {
+        if (!requests.isEmpty()) {
+            scenarios.add(new Scenario(name, requests));
+        }
+    }
+
+    private Map<String, Object> measure(Scenario scenario) throws Exception {
+        for (int i = 0; i < options.warmup; i++) {
+            call(scenario.next(i));
+        }
+        Histogram histogram = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+        int errors = 0;
+        for (int i = 0; i < options.iterations; i++) {
+            long started = System.nanoTime();
+            int status = call(scenario.next(i));
+            histogram.recordValue(Math.min(System.nanoTime() - started, histogram.getHighestTrackableValue()));
+            if (status != 200) {
+                errors++;
+            }
+        }
+
+        Map<String, Object> examined = profile(scenario);
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", millis(histogram.getValueAtPercentile(50)));
+        latency.put("p90", millis(histogram.getValueAtPercentile(90)));
+        latency.put("p99", millis(histogram.getValueAtPercentile(99)));
+        latency.put("max", millis(histogram.getMaxValue()));
+        latency.put("mean", histogram.getMean() / 1_000_000.0);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", scenario.name());
+        result.put("requests", histogram.getTotalCount());
+        result.put("errors", errors);
+        result.put("latencyMs", latency);
+        result.putAll(examined);
+        return result;
+    }
+
+    /**
+     * Несколько запросов под профайлером Mongo: все операции базы за это время, делённые на число запросов.
+     * Профайлер включается только на этот проход — на замер задержки он не влияет.
+     */
+    private Map<String, Object> profile(Scenario scenario) throws Exception {
+        database.runCommand(new Document("profile", 0));
+        database.getCollection("system.profile").drop();
+        database.createCollection("system.profile",
+                new CreateCollectionOptions().capped(true).sizeInBytes(64L * 1024 * 1024));
+        Date since = new Date();
+        database.runCommand(new Document("profile", 2).append("slowms", 0));
+        for (int i = 0; i < options.profiled; i++) {
+            call(scenario.next(i));
+        }
+        database.runCommand(new Document("profile", 0));
+
+        long docs = 0;
+        long keys = 0;
+        long returned = 0;
+        long operations = 0;
+        TreeSet<String> plans = new TreeSet<>();
+        for (Document entry : database.getCollection("system.profile")
+                .find(Filters.and(Filters.gte("ts", since), Filters.not(Filters.regex("ns", "\\.system\\."))))) {
+            operations++;
+            docs += number(entry, "docsExamined");
+            keys += number(entry, "keysExamined");
+            returned += number(entry, "nreturned");
+            String plan = entry.getString("planSummary");
+            if (plan != null) {
+                String collection = entry.getString("ns");
+                plans.add(collection.substring(collection.indexOf('.') + 1) + ":" + plan);
+            }
+        }
+        int requests = Math.max(1, options.profiled);
+        Map<String, Object> examined = new LinkedHashMap<>();
+        examined.put("operationsPerRequest", (double) operations / requests);
+        examined.put("docsExaminedPerRequest", (double) docs / requests);
+        examined.put("keysExaminedPerRequest", (double) keys / requests);
+        examined.put("returnedPerRequest", (double) returned / requests);
+        examined.put("plans", new ArrayList<>(plans));
+        return examined;
+    }
+
+    private int call(Request request) throws Exception {
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(baseUrl + request.path()))
+                .header("Authorization", "Bearer " + ChatLoadGenerator.token(JWT_SECRET, request.userId()))
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+        return httpClient.send(httpRequest, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static long number(Document entry, String field) {
+        Object value = entry.get(field);
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private record Request(String userId, String path) {
+    }
+
+    private record Scenario(String name, List<Request> requests) {
+
+        Request next(int i) {
+            return requests.get(i % requests.size());
+        }
+    }
+
+    /** Параметры прогона: набор данных плюс число запросов и глубина страниц. */
+    static final class Options {
+
+        final DatasetProfile dataset = new DatasetProfile();
+        int warmup = 20;
+        int iterations = 200;
+        int profiled = 10;
+        int[] pageDepths = {0, 10, 100};
+        boolean skipSeed;
+        String output = "target/read-path-result.json";
+
+        static Options fromArgs(String[] args) {
+            Options options = new Options();
+            options.dataset.setDatabase("threadly_read_path");
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --key=value, got " + arg);
+                }
+                String key = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (DatasetProfile.apply(options.dataset, key, value)) {
+                    continue;
+                }
+                switch (key) {
+                    case "warmup" -> options.warmup = Integer.parseInt(value);
+                    case "iterations" -> options.iterations = Integer.parseInt(value);
+                    case "profiled" -> options.profiled = Integer.parseInt(value);
+                    case "page-depths" -> options.pageDepths = Arrays.stream(value.split(","))
+                            .map(String::trim).mapToInt(Integer::parseInt).toArray();
+                    case "skip-seed" -> options.skipSeed = Boolean.parseBoolean(value);
+                    case "output" -> options.output = value;
+                    default -> throw new IllegalArgumentException("Unknown option --" + key);
+                }
+            }
+            options.dataset.validate();
+            return options;
+        }
+    }
+}
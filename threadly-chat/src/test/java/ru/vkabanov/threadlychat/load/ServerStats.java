@@ -0,0 +1,108 @@
+package ru.vkabanov.threadlychat.load;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Память и сборки мусора сервиса по его же /actuator/prometheus — одинаково для встроенного и внешнего сервиса.
+ * Снимок в начале и в конце замера даёт число и суммарную длительность пауз GC и объём аллокаций за прогон,
+ * опрос раз в секунду — пиковое заполнение кучи.
+ * <p>
+ * Во встроенном режиме клиенты работают в той же JVM, и их аллокации попадают в эти же цифры.
+ */
+@Slf4j
+public class ServerStats {
+
+    private final HttpClient httpClient;
+    private final URI prometheusUri;
+
+    private volatile Snapshot start;
+    private volatile double peakHeapBytes;
+
+    public ServerStats(HttpClient httpClient, String managementUrl) {
+        this.httpClient = httpClient;
+        this.prometheusUri = URI.create(managementUrl + "/actuator/prometheus");
+    }
+
+    public void begin() {
+        start = scrape();
+        peakHeapBytes = start.heapUsedBytes();
+    }
+
+    public void sample() {
+        Snapshot snapshot = scrape();
+        peakHeapBytes = Math.max(peakHeapBytes, snapshot.heapUsedBytes());
+    }
+
+    public Map<String, Object> end() {
+        Snapshot end = scrape();
+        Snapshot begin = start != null ? start : end;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("heap.used.end.mb", end.heapUsedBytes() / 1024 / 1024);
+        report.put("heap.used.peak.mb", Math.max(peakHeapBytes, end.heapUsedBytes()) / 1024 / 1024);
+        report.put("heap.max.mb", end.heapMaxBytes() / 1024 / 1024);
+        report.put("gc.pauses", (long) (end.gcPauseCount() - begin.gcPauseCount()));
+        report.put("gc.pause.total.ms", (end.gcPauseSeconds() - begin.gcPauseSeconds()) * 1000);
+        report.put("gc.pause.max.ms", end.gcPauseMaxSeconds() * 1000);
+        report.put("allocated.mb", (end.allocatedBytes() - begin.allocatedBytes()) / 1024 / 1024);
+        report.put("process.cpu", end.processCpu());
+        report.put("threads.live", (long) end.liveThreads());
+        return report;
+    }
+
+    private Snapshot scrape() {
+        HttpRequest request = HttpRequest.newBuilder(prometheusUri).timeout(Duration.ofSeconds(10)).GET().build();
+        try {
+            String body = httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+            return Snapshot.parse(body);
+        } catch (Exception e) {
+            log.warn("Could not scrape {}: {}", prometheusUri, e.getMessage());
+            return new Snapshot(0, 0, 0, 0, 0, 0, 0, 0);
+        }
+    }
+
+    record Snapshot(double heapUsedBytes, double heapMaxBytes, double gcPauseCount, double gcPauseSeconds,
+                    double gcPauseMaxSeconds, double allocatedBytes, double processCpu, double liveThreads) {
+
+        /** Суммирует серии по всем тегам: пулы кучи, причины и виды сборок. */
+        static Snapshot parse(String exposition) {
+            double heapUsed = 0, heapMax = 0, pauses = 0, pauseSeconds = 0, pauseMax = 0, allocated = 0, cpu = 0, threads = 0;
+            for (String line : exposition.split("\n")) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String name = line.substring(0, indexOfAny(line, "{ "));
+                double value = Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+                boolean heap = line.contains("area=\"heap\"");
+                switch (name) {
+                    case "jvm_memory_used_bytes" -> heapUsed += heap ? value : 0;
+                    case "jvm_memory_max_bytes" -> heapMax += heap && value > 0 ? value : 0;
+                    case "jvm_gc_pause_seconds_count" -> pauses += value;
+                    case "jvm_gc_pause_seconds_sum" -> pauseSeconds += value;
+                    case "jvm_gc_pause_seconds_max" -> pauseMax = Math.max(pauseMax, value);
+                    case "jvm_gc_memory_allocated_bytes_total" -> allocated += value;
+                    case "process_cpu_usage" -> cpu = value;
+                    case "jvm_threads_live_threads" -> threads = value;
+                    default -> { }
+                }
+            }
+            return new Snapshot(heapUsed, heapMax, pauses, pauseSeconds, pauseMax, allocated, cpu, threads);
+        }
+
+        private static int indexOfAny(String line, String chars) {
+            for (int i = 0; i < line.length(); i++) {
+                if (chars.indexOf(line.charAt(i)) >= 0) {
+                    return i;
+                }
+            }
+            return line.length();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ru.vkabanov.threadlychat.load;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Выборка рангов 0..n-1 по закону Ципфа: вес ранга k пропорционален 1/(k+1)^s.
+ * Ранг 0 — самый активный пользователь, группа или чат. Выборка — бинарный поиск по накопленным весам.
+ */
+public final class ZipfSampler {
+
+    private final double[] cumulative;
+
+    public ZipfSampler(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
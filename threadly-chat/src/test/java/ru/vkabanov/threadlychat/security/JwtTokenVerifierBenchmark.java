@@ -0,0 +1,95 @@
+package ru.vkabanov.threadlychat.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.FilterChain;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка JWT на каждом REST-запросе: попадание в кэш проверенных токенов, полная проверка
+ * подписи (кэш отключён) и весь {@link JwtAuthFilter} с заполнением SecurityContext.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JwtTokenVerifierBenchmark {
+
+    private static final String SECRET = "threadly-benchmark-secret-threadly-benchmark-secret";
+
+    private JwtTokenVerifier cachedVerifier;
+    private JwtTokenVerifier uncachedVerifier;
+    private JwtAuthFilter filter;
+    private String[] tokens;
+    private MockHttpServletRequest[] requests;
+    private final FilterChain chain = (request, response) -> { };
+
+    @Setup
+    public void setUp() {
+        JwtConfig jwtConfig = new JwtConfig();
+        jwtConfig.setHeader("Authorization");
+        jwtConfig.setPrefix("Bearer ");
+        jwtConfig.setSecret(SECRET);
+        cachedVerifier = new JwtTokenVerifier(jwtConfig, 10_000);
+        uncachedVerifier = new JwtTokenVerifier(jwtConfig, 0);
+        filter = new JwtAuthFilter(jwtConfig, cachedVerifier);
+
+        tokens = new String[256];
+        requests = new MockHttpServletRequest[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = token(String.format("64a1b2c3d4e5f607%08x", i), "user" + i);
+            requests[i] = new MockHttpServletRequest("GET", "/messages/page");
+            requests[i].addHeader("Authorization", "Bearer " + tokens[i]);
+            cachedVerifier.verify(tokens[i]);
+        }
+    }
+
+    @Benchmark
+    public CurrentUser verifyCached() {
+        return cachedVerifier.verify(tokens[next()]);
+    }
+
+    @Benchmark
+    public CurrentUser verifyUncached() {
+        return uncachedVerifier.verify(tokens[next()]);
+    }
+
+    @Benchmark
+    public void authFilter() throws Exception {
+        filter.doFilter(requests[next()], new MockHttpServletResponse(), chain);
+        SecurityContextHolder.clearContext();
+    }
+
+    private int next() {
+        return ThreadLocalRandom.current().nextInt(tokens.length);
+    }
+
+    private static String token(String userId, String username) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .setSubject(username)
+                .claim("userId", userId)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + TimeUnit.DAYS.toMillis(1)))
+                .signWith(SignatureAlgorithm.HS512, SECRET.getBytes())
+                .compact();
+    }
+}
@@ -0,0 +1,92 @@
+package ru.vkabanov.threadlychat.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Правила доступа к адресам STOMP для уже аутентифицированной сессии: без JWT и Spring-контекста.
+ */
+class StompAuthChannelInterceptorTest {
+
+    private static final String USER_ID = "64a1b2c3d4e5f60700000001";
+    private static final String OTHER_ID = "64a1b2c3d4e5f60700000002";
+
+    private StompAuthChannelInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        JwtConfig jwtConfig = new JwtConfig();
+        jwtConfig.setHeader("Authorization");
+        jwtConfig.setPrefix("Bearer ");
+        jwtConfig.setSecret("threadly-test-secret-threadly-test-secret");
+        interceptor = new StompAuthChannelInterceptor(jwtConfig, new JwtTokenVerifier(jwtConfig, 0));
+    }
+
+    @Test
+    void sendToApplicationDestinationIsAllowed() {
+        Message<?> message = frame(StompCommand.SEND, "/app/chat", true);
+        assertSame(message, interceptor.preSend(message, null));
+    }
+
+    @Test
+    void sendToAnotherUsersQueueIsRejected() {
+        Message<?> message = frame(StompCommand.SEND, "/user/" + OTHER_ID + "/queue/messages", true);
+        assertThrows(MessagingException.class, () -> interceptor.preSend(message, null));
+    }
+
+    @Test
+    void sendToTopicIsRejected() {
+        Message<?> message = frame(StompCommand.SEND, "/topic/status", true);
+        assertThrows(MessagingException.class, () -> interceptor.preSend(message, null));
+    }
+
+    @Test
+    void sendWithoutDestinationIsRejected() {
+        Message<?> message = frame(StompCommand.SEND, null, true);
+        assertThrows(MessagingException.class, () -> interceptor.preSend(message, null));
+    }
+
+    @Test
+    void subscribeToOwnDestinationIsAllowed() {
+        Message<?> message = frame(StompCommand.SUBSCRIBE, "/user/" + USER_ID + "/queue/messages", true);
+        assertSame(message, interceptor.preSend(message, null));
+    }
+
+    @Test
+    void subscribeToAnotherUsersDestinationIsRejected() {
+        Message<?> message = frame(StompCommand.SUBSCRIBE, "/user/" + OTHER_ID + "/queue/messages", true);
+        assertThrows(MessagingException.class, () -> interceptor.preSend(message, null));
+    }
+
+    @Test
+    void unauthenticatedSendIsRejected() {
+        Message<?> message = frame(StompCommand.SEND, "/app/chat", false);
+        assertThrows(MessagingException.class, () -> interceptor.preSend(message, null));
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String destination, boolean authenticated) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("session-1");
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        if (authenticated) {
+            CurrentUser user = new CurrentUser(USER_ID, "alice");
+            accessor.setUser(new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList()));
+        }
+        // Как во входящем канале Spring: заголовки остаются изменяемыми, getAccessor вернёт этот же accessor
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,223 @@
+package ru.vkabanov.threadlychat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.vkabanov.threadlychat.cluster.LocalClusterEventBus;
+import ru.vkabanov.threadlychat.configuration.ChatMetrics;
+import ru.vkabanov.threadlychat.configuration.ChatRoomProperties;
+import ru.vkabanov.threadlychat.configuration.ClusterProperties;
+import ru.vkabanov.threadlychat.configuration.ReadReceiptsProperties;
+import ru.vkabanov.threadlychat.configuration.RecentMessagesProperties;
+import ru.vkabanov.threadlychat.configuration.UnreadCountersProperties;
+import ru.vkabanov.threadlychat.load.DatasetProfile;
+import ru.vkabanov.threadlychat.load.DatasetSeeder;
+import ru.vkabanov.threadlychat.model.PushSubscriptionEntity;
+import ru.vkabanov.threadlychat.repository.ChatGroupRepository;
+import ru.vkabanov.threadlychat.repository.ChatMessageRepository;
+import ru.vkabanov.threadlychat.repository.ChatRoomRepository;
+import ru.vkabanov.threadlychat.repository.PushSubscriptionRepository;
+import ru.vkabanov.threadlychat.support.EmbeddedMongo;
+import ru.vkabanov.threadlychat.support.QueryPlan;
+import ru.vkabanov.threadlychat.support.QueryPlanRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Планы горячих запросов чата на встроенном mongod с набором данных {@link DatasetSeeder} (перекос по Ципфу,
+ * удалённые у себя чаты, непрочитанные). Каждый тест вызывает настоящий метод сервиса или репозитория,
+ * а {@link QueryPlanRecorder} прогоняет каждую ушедшую в Mongo команду через explain(executionStats).
+ * <p>
+ * Тест падает на COLLSCAN, сортировке в памяти и на плане, читающем больше {@link #MAX_DOCS_PER_RESULT}
+ * документов на один совпавший. Индексы — те, что сервисы создают при старте (ensureIndexes).
+ */
+class ChatQueryPlanTest {
+
+    private static final String DATABASE = "threadly_plans";
+    private static final double MAX_DOCS_PER_RESULT = 2.0;
+
+    private static EmbeddedMongo mongo;
+    private static QueryPlanRecorder recorder;
+
+    private static ChatMessageService messageService;
+    private static ChatGroupService groupService;
+    private static ReadReceiptCoordinator readReceipts;
+    private static MongoTemplate template;
+    private static SimpMessagingTemplate messagingTemplate;
+    private static LocalClusterEventBus clusterEventBus;
+    private static ChatRoomRepository roomRepository;
+    private static PushSubscriptionRepository pushRepository;
+
+    private static DatasetSeeder.DirectChat chat;
+    private static DatasetSeeder.Group group;
+    private static String activeUser;
+
+    @BeforeAll
+    static void setUp() {
+        mongo = EmbeddedMongo.start();
+        mongo.forceClassicEngine();
+        recorder = new QueryPlanRecorder(mongo.getClient());
+        template = mongo.template(DATABASE, recorder);
+
+        DatasetProfile profile = new DatasetProfile();
+        profile.setUsers(500);
+        profile.setDirectChats(2_000);
+        profile.setDirectMessages(100_000);
+        profile.setGroups(50);
+        profile.setMaxGroupSize(200);
+        profile.setGroupMessages(20_000);
+        profile.setSeed(45);
+        DatasetSeeder.Dataset dataset = new DatasetSeeder(profile).seed(template.getDb(), true);
+
+        List<PushSubscriptionEntity> subscriptions = new ArrayList<>();
+        for (String userId : dataset.getUserIds()) {
+            for (int device = 0; device < 2; device++) {
+                subscriptions.add(PushSubscriptionEntity.builder()
+                        .userId(userId)
+                        .endpoint("https://push.threadly.test/" + userId + "/" + device)
+                        .p256dh("p256dh")
+                        .auth("auth")
+                        .build());
+            }
+        }
+        template.insert(subscriptions, PushSubscriptionEntity.class);
+
+        MongoRepositoryFactory repositories = new MongoRepositoryFactory(template);
+        roomRepository = repositories.getRepository(ChatRoomRepository.class);
+        pushRepository = repositories.getRepository(PushSubscriptionRepository.class);
+        ChatMessageRepository messageRepository = repositories.getRepository(ChatMessageRepository.class);
+        ChatGroupRepository groupRepository = repositories.getRepository(ChatGroupRepository.class);
+        ChatMetrics chatMetrics = new ChatMetrics(new SimpleMeterRegistry());
+        messagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+
+        ChatRoomService roomService = new ChatRoomService(roomRepository, template, new ChatRoomProperties());
+        roomService.ensureIndexes();
+        // Без кэша последних сообщений: проверяем запросы, которые уходят в Mongo при промахе
+        RecentMessagesProperties recentProperties = new RecentMessagesProperties();
+        recentProperties.setEnabled(false);
+        RecentMessagesCache recentMessages = new RecentMessagesCache(template, null, recentProperties);
+        clusterEventBus = new LocalClusterEventBus(new ClusterProperties());
+        UnreadCounterService unreadCounters = new UnreadCounterService(template, messagingTemplate, clusterEventBus,
+                new UnreadCountersProperties());
+        unreadCounters.ensureIndexes();
+        unreadCounters.backfill();
+        readReceipts = new ReadReceiptCoordinator(template, messagingTemplate, roomService, recentMessages,
+                unreadCounters, new ReadReceiptsProperties());
+
+        messageService = new ChatMessageService();
+        ReflectionTestUtils.setField(messageService, "repository", messageRepository);
+        ReflectionTestUtils.setField(messageService, "chatRoomService", roomService);
+        ReflectionTestUtils.setField(messageService, "mongoOperations", template);
+        ReflectionTestUtils.setField(messageService, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(messageService, "chatRoomRepository", roomRepository);
+        ReflectionTestUtils.setField(messageService, "chatMetrics", chatMetrics);
+        ReflectionTestUtils.setField(messageService, "recentMessages", recentMessages);
+        ReflectionTestUtils.setField(messageService, "readReceiptCoordinator", readReceipts);
+        ReflectionTestUtils.setField(messageService, "unreadCounters", unreadCounters);
+        messageService.ensureIndexes();
+
+        groupService = new ChatGroupService(groupRepository, messageRepository, template, messagingTemplate,
+                null, null, null, chatMetrics, recentMessages);
+        groupService.ensureIndexes();
+
+        new PushNotificationService(null, null, pushRepository, null, chatMetrics, template).ensureIndexes();
+
+        chat = dataset.getChats().stream().filter(c -> c.deletedBy() == null).findFirst().orElseThrow();
+        group = dataset.getGroups().get(0);
+        activeUser = dataset.getUserIds().get(0);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (mongo != null) {
+            mongo.close();
+        }
+    }
+
+    @BeforeEach
+    void clearRecorded() {
+        recorder.clear();
+    }
+
+    @Test
+    void directHistoryPage() {
+        messageService.findChatMessagesPage(chat.firstId(), chat.secondId(), 0, 50);
+        assertPlans();
+    }
+
+    @Test
+    void chatImagesPage() {
+        messageService.findImageMessagesByChat(chat.chatId(), chat.firstId(), 0, 60);
+        assertPlans();
+    }
+
+    /**
+     * Счётчики непрочитанных читаются из памяти; в Mongo уходит только загрузка пользователя при первом обращении,
+     * поэтому берём свежий сервис.
+     */
+    @Test
+    void unreadCountersLoad() {
+        UnreadCounterService counters = new UnreadCounterService(template, messagingTemplate, clusterEventBus,
+                new UnreadCountersProperties());
+        counters.getAll(activeUser);
+        counters.get(chat.firstId(), chat.secondId());
+        assertPlans();
+    }
+
+    @Test
+    void contactIds() {
+        messageService.findContactIds(activeUser);
+        assertPlans();
+    }
+
+    @Test
+    void markDirectMessagesRead() {
+        messageService.markRead(chat.secondId(), chat.firstId(), null);
+        readReceipts.flush();
+        assertPlans();
+    }
+
+    @Test
+    void userGroupsWithLastMessage() {
+        groupService.getUserGroups(group.memberIds().get(0));
+        assertPlans();
+    }
+
+    @Test
+    void groupHistoryPage() {
+        groupService.getGroupMessages(group.id(), group.memberIds().get(0), 0, 50);
+        assertPlans();
+    }
+
+    @Test
+    void markGroupMessagesRead() {
+        groupService.markGroupMessagesRead(group.id(), group.memberIds().get(group.memberIds().size() - 1));
+        assertPlans();
+    }
+
+    @Test
+    void chatRoomLookups() {
+        roomRepository.findById(ChatRoomService.roomId(chat.firstId(), chat.secondId()));
+        roomRepository.findBySenderIdAndRecipientId(chat.firstId(), chat.secondId());
+        roomRepository.findFirstByChatId(chat.chatId());
+        assertPlans();
+    }
+
+    @Test
+    void pushSubscriptions() {
+        pushRepository.findByUserId(activeUser);
+        pushRepository.deleteByUserIdAndEndpoint(activeUser, "https://push.threadly.test/" + activeUser + "/0");
+        assertPlans();
+    }
+
+    private static void assertPlans() {
+        QueryPlan.assertEfficient(recorder.getPlans(), MAX_DOCS_PER_RESULT);
+    }
+}
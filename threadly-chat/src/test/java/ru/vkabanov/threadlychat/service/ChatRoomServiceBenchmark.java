@@ -0,0 +1,99 @@
+package ru.vkabanov.threadlychat.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import ru.vkabanov.threadlychat.configuration.ChatRoomProperties;
+import ru.vkabanov.threadlychat.model.ChatRoom;
+import ru.vkabanov.threadlychat.repository.ChatRoomRepository;
+import ru.vkabanov.threadlychat.support.EmbeddedMongo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск chatId по паре собеседников ({@link ChatRoomService#getChatId}) на встроенном mongod
+ * с N уже существующими комнатами. cacheMaxSize = 0 — каждый вызов идёт в Mongo (findById по каноническому id),
+ * иначе — установившийся режим с кэшем пара → chatId. Индексы те же, что создаёт {@link ChatRoomService#ensureIndexes()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChatRoomServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rooms;
+
+    @Param({"0", "100000"})
+    public long cacheMaxSize;
+
+    private EmbeddedMongo mongo;
+    private ChatRoomService chatRoomService;
+    private String[] senders;
+    private String[] recipients;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mongo = EmbeddedMongo.start();
+        MongoTemplate template = mongo.template("threadly_bench");
+        template.dropCollection(ChatRoom.class);
+
+        senders = new String[rooms];
+        recipients = new String[rooms];
+        List<ChatRoom> batch = new ArrayList<>();
+        for (int i = 0; i < rooms; i++) {
+            senders[i] = String.format("64a1b2c3d4e5f607%08x", i);
+            recipients[i] = String.format("64a1b2c3d4e5f608%08x", i);
+            String roomId = ChatRoomService.roomId(senders[i], recipients[i]);
+            batch.add(ChatRoom.builder().id(roomId).chatId(roomId).senderId(senders[i]).recipientId(recipients[i]).build());
+            if (batch.size() >= 10_000) {
+                template.insert(batch, ChatRoom.class);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            template.insert(batch, ChatRoom.class);
+        }
+
+        ChatRoomRepository repository = new MongoRepositoryFactory(template).getRepository(ChatRoomRepository.class);
+        ChatRoomProperties properties = new ChatRoomProperties();
+        properties.setCacheMaxSize(cacheMaxSize);
+        chatRoomService = new ChatRoomService(repository, template, properties);
+        chatRoomService.ensureIndexes();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mongo.close();
+    }
+
+    @Benchmark
+    public Optional<String> existingRoom() {
+        int i = ThreadLocalRandom.current().nextInt(rooms);
+        return chatRoomService.getChatId(senders[i], recipients[i], false);
+    }
+
+    @Benchmark
+    public Optional<String> missingRoom() {
+        int i = ThreadLocalRandom.current().nextInt(rooms);
+        return chatRoomService.getChatId(senders[i], senders[i], false);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.vkabanov.threadlychat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vkabanov.threadlychat.configuration.ChatMetrics;
+import ru.vkabanov.threadlychat.configuration.StorageProperties;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подпись presigned-ссылки на изображение и подмена хоста на публичный endpoint.
+ * Регион задан, поэтому MinIO не нужен: подпись считается локально, порт endpoint'а заведомо закрыт.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PresignedUrlBenchmark {
+
+    private MinioImageStorageService storageService;
+    private String[] objectKeys;
+
+    @Setup
+    public void setUp() {
+        StorageProperties properties = new StorageProperties();
+        properties.setEnabled(true);
+        properties.setEndpoint("http://127.0.0.1:9");
+        properties.setPresignedEndpoint("https://threadly.example.com/storage");
+        properties.setBucket("threadly");
+        properties.setAccessKey("bench");
+        properties.setSecretKey("bench-secret-key");
+        properties.setRegion("us-east-1");
+        properties.setPresignedExpirySeconds(3600);
+        storageService = new MinioImageStorageService(properties, new ChatMetrics(new SimpleMeterRegistry()));
+        storageService.init();
+
+        objectKeys = new String[1024];
+        for (int i = 0; i < objectKeys.length; i++) {
+            objectKeys[i] = String.format("chats/64a1b2c3d4e5f60718293a4b/%024x.jpg", i);
+        }
+    }
+
+    @Benchmark
+    public Optional<String> presign() {
+        return storageService.getPresignedUrl(objectKeys[ThreadLocalRandom.current().nextInt(objectKeys.length)]);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.vkabanov.threadlychat.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import ru.vkabanov.threadlychat.cluster.ClusterUserRegistry;
+import ru.vkabanov.threadlychat.cluster.LocalClusterEventBus;
+import ru.vkabanov.threadlychat.configuration.ClusterProperties;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Карта статусов под конкурентной нагрузкой: heartbeat'ы пишут, запросы статуса одного
+ * пользователя и всей карты читают. Рассылка уходит в канал-заглушку.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserStatusServiceBenchmark {
+
+    @Param({"1000", "50000"})
+    public int users;
+
+    private LocalClusterEventBus eventBus;
+    private UserStatusService userStatusService;
+    private String[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ClusterProperties properties = new ClusterProperties();
+        properties.setLocalGroup("bench");
+        eventBus = new LocalClusterEventBus(properties);
+        eventBus.join();
+        ClusterUserRegistry registry = new ClusterUserRegistry(eventBus);
+        registry.init();
+        SimpMessagingTemplate template = new SimpMessagingTemplate((msg, timeout) -> true);
+        userStatusService = new UserStatusService(template, eventBus, registry);
+        userStatusService.init();
+
+        userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = String.format("64a1b2c3d4e5f607%08x", i);
+            userStatusService.setOnlineFromHeartbeat(userIds[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        eventBus.leave();
+    }
+
+    @Benchmark
+    @Group("presence")
+    @GroupThreads(4)
+    public void heartbeat() {
+        userStatusService.setOnlineFromHeartbeat(randomUser());
+    }
+
+    @Benchmark
+    @Group("presence")
+    @GroupThreads(3)
+    public String getStatus() {
+        return userStatusService.getStatus(randomUser());
+    }
+
+    @Benchmark
+    @Group("presence")
+    @GroupThreads(1)
+    public Map<String, String> getAllStatuses() {
+        return userStatusService.getAllStatuses();
+    }
+
+    private String randomUser() {
+        return userIds[ThreadLocalRandom.current().nextInt(users)];
+    }
+}
@@ -0,0 +1,94 @@
+package ru.vkabanov.threadlychat.support;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandListener;
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Встроенный mongod (flapdoodle) для бенчмарков, нагрузочных тестов и проверки планов: без Docker и внешней базы.
+ * При первом запуске дистрибутив MongoDB скачивается и кэшируется в ~/.embedmongo.
+ */
+public final class EmbeddedMongo implements AutoCloseable {
+
+    private final TransitionWalker.ReachedState<RunningMongodProcess> process;
+    private final MongoClient client;
+    private final List<MongoClient> listenedClients = new ArrayList<>();
+
+    private EmbeddedMongo(TransitionWalker.ReachedState<RunningMongodProcess> process) {
+        this.process = process;
+        this.client = MongoClients.create(getConnectionString());
+    }
+
+    public static EmbeddedMongo start() {
+        return new EmbeddedMongo(Mongod.instance().start(Version.Main.V6_0));
+    }
+
+    public String getHost() {
+        return address().getHost();
+    }
+
+    public int getPort() {
+        return address().getPort();
+    }
+
+    public String getConnectionString() {
+        return "mongodb://" + getHost() + ":" + getPort();
+    }
+
+    public MongoTemplate template(String database) {
+        return new MongoTemplate(client, database);
+    }
+
+    /**
+     * Шаблон на отдельном клиенте, чьи команды видит listener; закрывается вместе с mongod.
+     */
+    public MongoTemplate template(String database, CommandListener listener) {
+        MongoClient listened = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(getConnectionString()))
+                .addCommandListener(listener)
+                .build());
+        listenedClients.add(listened);
+        return new MongoTemplate(listened, database);
+    }
+
+    public MongoClient getClient() {
+        return client;
+    }
+
+    /**
+     * Классический движок запросов вместо SBE: тот же выбор индексов, но explain показывает
+     * nReturned по каждой стадии плана, а $group остаётся отдельной стадией конвейера.
+     */
+    public void forceClassicEngine() {
+        client.getDatabase("admin").runCommand(new Document("setParameter", 1)
+                .append("internalQueryFrameworkControl", "forceClassicEngine"));
+    }
+
+    @Override
+    public void close() {
+        listenedClients.forEach(MongoClient::close);
+        client.close();
+        process.close();
+    }
+
+    private ServerAddress address() {
+        try {
+            return process.current().getServerAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Embedded mongod address is not resolvable", e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ru.vkabanov.threadlychat.support;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Разобранный explain(executionStats) одной команды (классический движок, см. {@link EmbeddedMongo#forceClassicEngine()}).
+ * <p>
+ * docsExamined сравниваем с числом документов, которые отдал путь доступа (первая сверху стадия FETCH, IXSCAN,
+ * COLLSCAN и т.п.), а не с ответом команды: у count, $group и update он не говорит, сколько документов совпало.
+ */
+public record QueryPlan(QueryPlanRecorder.RecordedCommand command, List<String> stages, String summary,
+                        boolean blockingSort, long docsExamined, long keysExamined, long accessReturned) {
+
+    private static final Set<String> ACCESS_STAGES = Set.of(
+            "FETCH", "IXSCAN", "COLLSCAN", "COUNT_SCAN", "DISTINCT_SCAN", "IDHACK", "EOF");
+
+    public static QueryPlan parse(QueryPlanRecorder.RecordedCommand command, BsonDocument explain) {
+        BsonDocument planner = findDocument(explain, "queryPlanner");
+        List<String> stages = new ArrayList<>();
+        List<String> described = new ArrayList<>();
+        if (planner != null && planner.isDocument("winningPlan")) {
+            collectStages(planner.getDocument("winningPlan"), stages, described);
+        }
+        // $sort, не ушедший в план запроса, — отдельная стадия конвейера, сортирующая в памяти
+        boolean pipelineSort = explain.isArray("stages") && explain.getArray("stages").stream()
+                .anyMatch(stage -> stage.isDocument() && stage.asDocument().containsKey("$sort"));
+
+        BsonDocument stats = findDocument(explain, "executionStats");
+        long docsExamined = stats != null ? longValue(stats, "totalDocsExamined") : 0;
+        long keysExamined = stats != null ? longValue(stats, "totalKeysExamined") : 0;
+        long accessReturned = 0;
+        if (stats != null && stats.isDocument("executionStages")) {
+            BsonDocument access = findAccessStage(stats.getDocument("executionStages"));
+            accessReturned = access != null ? longValue(access, "nReturned") : longValue(stats, "nReturned");
+        }
+        return new QueryPlan(command, stages, String.join(" > ", described),
+                stages.contains("SORT") || pipelineSort, docsExamined, keysExamined, accessReturned);
+    }
+
+    public double docsPerResult() {
+        return (double) docsExamined / Math.max(1, accessReturned);
+    }
+
+    /**
+     * Без COLLSCAN, без сортировки в памяти и не больше maxDocsPerResult прочитанных документов на совпавший.
+     */
+    public static void assertEfficient(List<QueryPlan> plans, double maxDocsPerResult) {
+        assertFalse(plans.isEmpty(), "No Mongo queries were recorded");
+        for (QueryPlan plan : plans) {
+            assertFalse(plan.stages().contains("COLLSCAN"), () -> "Collection scan: " + plan);
+            assertFalse(plan.blockingSort(), () -> "In-memory sort: " + plan);
+            assertTrue(plan.docsPerResult() <= maxDocsPerResult,
+                    () -> "Examined " + plan.docsExamined() + " documents for " + plan.accessReturned()
+                            + " matching (max " + maxDocsPerResult + " per result): " + plan);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return command.command() + " " + command.collection() + " " + command.query().toJson()
+                + " -> " + summary + ", docsExamined=" + docsExamined + ", keysExamined=" + keysExamined
+                + ", matched=" + accessReturned;
+    }
+
+    private static void collectStages(BsonDocument plan, List<String> stages, List<String> described) {
+        if (plan.isDocument("queryPlan")) {
+            collectStages(plan.getDocument("queryPlan"), stages, described);
+            return;
+        }
+        if (plan.isString("stage")) {
+            String stage = plan.getString("stage").getValue();
+            stages.add(stage);
+            described.add(plan.isString("indexName") ? stage + "(" + plan.getString("indexName").getValue() + ")" : stage);
+        }
+        if (plan.isDocument("inputStage")) {
+            collectStages(plan.getDocument("inputStage"), stages, described);
+        }
+        if (plan.isArray("inputStages")) {
+            for (BsonValue child : plan.getArray("inputStages")) {
+                if (child.isDocument()) {
+                    collectStages(child.asDocument(), stages, described);
+                }
+            }
+        }
+    }
+
+    private static BsonDocument findAccessStage(BsonDocument stage) {
+        if (stage.isString("stage") && ACCESS_STAGES.contains(stage.getString("stage").getValue())) {
+            return stage;
+        }
+        if (stage.isDocument("inputStage")) {
+            return findAccessStage(stage.getDocument("inputStage"));
+        }
+        if (stage.isArray("inputStages")) {
+            long returned = 0;
+            BsonDocument first = null;
+            for (BsonValue child : stage.getArray("inputStages")) {
+                BsonDocument access = child.isDocument() ? findAccessStage(child.asDocument()) : null;
+                if (access != null) {
+                    first = first != null ? first : access;
+                    returned += longValue(access, "nReturned");
+                }
+            }
+            // OR без FETCH над ним: совпавшие — сумма по веткам
+            return first != null ? new BsonDocument("stage", first.get("stage"))
+                    .append("nReturned", new BsonInt64(returned)) : null;
+        }
+        return null;
+    }
+
+    private static BsonDocument findDocument(BsonValue value, String key) {
+        if (value.isDocument()) {
+            BsonDocument document = value.asDocument();
+            if (document.isDocument(key)) {
+                return document.getDocument(key);
+            }
+            for (BsonValue child : document.values()) {
+                BsonDocument found = findDocument(child, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else if (value.isArray()) {
+            for (BsonValue child : value.asArray()) {
+                BsonDocument found = findDocument(child, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long longValue(BsonDocument document, String key) {
+        BsonValue value = document.get(key);
+        return value != null && value.isNumber() ? value.asNumber().longValue() : 0;
+    }
+}
@@ -0,0 +1,99 @@
+package ru.vkabanov.threadlychat.support;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Перехватывает запросы, которые код отправил в Mongo, и сразу, до выполнения самой команды, прогоняет их
+ * через explain(executionStats) отдельным клиентом: план updateMulti видит данные до записи, а не после.
+ * Для explain берутся коллекция и поля, влияющие на план (filter, sort, pipeline, первый оператор
+ * update/delete), — ровно то, что Spring Data построила из Query и Criteria сервиса.
+ */
+public class QueryPlanRecorder implements CommandListener {
+
+    private static final Set<String> QUERY_COMMANDS = Set.of(
+            "find", "aggregate", "count", "distinct", "update", "delete", "findAndModify");
+
+    private final MongoClient explainClient;
+    private final List<QueryPlan> plans = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param explainClient клиент без этого listener'а, иначе explain записывал бы сам себя
+     */
+    public QueryPlanRecorder(MongoClient explainClient) {
+        this.explainClient = explainClient;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String name = event.getCommandName();
+        if (!QUERY_COMMANDS.contains(name) || !event.getCommand().isString(name)) {
+            return;
+        }
+        RecordedCommand command = new RecordedCommand(event.getDatabaseName(), name,
+                event.getCommand().getString(name).getValue(), explainable(name, event.getCommand()));
+        BsonDocument result = explainClient.getDatabase(command.database()).runCommand(
+                new BsonDocument("explain", command.query()).append("verbosity", new BsonString("executionStats")),
+                BsonDocument.class);
+        plans.add(QueryPlan.parse(command, result));
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+
+    public List<QueryPlan> getPlans() {
+        return List.copyOf(plans);
+    }
+
+    private static BsonDocument explainable(String name, BsonDocument command) {
+        BsonDocument query = new BsonDocument(name, command.get(name));
+        switch (name) {
+            case "find" -> copy(command, query, "filter", "sort", "projection", "hint", "skip", "limit");
+            case "aggregate" -> {
+                copy(command, query, "pipeline", "hint");
+                query.append("cursor", new BsonDocument());
+            }
+            case "count" -> copy(command, query, "query", "hint", "skip", "limit");
+            case "distinct" -> copy(command, query, "key", "query");
+            case "update", "delete" -> {
+                String statements = name + "s";
+                BsonValue value = command.get(statements);
+                if (value != null && value.isArray() && !value.asArray().isEmpty()) {
+                    query.append(statements, new BsonArray(List.of(value.asArray().get(0).asDocument().clone())));
+                }
+            }
+            case "findAndModify" -> copy(command, query, "query", "sort", "fields", "update", "remove", "upsert", "new");
+            default -> {
+            }
+        }
+        return query;
+    }
+
+    private static void copy(BsonDocument from, BsonDocument to, String... keys) {
+        for (String key : keys) {
+            BsonValue value = from.get(key);
+            if (value == null) {
+                continue;
+            }
+            if (value.isDocument()) {
+                value = value.asDocument().clone();
+            } else if (value.isArray()) {
+                value = value.asArray().clone();
+            }
+            to.append(key, value);
+        }
+    }
+
+    public record RecordedCommand(String database, String command, String collection, BsonDocument query) {
+    }
+}
@@ -4,6 +4,7 @@ import {
     getUsers,
     findChatMessage,
     getUserSummary,
+    getUserSummaries,
     getChatContacts,
     getUnreadCounts,
     getStatuses,
@@ -30,6 +31,7 @@ import {
     getGroupAvatarUrl,
     toggleGroupMute,
     markGroupMessagesRead,
+    markChatRead,
 } from "../util/ApiUtil";
 import {useRecoilState} from "recoil";
 import {
@@ -106,6 +108,8 @@ const Chat = (props) => {
     const [text, setText] = useState("");
     const [contacts, setContacts] = useState([]);
     const [allUsers, setAllUsers] = useState([]);
+    // Профили участников групп, которых нет среди контактов (id → UserSummary)
+    const [memberSummaries, setMemberSummaries] = useState({});
     const [activeContact, setActiveContact] = useRecoilState(chatActiveContact);
     const [messages, setMessages] = useRecoilState(chatMessages);
     const [isProfileOpen, setIsProfileOpen] = useState(false);
@@ -125,6 +129,8 @@ const Chat = (props) => {
     const messagesListRef = useRef(null);
     const heartbeatIntervalRef = useRef(null);
     const connectUserIdRef = useRef(null);
+    // Сервер отключил нас как медленного клиента (ERROR message=resync) — после переподключения перечитать данные
+    const resyncOnConnectRef = useRef(false);
     const loadingMessagesForContactIdRef = useRef(null);
     const pendingMessagesRef = useRef([]);
     const pendingTimeoutsRef = useRef({});
@@ -470,7 +476,9 @@ const Chat = (props) => {
         let SockJS = require("sockjs-client");
         SockJS = new SockJS("/api/chat/ws");
         stompClient = Stomp.over(SockJS);
-        stompClient.connect({userId: uid}, onConnected, onError);
+        // Сервер проверяет JWT на CONNECT и берёт userId из него
+        const token = localStorage.getItem("accessToken");
+        stompClient.connect({Authorization: "Bearer " + token}, onConnected, onError);
     };
 
     const onConnected = () => {
@@ -504,11 +512,18 @@ const Chat = (props) => {
             onReadReceiptReceived
         );
         stompClient.subscribe("/user/" + uid + "/queue/sent-ack", onSentAckReceived);
+        stompClient.subscribe("/user/" + uid + "/queue/unread", onUnreadReceived);
         stompClient.subscribe("/topic/status", onStatusReceived);
         stompClient.subscribe("/topic/avatar-updated", onAvatarUpdated);
         stompClient.subscribe("/user/" + uid + "/queue/group-update", onGroupUpdate);
         stompClient.subscribe("/user/" + uid + "/queue/group-messages", onGroupMessageReceived);
 
+        if (resyncOnConnectRef.current) {
+            resyncOnConnectRef.current = false;
+            loadContacts(undefined, uid);
+            loadGroups();
+        }
+
         const pending = pendingMessagesRef.current.splice(0, pendingMessagesRef.current.length);
         pending.forEach((payload) => {
             try {
@@ -596,6 +611,9 @@ const Chat = (props) => {
 
     const onError = (err) => {
         console.warn("STOMP error", err);
+        if (err && err.headers && err.headers.message === "resync") {
+            resyncOnConnectRef.current = true;
+        }
         if (heartbeatIntervalRef.current) {
             clearInterval(heartbeatIntervalRef.current);
             heartbeatIntervalRef.current = null;
@@ -616,17 +634,35 @@ const Chat = (props) => {
     const onReadReceiptReceived = (msg) => {
         const data = JSON.parse(msg.body);
         const readerId = data.readerId;
+        // Прочитано всё, что отправлено не позже upTo; более новые сообщения остаются непрочитанными
+        const upTo = data.upTo != null ? new Date(data.upTo).getTime() : Infinity;
         const recoilPersist = JSON.parse(sessionStorage.getItem("recoil-persist") || "{}");
         const active = recoilPersist.chatActiveContact;
         if (active && active.id === readerId) {
             setMessages((prev) =>
                 prev.map((m) =>
-                    m.senderId === currentUser.id ? {...m, status: "DELIVERED"} : m
+                    m.senderId === currentUser.id && !(new Date(m.timestamp).getTime() > upTo)
+                        ? {...m, status: "DELIVERED"}
+                        : m
                 )
             );
         }
     };
 
+    // Сервер сам ведёт счётчики непрочитанных и присылает новое значение при каждом изменении
+    const onUnreadReceived = (msg) => {
+        let data;
+        try {
+            data = typeof msg.body === "string" ? JSON.parse(msg.body) : msg.body;
+        } catch (e) {
+            return;
+        }
+        if (!data || data.contactId == null) return;
+        setContacts((prev) =>
+            prev.map((c) => (c.id === data.contactId ? {...c, newMessages: Number(data.count) || 0} : c))
+        );
+    };
+
     const onMessageReceived = (msg) => {
         const notification = JSON.parse(msg.body);
         const recoilPersist = JSON.parse(sessionStorage.getItem("recoil-persist") || "{}");
@@ -651,6 +687,7 @@ const Chat = (props) => {
                     ...prev,
                     [message.senderId]: message,
                 }));
+                markChatRead(message.senderId, myId, message.timestamp).catch(() => {});
             });
         } else {
             // message.info("Received a new message from " + notification.senderName); TODO для чего тут так?
@@ -1502,6 +1539,7 @@ const Chat = (props) => {
                         ...prev,
                         [key]: items[0],
                     }));
+                    markChatRead(contact.id, currentUser.id, items[0].timestamp).catch(() => {});
                 }
                 setContacts((prev) =>
                     prev.map((c) => (c.id === contact.id ? {...c, newMessages: 0} : c))
@@ -1547,6 +1585,30 @@ const Chat = (props) => {
             .finally(() => setProfileLoading(false));
     };
 
+    const findKnownUser = (userId) =>
+        allUsers.find((u) => u.id === userId) || memberSummaries[userId] || null;
+
+    // Имена и аватары участников открытой группы, которых нет среди контактов — одним batch-запросом
+    useEffect(() => {
+        const memberIds = [
+            ...Array.from(activeGroup?.memberIds || []),
+            ...Array.from(groupInfoData?.memberIds || []),
+        ];
+        const missing = memberIds.filter((id) =>
+            id !== currentUser?.id && !allUsers.some((u) => u.id === id) && !memberSummaries[id]
+        );
+        if (missing.length === 0) return;
+        getUserSummaries(missing)
+            .then((summaries) => {
+                setMemberSummaries((prev) => {
+                    const next = { ...prev };
+                    (summaries || []).forEach((summary) => { next[summary.id] = summary; });
+                    return next;
+                });
+            })
+            .catch(() => {});
+    }, [activeGroup, groupInfoData, allUsers]); // eslint-disable-line react-hooks/exhaustive-deps
+
     const loadGroups = () => {
         getMyGroups()
             .then((list) => setGroups(list || []))
@@ -2267,7 +2329,7 @@ const Chat = (props) => {
                                     const isSystem = msg.messageType === "SYSTEM";
                                     const isOwn = msg.senderId === currentUser.id;
                                     const senderUser = !isOwn && !isSystem
-                                        ? allUsers.find((u) => u.id === msg.senderId) || null
+                                        ? findKnownUser(msg.senderId)
                                         : null;
                                     return (
                                         <React.Fragment key={msg.id || `${msg.senderId}-${msg.timestamp}-${index}`}>
@@ -2318,7 +2380,7 @@ const Chat = (props) => {
                                                         const readers = (msg.readBy || [])
                                                             .filter((uid) => uid !== currentUser.id)
                                                             .map((uid) => {
-                                                                const u = allUsers.find((x) => x.id === uid);
+                                                                const u = findKnownUser(uid);
                                                                 return u?.name || uid;
                                                             });
                                                         Modal.info({
@@ -3130,7 +3192,7 @@ const Chat = (props) => {
                             )}
                             <ul className="group-members-list">
                                 {Array.from(groupInfoData.memberIds || []).map((memberId) => {
-                                    const member = allUsers.find((u) => u.id === memberId) || (memberId === currentUser.id ? currentUser : null);
+                                    const member = findKnownUser(memberId) || (memberId === currentUser.id ? currentUser : null);
                                     return (
                                         <li key={memberId} className="group-member-item">
                                             <Avatar name={member?.name || memberId} src={member?.profilePicture} size={32} />
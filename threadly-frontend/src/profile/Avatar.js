@@ -13,6 +13,18 @@ const getColor = (name = "") => {
     return colors[hash % colors.length];
 };
 
+/**
+ * Для аватаров из auth просим вариант под размер на экране (с учётом плотности пикселей):
+ * сервер отдаёт ближайший из 64/128/256.
+ */
+const withVariantSize = (src, size) => {
+    if (!src || !/\/users\/[^/]+\/avatar(\?|$)/.test(src)) {
+        return src;
+    }
+    const pixels = Math.ceil(size * (window.devicePixelRatio || 1));
+    return src + (src.includes("?") ? "&" : "?") + "size=" + pixels;
+};
+
 const Avatar = ({ name, src, size = 40 }) => {
     const [imgError, setImgError] = useState(false);
 
@@ -42,7 +54,7 @@ const Avatar = ({ name, src, size = 40 }) => {
     // Если src есть и загрузилось успешно
     return (
         <img
-            src={src}
+            src={withVariantSize(src, size)}
             alt={name}
             style={{
                 width: size,
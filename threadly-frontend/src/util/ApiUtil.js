@@ -162,6 +162,52 @@ export function getUserSummary(username) {
     });
 }
 
+/** Последний ответ batch-запроса профилей по набору id: { etag, body }. */
+const userSummariesCache = new Map();
+
+/**
+ * Профили пачкой (имя, аватар) по id. Повторный запрос того же набора отправляет If-None-Match,
+ * при 304 возвращается сохранённый ответ.
+ */
+export function getUserSummaries(ids) {
+    const token = localStorage.getItem("accessToken");
+    if (!token) {
+        return Promise.reject("No access token set.");
+    }
+    const unique = Array.from(new Set(ids || [])).filter(Boolean).sort();
+    if (unique.length === 0) {
+        return Promise.resolve([]);
+    }
+    const key = unique.join(",");
+    const cached = userSummariesCache.get(key);
+
+    const headers = new Headers();
+    headers.append("Content-Type", "application/json");
+    headers.append("Authorization", "Bearer " + token);
+    if (cached?.etag) {
+        headers.append("If-None-Match", cached.etag);
+    }
+
+    return fetch(AUTH_SERVICE + "/users/summaries/batch", {
+        method: "POST",
+        headers,
+        body: JSON.stringify({ids: unique}),
+    }).then(async (response) => {
+        if (response.status === 304 && cached) {
+            return cached.body;
+        }
+        const json = await response.json().catch(() => ([]));
+        if (!response.ok) {
+            return Promise.reject({status: response.status, ...json});
+        }
+        const etag = response.headers.get("ETag");
+        if (etag) {
+            userSummariesCache.set(key, {etag, body: json});
+        }
+        return json;
+    });
+}
+
 export function searchUsers(query) {
     if (!localStorage.getItem("accessToken")) {
         return Promise.reject("No access token set.");
@@ -249,6 +295,22 @@ export function getChatMessagesPage(senderId, recipientId, page = 0, size = 50)
     });
 }
 
+/**
+ * Подтвердить прочтение: сообщения senderId → recipientId (текущий пользователь) не новее upTo.
+ * upTo — время последнего показанного сообщения; без него отмечаются все.
+ */
+export function markChatRead(senderId, recipientId, upTo) {
+    if (!localStorage.getItem("accessToken")) {
+        return Promise.reject("No access token set.");
+    }
+    const time = upTo != null ? new Date(upTo).getTime() : NaN;
+    const query = Number.isFinite(time) ? "?upTo=" + time : "";
+    return request({
+        url: CHAT_SERVICE + "/messages/" + senderId + "/" + recipientId + "/read" + query,
+        method: "POST",
+    });
+}
+
 export function findChatMessage(id) {
     if (!localStorage.getItem("accessToken")) {
         return Promise.reject("No access token set.");